@@ -0,0 +1,45 @@
+package com.nbplayer.nbplayer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryCodec;
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * 紧凑二进制事件通道
+ *
+ * <p>每条事件是固定 16 字节的小端记录: int32 type, int32 arg1, int32 arg2, int32 arg3，
+ * 写入复用的 direct ByteBuffer 后通过 BasicMessageChannel 发送，不产生 Map 和装箱对象。
+ * Dart 端解码见 lib/nbplayer.dart 的 _onBinaryEvent。
+ *
+ * <p>只能在主线程调用。
+ */
+final class BinaryEventChannel {
+    static final int RECORD_SIZE = 16;
+
+    // 事件类型，与 Dart 端保持一致
+    static final int EVENT_STATE_CHANGE = 1;
+    // arg1: 曲目序号, arg2: 曲间间隙毫秒 (-1 表示手动切换)
+    static final int EVENT_TRACK_CHANGE = 2;
+    // 只用于 EventChannel 的重放: arg1: 当前状态, arg2: 播放列表序号，不经二进制通道发送
+    static final int EVENT_SNAPSHOT = 3;
+
+    private final BasicMessageChannel<ByteBuffer> channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    BinaryEventChannel(BinaryMessenger messenger, String name) {
+        this.channel = new BasicMessageChannel<>(messenger, name, BinaryCodec.INSTANCE);
+    }
+
+    void send(int type, int arg1, int arg2, int arg3) {
+        buffer.clear();
+        buffer.putInt(type);
+        buffer.putInt(arg1);
+        buffer.putInt(arg2);
+        buffer.putInt(arg3);
+        // 引擎以 position 作为消息长度并同步拷贝数据，因此不 flip，发送后即可复用
+        channel.send(buffer);
+    }
+}
@@ -0,0 +1,352 @@
+package com.nbplayer.nbplayer;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 磁盘块缓存
+ *
+ * <p>按 URL 的 SHA-1 与块序号命名文件 (内容寻址)，LRU 淘汰，总大小受字节预算约束。
+ * 每个 URL 额外保存一个 ".len" 文件记录资源总长度，离线重播时无需再请求网络；
+ * 以及一个 ".val" 文件记录写入这些块时响应的 ETag 或 Last-Modified，
+ * 同一 URL 的资源变化后由数据源据此发现并 {@link #remove} 旧块。
+ *
+ * <p>构造后在缓存线程中扫描目录重建索引，构造本身不访问磁盘，可以在主线程调用；
+ * 索引加载完成前的调用会等待加载结束，主线程上的查询经 {@link #execute} 排在加载之后。
+ *
+ * <p>线程安全，多个播放器的读取线程可以共享同一个实例。
+ */
+class BlockCache {
+    private static final String TAG = "NbBlockCache";
+
+    // 单个缓存块大小
+    static final int BLOCK_SIZE = 256 * 1024;
+
+    private static final String BLOCK_SUFFIX = ".blk";
+    private static final String LENGTH_SUFFIX = ".len";
+    private static final String VALIDATOR_SUFFIX = ".val";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private long maxBytes;
+    private long totalBytes = 0;
+    // 文件名 -> 文件大小，访问顺序即 LRU 顺序
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(64, 0.75f, true);
+
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    BlockCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        // 空闲时线程退出，不需要显式关闭
+        this.executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), runnable -> {
+                Thread thread = new Thread(runnable, "nbplayer-cache");
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        executor.execute(() -> {
+            if (!directory.exists() && !directory.mkdirs()) {
+                Log.e(TAG, "Failed to create cache directory: " + directory);
+            }
+            loadIndex();
+            loaded.countDown();
+        });
+    }
+
+    /**
+     * 在缓存线程中执行，排在索引加载之后，供主线程上的查询使用
+     */
+    void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    private void awaitLoaded() {
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 资源的缓存键，同一 URL 始终得到相同的键
+     */
+    static String keyFor(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(url.getBytes(Charset.forName("UTF-8")));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    /**
+     * 读取一个缓存块，未命中返回 null
+     */
+    byte[] getBlock(String key, long blockIndex) {
+        String name = key + "_" + blockIndex + BLOCK_SUFFIX;
+        awaitLoaded();
+        synchronized (this) {
+            if (index.get(name) == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        byte[] data = readFile(new File(directory, name));
+        if (data == null) {
+            synchronized (this) {
+                Long size = index.remove(name);
+                if (size != null) {
+                    totalBytes -= size;
+                }
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return data;
+    }
+
+    void putBlock(String key, long blockIndex, byte[] data, int length) {
+        writeEntry(key + "_" + blockIndex + BLOCK_SUFFIX, data, length);
+    }
+
+    boolean hasBlock(String key, long blockIndex) {
+        awaitLoaded();
+        synchronized (this) {
+            return index.containsKey(key + "_" + blockIndex + BLOCK_SUFFIX);
+        }
+    }
+
+    /**
+     * 资源总长度，未知返回 -1
+     */
+    long getLength(String key) {
+        String name = key + LENGTH_SUFFIX;
+        awaitLoaded();
+        synchronized (this) {
+            if (index.get(name) == null) {
+                return -1;
+            }
+        }
+        byte[] data = readFile(new File(directory, name));
+        if (data == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(new String(data, Charset.forName("UTF-8")));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    void putLength(String key, long length) {
+        byte[] data = Long.toString(length).getBytes(Charset.forName("UTF-8"));
+        writeEntry(key + LENGTH_SUFFIX, data, data.length);
+    }
+
+    /**
+     * 缓存块对应的 ETag 或 Last-Modified，未知返回 null
+     */
+    String getValidator(String key) {
+        String name = key + VALIDATOR_SUFFIX;
+        awaitLoaded();
+        synchronized (this) {
+            if (index.get(name) == null) {
+                return null;
+            }
+        }
+        byte[] data = readFile(new File(directory, name));
+        return data != null ? new String(data, Charset.forName("UTF-8")) : null;
+    }
+
+    void putValidator(String key, String validator) {
+        byte[] data = validator.getBytes(Charset.forName("UTF-8"));
+        writeEntry(key + VALIDATOR_SUFFIX, data, data.length);
+    }
+
+    /**
+     * 删除资源的全部块、长度与校验值，资源在服务器上已变化时调用
+     */
+    void remove(String key) {
+        awaitLoaded();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Long> entry = it.next();
+                String name = entry.getKey();
+                if (name.startsWith(key + "_") || name.equals(key + LENGTH_SUFFIX)
+                    || name.equals(key + VALIDATOR_SUFFIX)) {
+                    it.remove();
+                    totalBytes -= entry.getValue();
+                    //noinspection ResultOfMethodCallIgnored
+                    new File(directory, name).delete();
+                }
+            }
+        }
+    }
+
+    void setMaxBytes(long maxBytes) {
+        awaitLoaded();
+        synchronized (this) {
+            this.maxBytes = maxBytes;
+            trimToSize();
+        }
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getTotalBytes() {
+        awaitLoaded();
+        synchronized (this) {
+            return totalBytes;
+        }
+    }
+
+    synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private void writeEntry(String name, byte[] data, int length) {
+        // 加载索引会删除残留的临时文件，写入必须在加载之后
+        awaitLoaded();
+        File target = new File(directory, name);
+        File temp = null;
+        OutputStream os = null;
+        try {
+            // 每个写入方使用独立的临时文件，同一块的并发写入互不覆盖
+            temp = File.createTempFile(name, TEMP_SUFFIX, directory);
+            os = new FileOutputStream(temp);
+            os.write(data, 0, length);
+            os.close();
+            os = null;
+            if (!temp.renameTo(target)) {
+                Log.e(TAG, "Failed to commit cache entry: " + name);
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+                return;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write cache entry: " + name, e);
+            closeQuietly(os);
+            if (temp != null) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            }
+            return;
+        }
+
+        synchronized (this) {
+            Long old = index.put(name, (long) length);
+            if (old != null) {
+                totalBytes -= old;
+            }
+            totalBytes += length;
+            trimToSize();
+        }
+    }
+
+    // 调用方持有锁
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.getValue();
+            //noinspection ResultOfMethodCallIgnored
+            new File(directory, eldest.getKey()).delete();
+        }
+    }
+
+    private synchronized void loadIndex() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // 按修改时间从旧到新加入，重启后近似恢复 LRU 顺序
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            } else if (name.endsWith(BLOCK_SUFFIX) || name.endsWith(LENGTH_SUFFIX)
+                || name.endsWith(VALIDATOR_SUFFIX)) {
+                index.put(name, file.length());
+                totalBytes += file.length();
+            }
+        }
+        trimToSize();
+    }
+
+    private static byte[] readFile(File file) {
+        InputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = is.read(data, read, data.length - read);
+                if (n < 0) {
+                    return null;
+                }
+                read += n;
+            }
+            return data;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            closeQuietly(is);
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
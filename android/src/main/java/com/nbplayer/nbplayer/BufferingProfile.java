@@ -0,0 +1,76 @@
+package com.nbplayer.nbplayer;
+
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * 缓冲策略，按 setDataSource 选择
+ *
+ * <p>在基础选项之后设置 ijkplayer 的探测与缓冲参数，取值为 -1 的项保持 ijkplayer 默认值。
+ * <ul>
+ * <li>STANDARD: 不做额外调整，与原有行为一致</li>
+ * <li>LOW_LATENCY_LIVE: 直播低延迟，极小探测量，不缓冲 (nobuffer + infbuf)</li>
+ * <li>FAST_START: 点播快速起播，减小探测量，少量帧即开始播放</li>
+ * <li>SMOOTH_VOD: 点播流畅优先，充分探测并攒足缓冲，减少卡顿</li>
+ * <li>LOW_MEMORY: 低端机，限制缓冲区大小</li>
+ * </ul>
+ */
+enum BufferingProfile {
+    //                probesize   analyzeduration(us)  max-buffer-size   min-frames  packet-buffering  infbuf  nobuffer
+    STANDARD("standard", -1, -1, -1, -1, -1, -1, false),
+    LOW_LATENCY_LIVE("lowLatencyLive", 32 * 1024, 100000, 1024 * 1024, 2, 0, 1, true),
+    FAST_START("fastStart", 64 * 1024, 500000, -1, 5, 1, 0, false),
+    SMOOTH_VOD("smoothVod", -1, -1, 15 * 1024 * 1024, 50, 1, 0, false),
+    LOW_MEMORY("lowMemory", 256 * 1024, -1, 512 * 1024, 5, 1, 0, false);
+
+    // 与 Dart 端 NbBufferingProfile 的枚举名一致
+    final String dartName;
+    private final long probeSize;
+    private final long analyzeDurationUs;
+    private final long maxBufferSize;
+    private final long minFrames;
+    private final long packetBuffering;
+    private final long infiniteBuffer;
+    private final boolean noBuffer;
+
+    BufferingProfile(String dartName, long probeSize, long analyzeDurationUs, long maxBufferSize,
+                     long minFrames, long packetBuffering, long infiniteBuffer, boolean noBuffer) {
+        this.dartName = dartName;
+        this.probeSize = probeSize;
+        this.analyzeDurationUs = analyzeDurationUs;
+        this.maxBufferSize = maxBufferSize;
+        this.minFrames = minFrames;
+        this.packetBuffering = packetBuffering;
+        this.infiniteBuffer = infiniteBuffer;
+        this.noBuffer = noBuffer;
+    }
+
+    /**
+     * 未知或为 null 时返回 STANDARD
+     */
+    static BufferingProfile fromName(String name) {
+        for (BufferingProfile profile : values()) {
+            if (profile.dartName.equals(name)) {
+                return profile;
+            }
+        }
+        return STANDARD;
+    }
+
+    void apply(IjkMediaPlayer player) {
+        setIfPresent(player, IjkMediaPlayer.OPT_CATEGORY_FORMAT, "probesize", probeSize);
+        setIfPresent(player, IjkMediaPlayer.OPT_CATEGORY_FORMAT, "analyzeduration", analyzeDurationUs);
+        setIfPresent(player, IjkMediaPlayer.OPT_CATEGORY_PLAYER, "max-buffer-size", maxBufferSize);
+        setIfPresent(player, IjkMediaPlayer.OPT_CATEGORY_PLAYER, "min-frames", minFrames);
+        setIfPresent(player, IjkMediaPlayer.OPT_CATEGORY_PLAYER, "packet-buffering", packetBuffering);
+        setIfPresent(player, IjkMediaPlayer.OPT_CATEGORY_PLAYER, "infbuf", infiniteBuffer);
+        if (noBuffer) {
+            player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "fflags", "nobuffer");
+        }
+    }
+
+    private static void setIfPresent(IjkMediaPlayer player, int category, String name, long value) {
+        if (value >= 0) {
+            player.setOption(category, name, value);
+        }
+    }
+}
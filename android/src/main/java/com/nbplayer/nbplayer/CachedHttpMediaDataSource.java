@@ -0,0 +1,373 @@
+package com.nbplayer.nbplayer;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.Map;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/**
+ * 带磁盘块缓存的 HTTP 数据源
+ *
+ * <p>按 {@link BlockCache#BLOCK_SIZE} 对齐的 Range 请求拉取数据并写入 {@link BlockCache}，
+ * 重播和回退 seek 直接从本地块读取，不再重新下载。
+ * 请求经共享的 {@link HttpConnector} 发出，连续的曲目复用同一主机的连接。
+ * cache 为 null 时只复用连接，不写磁盘。
+ * 服务器忽略 Range 返回 200 时改为顺序读取同一个响应，途经的块一并写入缓存，
+ * 避免每个块都从头下载整个资源。
+ * 缓存块与写入时响应的 ETag 或 Last-Modified 一起保存：每个数据源首次命中缓存时发一次条件请求
+ * (If-None-Match / If-Modified-Since)，304 则继续使用缓存；任何响应的校验值与缓存的不同时，
+ * 说明同一 URL 的资源已变化，丢弃该资源的全部缓存块。条件请求失败 (如离线) 时照常使用缓存。
+ * 调用线程被中断时 (如取消预加载) 块内的读取抛出 {@link InterruptedIOException}，不必等整块下载完。
+ */
+class CachedHttpMediaDataSource implements IMediaDataSource {
+    private static final String TAG = "NbCachedDataSource";
+
+    private final String url;
+    private final Map<String, String> headers;
+    private final String key;
+    private final BlockCache cache;
+    private final HttpConnector connector;
+
+    private long length = -1;
+    // 缓存块对应的 ETag 或 Last-Modified，null 为未知
+    private String validator;
+    // 本数据源已向服务器确认过缓存块仍然有效
+    private boolean revalidated = false;
+    // 最近使用的块，连续的小块读取无需反复读盘
+    private long currentIndex = -1;
+    private byte[] currentBlock;
+    private int currentLength;
+    // 服务器不支持 Range 时保留的整个资源的响应流及其当前位置 (块对齐)
+    private HttpURLConnection stream;
+    private InputStream streamInput;
+    private long streamPosition;
+
+    CachedHttpMediaDataSource(String url, Map<String, String> headers, BlockCache cache, HttpConnector connector) {
+        this.url = url;
+        this.headers = headers;
+        this.key = BlockCache.keyFor(url);
+        this.cache = cache;
+        this.connector = connector;
+        this.length = cache != null ? cache.getLength(key) : -1;
+        this.validator = cache != null ? cache.getValidator(key) : null;
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) {
+        if (size <= 0) {
+            return 0;
+        }
+        if (length >= 0 && position >= length) {
+            return -1;
+        }
+        long blockIndex = position / BlockCache.BLOCK_SIZE;
+        try {
+            if (!loadBlock(blockIndex)) {
+                return -1;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load block " + blockIndex + " of " + url, e);
+            return -1;
+        }
+        int blockOffset = (int) (position - blockIndex * BlockCache.BLOCK_SIZE);
+        if (blockOffset >= currentLength) {
+            return -1;
+        }
+        int count = Math.min(size, currentLength - blockOffset);
+        System.arraycopy(currentBlock, blockOffset, buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public long getSize() {
+        if (length < 0) {
+            try {
+                // 拉取首块的同时从 Content-Range 得到总长度
+                loadBlock(0);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to get size of " + url, e);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 把 position 所在的块拉入缓存，供预加载使用
+     *
+     * @return 块内有数据时返回 true
+     */
+    boolean prefetch(long position) throws IOException {
+        if (length >= 0 && position >= length) {
+            return false;
+        }
+        long blockIndex = position / BlockCache.BLOCK_SIZE;
+        if (cache != null && cache.hasBlock(key, blockIndex)) {
+            return true;
+        }
+        return loadBlock(blockIndex);
+    }
+
+    @Override
+    public void close() {
+        currentBlock = null;
+        currentIndex = -1;
+        closeStream();
+    }
+
+    private boolean loadBlock(long blockIndex) throws IOException {
+        if (blockIndex == currentIndex) {
+            return true;
+        }
+        byte[] cached = cache != null ? cache.getBlock(key, blockIndex) : null;
+        if (cached != null && (revalidated || validator == null || revalidate(blockIndex))) {
+            setCurrent(blockIndex, cached, cached.length);
+            return true;
+        }
+        return fetchBlock(blockIndex);
+    }
+
+    /**
+     * 向服务器确认缓存块仍然有效
+     *
+     * @return 资源已变化时返回 false，此时缓存块已被丢弃
+     */
+    private boolean revalidate(long blockIndex) {
+        // 无论结果如何只确认一次，离线时不必每块都等待超时
+        revalidated = true;
+        long start = blockIndex * BlockCache.BLOCK_SIZE;
+        HttpURLConnection connection = null;
+        try {
+            connection = connector.open(url, headers, start, start + BlockCache.BLOCK_SIZE - 1);
+            // ETag 带引号 (弱校验值带 W/ 前缀)，否则是 Last-Modified 的日期
+            if (validator.startsWith("\"") || validator.startsWith("W/")) {
+                connection.setRequestProperty("If-None-Match", validator);
+            } else {
+                connection.setRequestProperty("If-Modified-Since", validator);
+            }
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return true;
+            }
+            if (code == HttpURLConnection.HTTP_PARTIAL || code == HttpURLConnection.HTTP_OK) {
+                return checkValidator(connection);
+            }
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to revalidate " + url + ", using cached blocks", e);
+            return true;
+        } finally {
+            if (connection != null) {
+                // 不读响应体，连接不放回连接池
+                HttpConnector.discard(connection);
+            }
+        }
+    }
+
+    /**
+     * 比较响应与缓存块的校验值，资源已变化时丢弃该资源的全部缓存块
+     *
+     * @return 缓存块仍然有效时返回 true
+     */
+    private boolean checkValidator(HttpURLConnection connection) {
+        String current = connection.getHeaderField("ETag");
+        if (current == null) {
+            current = connection.getHeaderField("Last-Modified");
+        }
+        if (current == null) {
+            return true;
+        }
+        // 此后命中的缓存块与服务器上的资源一致
+        revalidated = true;
+        if (current.equals(validator)) {
+            return true;
+        }
+        boolean valid = validator == null;
+        if (!valid) {
+            Log.i(TAG, "Resource changed, dropping cached blocks of " + url);
+            if (cache != null) {
+                cache.remove(key);
+            }
+            length = -1;
+            currentIndex = -1;
+            currentBlock = null;
+        }
+        validator = current;
+        if (cache != null) {
+            cache.putValidator(key, current);
+        }
+        return valid;
+    }
+
+    private boolean fetchBlock(long blockIndex) throws IOException {
+        long start = blockIndex * BlockCache.BLOCK_SIZE;
+        if (streamInput != null && start < streamPosition) {
+            // 顺序流已越过目标块，只能重新请求
+            closeStream();
+        }
+        if (streamInput == null) {
+            HttpURLConnection connection = connector.open(url, headers, start, start + BlockCache.BLOCK_SIZE - 1);
+            int code;
+            try {
+                code = connection.getResponseCode();
+            } catch (IOException e) {
+                connection.disconnect();
+                throw e;
+            }
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                checkValidator(connection);
+                updateLength(parseContentRangeTotal(connection.getHeaderField("Content-Range")));
+                InputStream is = connection.getInputStream();
+                try {
+                    byte[] block = new byte[BlockCache.BLOCK_SIZE];
+                    int read = readFully(is, block);
+                    if (read == 0) {
+                        return false;
+                    }
+                    storeBlock(blockIndex, block, read);
+                    setCurrent(blockIndex, block, read);
+                    return true;
+                } catch (IOException e) {
+                    // 未读完的响应不放回连接池
+                    connection.disconnect();
+                    throw e;
+                } finally {
+                    closeQuietly(is);
+                }
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                HttpConnector.discard(connection);
+                if (code == 416) {
+                    return false;
+                }
+                throw new IOException("Unexpected HTTP response " + code);
+            }
+            // 服务器不支持 Range，响应从 0 开始
+            checkValidator(connection);
+            updateLength(HttpConnector.contentLength(connection));
+            stream = connection;
+            streamInput = connection.getInputStream();
+            streamPosition = 0;
+        }
+        try {
+            return readStreamTo(blockIndex);
+        } catch (IOException e) {
+            closeStream();
+            throw e;
+        }
+    }
+
+    // 从顺序流读到目标块，途经的块写入缓存
+    private boolean readStreamTo(long blockIndex) throws IOException {
+        byte[] skipped = null;
+        while (true) {
+            long index = streamPosition / BlockCache.BLOCK_SIZE;
+            boolean target = index == blockIndex;
+            boolean store = target || (cache != null && !cache.hasBlock(key, index));
+            byte[] block;
+            if (store) {
+                block = new byte[BlockCache.BLOCK_SIZE];
+            } else {
+                if (skipped == null) {
+                    skipped = new byte[BlockCache.BLOCK_SIZE];
+                }
+                block = skipped;
+            }
+            int read = readFully(streamInput, block);
+            streamPosition += read;
+            if (read < block.length) {
+                // 资源结束
+                closeStream();
+            }
+            if (read == 0) {
+                return false;
+            }
+            if (store) {
+                storeBlock(index, block, read);
+            }
+            if (target) {
+                setCurrent(blockIndex, block, read);
+                return true;
+            }
+            if (streamInput == null) {
+                return false;
+            }
+        }
+    }
+
+    private void storeBlock(long blockIndex, byte[] block, int read) {
+        // 不完整的块只可能是最后一块，长度未知时不缓存以免把截断的数据当作完整块
+        long start = blockIndex * BlockCache.BLOCK_SIZE;
+        if (cache != null && (read == block.length || (length >= 0 && start + read == length))) {
+            cache.putBlock(key, blockIndex, block, read);
+        }
+    }
+
+    private void closeStream() {
+        if (stream != null) {
+            closeQuietly(streamInput);
+            stream.disconnect();
+            stream = null;
+            streamInput = null;
+        }
+    }
+
+    private static int readFully(InputStream is, byte[] block) throws IOException {
+        int read = 0;
+        while (read < block.length) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Block read interrupted");
+            }
+            int n = is.read(block, read, block.length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return read;
+    }
+
+    private static void closeQuietly(InputStream is) {
+        if (is != null) {
+            try {
+                is.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void setCurrent(long blockIndex, byte[] block, int blockLength) {
+        currentIndex = blockIndex;
+        currentBlock = block;
+        currentLength = blockLength;
+    }
+
+    private void updateLength(long total) {
+        if (total >= 0 && length != total) {
+            length = total;
+            if (cache != null) {
+                cache.putLength(key, total);
+            }
+        }
+    }
+
+    // "bytes 0-1023/4096" -> 4096
+    static long parseContentRangeTotal(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0 || slash == contentRange.length() - 1) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.nbplayer.nbplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodChannel;
+import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基于 Flutter MethodChannel / EventChannel 的传输层，每个播放器一个
+ *
+ * <p>事件统一在主线程发出。所有线程的事件先按调用顺序写入同一个 {@link EventQueue}，
+ * 主线程按队列顺序发出，因此不同线程上发生的状态转换到达 Dart 的顺序与发生顺序一致。
+ * 队列由非空时投递一次的 drainRunnable 清空，每条事件不再分配 Runnable。
+ * 开启 binaryEvents 时改走 {@link BinaryEventChannel}；
+ * 否则编码为 Map 经 EventChannel 发出，无订阅者时写入 {@link EventRing} 而不是丢弃，订阅后重放。
+ */
+final class ChannelTransport implements PlayerTransport {
+    private static final String TAG = "NbChannelTransport";
+
+    private final MethodChannel methodChannel;
+    private final EventChannel eventChannel;
+    private volatile EventChannel.EventSink eventSink;
+    // 非空时事件改走二进制通道
+    private final BinaryEventChannel binaryEventChannel;
+    // 无订阅者时暂存 EventChannel 事件，订阅后重放，只在主线程访问
+    private final EventRing eventRing;
+    private final EventRing.Consumer dispatchConsumer = this::dispatch;
+    // 待主线程发出的事件
+    private final EventQueue pending = new EventQueue(16);
+    private final Runnable drainRunnable = this::drain;
+    private final Looper mainLooper = Looper.getMainLooper();
+    private final Handler mainHandler = new Handler(mainLooper);
+
+    ChannelTransport(BinaryMessenger messenger, String playerId, boolean binaryEvents, int eventBufferSize) {
+        this.methodChannel = new MethodChannel(messenger, "com.newsbang.nbplayer/methods_" + playerId);
+        this.eventChannel = new EventChannel(messenger, "com.newsbang.nbplayer/events_" + playerId);
+        this.binaryEventChannel = binaryEvents
+            ? new BinaryEventChannel(messenger, "com.newsbang.nbplayer/binary_events_" + playerId)
+            : null;
+        this.eventRing = new EventRing(binaryEvents ? 0 : eventBufferSize);
+    }
+
+    @Override
+    public void start(MethodCallHandler handler, final Runnable onSubscribe) {
+        methodChannel.setMethodCallHandler(handler);
+        eventChannel.setStreamHandler(new EventChannel.StreamHandler() {
+            @Override
+            public void onListen(Object arguments, EventChannel.EventSink events) {
+                eventSink = events;
+                int replayed = eventRing.drain(dispatchConsumer);
+                onSubscribe.run();
+                if (replayed > 0) {
+                    Log.i(TAG, "Replayed " + replayed + " events, dropped " + eventRing.getDropped());
+                }
+            }
+
+            @Override
+            public void onCancel(Object arguments) {
+                eventSink = null;
+            }
+        });
+    }
+
+    @Override
+    public void emit(int type, int arg1, int arg2, int arg3) {
+        boolean first = pending.add(type, arg1, arg2, arg3);
+        if (Looper.myLooper() == mainLooper) {
+            // 先发出其他线程更早写入的事件，再发出本条
+            drain();
+        } else if (first) {
+            mainHandler.post(drainRunnable);
+        }
+    }
+
+    // 在主线程执行
+    private void drain() {
+        pending.drain(dispatchConsumer);
+    }
+
+    // 在主线程执行
+    private void dispatch(int type, int arg1, int arg2, int arg3) {
+        if (binaryEventChannel != null) {
+            binaryEventChannel.send(type, arg1, arg2, arg3);
+            return;
+        }
+        EventChannel.EventSink sink = eventSink;
+        if (sink == null) {
+            eventRing.add(type, arg1, arg2, arg3);
+            return;
+        }
+        Map<String, Object> event = new HashMap<>();
+        if (type == BinaryEventChannel.EVENT_STATE_CHANGE) {
+            event.put("event", "state_change");
+            event.put("state", arg1);
+            event.put("oldState", arg2);
+        } else if (type == BinaryEventChannel.EVENT_TRACK_CHANGE) {
+            event.put("event", "track_change");
+            event.put("index", arg1);
+            event.put("gapMs", arg2);
+        } else {
+            event.put("event", "snapshot");
+            event.put("state", arg1);
+            event.put("index", arg2);
+        }
+        sink.success(event);
+    }
+
+    @Override
+    public void close() {
+        // channel 的注册与注销在主线程完成
+        mainHandler.post(() -> {
+            methodChannel.setMethodCallHandler(null);
+            eventChannel.setStreamHandler(null);
+        });
+        eventSink = null;
+    }
+}
@@ -0,0 +1,652 @@
+package com.nbplayer.nbplayer;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 离线下载，按 URL 管理
+ *
+ * <p>每个下载按 {@link #CHUNK_SIZE} 分段发出 Range 请求，数据边收边写入 .part 文件，
+ * 暂停、失败或进程被杀后从 .part 的长度处续传。续传请求带 If-Range (ETag 或 Last-Modified)，
+ * 资源已变化时服务器返回完整内容，从头重新下载。每段失败后重试 {@link #MAX_RETRIES} 次，
+ * 已收到的数据不会重复下载。
+ * 全部下载完成后按需校验 SHA-256，通过后改名为 .media，之后由 {@link #completedFile} 找到并本地播放。
+ *
+ * <p>同时进行的下载数受线程池大小限制，其余排队；所有下载共享一个限速器。
+ * 进度在下载线程中按 progressIntervalMs 节流后回调，不会每收到一块数据就回调一次。
+ *
+ * <p>不依赖 Android Context，可以在 JVM 上对本地 HTTP 服务器单独驱动。线程安全。
+ */
+class DownloadManager {
+    private static final String TAG = "NbDownloadManager";
+
+    static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_RETRIES = 3;
+    private static final long RETRY_DELAY_MS = 1000;
+
+    private static final String PART_SUFFIX = ".part";
+    private static final String META_SUFFIX = ".meta";
+    private static final String MEDIA_SUFFIX = ".media";
+
+    // 下载状态，与 Dart 端 NbDownloadState 的顺序一致
+    static final int STATE_QUEUED = 0;
+    static final int STATE_RUNNING = 1;
+    static final int STATE_PAUSED = 2;
+    static final int STATE_COMPLETED = 3;
+    static final int STATE_FAILED = 4;
+    static final int STATE_REMOVED = 5;
+
+    interface Listener {
+        /**
+         * 在下载线程中回调，同一下载最多每 progressIntervalMs 一次，下载完成前必定有一次 bytes == total
+         */
+        void onProgress(String url, long bytes, long total);
+
+        /**
+         * 在任意线程中回调，error 只在 {@link #STATE_FAILED} 时非空
+         */
+        void onStateChange(String url, int state, String error);
+    }
+
+    private final File dir;
+    private final HttpConnector connector;
+    private final long progressIntervalNanos;
+    private final Listener listener;
+    private final ThreadPoolExecutor executor;
+    // 元数据读写、删除等短小的文件操作，不占用主线程和下载名额
+    private final ExecutorService control;
+    private final Throttle throttle = new Throttle();
+    private final Map<String, Task> tasks = new ConcurrentHashMap<>();
+
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private final AtomicLong progressEvents = new AtomicLong();
+    private final AtomicLong progressSuppressed = new AtomicLong();
+    private final AtomicLong resumed = new AtomicLong();
+    private final AtomicLong restarts = new AtomicLong();
+    private final AtomicLong checksumFailures = new AtomicLong();
+
+    DownloadManager(File dir, HttpConnector connector, int maxConcurrent, long progressIntervalMs, Listener listener) {
+        this.dir = dir;
+        this.connector = connector;
+        this.progressIntervalNanos = progressIntervalMs * 1000000;
+        this.listener = listener;
+        int threads = Math.max(1, maxConcurrent);
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), runnable -> {
+                Thread thread = new Thread(runnable, "nbplayer-download");
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.control = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "nbplayer-download-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 在文件操作线程中执行，供主线程上的查询和删除使用
+     */
+    void execute(Runnable task) {
+        control.execute(task);
+    }
+
+    /**
+     * @param maxConcurrent     同时进行的下载数，已在进行的下载不受影响
+     * @param maxBytesPerSecond 所有下载合计的带宽上限，0 表示不限速
+     */
+    void configure(int maxConcurrent, long maxBytesPerSecond) {
+        int threads = Math.max(1, maxConcurrent);
+        // 核心线程数不能超过最大线程数，扩大和缩小时按不同顺序设置
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+        throttle.setRate(maxBytesPerSecond);
+    }
+
+    /**
+     * 开始或继续下载，已在队列中、下载中或下载线程还未退出时返回 false
+     *
+     * @param sha256 十六进制 SHA-256，为 null 时不校验
+     */
+    synchronized boolean download(String url, Map<String, String> headers, String sha256) {
+        if (tasks.containsKey(url)) {
+            return false;
+        }
+        Task task = new Task(url, headers, sha256);
+        tasks.put(url, task);
+        listener.onStateChange(url, STATE_QUEUED, null);
+        task.future = executor.submit(task);
+        return true;
+    }
+
+    /**
+     * 停止下载并保留已下载的部分，没有进行中的下载时返回 false
+     */
+    boolean pause(String url) {
+        return stop(url, STATE_PAUSED);
+    }
+
+    /**
+     * 停止下载并删除所有文件，包括已完成的
+     */
+    synchronized void remove(String url) {
+        if (!stop(url, STATE_REMOVED)) {
+            deleteFiles(url);
+            listener.onStateChange(url, STATE_REMOVED, null);
+        }
+    }
+
+    private synchronized boolean stop(String url, int reason) {
+        Task task = tasks.get(url);
+        if (task == null) {
+            return false;
+        }
+        task.stop(reason);
+        // 还没开始运行的任务由这里收尾；已在运行的由下载线程退出时收尾，之前 url 仍被占用
+        if (task.state.compareAndSet(STATE_QUEUED, reason)) {
+            task.future.cancel(false);
+            task.finishStopped();
+        }
+        return true;
+    }
+
+    /**
+     * 已下载完成的本地文件，没有时返回 null
+     */
+    File completedFile(String url) {
+        File file = mediaFile(url);
+        return file.isFile() && !tasks.containsKey(url) ? file : null;
+    }
+
+    /**
+     * 不创建下载管理器，只按文件查找 dir 中已下载完成的 url，没有时返回 null
+     */
+    static File completedFile(File dir, String url) {
+        File file = new File(dir, BlockCache.keyFor(url) + MEDIA_SUFFIX);
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * 所有已知下载: url、state、bytes、total，已完成的另有 path；在文件操作线程中调用
+     */
+    List<Map<String, Object>> list() {
+        List<Map<String, Object>> downloads = new ArrayList<>();
+        Map<String, Task> unlisted = new HashMap<>(tasks);
+        File[] files = dir.listFiles();
+        for (File file : files != null ? files : new File[0]) {
+            if (!file.getName().endsWith(META_SUFFIX)) {
+                continue;
+            }
+            Meta meta = Meta.read(file);
+            if (meta == null) {
+                continue;
+            }
+            Map<String, Object> download = new HashMap<>();
+            File media = mediaFile(meta.url);
+            Task task = unlisted.remove(meta.url);
+            int state;
+            long bytes;
+            if (task != null) {
+                state = task.state.get() == STATE_RUNNING ? STATE_RUNNING : STATE_QUEUED;
+                bytes = partFile(meta.url).length();
+            } else if (media.isFile()) {
+                state = STATE_COMPLETED;
+                bytes = media.length();
+                download.put("path", media.getAbsolutePath());
+            } else {
+                state = STATE_PAUSED;
+                bytes = partFile(meta.url).length();
+            }
+            download.put("url", meta.url);
+            download.put("state", state);
+            download.put("bytes", bytes);
+            download.put("total", meta.total);
+            downloads.add(download);
+        }
+        // 排队中的下载还没有写元数据
+        for (Task task : unlisted.values()) {
+            Map<String, Object> download = new HashMap<>();
+            download.put("url", task.url);
+            download.put("state", task.state.get() == STATE_RUNNING ? STATE_RUNNING : STATE_QUEUED);
+            download.put("bytes", 0L);
+            download.put("total", -1L);
+            downloads.add(download);
+        }
+        return downloads;
+    }
+
+    /**
+     * 停止所有下载，已下载的部分保留，下次调用 download 时续传
+     */
+    synchronized void shutdown() {
+        for (Task task : tasks.values()) {
+            task.stop(STATE_PAUSED);
+        }
+        executor.shutdownNow();
+        control.shutdown();
+    }
+
+    Map<String, Object> getStats() {
+        int running = 0;
+        for (Task task : tasks.values()) {
+            if (task.state.get() == STATE_RUNNING) {
+                running++;
+            }
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("running", running);
+        stats.put("queued", tasks.size() - running);
+        stats.put("bytesDownloaded", bytesDownloaded.get());
+        stats.put("progressEvents", progressEvents.get());
+        stats.put("progressSuppressed", progressSuppressed.get());
+        stats.put("resumed", resumed.get());
+        stats.put("restarts", restarts.get());
+        stats.put("checksumFailures", checksumFailures.get());
+        return stats;
+    }
+
+    private File partFile(String url) {
+        return new File(dir, BlockCache.keyFor(url) + PART_SUFFIX);
+    }
+
+    private File metaFile(String url) {
+        return new File(dir, BlockCache.keyFor(url) + META_SUFFIX);
+    }
+
+    private File mediaFile(String url) {
+        return new File(dir, BlockCache.keyFor(url) + MEDIA_SUFFIX);
+    }
+
+    private void deleteFiles(String url) {
+        partFile(url).delete();
+        metaFile(url).delete();
+        mediaFile(url).delete();
+    }
+
+    private static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    // 持久化的下载信息，续传时据此校验资源未变化
+    private static final class Meta {
+        String url;
+        long total = -1;
+        // ETag 或 Last-Modified，用作 If-Range
+        String validator;
+        String sha256;
+
+        static Meta read(File file) {
+            if (!file.isFile()) {
+                return null;
+            }
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to read " + file, e);
+                return null;
+            }
+            Meta meta = new Meta();
+            meta.url = properties.getProperty("url");
+            if (meta.url == null) {
+                return null;
+            }
+            try {
+                meta.total = Long.parseLong(properties.getProperty("total", "-1"));
+            } catch (NumberFormatException e) {
+                meta.total = -1;
+            }
+            meta.validator = properties.getProperty("validator");
+            meta.sha256 = properties.getProperty("sha256");
+            return meta;
+        }
+
+        void write(File file) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("url", url);
+            properties.setProperty("total", String.valueOf(total));
+            if (validator != null) {
+                properties.setProperty("validator", validator);
+            }
+            if (sha256 != null) {
+                properties.setProperty("sha256", sha256);
+            }
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                properties.store(out, null);
+            }
+        }
+    }
+
+    // 所有下载共享的限速器: 按字节数预约发送时间，空闲期间不累积额度
+    private static final class Throttle {
+        private long bytesPerSecond = 0;
+        private long nextNanos = 0;
+
+        synchronized void setRate(long bytesPerSecond) {
+            this.bytesPerSecond = Math.max(0, bytesPerSecond);
+            this.nextNanos = 0;
+        }
+
+        void acquire(int bytes) throws InterruptedIOException {
+            long waitNanos;
+            synchronized (this) {
+                if (bytesPerSecond <= 0) {
+                    return;
+                }
+                long now = System.nanoTime();
+                if (nextNanos < now) {
+                    nextNanos = now;
+                }
+                waitNanos = nextNanos - now;
+                nextNanos += bytes * 1000000000L / bytesPerSecond;
+            }
+            if (waitNanos > 0) {
+                try {
+                    Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("throttle interrupted");
+                }
+            }
+        }
+    }
+
+    private class Task implements Runnable {
+        final String url;
+        final Map<String, String> headers;
+        final String sha256;
+        volatile Future<?> future;
+        // STATE_QUEUED 起由 run 改为 STATE_RUNNING 或由 stop 改为停止原因，只有一方成功
+        final AtomicInteger state = new AtomicInteger(STATE_QUEUED);
+        // 非 0 时为停止原因: STATE_PAUSED 或 STATE_REMOVED
+        volatile int stopReason = 0;
+        // 停止时断开，尽快结束阻塞中的读取
+        volatile HttpURLConnection connection;
+        // 结束回调只触发一次
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        long lastProgressNanos = 0;
+
+        Task(String url, Map<String, String> headers, String sha256) {
+            this.url = url;
+            this.headers = headers;
+            this.sha256 = sha256;
+        }
+
+        void stop(int reason) {
+            stopReason = reason;
+            HttpURLConnection c = connection;
+            if (c != null) {
+                c.disconnect();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(STATE_QUEUED, STATE_RUNNING)) {
+                return;
+            }
+            if (stopReason != 0) {
+                finishStopped();
+                return;
+            }
+            listener.onStateChange(url, STATE_RUNNING, null);
+            try {
+                if (!mediaFile(url).isFile()) {
+                    transfer();
+                }
+                if (stopReason != 0) {
+                    finishStopped();
+                } else {
+                    finish(STATE_COMPLETED, null);
+                }
+            } catch (IOException e) {
+                if (stopReason != 0) {
+                    finishStopped();
+                } else {
+                    Log.e(TAG, "Failed to download " + url, e);
+                    finish(STATE_FAILED, e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                // 未捕获的异常会被 Future 吞掉，任务永远留在 tasks 中
+                Log.e(TAG, "Unexpected error downloading " + url, e);
+                finish(STATE_FAILED, e.toString());
+            }
+        }
+
+        void finishStopped() {
+            finish(stopReason, null);
+        }
+
+        // 删除文件须在让出 url 之前，否则会删掉之后新下载的文件
+        private void finish(int state, String error) {
+            if (finished.compareAndSet(false, true)) {
+                if (state == STATE_REMOVED) {
+                    deleteFiles(url);
+                }
+                tasks.remove(url, this);
+                listener.onStateChange(url, state, error);
+            }
+        }
+
+        private void transfer() throws IOException {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Failed to create directory: " + dir);
+            }
+            File part = partFile(url);
+            File metaFile = metaFile(url);
+            Meta meta = Meta.read(metaFile);
+            if (meta == null || !url.equals(meta.url)) {
+                meta = new Meta();
+                meta.url = url;
+                part.delete();
+            }
+            if (sha256 != null) {
+                meta.sha256 = sha256;
+            }
+            meta.write(metaFile);
+
+            try (RandomAccessFile out = new RandomAccessFile(part, "rw")) {
+                long position = out.length();
+                if (position > 0) {
+                    resumed.incrementAndGet();
+                    Log.i(TAG, "Resuming " + url + " at " + position);
+                }
+                int failures = 0;
+                while (stopReason == 0 && (meta.total < 0 || position < meta.total)) {
+                    long before = position;
+                    try {
+                        position = fetchChunk(out, meta, metaFile, position);
+                        failures = 0;
+                    } catch (IOException e) {
+                        if (stopReason != 0) {
+                            break;
+                        }
+                        // 已写入的数据保留，重试从断点继续；有进展时不计入失败次数
+                        position = out.length();
+                        if (position > before) {
+                            failures = 0;
+                        } else if (++failures > MAX_RETRIES) {
+                            throw e;
+                        } else {
+                            sleepBeforeRetry(failures);
+                        }
+                        Log.w(TAG, "Chunk failed at " + position + ", retrying: " + e.getMessage());
+                        continue;
+                    }
+                    if (position == before && stopReason == 0) {
+                        // 服务器提前结束且未给出总长度，视为已下载完
+                        meta.total = position;
+                        meta.write(metaFile);
+                    }
+                }
+            }
+            if (stopReason != 0) {
+                return;
+            }
+            if (meta.sha256 != null) {
+                String actual = sha256(part);
+                if (!actual.equalsIgnoreCase(meta.sha256)) {
+                    checksumFailures.incrementAndGet();
+                    // 数据已损坏，续传也无法修复
+                    part.delete();
+                    metaFile.delete();
+                    throw new IOException("CHECKSUM_MISMATCH: expected " + meta.sha256 + ", got " + actual);
+                }
+            }
+            if (!part.renameTo(mediaFile(url))) {
+                throw new IOException("Failed to finalize " + part);
+            }
+        }
+
+        // 拉取 position 开始的一段，返回新的写入位置
+        private long fetchChunk(RandomAccessFile out, Meta meta, File metaFile, long position) throws IOException {
+            HttpURLConnection c = connector.open(url, headers, position, position + CHUNK_SIZE - 1);
+            connection = c;
+            if (stopReason != 0) {
+                c.disconnect();
+                return position;
+            }
+            InputStream is = null;
+            try {
+                if (position > 0 && meta.validator != null) {
+                    c.setRequestProperty("If-Range", meta.validator);
+                }
+                int code = c.getResponseCode();
+                if (code == 416) {
+                    // 已经下载到结尾
+                    meta.total = position;
+                    meta.write(metaFile);
+                    return position;
+                }
+                if (code != HttpURLConnection.HTTP_PARTIAL && code != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Unexpected HTTP response " + code);
+                }
+                long total;
+                boolean whole = code == HttpURLConnection.HTTP_OK;
+                if (whole) {
+                    // 不支持 Range 或资源已变化，整个资源从头写
+                    if (position > 0) {
+                        restarts.incrementAndGet();
+                        Log.w(TAG, "Server sent full content, restarting " + url);
+                        out.setLength(0);
+                        position = 0;
+                    }
+                    total = HttpConnector.contentLength(c);
+                } else {
+                    total = CachedHttpMediaDataSource.parseContentRangeTotal(c.getHeaderField("Content-Range"));
+                }
+                String validator = c.getHeaderField("ETag");
+                if (validator == null) {
+                    validator = c.getHeaderField("Last-Modified");
+                }
+                if (total != meta.total || (validator != null && !validator.equals(meta.validator))) {
+                    meta.total = total;
+                    meta.validator = validator;
+                    meta.write(metaFile);
+                }
+
+                is = c.getInputStream();
+                out.seek(position);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long limit = whole ? Long.MAX_VALUE : position + CHUNK_SIZE;
+                while (position < limit && stopReason == 0) {
+                    int n = is.read(buffer, 0, (int) Math.min(buffer.length, limit - position));
+                    if (n < 0) {
+                        break;
+                    }
+                    out.write(buffer, 0, n);
+                    position += n;
+                    bytesDownloaded.addAndGet(n);
+                    progress(position, meta.total);
+                    throttle.acquire(n);
+                }
+                if (whole && stopReason == 0 && meta.total < 0) {
+                    meta.total = position;
+                    meta.write(metaFile);
+                }
+                if (meta.total >= 0 && position < meta.total && position < limit && stopReason == 0) {
+                    throw new IOException("Connection closed at " + position + " of " + meta.total);
+                }
+                return position;
+            } finally {
+                connection = null;
+                if (is != null) {
+                    try {
+                        is.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+
+        // 在源头节流: 间隔不足时只计数，最后一块必定回调
+        private void progress(long bytes, long total) {
+            long now = System.nanoTime();
+            if (bytes != total && now - lastProgressNanos < progressIntervalNanos) {
+                progressSuppressed.incrementAndGet();
+                return;
+            }
+            lastProgressNanos = now;
+            progressEvents.incrementAndGet();
+            listener.onProgress(url, bytes, total);
+        }
+
+        private void sleepBeforeRetry(int failures) throws IOException {
+            try {
+                Thread.sleep(RETRY_DELAY_MS * Math.max(1, failures));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("retry interrupted");
+            }
+        }
+    }
+}
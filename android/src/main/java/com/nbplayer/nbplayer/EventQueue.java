@@ -0,0 +1,83 @@
+package com.nbplayer.nbplayer;
+
+import java.util.Arrays;
+
+/**
+ * 跨线程传递事件的有序队列
+ *
+ * <p>任意线程写入，单个消费线程 (主线程) 批量取出，取出顺序即写入顺序。记录布局与
+ * {@link BinaryEventChannel} 相同 (type, arg1, arg2, arg3)，存放在 int 数组中。
+ * 两个数组交替使用：消费线程处理一个时，写入方写另一个。数组只在积压超过以往最大值时扩容，
+ * 稳定后写入与取出都不分配内存。不丢弃记录。
+ *
+ * <p>线程安全，{@link #drain} 只能在同一个线程调用。
+ */
+final class EventQueue {
+    private static final int FIELDS = 4;
+
+    private int[] pending;
+    private int pendingCount = 0;
+    // 消费线程正在处理的数组
+    private int[] draining;
+    // 以下两项只在消费线程访问: 正在执行 drain，以及 consumer 中是否重入过 drain
+    private boolean inDrain = false;
+    private boolean redrain = false;
+
+    EventQueue(int initialCapacity) {
+        pending = new int[Math.max(1, initialCapacity) * FIELDS];
+        draining = new int[pending.length];
+    }
+
+    /**
+     * @return 写入前队列为空时返回 true，调用方据此安排一次 {@link #drain}
+     */
+    synchronized boolean add(int type, int arg1, int arg2, int arg3) {
+        int index = pendingCount * FIELDS;
+        if (index + FIELDS > pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        pending[index] = type;
+        pending[index + 1] = arg1;
+        pending[index + 2] = arg2;
+        pending[index + 3] = arg3;
+        return pendingCount++ == 0;
+    }
+
+    /**
+     * 按写入顺序把当前所有记录交给 consumer
+     *
+     * <p>consumer 中可以再写入本队列。consumer 中重入的 drain 不取出记录、直接返回 0，
+     * 由外层调用在本批处理完后继续取出，因此重入写入的记录仍排在本批之后。
+     *
+     * @return 取出的记录数
+     */
+    int drain(EventRing.Consumer consumer) {
+        if (inDrain) {
+            redrain = true;
+            return 0;
+        }
+        inDrain = true;
+        int total = 0;
+        try {
+            do {
+                redrain = false;
+                int[] records;
+                int count;
+                synchronized (this) {
+                    records = pending;
+                    count = pendingCount;
+                    pending = draining;
+                    pendingCount = 0;
+                    draining = records;
+                }
+                for (int i = 0; i < count * FIELDS; i += FIELDS) {
+                    consumer.accept(records[i], records[i + 1], records[i + 2], records[i + 3]);
+                }
+                total += count;
+            } while (redrain);
+        } finally {
+            inDrain = false;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,77 @@
+package com.nbplayer.nbplayer;
+
+/**
+ * 固定容量的事件环形缓冲
+ *
+ * <p>EventChannel 尚无订阅者时暂存事件，订阅后按发生顺序重放。记录布局与
+ * {@link BinaryEventChannel} 相同 (type, arg1, arg2, arg3)，存放在构造时分配的 int 数组中，
+ * 写满后覆盖最旧的记录，写入与重放都不分配内存。
+ *
+ * <p>只能在主线程调用。
+ */
+final class EventRing {
+    interface Consumer {
+        void accept(int type, int arg1, int arg2, int arg3);
+    }
+
+    private final int[] types;
+    private final int[] args1;
+    private final int[] args2;
+    private final int[] args3;
+    // 下一条记录的写入位置
+    private int head = 0;
+    private int size = 0;
+    // 因容量不足被覆盖的记录数
+    private long dropped = 0;
+
+    EventRing(int capacity) {
+        types = new int[capacity];
+        args1 = new int[capacity];
+        args2 = new int[capacity];
+        args3 = new int[capacity];
+    }
+
+    void add(int type, int arg1, int arg2, int arg3) {
+        int capacity = types.length;
+        if (capacity == 0) {
+            dropped++;
+            return;
+        }
+        types[head] = type;
+        args1[head] = arg1;
+        args2[head] = arg2;
+        args3[head] = arg3;
+        head = (head + 1) % capacity;
+        if (size < capacity) {
+            size++;
+        } else {
+            dropped++;
+        }
+    }
+
+    /**
+     * 从最旧到最新依次交给 consumer，之后清空
+     *
+     * @return 重放的记录数
+     */
+    int drain(Consumer consumer) {
+        int capacity = types.length;
+        int count = size;
+        int index = (head - size + capacity) % Math.max(capacity, 1);
+        // 调用方先接好订阅者再重放，consumer 中不会再写入本缓冲
+        size = 0;
+        for (int i = 0; i < count; i++) {
+            consumer.accept(types[index], args1[index], args2[index], args3[index]);
+            index = (index + 1) % capacity;
+        }
+        return count;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,59 @@
+package com.nbplayer.nbplayer;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/**
+ * 本地文件数据源，用于播放 {@link DownloadManager} 下载完成的文件
+ *
+ * <p>按位置读取 (pread)，不维护文件指针，seek 不需要额外的系统调用，也不发出任何网络请求。
+ */
+class FileMediaDataSource implements IMediaDataSource {
+    private static final String TAG = "NbFileDataSource";
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long length;
+
+    FileMediaDataSource(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.length = this.file.length();
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) {
+        if (size <= 0) {
+            return 0;
+        }
+        if (position >= length) {
+            return -1;
+        }
+        try {
+            return channel.read(ByteBuffer.wrap(buffer, offset, size), position);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read at " + position, e);
+            return -1;
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return length;
+    }
+
+    @Override
+    public void close() {
+        try {
+            file.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.nbplayer.nbplayer;
+
+import android.os.Build;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * 所有播放器共享的 HTTP 连接入口
+ *
+ * <p>连接由系统 HttpURLConnection 的 keep-alive 连接池复用。连接池按 SSLSocketFactory
+ * 区分，因此所有 HTTPS 请求使用同一个计数用的工厂实例：工厂每创建一个 socket
+ * 就是一次新的 TLS 握手，请求数减去新建 socket 数即为复用连接省去的握手次数。
+ *
+ * <p>线程安全。
+ */
+class HttpConnector {
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    private final CountingSocketFactory socketFactory;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong httpsRequests = new AtomicLong();
+
+    HttpConnector() {
+        this((SSLSocketFactory) SSLSocketFactory.getDefault());
+    }
+
+    /**
+     * @param sslSocketFactory 实际建立 TLS 连接的工厂，测试中用于信任自签名证书
+     */
+    HttpConnector(SSLSocketFactory sslSocketFactory) {
+        socketFactory = new CountingSocketFactory(sslSocketFactory);
+    }
+
+    /**
+     * 打开一个 Range 请求，end 为 -1 时请求到结尾
+     */
+    HttpURLConnection open(String url, Map<String, String> headers, long start, long end) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        if (connection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(socketFactory);
+            httpsRequests.incrementAndGet();
+        }
+        requests.incrementAndGet();
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        connection.setRequestProperty("Range", "bytes=" + start + "-" + (end >= 0 ? String.valueOf(end) : ""));
+        return connection;
+    }
+
+    /**
+     * 丢弃非 2xx 响应：读完并关闭错误流后断开连接
+     */
+    static void discard(HttpURLConnection connection) {
+        InputStream es = connection.getErrorStream();
+        if (es != null) {
+            try {
+                byte[] buffer = new byte[4096];
+                //noinspection StatementWithEmptyBody
+                while (es.read(buffer) >= 0) {
+                }
+            } catch (IOException ignored) {
+            } finally {
+                try {
+                    es.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        connection.disconnect();
+    }
+
+    /**
+     * 响应的 Content-Length，超过 2 GB 也不溢出，未知返回 -1
+     */
+    static long contentLength(HttpURLConnection connection) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return connection.getContentLengthLong();
+        }
+        // getContentLength() 在 2 GB 以上返回 -1，低版本直接解析响应头
+        String value = connection.getHeaderField("Content-Length");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    long getRequests() {
+        return requests.get();
+    }
+
+    long getTlsHandshakes() {
+        return socketFactory.created.get();
+    }
+
+    long getHandshakesAvoided() {
+        return Math.max(0, httpsRequests.get() - socketFactory.created.get());
+    }
+
+    private static final class CountingSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory delegate;
+        final AtomicLong created = new AtomicLong();
+
+        CountingSocketFactory(SSLSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+            created.incrementAndGet();
+            return delegate.createSocket(s, host, port, autoClose);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            created.incrementAndGet();
+            return delegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            created.incrementAndGet();
+            return delegate.createSocket(host, port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            created.incrementAndGet();
+            return delegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            created.incrementAndGet();
+            return delegate.createSocket(address, port, localAddress, localPort);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.nbplayer.nbplayer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 固定大小的对数-线性延迟直方图 (HDR 风格)
+ *
+ * <p>以微秒记录，每个 2 的幂区间再等分为 {@link #SUB_BUCKETS} 个子桶，相对误差约 3%，
+ * 可表示到 2^{@value #MAX_EXPONENT} 微秒，超出的值计入最后一个桶。
+ * 桶数组在构造时一次分配，记录过程无锁、无内存分配，可以在任意线程调用。
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BITS) * SUB_BUCKETS;
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void recordMicros(long micros) {
+        long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+        counts.incrementAndGet(indexOf(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    long getCount() {
+        return total.get();
+    }
+
+    /**
+     * 第 percentile (0-100) 百分位的近似值，单位微秒；没有记录时返回 0
+     */
+    long percentileMicros(double percentile) {
+        long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(valueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * 汇总为毫秒单位的 Map: count, mean, p50, p90, p99, max
+     */
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        long count = total.get();
+        map.put("count", count);
+        map.put("mean", count == 0 ? 0.0 : sum.get() / 1000.0 / count);
+        map.put("p50", percentileMicros(50) / 1000.0);
+        map.put("p90", percentileMicros(90) / 1000.0);
+        map.put("p99", percentileMicros(99) / 1000.0);
+        map.put("max", max.get() / 1000.0);
+        return map;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+
+    // 桶的中间值
+    private static long valueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + sub) << shift;
+        return lower + ((1L << shift) >> 1);
+    }
+}
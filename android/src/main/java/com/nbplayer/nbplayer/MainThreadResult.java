@@ -0,0 +1,33 @@
+package com.nbplayer.nbplayer;
+
+import android.os.Handler;
+
+import io.flutter.plugin.common.MethodChannel.Result;
+
+/**
+ * 把 {@link Result} 回调转发到主线程，供在工作线程中处理的方法调用使用
+ */
+final class MainThreadResult implements Result {
+    private final Result result;
+    private final Handler mainHandler;
+
+    MainThreadResult(Result result, Handler mainHandler) {
+        this.result = result;
+        this.mainHandler = mainHandler;
+    }
+
+    @Override
+    public void success(final Object value) {
+        mainHandler.post(() -> result.success(value));
+    }
+
+    @Override
+    public void error(final String errorCode, final String errorMessage, final Object errorDetails) {
+        mainHandler.post(() -> result.error(errorCode, errorMessage, errorDetails));
+    }
+
+    @Override
+    public void notImplemented() {
+        mainHandler.post(result::notImplemented);
+    }
+}
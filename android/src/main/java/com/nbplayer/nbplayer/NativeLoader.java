@@ -0,0 +1,130 @@
+package com.nbplayer.nbplayer;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * 在后台线程中加载 ijkplayer 原生库，不占用插件注册时的主线程
+ *
+ * <p>加载完成前，需要原生库的主线程调用经 {@link #whenReady} 延后执行，主线程从不阻塞等待。
+ * 延后的时长计入统计，与加载耗时对比即可看出冷启动省下的主线程时间。
+ * ijk/fijkplayer 中的同名类是参考实现一侧的对应版本，那边另有需要主线程的预热。
+ *
+ * <p>线程安全。
+ */
+final class NativeLoader {
+    private static final String TAG = "NbNativeLoader";
+
+    private final Handler mainHandler;
+    private final Runnable loadLibraries;
+    private final CountDownLatch ready = new CountDownLatch(1);
+    // 加载完成前登记的主线程回调，只在持有锁时访问
+    private final List<Runnable> pending = new ArrayList<>();
+    private volatile Throwable error;
+
+    private volatile long libraryLoadMs = -1;
+    // 从 start 到首个调用方需要原生库的时间
+    private volatile long firstUseMs = -1;
+    private final AtomicLong waitNanos = new AtomicLong();
+    private long startUptime;
+
+    NativeLoader(Handler mainHandler) {
+        this(mainHandler, () -> {
+            IjkMediaPlayer.loadLibrariesOnce(null);
+            IjkMediaPlayer.native_profileBegin("libijkplayer.so");
+        });
+    }
+
+    /**
+     * @param loadLibraries 加载原生库，测试中替换为不依赖 native 的实现
+     */
+    NativeLoader(Handler mainHandler, Runnable loadLibraries) {
+        this.mainHandler = mainHandler;
+        this.loadLibraries = loadLibraries;
+    }
+
+    void start() {
+        startUptime = SystemClock.uptimeMillis();
+        Thread thread = new Thread(this::load, "nbplayer-native-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void load() {
+        long begin = SystemClock.uptimeMillis();
+        try {
+            loadLibraries.run();
+            libraryLoadMs = SystemClock.uptimeMillis() - begin;
+            Log.i(TAG, "IJKPlayer libraries loaded in " + libraryLoadMs + "ms");
+        } catch (Throwable t) {
+            Log.e(TAG, "Failed to load IJKPlayer libraries", t);
+            error = t;
+        }
+        List<Runnable> callbacks;
+        synchronized (this) {
+            ready.countDown();
+            callbacks = new ArrayList<>(pending);
+            pending.clear();
+        }
+        for (Runnable callback : callbacks) {
+            mainHandler.post(callback);
+        }
+    }
+
+    /**
+     * 加载完成后在主线程执行 callback，已完成时立即执行；须在主线程调用
+     */
+    void whenReady(Runnable callback) {
+        markFirstUse();
+        synchronized (this) {
+            if (ready.getCount() > 0) {
+                final long begin = System.nanoTime();
+                pending.add(() -> {
+                    waitNanos.addAndGet(System.nanoTime() - begin);
+                    callback.run();
+                });
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    boolean isReady() {
+        return ready.getCount() == 0 && error == null;
+    }
+
+    String getError() {
+        Throwable t = error;
+        return t != null ? t.toString() : null;
+    }
+
+    private void markFirstUse() {
+        if (firstUseMs < 0) {
+            firstUseMs = SystemClock.uptimeMillis() - startUptime;
+        }
+    }
+
+    /**
+     * 启动统计 (毫秒): libraryLoadMs 为后台加载原生库的耗时，原先在插件注册的主线程中执行，
+     * 即 mainThreadSavedMs；firstUseMs 为注册到首次需要原生库的间隔；waitMs 为调用方累计等待加载的时长
+     */
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("ready", isReady());
+        map.put("libraryLoadMs", libraryLoadMs);
+        map.put("mainThreadSavedMs", Math.max(0, libraryLoadMs));
+        map.put("firstUseMs", firstUseMs);
+        map.put("waitMs", waitNanos.get() / 1000000);
+        return map;
+    }
+}
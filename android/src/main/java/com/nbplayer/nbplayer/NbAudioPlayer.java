@@ -0,0 +1,794 @@
+package com.nbplayer.nbplayer;
+
+import androidx.annotation.NonNull;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
+import io.flutter.plugin.common.MethodChannel.Result;
+
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+import tv.danmaku.ijk.media.player.IMediaPlayer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 播放器核心: 状态机、ijkplayer 监听器、播放列表与续播位置
+ *
+ * <p>不直接依赖 Flutter 插件。方法调用与事件经 {@link PlayerTransport} 收发，
+ * 原生播放器的创建、指标、续播存储和数据源的选择由 {@link PlayerHost} 提供，
+ * 所有事件经 {@link PlayerTransport#emit} 这一条路径发出。
+ *
+ * <p>除 getPlatformVersion 外的方法调用都在该播放器专属的串行工作线程中按顺序执行，
+ * setDataSource/reset/stop/release 等可能阻塞的原生调用不占用主线程，Result 回调转回主线程。
+ *
+ * <p>参考实现 FijkPlayer 不迁移到本核心: 它是上游 fijkplayer 的副本，由 IjkEventListener
+ * 的单一回调驱动并管理视频纹理，本插件只在单元测试与基准中编译它。两者共享的只有状态取值，
+ * 由 NbAudioPlayerTest 校验与参考实现一致。
+ */
+final class NbAudioPlayer implements MethodCallHandler {
+    private static final String TAG = "NbAudioPlayer";
+
+    // 状态常量 - 对应参考实现，转换规则见 PlayerStateMachine
+    private static final int STATE_IDLE = PlayerStateMachine.IDLE;
+    private static final int STATE_INITIALIZED = PlayerStateMachine.INITIALIZED;
+    private static final int STATE_ASYNC_PREPARING = PlayerStateMachine.ASYNC_PREPARING;
+    private static final int STATE_PREPARED = PlayerStateMachine.PREPARED;
+    private static final int STATE_STARTED = PlayerStateMachine.STARTED;
+    private static final int STATE_PAUSED = PlayerStateMachine.PAUSED;
+    private static final int STATE_COMPLETED = PlayerStateMachine.COMPLETED;
+    private static final int STATE_STOPPED = PlayerStateMachine.STOPPED;
+    private static final int STATE_ERROR = PlayerStateMachine.ERROR;
+    private static final int STATE_END = PlayerStateMachine.END;
+
+    // 内部触发的调用没有 Dart 端等待结果，只记录错误
+    private static final Result NO_RESULT = new Result() {
+        @Override
+        public void success(Object result) {
+        }
+
+        @Override
+        public void error(String errorCode, String errorMessage, Object errorDetails) {
+            Log.e(TAG, "Internal call failed: " + errorCode + " " + errorMessage);
+        }
+
+        @Override
+        public void notImplemented() {
+        }
+    };
+
+    // 播放中续播位置的采样间隔
+    private static final long POSITION_SAMPLE_INTERVAL_MS = 1000;
+
+    private final String playerId;
+    private final PlayerHost host;
+    private final PlayerTransport transport;
+
+    private volatile IjkMediaPlayer ijkMediaPlayer;
+    // 状态机的只读镜像，在状态机的锁内更新，供各线程无锁读取
+    private volatile int currentState = STATE_IDLE;
+    private final PlayerStateMachine stateMachine = new PlayerStateMachine(this::onStateTransition);
+    private final Handler mainHandler;
+    private final ExecutorService worker;
+
+    // 播放列表，只在工作线程中修改
+    private final List<String> playlist = new ArrayList<>();
+    private volatile int playlistIndex = -1;
+    private SourceOptions playlistOptions = SourceOptions.DEFAULT;
+    // 当前曲目播放时预先准备好的下一曲
+    private IjkMediaPlayer nextPlayer;
+    private int nextPlayerIndex = -1;
+    // 下一曲的 prepared 回调与切换各递增一次，读到 1 的后到一方开始播放，只在工作线程中替换
+    private AtomicInteger nextHandshake;
+    // 当前曲目在 prepared 后自动开始播放，工作线程与主线程只有一方会执行 start
+    private final AtomicBoolean startWhenPrepared = new AtomicBoolean(false);
+    // 上一曲结束的时间，用于计算曲间间隙，-1 表示没有待测量的切换
+    private volatile long completionNanos = -1;
+    private final PlayerMetrics.Timeline timeline;
+    // 非空时把播放位置按该 ID 保存到 PositionStore，只在工作线程中修改
+    private volatile String mediaId;
+    // 播放中定时采样位置，在主线程中调度
+    private final Runnable positionSampler = new Runnable() {
+        @Override
+        public void run() {
+            if (currentState != STATE_STARTED || mediaId == null) {
+                return;
+            }
+            submit(NbAudioPlayer.this::savePosition);
+            mainHandler.postDelayed(this, POSITION_SAMPLE_INTERVAL_MS);
+        }
+    };
+
+    NbAudioPlayer(String playerId, PlayerHost host, PlayerTransport transport) {
+        this.playerId = playerId;
+        this.host = host;
+        this.transport = transport;
+        this.timeline = host.metrics().newTimeline();
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "nbplayer-" + playerId);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // 订阅者接入时传输层先重放暂存的事件，再补一条当前状态快照
+        transport.start(this, this::sendSnapshotEvent);
+    }
+
+    @Override
+    public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+        if ("getPlatformVersion".equals(call.method)) {
+            result.success("Android " + android.os.Build.VERSION.RELEASE);
+            return;
+        }
+        final Result mainResult = new MainThreadResult(result, mainHandler);
+        try {
+            worker.execute(() -> handleMethodCall(call, mainResult));
+        } catch (RejectedExecutionException e) {
+            result.error("INVALID_STATE", call.method + " called after release", null);
+        }
+    }
+
+    // 在工作线程中执行
+    private void handleMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+        try {
+            switch (call.method) {
+                case "setDataSource":
+                    handleSetDataSource(call, result);
+                    break;
+                case "prepareAsync":
+                    handlePrepareAsync(result);
+                    break;
+                case "start":
+                    handleStart(result);
+                    break;
+                case "startFromInitialized":
+                    handleStartFromInitialized(result);
+                    break;
+                case "pause":
+                    handlePause(result);
+                    break;
+                case "stop":
+                    handleStop(result);
+                    break;
+                case "reset":
+                    handleReset(result);
+                    break;
+                case "release":
+                    handleRelease(result);
+                    break;
+                case "setPlaylist":
+                    handleSetPlaylist(call, result);
+                    break;
+                case "enqueue":
+                    handleEnqueue(call, result);
+                    break;
+                case "next":
+                    handleSkip(playlistIndex + 1, result);
+                    break;
+                case "previous":
+                    handleSkip(playlistIndex - 1, result);
+                    break;
+                case "seekTo":
+                    handleSeekTo(call, result);
+                    break;
+                default:
+                    result.notImplemented();
+                    break;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error handling method call: " + call.method, e);
+            result.error("NATIVE_ERROR", e.getMessage(), null);
+        }
+    }
+
+    private void handleSetDataSource(@NonNull MethodCall call, @NonNull Result result) {
+        if (currentState != STATE_IDLE && currentState != STATE_INITIALIZED) {
+            result.error("INVALID_STATE", "setDataSource called in invalid state: " + currentState, null);
+            return;
+        }
+
+        String url = call.argument("url");
+        if (url == null || url.isEmpty()) {
+            result.error("INVALID_ARGUMENT", "URL cannot be null or empty", null);
+            return;
+        }
+
+        String id = call.argument("mediaId");
+        Boolean autoResume = call.argument("autoResume");
+        try {
+            clearPlaylist();
+            mediaId = id != null && !id.isEmpty() ? id : null;
+            openCurrent(url, SourceOptions.from(call));
+            if (mediaId != null && autoResume != null && autoResume) {
+                long resume = host.positionStore().get(mediaId);
+                if (resume > 0) {
+                    // prepared 后从该位置开始，无需先播放开头再 seek
+                    ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "seek-at-start", resume);
+                    Log.i(TAG, "Resuming " + mediaId + " at " + resume + "ms");
+                }
+            }
+
+            updateState(STATE_INITIALIZED);
+            result.success(null);
+
+            Log.i(TAG, "Data source set successfully: " + url);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to set data source: " + url, e);
+            updateState(STATE_ERROR);
+            result.error("SET_DATA_SOURCE_ERROR", e.getMessage(), null);
+        }
+    }
+
+    private void handlePrepareAsync(@NonNull Result result) {
+        if (currentState != STATE_INITIALIZED) {
+            result.error("INVALID_STATE", "prepareAsync called in invalid state: " + currentState, null);
+            return;
+        }
+
+        try {
+            updateState(STATE_ASYNC_PREPARING);
+            timeline.onPrepareAsync();
+            ijkMediaPlayer.prepareAsync();
+            result.success(null);
+            Log.i(TAG, "prepareAsync called successfully");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to prepare async", e);
+            updateState(STATE_ERROR);
+            result.error("PREPARE_ERROR", e.getMessage(), null);
+        }
+    }
+
+    private void handleStart(@NonNull Result result) {
+        if (!isPlayableState(currentState)) {
+            result.error("INVALID_STATE", "start called in invalid state: " + currentState, null);
+            return;
+        }
+
+        try {
+            ijkMediaPlayer.start();
+            result.success(null);
+            Log.i(TAG, "start called successfully");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to start", e);
+            updateState(STATE_ERROR);
+            result.error("START_ERROR", e.getMessage(), null);
+        }
+    }
+
+    private void handleStartFromInitialized(@NonNull Result result) {
+        if (currentState != STATE_INITIALIZED) {
+            result.error("INVALID_STATE", "startFromInitialized called in invalid state: " + currentState, null);
+            return;
+        }
+
+        try {
+            // 设置自动开始播放选项
+            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 1);
+            updateState(STATE_ASYNC_PREPARING);
+            timeline.onPrepareAsync();
+            ijkMediaPlayer.prepareAsync();
+            result.success(null);
+            Log.i(TAG, "startFromInitialized called successfully");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to startFromInitialized", e);
+            updateState(STATE_ERROR);
+            result.error("START_FROM_INITIALIZED_ERROR", e.getMessage(), null);
+        }
+    }
+
+    private void handlePause(@NonNull Result result) {
+        if (!isPlayableState(currentState)) {
+            result.error("INVALID_STATE", "pause called in invalid state: " + currentState, null);
+            return;
+        }
+
+        try {
+            ijkMediaPlayer.pause();
+            savePosition();
+            flushPosition();
+            result.success(null);
+            Log.i(TAG, "pause called successfully");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to pause", e);
+            updateState(STATE_ERROR);
+            result.error("PAUSE_ERROR", e.getMessage(), null);
+        }
+    }
+
+    private void handleStop(@NonNull Result result) {
+        if (currentState == STATE_IDLE || currentState == STATE_INITIALIZED || currentState == STATE_END) {
+            result.error("INVALID_STATE", "stop called in invalid state: " + currentState, null);
+            return;
+        }
+
+        try {
+            savePosition();
+            flushPosition();
+            ijkMediaPlayer.stop();
+            updateState(STATE_STOPPED);
+            result.success(null);
+            Log.i(TAG, "stop called successfully");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to stop", e);
+            updateState(STATE_ERROR);
+            result.error("STOP_ERROR", e.getMessage(), null);
+        }
+    }
+
+    private void handleReset(@NonNull Result result) {
+        if (currentState == STATE_END) {
+            result.error("INVALID_STATE", "reset called in invalid state: " + currentState, null);
+            return;
+        }
+
+        try {
+            savePosition();
+            flushPosition();
+            mediaId = null;
+            clearPlaylist();
+            timeline.reset();
+            if (ijkMediaPlayer != null) {
+                ijkMediaPlayer.reset();
+            }
+            updateState(STATE_IDLE);
+            result.success(null);
+            Log.i(TAG, "reset called successfully");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to reset", e);
+            updateState(STATE_ERROR);
+            result.error("RESET_ERROR", e.getMessage(), null);
+        }
+    }
+
+    private void handleSeekTo(@NonNull MethodCall call, @NonNull Result result) {
+        if (!isPlayableState(currentState)) {
+            result.error("INVALID_STATE", "seekTo called in invalid state: " + currentState, null);
+            return;
+        }
+
+        Number msec = call.argument("msec");
+        try {
+            timeline.onSeek();
+            ijkMediaPlayer.seekTo(msec != null ? msec.longValue() : 0);
+            result.success(null);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to seek", e);
+            result.error("SEEK_ERROR", e.getMessage(), null);
+        }
+    }
+
+    private void handleRelease(@NonNull Result result) {
+        try {
+            release();
+            result.success(null);
+            Log.i(TAG, "release called successfully");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to release", e);
+            result.error("RELEASE_ERROR", e.getMessage(), null);
+        }
+    }
+
+    private void handleSetPlaylist(@NonNull MethodCall call, @NonNull Result result) {
+        if (currentState == STATE_END) {
+            result.error("INVALID_STATE", "setPlaylist called in invalid state: " + currentState, null);
+            return;
+        }
+
+        List<String> urls = call.argument("urls");
+        Integer index = call.argument("index");
+        int startIndex = index != null ? index : 0;
+        if (urls == null || urls.isEmpty() || startIndex < 0 || startIndex >= urls.size()) {
+            result.error("INVALID_ARGUMENT", "urls cannot be empty and index must be in range", null);
+            return;
+        }
+
+        clearPlaylist();
+        // 播放列表中的曲目不保存续播位置
+        mediaId = null;
+        playlist.addAll(urls);
+        playlistOptions = SourceOptions.from(call);
+        playIndex(startIndex, result);
+    }
+
+    private void handleEnqueue(@NonNull MethodCall call, @NonNull Result result) {
+        String url = call.argument("url");
+        if (url == null || url.isEmpty()) {
+            result.error("INVALID_ARGUMENT", "URL cannot be null or empty", null);
+            return;
+        }
+        playlist.add(url);
+        // 刚好是下一曲且当前曲目已就绪时立即开始预备
+        if (isPlayableState(currentState)) {
+            prepareNext();
+        }
+        result.success(playlist.size());
+    }
+
+    private void handleSkip(int index, @NonNull Result result) {
+        if (currentState == STATE_END || playlist.isEmpty()) {
+            result.error("INVALID_STATE", "no playlist to skip in state: " + currentState, null);
+            return;
+        }
+        if (index < 0 || index >= playlist.size()) {
+            result.error("INVALID_ARGUMENT", "playlist index out of range: " + index, null);
+            return;
+        }
+        if (index == nextPlayerIndex && nextPlayer != null) {
+            completionNanos = -1;
+            swapToNext();
+            sendTrackChangeEvent(index, -1);
+            result.success(index);
+            return;
+        }
+        playIndex(index, result);
+    }
+
+    // 重新打开并自动播放列表中的第 index 首
+    private void playIndex(int index, @NonNull Result result) {
+        String url = playlist.get(index);
+        try {
+            dropNextPlayer();
+            playlistIndex = index;
+            openCurrent(url, playlistOptions);
+            updateState(STATE_INITIALIZED);
+            startWhenPrepared.set(false);
+            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 1);
+            updateState(STATE_ASYNC_PREPARING);
+            timeline.onPrepareAsync();
+            ijkMediaPlayer.prepareAsync();
+            if (completionNanos < 0) {
+                sendTrackChangeEvent(index, -1);
+            }
+            result.success(index);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to play playlist item: " + url, e);
+            updateState(STATE_ERROR);
+            result.error("PLAYLIST_ERROR", e.getMessage(), null);
+        }
+    }
+
+    // 用另一个实例预先准备下一曲，当前曲目结束后直接切换
+    private void prepareNext() {
+        int index = playlistIndex + 1;
+        if (nextPlayer != null || playlistIndex < 0 || index >= playlist.size()) {
+            return;
+        }
+        IjkMediaPlayer player = host.newPlayer();
+        try {
+            AtomicInteger handshake = new AtomicInteger();
+            setupIjkPlayerOptions(player);
+            playlistOptions.profile.apply(player);
+            setupNextPlayerListeners(player, handshake);
+            host.openDataSource(player, playlist.get(index), playlistOptions);
+            nextHandshake = handshake;
+            nextPlayer = player;
+            nextPlayerIndex = index;
+            player.prepareAsync();
+            Log.i(TAG, "Preparing next track: " + index);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to prepare next track: " + index, e);
+            nextPlayer = null;
+            nextPlayerIndex = -1;
+            player.release();
+        }
+    }
+
+    // 当前曲目结束，切换到已预备的下一曲
+    private void swapToNext() {
+        IjkMediaPlayer previous = ijkMediaPlayer;
+        IjkMediaPlayer next = nextPlayer;
+        AtomicInteger handshake = nextHandshake;
+        playlistIndex = nextPlayerIndex;
+        nextPlayer = null;
+        nextPlayerIndex = -1;
+        nextHandshake = null;
+
+        ijkMediaPlayer = next;
+        timeline.onSwap();
+        updateState(STATE_ASYNC_PREPARING);
+        // prepared 监听器保持不变，它可能已在事件线程中被读出，替换它会丢失这次回调
+        setupPlaybackListeners(next);
+        startWhenPrepared.set(false);
+        // prepared 已先到则在这里开始，否则由下一曲的 prepared 监听器开始
+        if (handshake.getAndIncrement() == 1) {
+            updateState(STATE_PREPARED);
+            next.start();
+        }
+        if (previous != null) {
+            previous.release();
+        }
+        prepareNext();
+        Log.i(TAG, "Switched to next track: " + playlistIndex);
+    }
+
+    private void dropNextPlayer() {
+        if (nextPlayer != null) {
+            nextPlayer.release();
+            nextPlayer = null;
+            nextPlayerIndex = -1;
+            nextHandshake = null;
+        }
+    }
+
+    private void clearPlaylist() {
+        dropNextPlayer();
+        playlist.clear();
+        playlistIndex = -1;
+        startWhenPrepared.set(false);
+    }
+
+    private boolean hasNextTrack() {
+        return playlistIndex >= 0 && playlistIndex + 1 < playlist.size();
+    }
+
+    // 在当前播放器实例上打开 url，必要时新建或先 reset
+    private void openCurrent(String url, SourceOptions options) throws Exception {
+        if (ijkMediaPlayer == null) {
+            ijkMediaPlayer = host.newPlayer();
+        } else if (currentState != STATE_IDLE) {
+            // 已设置过数据源，重置后复用同一实例
+            ijkMediaPlayer.reset();
+        }
+
+        // reset 会清空 native 选项，每次重新设置
+        setupIjkPlayerOptions(ijkMediaPlayer);
+        options.profile.apply(ijkMediaPlayer);
+        setupIjkPlayerListeners(ijkMediaPlayer);
+        timeline.onSetDataSource(options.profile);
+        host.openDataSource(ijkMediaPlayer, url, options);
+    }
+
+    private void setupIjkPlayerOptions(IjkMediaPlayer player) {
+        // 音频播放相关选项
+        player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "mediacodec", 0);
+        player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "opensles", 1);
+        player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 0);
+
+        // 网络相关选项
+        player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "http-detect-range-support", 0);
+        player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "timeout", 30000000);
+        player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "reconnect", 1);
+        // 同一曲目内 seek 产生的 Range 请求复用连接
+        player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "multiple_requests", 1);
+
+        // 解码相关选项
+        player.setOption(IjkMediaPlayer.OPT_CATEGORY_CODEC, "skip_loop_filter", 48);
+    }
+
+    // 监听器在主线程回调，只处理当前播放器实例的事件
+    private void setupIjkPlayerListeners(IjkMediaPlayer player) {
+        player.setOnPreparedListener(new IMediaPlayer.OnPreparedListener() {
+            @Override
+            public void onPrepared(IMediaPlayer iMediaPlayer) {
+                if (iMediaPlayer != ijkMediaPlayer) {
+                    return;
+                }
+                Log.i(TAG, "onPrepared");
+                timeline.onPrepared();
+                updateState(STATE_PREPARED);
+                if (startWhenPrepared.compareAndSet(true, false)) {
+                    iMediaPlayer.start();
+                }
+                // 当前曲目就绪后再预备下一曲，避免与当前曲目争抢带宽
+                submit(NbAudioPlayer.this::prepareNext);
+            }
+        });
+        setupPlaybackListeners(player);
+    }
+
+    // prepared 之外的监听器，切换到下一曲时替换
+    private void setupPlaybackListeners(IjkMediaPlayer player) {
+        player.setOnCompletionListener(new IMediaPlayer.OnCompletionListener() {
+            @Override
+            public void onCompletion(IMediaPlayer iMediaPlayer) {
+                if (iMediaPlayer != ijkMediaPlayer) {
+                    return;
+                }
+                Log.i(TAG, "onCompletion");
+                completionNanos = System.nanoTime();
+                submit(() -> {
+                    if (nextPlayer != null) {
+                        swapToNext();
+                    } else if (hasNextTrack()) {
+                        playIndex(playlistIndex + 1, NO_RESULT);
+                    } else {
+                        completionNanos = -1;
+                        updateState(STATE_COMPLETED);
+                        // 播完的媒体下次从头开始
+                        if (mediaId != null) {
+                            host.positionStore().remove(mediaId);
+                        }
+                    }
+                });
+            }
+        });
+
+        player.setOnErrorListener(new IMediaPlayer.OnErrorListener() {
+            @Override
+            public boolean onError(IMediaPlayer iMediaPlayer, int what, int extra) {
+                if (iMediaPlayer != ijkMediaPlayer) {
+                    return true;
+                }
+                Log.e(TAG, "onError: what=" + what + ", extra=" + extra);
+                updateState(STATE_ERROR);
+                return true;
+            }
+        });
+
+        player.setOnInfoListener(new IMediaPlayer.OnInfoListener() {
+            @Override
+            public boolean onInfo(IMediaPlayer iMediaPlayer, int what, int extra) {
+                if (iMediaPlayer != ijkMediaPlayer) {
+                    return false;
+                }
+                switch (what) {
+                    case IMediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START:
+                    case IMediaPlayer.MEDIA_INFO_AUDIO_RENDERING_START:
+                        timeline.onRenderingStart();
+                        // 检查与转换原子完成，不会覆盖并发的 reset / stop
+                        stateMachine.transitionIf(
+                            PlayerStateMachine.mask(STATE_ASYNC_PREPARING, STATE_PREPARED), STATE_STARTED);
+                        if (completionNanos >= 0) {
+                            long gapNanos = System.nanoTime() - completionNanos;
+                            long gapMs = gapNanos / 1000000;
+                            completionNanos = -1;
+                            host.metrics().recordTrackGapNanos(gapNanos);
+                            Log.i(TAG, "Track gap: " + gapMs + "ms");
+                            sendTrackChangeEvent(playlistIndex, (int) gapMs);
+                        }
+                        break;
+                    case IMediaPlayer.MEDIA_INFO_BUFFERING_START:
+                        timeline.onBufferingStart();
+                        break;
+                    case IMediaPlayer.MEDIA_INFO_BUFFERING_END:
+                        timeline.onBufferingEnd();
+                        break;
+                }
+                return false;
+            }
+        });
+
+        player.setOnSeekCompleteListener(new IMediaPlayer.OnSeekCompleteListener() {
+            @Override
+            public void onSeekComplete(IMediaPlayer iMediaPlayer) {
+                if (iMediaPlayer != ijkMediaPlayer) {
+                    return;
+                }
+                Log.i(TAG, "onSeekComplete");
+                timeline.onSeekComplete();
+                submit(NbAudioPlayer.this::savePosition);
+            }
+        });
+    }
+
+    // 预备中的下一曲只关心 prepared 和 error，prepared 监听器在切换后仍负责开始播放
+    private void setupNextPlayerListeners(IjkMediaPlayer player, final AtomicInteger handshake) {
+        player.setOnPreparedListener(new IMediaPlayer.OnPreparedListener() {
+            @Override
+            public void onPrepared(IMediaPlayer iMediaPlayer) {
+                Log.i(TAG, "Next track prepared");
+                // 0: 尚未切换，由 swapToNext 开始播放；大于 1: 已开始过
+                if (handshake.getAndIncrement() != 1 || iMediaPlayer != ijkMediaPlayer) {
+                    return;
+                }
+                timeline.onPrepared();
+                updateState(STATE_PREPARED);
+                iMediaPlayer.start();
+                submit(NbAudioPlayer.this::prepareNext);
+            }
+        });
+
+        player.setOnErrorListener(new IMediaPlayer.OnErrorListener() {
+            @Override
+            public boolean onError(IMediaPlayer iMediaPlayer, int what, int extra) {
+                Log.e(TAG, "Next track error: what=" + what + ", extra=" + extra);
+                submit(() -> {
+                    if (nextPlayer == iMediaPlayer) {
+                        dropNextPlayer();
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    // 在工作线程中执行
+    private void savePosition() {
+        String id = mediaId;
+        IjkMediaPlayer player = ijkMediaPlayer;
+        if (id != null && player != null && isPlayableState(currentState) && currentState != STATE_COMPLETED) {
+            host.positionStore().put(id, player.getCurrentPosition());
+        }
+    }
+
+    private void flushPosition() {
+        if (mediaId != null) {
+            host.positionStore().flush();
+        }
+    }
+
+    private void submit(Runnable task) {
+        try {
+            worker.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 已释放
+        }
+    }
+
+    private void sendTrackChangeEvent(final int index, final int gapMs) {
+        transport.emit(BinaryEventChannel.EVENT_TRACK_CHANGE, index, gapMs, 0);
+    }
+
+    private void updateState(int newState) {
+        if (!stateMachine.transition(newState)) {
+            Log.w(TAG, "Rejected state transition: " + stateMachine.get() + " -> " + newState);
+        }
+    }
+
+    // 在状态机的锁内执行，事件按转换顺序发出
+    private void onStateTransition(int newState, int oldState) {
+        currentState = newState;
+        if (newState == STATE_STARTED && mediaId != null) {
+            mainHandler.removeCallbacks(positionSampler);
+            mainHandler.postDelayed(positionSampler, POSITION_SAMPLE_INTERVAL_MS);
+        }
+        sendStateChangeEvent(newState, oldState);
+        Log.i(TAG, "State changed: " + oldState + " -> " + newState);
+    }
+
+    private void sendStateChangeEvent(final int newState, final int oldState) {
+        transport.emit(BinaryEventChannel.EVENT_STATE_CHANGE, newState, oldState, 0);
+    }
+
+    // 重放的事件可能已被覆盖，订阅时补发当前状态，在主线程执行
+    private void sendSnapshotEvent() {
+        // 持有状态机的锁读取并写入事件，快照与状态转换事件的先后顺序一致
+        synchronized (stateMachine) {
+            transport.emit(BinaryEventChannel.EVENT_SNAPSHOT, currentState, playlistIndex, 0);
+        }
+    }
+
+    private boolean isPlayableState(int state) {
+        return state == STATE_PREPARED ||
+               state == STATE_STARTED ||
+               state == STATE_PAUSED ||
+               state == STATE_COMPLETED;
+    }
+
+    /**
+     * 在工作线程中排在已提交的调用之后释放
+     */
+    void releaseAsync() {
+        submit(this::release);
+    }
+
+    // 在工作线程中执行
+    private void release() {
+        savePosition();
+        flushPosition();
+        updateState(STATE_END);
+        clearPlaylist();
+
+        if (ijkMediaPlayer != null) {
+            try {
+                ijkMediaPlayer.release();
+            } catch (Exception e) {
+                Log.e(TAG, "Error releasing media player", e);
+            }
+            ijkMediaPlayer = null;
+        }
+
+        transport.close();
+        host.onPlayerReleased(playerId);
+        worker.shutdown();
+    }
+}
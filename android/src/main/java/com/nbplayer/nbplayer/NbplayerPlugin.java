@@ -4,6 +4,7 @@
  * - 核心方法: setDataSource, prepareAsync, start, pause, stop, reset, release
  * - 状态机: idle(0) -> initialized(1) -> asyncPreparing(2) -> prepared(3) -> started(4)/paused(5)/completed(6)/stopped(7)/error(8)/end(9)
  * - 事件处理: 通过 EventChannel 发送播放状态变化、错误等事件
+ * - 结构: 播放器核心 NbAudioPlayer 经 PlayerHost 取共享资源、经 PlayerTransport 收发消息，本类只做适配
  * - 依赖: 使用 IjkMediaPlayer 作为底层音频播放引擎
  */
 
@@ -24,69 +25,138 @@ import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
 
 import tv.danmaku.ijk.media.player.IjkMediaPlayer;
-import tv.danmaku.ijk.media.player.IMediaPlayer;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 /** NbplayerPlugin */
-public class NbplayerPlugin implements FlutterPlugin, MethodCallHandler {
+public class NbplayerPlugin implements FlutterPlugin, MethodCallHandler, PlayerHost {
     private static final String TAG = "NbplayerPlugin";
 
-    // 状态常量 - 对应参考实现
-    private static final int STATE_IDLE = 0;
-    private static final int STATE_INITIALIZED = 1;
-    private static final int STATE_ASYNC_PREPARING = 2;
-    private static final int STATE_PREPARED = 3;
-    private static final int STATE_STARTED = 4;
-    private static final int STATE_PAUSED = 5;
-    private static final int STATE_COMPLETED = 6;
-    private static final int STATE_STOPPED = 7;
-    private static final int STATE_ERROR = 8;
-    private static final int STATE_END = 9;
+    // 磁盘缓存默认字节预算
+    private static final long DEFAULT_CACHE_BYTES = 256L * 1024 * 1024;
+
+    // 预加载默认字节数与最大并发数
+    private static final long DEFAULT_PRELOAD_BYTES = 512 * 1024;
+    private static final int PRELOAD_CONCURRENCY = 2;
+
+    // 续播位置: 同一媒体 ID 的写盘间隔
+    private static final long POSITION_FLUSH_INTERVAL_MS = 5000;
+
+    // 并行分段拉取: 所有数据源共享的下载线程数，每个数据源预读的分段数
+    private static final int RANGE_FETCH_THREADS = 8;
+    private static final int RANGE_WINDOW_CHUNKS = 8;
+
+    // 无订阅者时每个播放器暂存的事件数
+    private static final int DEFAULT_EVENT_BUFFER_SIZE = 32;
+
+    // 离线下载: 默认同时下载数，单个下载的进度回调间隔
+    private static final int DEFAULT_DOWNLOAD_CONCURRENCY = 2;
+    private static final long DOWNLOAD_PROGRESS_INTERVAL_MS = 250;
 
     private Context context;
     private FlutterPluginBinding flutterPluginBinding;
     private MethodChannel globalChannel;
     private final Map<String, NbAudioPlayer> players = new ConcurrentHashMap<>();
+    private BlockCache blockCache;
+    private final HttpConnector httpConnector = new HttpConnector();
+    private Preloader preloader;
+    private PositionStore positionStore;
+    private DownloadManager downloadManager;
+    private EventChannel downloadChannel;
+    private volatile EventChannel.EventSink downloadSink;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private ExecutorService rangeFetcher;
+    // 所有播放器共享的延迟指标
+    private final PlayerMetrics metrics = new PlayerMetrics();
+    // 原生库在后台加载，需要原生库的调用等它就绪
+    private NativeLoader nativeLoader;
 
     @Override
     public void onAttachedToEngine(@NonNull FlutterPluginBinding flutterPluginBinding) {
         this.context = flutterPluginBinding.getApplicationContext();
         this.flutterPluginBinding = flutterPluginBinding;
 
+        // 上次 detach 关闭的预加载、下载、续播存储等在首次使用时重建
+        synchronized (this) {
+            positionStore = null;
+        }
+        // 原生库加载器随每次 attach 新建
+        nativeLoader = new NativeLoader(mainHandler);
+
         // 创建全局 channel 用于播放器实例管理
         globalChannel = new MethodChannel(flutterPluginBinding.getBinaryMessenger(), "com.newsbang.nbplayer/global");
         globalChannel.setMethodCallHandler(this);
 
-        // Initialize IJKPlayer
-        try {
-            IjkMediaPlayer.loadLibrariesOnce(null);
-            IjkMediaPlayer.native_profileBegin("libijkplayer.so");
-            Log.i(TAG, "IJKPlayer libraries loaded successfully");
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to load IJKPlayer libraries", e);
-        }
+        // 所有下载共用一个事件通道，事件中带 url
+        downloadChannel = new EventChannel(flutterPluginBinding.getBinaryMessenger(), "com.newsbang.nbplayer/downloads");
+        downloadChannel.setStreamHandler(new EventChannel.StreamHandler() {
+            @Override
+            public void onListen(Object arguments, EventChannel.EventSink events) {
+                downloadSink = events;
+            }
+
+            @Override
+            public void onCancel(Object arguments) {
+                downloadSink = null;
+            }
+        });
+
+        // 原生库加载移到后台线程，首个 createPlayer 等待其完成
+        nativeLoader.start();
     }
 
     @Override
     public void onDetachedFromEngine(@NonNull FlutterPluginBinding flutterPluginBinding) {
         // Release all players
         for (NbAudioPlayer player : players.values()) {
-            player.release();
+            player.releaseAsync();
         }
         players.clear();
+        synchronized (this) {
+            if (preloader != null) {
+                preloader.shutdown();
+                preloader = null;
+            }
+            if (rangeFetcher != null) {
+                rangeFetcher.shutdownNow();
+                rangeFetcher = null;
+            }
+            // 已下载的部分保留，下次 download 时续传
+            if (downloadManager != null) {
+                downloadManager.shutdown();
+                downloadManager = null;
+            }
+            // 不置空: 排队中的 release 仍会写入最后位置，关闭后的写入直接落盘；下次 attach 时重建
+            if (positionStore != null) {
+                positionStore.shutdown();
+            }
+        }
 
         if (globalChannel != null) {
             globalChannel.setMethodCallHandler(null);
         }
-
-        try {
-            IjkMediaPlayer.native_profileEnd();
-        } catch (Exception e) {
-            Log.e(TAG, "Error ending IJKPlayer profile", e);
+        if (downloadChannel != null) {
+            downloadChannel.setStreamHandler(null);
+            downloadSink = null;
         }
+
+        final NativeLoader loader = nativeLoader;
+        loader.whenReady(() -> {
+            if (!loader.isReady()) {
+                return;
+            }
+            try {
+                IjkMediaPlayer.native_profileEnd();
+            } catch (Exception e) {
+                Log.e(TAG, "Error ending IJKPlayer profile", e);
+            }
+        });
     }
 
     @Override
@@ -99,6 +169,43 @@ public class NbplayerPlugin implements FlutterPlugin, MethodCallHandler {
                 case "releasePlayer":
                     handleReleasePlayer(call, result);
                     break;
+                case "configureCache":
+                    handleConfigureCache(call, result);
+                    break;
+                case "getHttpStats":
+                    handleGetHttpStats(result);
+                    break;
+                case "getCacheStats":
+                    handleGetCacheStats(result);
+                    break;
+                case "getMetrics":
+                    handleGetMetrics(call, result);
+                    break;
+                case "preload":
+                    handlePreload(call, result);
+                    break;
+                case "cancelPreload":
+                    handleCancelPreload(call, result);
+                    break;
+                case "getResumePosition":
+                case "clearResumePosition":
+                case "getPositionStats":
+                    handlePositionStoreCall(call, result);
+                    break;
+                case "download":
+                    handleDownload(call, result);
+                    break;
+                case "pauseDownload":
+                case "removeDownload":
+                case "getDownloads":
+                    handleDownloadFileCall(call, result);
+                    break;
+                case "configureDownloads":
+                    handleConfigureDownloads(call, result);
+                    break;
+                case "getDownloadStats":
+                    result.success(downloads().getStats());
+                    break;
                 default:
                     result.notImplemented();
                     break;
@@ -116,12 +223,24 @@ public class NbplayerPlugin implements FlutterPlugin, MethodCallHandler {
             return;
         }
 
-        if (!players.containsKey(playerId)) {
-            NbAudioPlayer player = new NbAudioPlayer(playerId, flutterPluginBinding);
-            players.put(playerId, player);
-            Log.i(TAG, "Created player: " + playerId);
-        }
-        result.success(null);
+        Boolean binaryEvents = call.argument("binaryEvents");
+        Integer eventBufferSize = call.argument("eventBufferSize");
+        // 原生库就绪后才回复，Dart 端的首个方法调用不会先于加载完成
+        nativeLoader.whenReady(() -> {
+            if (!nativeLoader.isReady()) {
+                result.error("NATIVE_LOAD_ERROR", "Failed to load IJKPlayer libraries: " + nativeLoader.getError(), null);
+                return;
+            }
+            if (!players.containsKey(playerId)) {
+                PlayerTransport transport = new ChannelTransport(flutterPluginBinding.getBinaryMessenger(), playerId,
+                    binaryEvents != null && binaryEvents,
+                    eventBufferSize != null ? Math.max(0, eventBufferSize) : DEFAULT_EVENT_BUFFER_SIZE);
+                NbAudioPlayer player = new NbAudioPlayer(playerId, this, transport);
+                players.put(playerId, player);
+                Log.i(TAG, "Created player: " + playerId);
+            }
+            result.success(null);
+        });
     }
 
     private void handleReleasePlayer(@NonNull MethodCall call, @NonNull Result result) {
@@ -133,368 +252,319 @@ public class NbplayerPlugin implements FlutterPlugin, MethodCallHandler {
 
         NbAudioPlayer player = players.get(playerId);
         if (player != null) {
-            player.release();
+            player.releaseAsync();
             Log.i(TAG, "Released player: " + playerId);
         }
         result.success(null);
     }
 
-    // 内部音频播放器类
-    private class NbAudioPlayer implements MethodCallHandler {
-        private final String playerId;
-        private final MethodChannel methodChannel;
-        private final EventChannel eventChannel;
-        private EventChannel.EventSink eventSink;
-
-        private IjkMediaPlayer ijkMediaPlayer;
-        private int currentState = STATE_IDLE;
-        private final Handler mainHandler;
-
-        public NbAudioPlayer(String playerId, FlutterPluginBinding binding) {
-            this.playerId = playerId;
-            this.mainHandler = new Handler(Looper.getMainLooper());
-
-            // 创建 MethodChannel 和 EventChannel
-            this.methodChannel = new MethodChannel(
-                binding.getBinaryMessenger(),
-                "com.newsbang.nbplayer/methods_" + playerId
-            );
-            this.eventChannel = new EventChannel(
-                binding.getBinaryMessenger(),
-                "com.newsbang.nbplayer/events_" + playerId
-            );
-
-            this.methodChannel.setMethodCallHandler(this);
-            this.eventChannel.setStreamHandler(new EventChannel.StreamHandler() {
-                @Override
-                public void onListen(Object arguments, EventChannel.EventSink events) {
-                    eventSink = events;
-                }
-
-                @Override
-                public void onCancel(Object arguments) {
-                    eventSink = null;
-                }
-            });
-        }
-
-        @Override
-        public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
-            try {
-                switch (call.method) {
-                    case "getPlatformVersion":
-                        result.success("Android " + android.os.Build.VERSION.RELEASE);
-                        break;
-                    case "setDataSource":
-                        handleSetDataSource(call, result);
-                        break;
-                    case "prepareAsync":
-                        handlePrepareAsync(result);
-                        break;
-                    case "start":
-                        handleStart(result);
-                        break;
-                    case "startFromInitialized":
-                        handleStartFromInitialized(result);
-                        break;
-                    case "pause":
-                        handlePause(result);
-                        break;
-                    case "stop":
-                        handleStop(result);
-                        break;
-                    case "reset":
-                        handleReset(result);
-                        break;
-                    case "release":
-                        handleRelease(result);
-                        break;
-                    default:
-                        result.notImplemented();
-                        break;
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error handling method call: " + call.method, e);
-                result.error("NATIVE_ERROR", e.getMessage(), null);
-            }
+    private void handleConfigureCache(@NonNull MethodCall call, @NonNull Result result) {
+        Number maxBytes = call.argument("maxBytes");
+        if (maxBytes == null || maxBytes.longValue() <= 0) {
+            result.error("INVALID_ARGUMENT", "maxBytes must be positive", null);
+            return;
         }
+        final BlockCache cache = blockCache();
+        final Result mainResult = new MainThreadResult(result, mainHandler);
+        // 裁剪会删除文件，且需等待索引加载，不在主线程执行
+        cache.execute(() -> {
+            cache.setMaxBytes(maxBytes.longValue());
+            mainResult.success(null);
+        });
+    }
 
-        private void handleSetDataSource(@NonNull MethodCall call, @NonNull Result result) {
-            if (currentState != STATE_IDLE && currentState != STATE_INITIALIZED) {
-                result.error("INVALID_STATE", "setDataSource called in invalid state: " + currentState, null);
-                return;
-            }
-
-            String url = call.argument("url");
-            if (url == null || url.isEmpty()) {
-                result.error("INVALID_ARGUMENT", "URL cannot be null or empty", null);
-                return;
-            }
-
-            try {
-                // 释放之前的播放器实例
-                if (ijkMediaPlayer != null) {
-                    ijkMediaPlayer.release();
-                }
-
-                // 创建新的播放器实例
-                ijkMediaPlayer = new IjkMediaPlayer();
-                setupIjkPlayerOptions();
-                setupIjkPlayerListeners();
-
-                // 设置数据源
-                Uri uri = Uri.parse(url);
-                ijkMediaPlayer.setDataSource(context, uri);
+    private void handleGetCacheStats(@NonNull Result result) {
+        final BlockCache cache = blockCache();
+        final Result mainResult = new MainThreadResult(result, mainHandler);
+        cache.execute(() -> {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("hits", cache.getHits());
+            stats.put("misses", cache.getMisses());
+            stats.put("bytes", cache.getTotalBytes());
+            stats.put("maxBytes", cache.getMaxBytes());
+            mainResult.success(stats);
+        });
+    }
 
-                updateState(STATE_INITIALIZED);
-                result.success(null);
+    private void handleGetHttpStats(@NonNull Result result) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("requests", httpConnector.getRequests());
+        stats.put("tlsHandshakes", httpConnector.getTlsHandshakes());
+        stats.put("handshakesAvoided", httpConnector.getHandshakesAvoided());
+        result.success(stats);
+    }
 
-                Log.i(TAG, "Data source set successfully: " + url);
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to set data source: " + url, e);
-                updateState(STATE_ERROR);
-                result.error("SET_DATA_SOURCE_ERROR", e.getMessage(), null);
-            }
+    private void handleGetMetrics(@NonNull MethodCall call, @NonNull Result result) {
+        Map<String, Object> snapshot = metrics.toMap();
+        snapshot.put("startup", nativeLoader.toMap());
+        Boolean reset = call.argument("reset");
+        if (reset != null && reset) {
+            metrics.reset();
         }
+        result.success(snapshot);
+    }
 
-        private void handlePrepareAsync(@NonNull Result result) {
-            if (currentState != STATE_INITIALIZED) {
-                result.error("INVALID_STATE", "prepareAsync called in invalid state: " + currentState, null);
-                return;
-            }
-
-            try {
-                updateState(STATE_ASYNC_PREPARING);
-                ijkMediaPlayer.prepareAsync();
-                result.success(null);
-                Log.i(TAG, "prepareAsync called successfully");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to prepare async", e);
-                updateState(STATE_ERROR);
-                result.error("PREPARE_ERROR", e.getMessage(), null);
-            }
+    private void handlePreload(@NonNull MethodCall call, @NonNull Result result) {
+        String url = call.argument("url");
+        if (url == null || url.isEmpty()) {
+            result.error("INVALID_ARGUMENT", "URL cannot be null or empty", null);
+            return;
         }
-
-        private void handleStart(@NonNull Result result) {
-            if (!isPlayableState(currentState)) {
-                result.error("INVALID_STATE", "start called in invalid state: " + currentState, null);
-                return;
-            }
-
-            try {
-                ijkMediaPlayer.start();
-                result.success(null);
-                Log.i(TAG, "start called successfully");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to start", e);
-                updateState(STATE_ERROR);
-                result.error("START_ERROR", e.getMessage(), null);
-            }
+        Number bytes = call.argument("bytes");
+        Number durationMs = call.argument("durationMs");
+        long target = DEFAULT_PRELOAD_BYTES;
+        if (bytes != null) {
+            target = bytes.longValue();
+        } else if (durationMs != null) {
+            target = Preloader.bytesForDuration(durationMs.longValue());
         }
-
-        private void handleStartFromInitialized(@NonNull Result result) {
-            if (currentState != STATE_INITIALIZED) {
-                result.error("INVALID_STATE", "startFromInitialized called in invalid state: " + currentState, null);
-                return;
+        Map<String, String> headers = call.argument("headers");
+
+        // 预加载完成后才回复，Dart 端可以等待或忽略
+        final Result mainResult = new MainThreadResult(result, mainHandler);
+        boolean started = preloader().preload(url, headers, target, new Preloader.Callback() {
+            @Override
+            public void onComplete(long cachedBytes) {
+                mainResult.success(cachedBytes);
             }
 
-            try {
-                // 设置自动开始播放选项
-                ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 1);
-                updateState(STATE_ASYNC_PREPARING);
-                ijkMediaPlayer.prepareAsync();
-                result.success(null);
-                Log.i(TAG, "startFromInitialized called successfully");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to startFromInitialized", e);
-                updateState(STATE_ERROR);
-                result.error("START_FROM_INITIALIZED_ERROR", e.getMessage(), null);
+            @Override
+            public void onError(String message) {
+                mainResult.error("PRELOAD_ERROR", message, null);
             }
-        }
 
-        private void handlePause(@NonNull Result result) {
-            if (!isPlayableState(currentState)) {
-                result.error("INVALID_STATE", "pause called in invalid state: " + currentState, null);
-                return;
-            }
-
-            try {
-                ijkMediaPlayer.pause();
-                result.success(null);
-                Log.i(TAG, "pause called successfully");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to pause", e);
-                updateState(STATE_ERROR);
-                result.error("PAUSE_ERROR", e.getMessage(), null);
+            @Override
+            public void onCancelled() {
+                mainResult.error("PRELOAD_CANCELLED", "preload cancelled: " + url, null);
             }
+        });
+        if (!started) {
+            result.error("PRELOAD_IN_PROGRESS", "preload already in progress: " + url, null);
         }
+    }
 
-        private void handleStop(@NonNull Result result) {
-            if (currentState == STATE_IDLE || currentState == STATE_INITIALIZED || currentState == STATE_END) {
-                result.error("INVALID_STATE", "stop called in invalid state: " + currentState, null);
-                return;
-            }
-
-            try {
-                ijkMediaPlayer.stop();
-                updateState(STATE_STOPPED);
-                result.success(null);
-                Log.i(TAG, "stop called successfully");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to stop", e);
-                updateState(STATE_ERROR);
-                result.error("STOP_ERROR", e.getMessage(), null);
-            }
+    private void handleCancelPreload(@NonNull MethodCall call, @NonNull Result result) {
+        String url = call.argument("url");
+        if (url == null) {
+            result.error("INVALID_ARGUMENT", "URL cannot be null", null);
+            return;
         }
+        result.success(preloader().cancel(url));
+    }
 
-        private void handleReset(@NonNull Result result) {
-            if (currentState == STATE_END) {
-                result.error("INVALID_STATE", "reset called in invalid state: " + currentState, null);
-                return;
-            }
-
-            try {
-                if (ijkMediaPlayer != null) {
-                    ijkMediaPlayer.reset();
+    // 日志加载可能耗时上百毫秒，查询在存储线程中排在加载之后执行，不阻塞主线程
+    private void handlePositionStoreCall(@NonNull MethodCall call, @NonNull Result result) {
+        final PositionStore store = positionStore();
+        final Result mainResult = new MainThreadResult(result, mainHandler);
+        final String mediaId = call.argument("mediaId");
+        if (!"getPositionStats".equals(call.method) && (mediaId == null || mediaId.isEmpty())) {
+            result.error("INVALID_ARGUMENT", "mediaId cannot be null or empty", null);
+            return;
+        }
+        try {
+            store.execute(() -> {
+                switch (call.method) {
+                    case "getResumePosition":
+                        mainResult.success(store.get(mediaId));
+                        break;
+                    case "clearResumePosition":
+                        store.remove(mediaId);
+                        mainResult.success(null);
+                        break;
+                    default:
+                        Map<String, Object> stats = new HashMap<>();
+                        stats.put("entries", store.size());
+                        stats.put("updates", store.getUpdates());
+                        stats.put("recordsWritten", store.getRecordsWritten());
+                        stats.put("bytesWritten", store.getBytesWritten());
+                        stats.put("compactions", store.getCompactions());
+                        stats.put("loadUs", store.getLoadMicros());
+                        mainResult.success(stats);
+                        break;
                 }
-                updateState(STATE_IDLE);
-                result.success(null);
-                Log.i(TAG, "reset called successfully");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to reset", e);
-                updateState(STATE_ERROR);
-                result.error("RESET_ERROR", e.getMessage(), null);
-            }
+            });
+        } catch (RejectedExecutionException e) {
+            result.error("INVALID_STATE", call.method + " called after detach", null);
         }
+    }
 
-        private void handleRelease(@NonNull Result result) {
-            try {
-                release();
-                result.success(null);
-                Log.i(TAG, "release called successfully");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to release", e);
-                result.error("RELEASE_ERROR", e.getMessage(), null);
-            }
+    private void handleDownload(@NonNull MethodCall call, @NonNull Result result) {
+        String url = call.argument("url");
+        if (url == null || url.isEmpty()) {
+            result.error("INVALID_ARGUMENT", "URL cannot be null or empty", null);
+            return;
         }
+        Map<String, String> headers = call.argument("headers");
+        String sha256 = call.argument("sha256");
+        // 立即回复是否已加入队列，进度与结果经下载事件通道送达
+        result.success(downloads().download(url, headers, sha256));
+    }
 
-        private void setupIjkPlayerOptions() {
-            // 音频播放相关选项
-            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "mediacodec", 0);
-            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "opensles", 1);
-            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 0);
-
-            // 网络相关选项
-            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "http-detect-range-support", 0);
-            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "timeout", 30000000);
-            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "reconnect", 1);
-
-            // 解码相关选项
-            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_CODEC, "skip_loop_filter", 48);
+    // 停止下载会断开连接、删除文件，在下载的文件操作线程中执行，不阻塞主线程
+    private void handleDownloadFileCall(@NonNull MethodCall call, @NonNull Result result) {
+        final DownloadManager downloads = downloads();
+        final Result mainResult = new MainThreadResult(result, mainHandler);
+        final String url = call.argument("url");
+        if (!"getDownloads".equals(call.method) && (url == null || url.isEmpty())) {
+            result.error("INVALID_ARGUMENT", "URL cannot be null or empty", null);
+            return;
         }
-
-        private void setupIjkPlayerListeners() {
-            ijkMediaPlayer.setOnPreparedListener(new IMediaPlayer.OnPreparedListener() {
-                @Override
-                public void onPrepared(IMediaPlayer iMediaPlayer) {
-                    Log.i(TAG, "onPrepared");
-                    updateState(STATE_PREPARED);
-                }
-            });
-
-            ijkMediaPlayer.setOnCompletionListener(new IMediaPlayer.OnCompletionListener() {
-                @Override
-                public void onCompletion(IMediaPlayer iMediaPlayer) {
-                    Log.i(TAG, "onCompletion");
-                    updateState(STATE_COMPLETED);
+        try {
+            downloads.execute(() -> {
+                switch (call.method) {
+                    case "pauseDownload":
+                        mainResult.success(downloads.pause(url));
+                        break;
+                    case "removeDownload":
+                        downloads.remove(url);
+                        mainResult.success(null);
+                        break;
+                    default:
+                        mainResult.success(downloads.list());
+                        break;
                 }
             });
+        } catch (RejectedExecutionException e) {
+            result.error("INVALID_STATE", call.method + " called after detach", null);
+        }
+    }
 
-            ijkMediaPlayer.setOnErrorListener(new IMediaPlayer.OnErrorListener() {
-                @Override
-                public boolean onError(IMediaPlayer iMediaPlayer, int what, int extra) {
-                    Log.e(TAG, "onError: what=" + what + ", extra=" + extra);
-                    updateState(STATE_ERROR);
-                    return true;
-                }
-            });
+    private void handleConfigureDownloads(@NonNull MethodCall call, @NonNull Result result) {
+        Integer maxConcurrent = call.argument("maxConcurrent");
+        Number maxBytesPerSecond = call.argument("maxBytesPerSecond");
+        if (maxConcurrent == null || maxConcurrent <= 0 || maxBytesPerSecond == null || maxBytesPerSecond.longValue() < 0) {
+            result.error("INVALID_ARGUMENT", "maxConcurrent must be positive and maxBytesPerSecond non-negative", null);
+            return;
+        }
+        downloads().configure(maxConcurrent, maxBytesPerSecond.longValue());
+        result.success(null);
+    }
 
-            ijkMediaPlayer.setOnInfoListener(new IMediaPlayer.OnInfoListener() {
-                @Override
-                public boolean onInfo(IMediaPlayer iMediaPlayer, int what, int extra) {
-                    switch (what) {
-                        case IMediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START:
-                        case IMediaPlayer.MEDIA_INFO_AUDIO_RENDERING_START:
-                            if (currentState == STATE_ASYNC_PREPARING || currentState == STATE_PREPARED) {
-                                updateState(STATE_STARTED);
-                            }
-                            break;
+    private synchronized DownloadManager downloads() {
+        if (downloadManager == null) {
+            downloadManager = new DownloadManager(downloadDir(), httpConnector,
+                DEFAULT_DOWNLOAD_CONCURRENCY, DOWNLOAD_PROGRESS_INTERVAL_MS, new DownloadManager.Listener() {
+                    @Override
+                    public void onProgress(String url, long bytes, long total) {
+                        Map<String, Object> event = new HashMap<>();
+                        event.put("event", "progress");
+                        event.put("url", url);
+                        event.put("bytes", bytes);
+                        event.put("total", total);
+                        sendDownloadEvent(event);
                     }
-                    return false;
-                }
-            });
 
-            ijkMediaPlayer.setOnSeekCompleteListener(new IMediaPlayer.OnSeekCompleteListener() {
-                @Override
-                public void onSeekComplete(IMediaPlayer iMediaPlayer) {
-                    Log.i(TAG, "onSeekComplete");
-                }
-            });
+                    @Override
+                    public void onStateChange(String url, int state, String error) {
+                        Map<String, Object> event = new HashMap<>();
+                        event.put("event", "state");
+                        event.put("url", url);
+                        event.put("state", state);
+                        event.put("error", error);
+                        sendDownloadEvent(event);
+                    }
+                });
         }
+        return downloadManager;
+    }
 
-        private void updateState(int newState) {
-            if (currentState != newState) {
-                int oldState = currentState;
-                currentState = newState;
-                sendStateChangeEvent(newState, oldState);
-                Log.i(TAG, "State changed: " + oldState + " -> " + newState);
+    private File downloadDir() {
+        return new File(context.getFilesDir(), "nbplayer/downloads");
+    }
+
+    // 进度已在下载线程中节流，这里只转到主线程；无订阅者时丢弃，可用 getDownloads 查询当前状态
+    private void sendDownloadEvent(final Map<String, Object> event) {
+        mainHandler.post(() -> {
+            EventChannel.EventSink sink = downloadSink;
+            if (sink != null) {
+                sink.success(event);
             }
-        }
+        });
+    }
+
+    @Override
+    public IjkMediaPlayer newPlayer() {
+        return new IjkMediaPlayer();
+    }
 
-        private void sendStateChangeEvent(int newState, int oldState) {
-            if (eventSink != null) {
-                Map<String, Object> event = new HashMap<>();
-                event.put("event", "state_change");
-                event.put("state", newState);
-                event.put("oldState", oldState);
+    @Override
+    public PlayerMetrics metrics() {
+        return metrics;
+    }
 
-                mainHandler.post(() -> {
-                    if (eventSink != null) {
-                        eventSink.success(event);
-                    }
-                });
-            }
+    @Override
+    public synchronized PositionStore positionStore() {
+        if (positionStore == null) {
+            positionStore = new PositionStore(new File(context.getFilesDir(), "nbplayer/positions.log"),
+                POSITION_FLUSH_INTERVAL_MS);
         }
+        return positionStore;
+    }
 
-        private boolean isPlayableState(int state) {
-            return state == STATE_PREPARED ||
-                   state == STATE_STARTED ||
-                   state == STATE_PAUSED ||
-                   state == STATE_COMPLETED;
+    // 播放器核心的数据源都经这里选择，新的数据源只需在此接入
+    @Override
+    public void openDataSource(IjkMediaPlayer player, String url, SourceOptions options) throws Exception {
+        Uri uri = Uri.parse(url);
+        boolean isHttp = "http".equals(uri.getScheme()) || "https".equals(uri.getScheme());
+        // 只查看已有的下载管理器和预加载器，不为打开数据源而创建它们的线程池
+        DownloadManager downloads;
+        Preloader preloads;
+        synchronized (this) {
+            downloads = downloadManager;
+            preloads = preloader;
         }
+        File downloaded = null;
+        if (isHttp) {
+            downloaded = downloads != null ? downloads.completedFile(url)
+                : DownloadManager.completedFile(downloadDir(), url);
+        }
+        if (downloaded != null) {
+            // 已下载完成的 URL 直接读本地文件，不发出网络请求
+            player.setDataSource(new FileMediaDataSource(downloaded));
+        } else if (isHttp && (options.cache || (preloads != null && preloads.isPreloaded(url)))) {
+            // 预加载过的 URL 同样经缓存读取
+            player.setDataSource(new CachedHttpMediaDataSource(url, options.headers, blockCache(), httpConnector));
+        } else if (isHttp && options.parallelConnections > 0) {
+            // 远距离 seek 后多个 Range 请求并行拉取，并发数不超过共享下载线程数
+            player.setDataSource(new ParallelRangeDataSource(url, options.headers, httpConnector, rangeFetcher(),
+                Math.min(options.parallelConnections, RANGE_FETCH_THREADS), RANGE_WINDOW_CHUNKS));
+        } else if (isHttp && options.reuseConnection) {
+            // 不写缓存，只经共享连接池拉取
+            player.setDataSource(new CachedHttpMediaDataSource(url, options.headers, null, httpConnector));
+        } else if (options.headers != null && !options.headers.isEmpty()) {
+            player.setDataSource(context, uri, options.headers);
+        } else {
+            player.setDataSource(context, uri);
+        }
+    }
 
-        public void release() {
-            updateState(STATE_END);
-
-            if (ijkMediaPlayer != null) {
-                try {
-                    ijkMediaPlayer.release();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error releasing media player", e);
-                }
-                ijkMediaPlayer = null;
-            }
+    @Override
+    public void onPlayerReleased(String playerId) {
+        players.remove(playerId);
+    }
 
-            if (methodChannel != null) {
-                methodChannel.setMethodCallHandler(null);
-            }
+    private synchronized ExecutorService rangeFetcher() {
+        if (rangeFetcher == null) {
+            rangeFetcher = Executors.newFixedThreadPool(RANGE_FETCH_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "nbplayer-range");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return rangeFetcher;
+    }
 
-            if (eventChannel != null) {
-                eventChannel.setStreamHandler(null);
-            }
+    private synchronized Preloader preloader() {
+        if (preloader == null) {
+            preloader = new Preloader(blockCache(), httpConnector, PRELOAD_CONCURRENCY);
+        }
+        return preloader;
+    }
 
-            eventSink = null;
-            players.remove(playerId);
+    private synchronized BlockCache blockCache() {
+        if (blockCache == null) {
+            blockCache = new BlockCache(new File(context.getCacheDir(), "nbplayer_cache"), DEFAULT_CACHE_BYTES);
         }
+        return blockCache;
     }
 }
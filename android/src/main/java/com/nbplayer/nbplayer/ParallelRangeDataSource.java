@@ -0,0 +1,359 @@
+package com.nbplayer.nbplayer;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/**
+ * 并行分段拉取的 HTTP 数据源
+ *
+ * <p>资源按 {@link #CHUNK_SIZE} 切成定长分段，每段一个 Range 请求。读取位置之后的
+ * windowChunks 段构成内存中的滑动窗口，其中最多 connections 段同时在共享线程池中下载，
+ * 远距离 seek 后新位置的几段并行拉取，不再受单条 TCP 连接的速度限制。
+ * 窗口外的分段被丢弃，进行中的下载断开连接，退出后才让出并发名额；分段缓冲区回收复用，
+ * 每个数据源的内存不超过 (windowChunks + 1) 个分段。不完整的分段视为失败，读取时重试
+ * {@link #MAX_RETRIES} 次。
+ *
+ * <p>readAt 由 ijkplayer 的读取线程调用，下载在线程池中完成，共享状态由 lock 保护。
+ */
+class ParallelRangeDataSource implements IMediaDataSource {
+    private static final String TAG = "NbRangeDataSource";
+
+    static final int CHUNK_SIZE = 256 * 1024;
+    static final int MAX_RETRIES = 2;
+
+    private final String url;
+    private final Map<String, String> headers;
+    private final HttpConnector connector;
+    private final ExecutorService executor;
+    private final int connections;
+    private final int windowChunks;
+
+    private final Object lock = new Object();
+    // 分段序号 -> 分段，含下载中的
+    private final TreeMap<Long, Chunk> window = new TreeMap<>();
+    private final ArrayDeque<byte[]> freeBuffers = new ArrayDeque<>();
+    private long readIndex = 0;
+    private int inFlight = 0;
+    private boolean closed = false;
+    private volatile long length = -1;
+    private volatile boolean rangeUnsupported = false;
+
+    private static final class Chunk {
+        final long index;
+        byte[] data;
+        int size;
+        boolean done;
+        // 已移出窗口，下载线程据此提前结束
+        volatile boolean cancelled;
+        // 是否仍占用一个并发名额
+        boolean inFlight;
+        // 下载线程已开始执行，此后由它在退出时让出名额
+        boolean started;
+        // 丢弃时断开，尽快结束阻塞中的读取
+        volatile HttpURLConnection connection;
+        IOException error;
+        Future<?> future;
+
+        Chunk(long index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * @param connections  单个数据源同时下载的分段数
+     * @param windowChunks 读取位置之后预读的分段数，不小于 connections
+     */
+    ParallelRangeDataSource(String url, Map<String, String> headers, HttpConnector connector,
+                            ExecutorService executor, int connections, int windowChunks) {
+        this.url = url;
+        this.headers = headers;
+        this.connector = connector;
+        this.executor = executor;
+        this.connections = Math.max(1, connections);
+        this.windowChunks = Math.max(this.connections, windowChunks);
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) {
+        if (size <= 0) {
+            return 0;
+        }
+        if (length >= 0 && position >= length) {
+            return -1;
+        }
+        long index = position / CHUNK_SIZE;
+        synchronized (lock) {
+            Chunk chunk = awaitChunk(index);
+            if (chunk == null) {
+                return -1;
+            }
+            int chunkOffset = (int) (position - index * CHUNK_SIZE);
+            if (chunkOffset >= chunk.size) {
+                return -1;
+            }
+            // 持有锁时分段不会被回收
+            int count = Math.min(size, chunk.size - chunkOffset);
+            System.arraycopy(chunk.data, chunkOffset, buffer, offset, count);
+            return count;
+        }
+    }
+
+    @Override
+    public long getSize() {
+        if (length < 0) {
+            synchronized (lock) {
+                // 首段的 Content-Range 带有总长度
+                awaitChunk(readIndex);
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            for (Chunk chunk : window.values()) {
+                discard(chunk);
+            }
+            window.clear();
+            freeBuffers.clear();
+            lock.notifyAll();
+        }
+    }
+
+    // 持有 lock 时调用，等待 index 段下载完成，失败或已关闭时返回 null
+    private Chunk awaitChunk(long index) {
+        if (closed) {
+            return null;
+        }
+        readIndex = index;
+        slide();
+        for (int failures = 0; ; failures++) {
+            Chunk chunk = window.get(index);
+            if (chunk == null) {
+                chunk = schedule(index);
+                if (chunk == null) {
+                    return null;
+                }
+            }
+            pump();
+            while (!chunk.done && !closed) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            if (closed) {
+                return null;
+            }
+            if (chunk.error == null) {
+                return chunk;
+            }
+            // 丢弃失败的分段，重新拉取
+            window.remove(index);
+            if (failures >= MAX_RETRIES) {
+                Log.e(TAG, "Failed to fetch chunk " + index + " of " + url, chunk.error);
+                return null;
+            }
+            Log.w(TAG, "Chunk " + index + " failed, retrying: " + chunk.error.getMessage());
+        }
+    }
+
+    // 丢弃窗口 [readIndex - 1, readIndex + windowChunks) 之外的分段，保留前一段供小幅回退
+    private void slide() {
+        Iterator<Chunk> it = window.values().iterator();
+        while (it.hasNext()) {
+            Chunk chunk = it.next();
+            if (chunk.index < readIndex - 1 || chunk.index >= readIndex + windowChunks) {
+                discard(chunk);
+                it.remove();
+            }
+        }
+    }
+
+    // 按距读取位置由近到远补足并发下载
+    private void pump() {
+        if (closed) {
+            return;
+        }
+        for (long index = readIndex; index < readIndex + windowChunks && inFlight < connections; index++) {
+            if (length < 0 && index != readIndex) {
+                // 长度未知时只拉当前段
+                break;
+            }
+            if (length >= 0 && index * CHUNK_SIZE >= length) {
+                break;
+            }
+            if (!window.containsKey(index) && schedule(index) == null) {
+                break;
+            }
+        }
+    }
+
+    private Chunk schedule(long index) {
+        final Chunk chunk = new Chunk(index);
+        chunk.inFlight = true;
+        try {
+            chunk.future = executor.submit(() -> fetch(chunk));
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "Fetch pool rejected chunk " + index, e);
+            return null;
+        }
+        inFlight++;
+        window.put(index, chunk);
+        return chunk;
+    }
+
+    private void discard(Chunk chunk) {
+        chunk.cancelled = true;
+        if (chunk.inFlight && !chunk.started) {
+            // 尚未开始的下载不再执行，名额立即让出
+            chunk.inFlight = false;
+            inFlight--;
+            if (chunk.future != null) {
+                chunk.future.cancel(false);
+            }
+        }
+        HttpURLConnection connection = chunk.connection;
+        if (connection != null) {
+            connection.disconnect();
+        }
+        if (chunk.data != null) {
+            recycle(chunk.data);
+            chunk.data = null;
+        }
+    }
+
+    private void recycle(byte[] data) {
+        if (!closed && freeBuffers.size() < windowChunks) {
+            freeBuffers.push(data);
+        }
+    }
+
+    // 在线程池中执行
+    private void fetch(Chunk chunk) {
+        byte[] data;
+        synchronized (lock) {
+            if (chunk.cancelled) {
+                return;
+            }
+            chunk.started = true;
+            data = freeBuffers.poll();
+        }
+        if (data == null) {
+            data = new byte[CHUNK_SIZE];
+        }
+        int size = 0;
+        IOException error = null;
+        try {
+            size = download(chunk, data);
+        } catch (IOException e) {
+            error = e;
+        }
+        synchronized (lock) {
+            if (chunk.inFlight) {
+                chunk.inFlight = false;
+                inFlight--;
+            }
+            if (chunk.cancelled) {
+                recycle(data);
+            } else {
+                chunk.data = data;
+                chunk.size = size;
+                chunk.error = error;
+                chunk.done = true;
+                if (error != null) {
+                    recycle(data);
+                    chunk.data = null;
+                }
+            }
+            pump();
+            lock.notifyAll();
+        }
+    }
+
+    private int download(Chunk chunk, byte[] data) throws IOException {
+        long start = chunk.index * CHUNK_SIZE;
+        HttpURLConnection connection = connector.open(url, headers, start, start + CHUNK_SIZE - 1);
+        chunk.connection = connection;
+        if (chunk.cancelled) {
+            connection.disconnect();
+            return 0;
+        }
+        InputStream is = null;
+        try {
+            int code = connection.getResponseCode();
+            if (code == 416) {
+                return 0;
+            }
+            if (code != HttpURLConnection.HTTP_PARTIAL && code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected HTTP response " + code);
+            }
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                updateLength(CachedHttpMediaDataSource.parseContentRangeTotal(connection.getHeaderField("Content-Range")));
+            } else {
+                updateLength(HttpConnector.contentLength(connection));
+            }
+
+            is = connection.getInputStream();
+            if (code == HttpURLConnection.HTTP_OK && start > 0) {
+                // 服务器不支持 Range，每段都要从头跳过，退化为顺序读取
+                if (!rangeUnsupported) {
+                    rangeUnsupported = true;
+                    Log.w(TAG, "Server ignores Range, parallel fetching is ineffective: " + url);
+                }
+                long skipped = 0;
+                while (skipped < start) {
+                    long n = is.skip(start - skipped);
+                    if (n <= 0) {
+                        throw new IOException("Connection closed at " + skipped + " before " + start);
+                    }
+                    skipped += n;
+                }
+            }
+
+            int read = 0;
+            while (read < data.length && !chunk.cancelled) {
+                int n = is.read(data, read, data.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            long total = length;
+            if (!chunk.cancelled && total >= 0 && read < Math.min(CHUNK_SIZE, total - start)) {
+                throw new IOException("Connection closed at " + (start + read) + " of " + total);
+            }
+            return read;
+        } finally {
+            chunk.connection = null;
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void updateLength(long total) {
+        if (total >= 0 && length < 0) {
+            length = total;
+        }
+    }
+}
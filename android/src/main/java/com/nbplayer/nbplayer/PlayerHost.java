@@ -0,0 +1,33 @@
+package com.nbplayer.nbplayer;
+
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * 播放器核心依赖的共享资源，由插件实现
+ *
+ * <p>指标与续播存储在所有播放器之间共享，只需实现一次；
+ * 数据源的选择 (磁盘缓存、并行分段、共享连接等) 集中在 {@link #openDataSource}，
+ * 新增数据源只改宿主，不改播放器核心。
+ *
+ * <p>方法可能在任意播放器的工作线程中调用，实现须线程安全。
+ */
+interface PlayerHost {
+    /**
+     * 新建原生播放器，在播放器的工作线程中调用，由调用方负责 release
+     */
+    IjkMediaPlayer newPlayer();
+
+    PlayerMetrics metrics();
+
+    PositionStore positionStore();
+
+    /**
+     * 按 options 为 player 选择并设置数据源，在播放器的工作线程中调用
+     */
+    void openDataSource(IjkMediaPlayer player, String url, SourceOptions options) throws Exception;
+
+    /**
+     * 播放器已释放，在该播放器的工作线程中调用
+     */
+    void onPlayerReleased(String playerId);
+}
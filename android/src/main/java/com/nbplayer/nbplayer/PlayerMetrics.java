@@ -0,0 +1,162 @@
+package com.nbplayer.nbplayer;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 所有播放器共享的播放指标
+ *
+ * <p>每个播放器持有一个 {@link Timeline}，在各个回调点记录单调时钟时间戳，
+ * 推导出的延迟汇总到本类的直方图中:
+ * <ul>
+ * <li>ttfa: setDataSource 到首次音频渲染 (time to first audio)，另按缓冲策略分别统计</li>
+ * <li>prepare: prepareAsync 到 onPrepared</li>
+ * <li>stall: 开始播放后每次缓冲卡顿的持续时间</li>
+ * <li>seek: seekTo 到 onSeekComplete</li>
+ * <li>trackGap: 播放列表自动切换时上一曲结束到下一曲出声的间隙</li>
+ * </ul>
+ *
+ * <p>线程安全。
+ */
+final class PlayerMetrics {
+    private final LatencyHistogram ttfa = new LatencyHistogram();
+    private final LatencyHistogram prepare = new LatencyHistogram();
+    private final LatencyHistogram stall = new LatencyHistogram();
+    private final LatencyHistogram seek = new LatencyHistogram();
+    private final LatencyHistogram trackGap = new LatencyHistogram();
+    private final AtomicLong stallCount = new AtomicLong();
+    // 构造时为每个缓冲策略建好直方图，之后只读
+    private final Map<BufferingProfile, LatencyHistogram> ttfaByProfile = new EnumMap<>(BufferingProfile.class);
+
+    PlayerMetrics() {
+        for (BufferingProfile profile : BufferingProfile.values()) {
+            ttfaByProfile.put(profile, new LatencyHistogram());
+        }
+    }
+
+    Timeline newTimeline() {
+        return new Timeline();
+    }
+
+    void recordTrackGapNanos(long nanos) {
+        trackGap.recordNanos(nanos);
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("ttfa", ttfa.toMap());
+        map.put("prepare", prepare.toMap());
+        map.put("stall", stall.toMap());
+        map.put("seek", seek.toMap());
+        map.put("trackGap", trackGap.toMap());
+        map.put("stallCount", stallCount.get());
+        Map<String, Object> byProfile = new HashMap<>();
+        for (Map.Entry<BufferingProfile, LatencyHistogram> entry : ttfaByProfile.entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                byProfile.put(entry.getKey().dartName, entry.getValue().toMap());
+            }
+        }
+        map.put("ttfaByProfile", byProfile);
+        return map;
+    }
+
+    void reset() {
+        ttfa.reset();
+        prepare.reset();
+        stall.reset();
+        seek.reset();
+        trackGap.reset();
+        stallCount.set(0);
+        for (LatencyHistogram histogram : ttfaByProfile.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * 单个播放器的时间线，时间戳为 {@link System#nanoTime()}，0 表示没有待测量的区间
+     *
+     * <p>工作线程与主线程都会调用，字段均为 volatile；同一区间只由一方结束。
+     */
+    final class Timeline {
+        private volatile long setDataSourceNanos;
+        private volatile BufferingProfile profile = BufferingProfile.STANDARD;
+        private volatile long prepareAsyncNanos;
+        private volatile long bufferingStartNanos;
+        private volatile long seekNanos;
+        // 首次出声之前的缓冲属于起播，不计入卡顿
+        private volatile boolean rendering;
+
+        void onSetDataSource(BufferingProfile profile) {
+            reset();
+            this.profile = profile;
+            setDataSourceNanos = System.nanoTime();
+        }
+
+        void onPrepareAsync() {
+            prepareAsyncNanos = System.nanoTime();
+        }
+
+        void onPrepared() {
+            long begin = prepareAsyncNanos;
+            if (begin != 0) {
+                prepareAsyncNanos = 0;
+                prepare.recordNanos(System.nanoTime() - begin);
+            }
+        }
+
+        void onRenderingStart() {
+            rendering = true;
+            long begin = setDataSourceNanos;
+            if (begin != 0) {
+                setDataSourceNanos = 0;
+                long elapsed = System.nanoTime() - begin;
+                ttfa.recordNanos(elapsed);
+                ttfaByProfile.get(profile).recordNanos(elapsed);
+            }
+        }
+
+        void onBufferingStart() {
+            if (rendering) {
+                bufferingStartNanos = System.nanoTime();
+            }
+        }
+
+        void onBufferingEnd() {
+            long begin = bufferingStartNanos;
+            if (begin != 0) {
+                bufferingStartNanos = 0;
+                stallCount.incrementAndGet();
+                stall.recordNanos(System.nanoTime() - begin);
+            }
+        }
+
+        void onSeek() {
+            seekNanos = System.nanoTime();
+        }
+
+        void onSeekComplete() {
+            long begin = seekNanos;
+            if (begin != 0) {
+                seekNanos = 0;
+                seek.recordNanos(System.nanoTime() - begin);
+            }
+        }
+
+        /**
+         * 切换到已预备好的下一曲，出声延迟计入 trackGap 而不是 ttfa
+         */
+        void onSwap() {
+            reset();
+        }
+
+        void reset() {
+            setDataSourceNanos = 0;
+            prepareAsyncNanos = 0;
+            bufferingStartNanos = 0;
+            seekNanos = 0;
+            rendering = false;
+        }
+    }
+}
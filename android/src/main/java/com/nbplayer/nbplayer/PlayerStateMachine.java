@@ -0,0 +1,120 @@
+package com.nbplayer.nbplayer;
+
+/**
+ * 播放器状态机，状态取值与 Dart 端 NbPlayerState 及参考实现 FijkPlayer 一致
+ *
+ * <p>状态转换按 ALLOWED 表校验，不允许的转换被拒绝并保持原状态，由调用方记录。
+ * 表中包含 NbAudioPlayer 的全部转换路径: 播放列表切换会从任意可播放状态回到
+ * initialized / asyncPreparing，reset 可从除 end 外的任意状态回到 idle，
+ * 首次出声时从 asyncPreparing / prepared 进入 started。
+ *
+ * <p>不依赖 Android 与 Flutter，可以在 JVM 上单独驱动。线程安全，
+ * 检查与修改在同一把锁内完成，{@link #transitionIf} 用于“仍处于某些状态时才转换”的回调。
+ */
+final class PlayerStateMachine {
+    static final int IDLE = 0;
+    static final int INITIALIZED = 1;
+    static final int ASYNC_PREPARING = 2;
+    static final int PREPARED = 3;
+    static final int STARTED = 4;
+    static final int PAUSED = 5;
+    static final int COMPLETED = 6;
+    static final int STOPPED = 7;
+    static final int ERROR = 8;
+    static final int END = 9;
+
+    private static final int STATE_COUNT = 10;
+
+    // 任意状态都可以出错或被释放
+    private static final int ALWAYS = mask(ERROR, END);
+    // 下标为原状态，值为允许的目标状态位图
+    private static final int[] ALLOWED = new int[STATE_COUNT];
+
+    static {
+        ALLOWED[IDLE] = mask(INITIALIZED) | ALWAYS;
+        ALLOWED[INITIALIZED] = mask(IDLE, ASYNC_PREPARING) | ALWAYS;
+        ALLOWED[ASYNC_PREPARING] = mask(IDLE, INITIALIZED, PREPARED, STARTED, STOPPED) | ALWAYS;
+        ALLOWED[PREPARED] = mask(IDLE, INITIALIZED, ASYNC_PREPARING, STARTED, COMPLETED, STOPPED) | ALWAYS;
+        ALLOWED[STARTED] = mask(IDLE, INITIALIZED, ASYNC_PREPARING, PAUSED, COMPLETED, STOPPED) | ALWAYS;
+        ALLOWED[PAUSED] = mask(IDLE, INITIALIZED, ASYNC_PREPARING, STARTED, COMPLETED, STOPPED) | ALWAYS;
+        ALLOWED[COMPLETED] = mask(IDLE, INITIALIZED, ASYNC_PREPARING, STARTED, STOPPED) | ALWAYS;
+        ALLOWED[STOPPED] = mask(IDLE, INITIALIZED, ASYNC_PREPARING) | ALWAYS;
+        // stop 的调用条件与 Dart 端一致，出错后也可以 stop
+        ALLOWED[ERROR] = mask(IDLE, INITIALIZED, STOPPED) | mask(END);
+        ALLOWED[END] = 0;
+    }
+
+    interface Listener {
+        /**
+         * 在状态机的锁内回调，同一状态机的回调按转换顺序依次发生
+         */
+        void onTransition(int newState, int oldState);
+    }
+
+    private final Listener listener;
+    private int state = IDLE;
+    private long transitions = 0;
+    private long rejected = 0;
+
+    PlayerStateMachine(Listener listener) {
+        this.listener = listener;
+    }
+
+    static int mask(int... states) {
+        int mask = 0;
+        for (int s : states) {
+            mask |= 1 << s;
+        }
+        return mask;
+    }
+
+    static boolean isAllowed(int from, int to) {
+        return from >= 0 && from < STATE_COUNT && to >= 0 && to < STATE_COUNT && (ALLOWED[from] & (1 << to)) != 0;
+    }
+
+    synchronized int get() {
+        return state;
+    }
+
+    /**
+     * 转换到 to，已处于 to 时什么都不做
+     *
+     * @return 转换不被允许时返回 false，状态不变
+     */
+    synchronized boolean transition(int to) {
+        return transitionIf(-1, to);
+    }
+
+    /**
+     * 仅当当前状态在 fromMask 中时转换到 to
+     *
+     * @return 当前状态不在 fromMask 中或转换不被允许时返回 false
+     */
+    synchronized boolean transitionIf(int fromMask, int to) {
+        int from = state;
+        if (from == to) {
+            return true;
+        }
+        if ((fromMask & (1 << from)) == 0) {
+            return false;
+        }
+        if (!isAllowed(from, to)) {
+            rejected++;
+            return false;
+        }
+        state = to;
+        transitions++;
+        if (listener != null) {
+            listener.onTransition(to, from);
+        }
+        return true;
+    }
+
+    synchronized long getTransitions() {
+        return transitions;
+    }
+
+    synchronized long getRejected() {
+        return rejected;
+    }
+}
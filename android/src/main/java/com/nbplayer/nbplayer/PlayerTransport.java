@@ -0,0 +1,27 @@
+package com.nbplayer.nbplayer;
+
+import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
+
+/**
+ * 播放器核心与 Dart 端之间的传输层
+ *
+ * <p>方法调用交给 start 时传入的 handler，事件统一经 {@link #emit} 发出，
+ * 记录布局与 {@link BinaryEventChannel} 相同 (type, arg1, arg2, arg3)，
+ * 编码方式 (Map 或二进制)、无订阅者时的暂存与重放由实现决定。
+ */
+interface PlayerTransport {
+    /**
+     * 注册方法调用的 handler；onSubscribe 在订阅者接入、暂存事件重放之后于主线程执行
+     */
+    void start(MethodCallHandler handler, Runnable onSubscribe);
+
+    /**
+     * 发出事件，可在任意线程调用；事件按 emit 的调用顺序发出，跨线程也保持顺序
+     */
+    void emit(int type, int arg1, int arg2, int arg3);
+
+    /**
+     * 注销 handler 并丢弃订阅者，可在任意线程调用
+     */
+    void close();
+}
@@ -0,0 +1,337 @@
+package com.nbplayer.nbplayer;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按媒体 ID 保存续播位置
+ *
+ * <p>磁盘上是只追加的日志，每条记录为 (UTF 媒体 ID, long 位置毫秒)，位置为 -1 表示删除。
+ * 构造后在存储线程中顺序读完整个日志重建内存索引，之后的查询只读内存；
+ * 加载完成前的调用会等待加载结束。
+ * 写入先合并在内存中，同一 ID 在一个刷盘周期内多次更新只追加最后一条，
+ * 因此每个 ID 最多每 {@code flushIntervalMs} 写一次。
+ * 日志中的过期记录超过存活条目数时整体重写 (压缩)。
+ * 崩溃留下的不完整尾部记录在加载时截掉。
+ * 关闭时最后一次刷盘同样在存储线程中执行，调用方 (通常是主线程) 最多等待 {@link #SHUTDOWN_TIMEOUT_MS}。
+ *
+ * <p>线程安全。
+ */
+class PositionStore {
+    private static final String TAG = "NbPositionStore";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long REMOVED = -1;
+    // 过期记录少于该数时不压缩，避免小日志反复重写
+    private static final long MIN_COMPACT_GARBAGE = 1024;
+    // writeUTF 最多 65535 字节，媒体 ID 限制在远小于该值的长度
+    static final int MAX_ID_LENGTH = 1024;
+    // shutdown 等待加载与最后一次刷盘的上限，超时后二者在存储线程中继续完成
+    static final long SHUTDOWN_TIMEOUT_MS = 500;
+
+    private final File file;
+    private final long flushIntervalMs;
+    private final ScheduledThreadPoolExecutor flusher;
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    // 已持久化或待持久化的全部条目
+    private final HashMap<String, Long> positions = new HashMap<>();
+    // 等待下次刷盘的条目，保持首次更新的顺序
+    private final LinkedHashMap<String, Long> pending = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+    // 日志中的记录数，含已被覆盖的
+    private long logRecords = 0;
+    private DataOutputStream out;
+
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong recordsWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private volatile long loadMicros;
+
+    PositionStore(File file, long flushIntervalMs) {
+        this.file = file;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flusher = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "nbplayer-positions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 关闭时的刷盘已包含待写条目，不再等定时刷盘
+        this.flusher.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            Log.e(TAG, "Failed to create directory: " + parent);
+        }
+        flusher.execute(() -> {
+            long begin = System.nanoTime();
+            synchronized (this) {
+                load();
+            }
+            loadMicros = (System.nanoTime() - begin) / 1000;
+            loaded.countDown();
+        });
+    }
+
+    /**
+     * 在存储线程中执行，排在加载之后，供主线程上的查询使用
+     */
+    void execute(Runnable task) {
+        flusher.execute(task);
+    }
+
+    /**
+     * 保存的位置，没有记录时返回 -1
+     */
+    long get(String mediaId) {
+        awaitLoaded();
+        synchronized (this) {
+            Long position = positions.get(mediaId);
+            return position != null ? position : REMOVED;
+        }
+    }
+
+    private void awaitLoaded() {
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 更新位置，延迟到下个刷盘周期写入
+     */
+    void put(String mediaId, long positionMs) {
+        awaitLoaded();
+        update(mediaId, Math.max(0, positionMs));
+    }
+
+    void remove(String mediaId) {
+        awaitLoaded();
+        update(mediaId, REMOVED);
+    }
+
+    private synchronized void update(String mediaId, long positionMs) {
+        if (mediaId.length() > MAX_ID_LENGTH) {
+            Log.e(TAG, "Media id too long: " + mediaId.length());
+            return;
+        }
+        updates.incrementAndGet();
+        Long previous = positionMs == REMOVED ? positions.remove(mediaId) : positions.put(mediaId, positionMs);
+        if (previous != null && previous == positionMs) {
+            return;
+        }
+        if (previous == null && positionMs == REMOVED && !pending.containsKey(mediaId)) {
+            return;
+        }
+        pending.put(mediaId, positionMs);
+        if (!flushScheduled) {
+            try {
+                flusher.schedule(this::flush, flushIntervalMs, TimeUnit.MILLISECONDS);
+                flushScheduled = true;
+            } catch (RejectedExecutionException e) {
+                // 已关闭，直接写入
+                flushPending();
+            }
+        }
+    }
+
+    /**
+     * 立即写入所有待写条目，暂停、释放时调用
+     */
+    void flush() {
+        awaitLoaded();
+        synchronized (this) {
+            flushPending();
+        }
+    }
+
+    private void flushPending() {
+        flushScheduled = false;
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            if (out == null) {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            }
+            int before = out.size();
+            for (Map.Entry<String, Long> entry : pending.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            out.flush();
+            logRecords += pending.size();
+            recordsWritten.addAndGet(pending.size());
+            bytesWritten.addAndGet(out.size() - before);
+            pending.clear();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append positions", e);
+            closeOutput();
+            return;
+        }
+        if (logRecords - positions.size() > Math.max(MIN_COMPACT_GARBAGE, positions.size())) {
+            compact();
+        }
+    }
+
+    /**
+     * 在存储线程中写入待写条目并关闭日志，最多等待 {@link #SHUTDOWN_TIMEOUT_MS}；之后的更新直接写入
+     *
+     * @return 加载与刷盘在等待时间内完成时返回 true
+     */
+    boolean shutdown() {
+        try {
+            flusher.execute(() -> {
+                synchronized (this) {
+                    flushPending();
+                    closeOutput();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 已关闭
+            return flusher.isTerminated();
+        }
+        flusher.shutdown();
+        try {
+            if (flusher.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Log.w(TAG, "Position log still loading or flushing after " + SHUTDOWN_TIMEOUT_MS + "ms");
+        return false;
+    }
+
+    int size() {
+        awaitLoaded();
+        synchronized (this) {
+            return positions.size();
+        }
+    }
+
+    long getUpdates() {
+        return updates.get();
+    }
+
+    long getRecordsWritten() {
+        return recordsWritten.get();
+    }
+
+    long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    long getCompactions() {
+        return compactions.get();
+    }
+
+    long getLoadMicros() {
+        return loadMicros;
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                String mediaId;
+                long position;
+                try {
+                    mediaId = in.readUTF();
+                    position = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (position == REMOVED) {
+                    positions.remove(mediaId);
+                } else {
+                    positions.put(mediaId, position);
+                }
+                logRecords++;
+                valid += recordLength(mediaId);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load positions, keeping " + logRecords + " records", e);
+        }
+        if (valid < file.length()) {
+            // 截掉不完整的尾部记录，否则之后追加的记录无法解析
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(valid);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to truncate position log", e);
+            }
+        }
+    }
+
+    // 重写为只含存活条目的日志，写完再替换，中途失败不影响原日志
+    private void compact() {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try (DataOutputStream tempOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            for (Map.Entry<String, Long> entry : positions.entrySet()) {
+                tempOut.writeUTF(entry.getKey());
+                tempOut.writeLong(entry.getValue());
+            }
+            tempOut.flush();
+            bytesWritten.addAndGet(tempOut.size());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to compact position log", e);
+            temp.delete();
+            return;
+        }
+        closeOutput();
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Failed to replace position log");
+            temp.delete();
+            return;
+        }
+        logRecords = positions.size();
+        compactions.incrementAndGet();
+    }
+
+    private void closeOutput() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+            out = null;
+        }
+    }
+
+    // 一条记录的字节数: writeUTF 的 2 字节长度 + 修改版 UTF-8 内容 + 8 字节位置
+    private static long recordLength(String mediaId) {
+        long length = 2 + 8;
+        for (int i = 0; i < mediaId.length(); i++) {
+            char c = mediaId.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length += 1;
+            } else if (c <= 0x07FF) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
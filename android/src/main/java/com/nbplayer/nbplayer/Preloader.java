@@ -0,0 +1,157 @@
+package com.nbplayer.nbplayer;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 预加载即将播放的 URL
+ *
+ * <p>把资源开头的若干字节拉入共享的 {@link BlockCache}，同时记录资源总长度。
+ * 之后对该 URL 的 setDataSource 会经缓存读取，prepareAsync 的探测阶段不再等待网络。
+ * 同时进行的预加载数受线程池大小限制，可按 URL 取消；取消在块内每次读取之间生效。
+ */
+class Preloader {
+    private static final String TAG = "NbPreloader";
+
+    // 只给出时长时按 128 kbps 估算字节数
+    private static final long ASSUMED_BYTES_PER_MS = 128000 / 8 / 1000;
+
+    interface Callback {
+        void onComplete(long bytes);
+
+        void onError(String message);
+
+        void onCancelled();
+    }
+
+    private final BlockCache cache;
+    private final HttpConnector connector;
+    private final ExecutorService executor;
+    private final Map<String, Task> tasks = new ConcurrentHashMap<>();
+
+    Preloader(BlockCache cache, HttpConnector connector, int maxConcurrent) {
+        this.cache = cache;
+        this.connector = connector;
+        this.executor = Executors.newFixedThreadPool(maxConcurrent, runnable -> {
+            Thread thread = new Thread(runnable, "nbplayer-preload");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static long bytesForDuration(long durationMs) {
+        return durationMs * ASSUMED_BYTES_PER_MS;
+    }
+
+    /**
+     * 同一 URL 已在预加载时返回 false
+     *
+     * @param headers 请求头，应与之后 setDataSource 使用的一致，可为 null
+     */
+    synchronized boolean preload(String url, Map<String, String> headers, long bytes, Callback callback) {
+        if (tasks.containsKey(url)) {
+            return false;
+        }
+        Task task = new Task(url, headers, bytes, callback);
+        tasks.put(url, task);
+        task.future = executor.submit(task);
+        return true;
+    }
+
+    synchronized boolean cancel(String url) {
+        Task task = tasks.remove(url);
+        if (task == null) {
+            return false;
+        }
+        task.future.cancel(true);
+        // 排队中被取消的任务不会运行，这里负责回调
+        task.finishCancelled();
+        return true;
+    }
+
+    boolean isPreloaded(String url) {
+        return cache.hasBlock(BlockCache.keyFor(url), 0);
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+        for (Task task : tasks.values()) {
+            task.finishCancelled();
+        }
+        tasks.clear();
+    }
+
+    // 在预加载线程中执行，被中断时块内的读取抛出 InterruptedIOException
+    private long fetch(String url, Map<String, String> headers, long bytes) throws IOException {
+        CachedHttpMediaDataSource source = new CachedHttpMediaDataSource(url, headers, cache, connector);
+        try {
+            long size = source.getSize();
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Preload cancelled");
+            }
+            long target = size >= 0 ? Math.min(bytes, size) : bytes;
+            long position = 0;
+            while (position < target) {
+                if (!source.prefetch(position)) {
+                    break;
+                }
+                position += BlockCache.BLOCK_SIZE;
+            }
+            return Math.min(position, target);
+        } finally {
+            source.close();
+        }
+    }
+
+    private class Task implements Runnable {
+        final String url;
+        final Map<String, String> headers;
+        final long bytes;
+        final Callback callback;
+        // 回调只触发一次
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        volatile Future<?> future;
+
+        Task(String url, Map<String, String> headers, long bytes, Callback callback) {
+            this.url = url;
+            this.headers = headers;
+            this.bytes = bytes;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long cached = fetch(url, headers, bytes);
+                if (Thread.currentThread().isInterrupted()) {
+                    finishCancelled();
+                } else if (finished.compareAndSet(false, true)) {
+                    callback.onComplete(cached);
+                }
+            } catch (InterruptedIOException e) {
+                finishCancelled();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to preload " + url, e);
+                if (finished.compareAndSet(false, true)) {
+                    callback.onError(e.getMessage());
+                }
+            } finally {
+                tasks.remove(url, this);
+            }
+        }
+
+        void finishCancelled() {
+            if (finished.compareAndSet(false, true)) {
+                callback.onCancelled();
+            }
+        }
+    }
+}
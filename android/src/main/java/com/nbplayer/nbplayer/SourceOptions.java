@@ -0,0 +1,41 @@
+package com.nbplayer.nbplayer;
+
+import io.flutter.plugin.common.MethodCall;
+
+import java.util.Map;
+
+/**
+ * setDataSource / setPlaylist 的数据源参数，由 {@link PlayerHost#openDataSource} 据此选择数据源
+ */
+final class SourceOptions {
+    static final SourceOptions DEFAULT = new SourceOptions(null, false, false, 0, BufferingProfile.STANDARD);
+
+    final Map<String, String> headers;
+    // HTTP/HTTPS 数据经磁盘块缓存读取
+    final boolean cache;
+    // HTTP/HTTPS 数据经共享连接池拉取，连续曲目复用连接
+    final boolean reuseConnection;
+    // 大于 0 时 HTTP/HTTPS 数据按分段并行拉取，为单个数据源的并发连接数，上限由宿主决定
+    final int parallelConnections;
+    final BufferingProfile profile;
+
+    SourceOptions(Map<String, String> headers, boolean cache, boolean reuseConnection, int parallelConnections,
+                  BufferingProfile profile) {
+        this.headers = headers;
+        this.cache = cache;
+        this.reuseConnection = reuseConnection;
+        this.parallelConnections = parallelConnections;
+        this.profile = profile;
+    }
+
+    static SourceOptions from(MethodCall call) {
+        Map<String, String> headers = call.argument("headers");
+        Boolean cache = call.argument("cache");
+        Boolean reuseConnection = call.argument("reuseConnection");
+        Integer parallelConnections = call.argument("parallelConnections");
+        String profile = call.argument("profile");
+        return new SourceOptions(headers, cache != null && cache, reuseConnection != null && reuseConnection,
+            parallelConnections != null ? Math.max(0, parallelConnections) : 0,
+            BufferingProfile.fromName(profile));
+    }
+}
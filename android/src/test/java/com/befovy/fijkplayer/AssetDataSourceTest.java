@@ -0,0 +1,257 @@
+package com.befovy.fijkplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/**
+ * Replays a demuxer-like access pattern against the asset data sources: mostly
+ * sequential reads, short backward jumps between interleaved tracks and a few
+ * user seeks. A compressed asset is modelled by a stream that inflates on read
+ * and skip and rewinds by inflating again from the start, like AssetManager's
+ * compressed assets; an uncompressed one by a range of a temp file standing in
+ * for the apk.
+ */
+public class AssetDataSourceTest {
+
+    private static final int SIZE = 8 * 1024 * 1024;
+    private static final int CHUNK = 32 * 1024;
+    private static final int READS = 512;
+    private static final int SEEK_INTERVAL = 64;
+    // the asset's offset inside the apk
+    private static final int APK_OFFSET = 123457;
+
+    private static byte[] sContent;
+    private static byte[] sCompressed;
+    private static File sApk;
+
+    @BeforeClass
+    public static void createAsset() throws IOException {
+        // compressible like media headers and silence, not like random bytes
+        sContent = new byte[SIZE];
+        Random random = new Random(42);
+        for (int i = 0; i < SIZE; i++)
+            sContent[i] = (byte) random.nextInt(16);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED))) {
+            out.write(sContent);
+        }
+        sCompressed = bytes.toByteArray();
+
+        sApk = File.createTempFile("fijk-apk", ".bin");
+        try (FileOutputStream out = new FileOutputStream(sApk)) {
+            out.write(new byte[APK_OFFSET]);
+            out.write(sContent);
+            out.write(new byte[999]);
+        }
+    }
+
+    @AfterClass
+    public static void deleteAsset() {
+        if (sApk != null)
+            sApk.delete();
+    }
+
+    /**
+     * All three sources replay the pattern byte for byte; the block cache inflates a fraction
+     * of what reset and skip did. Read times are measured by AssetDataSourceBenchmark in the
+     * benchmarks module.
+     */
+    @Test
+    public void blockCacheInflatesLessThanResetAndSkip() throws IOException {
+        CompressedAssetStream oldStream = new CompressedAssetStream();
+        assertEquals(READS, replay(new StreamDataSource(oldStream)));
+
+        CompressedAssetStream rawStream = new CompressedAssetStream();
+        assertEquals(READS, replay(new RawMediaDataSource(rawStream)));
+
+        assertEquals(READS, replay(new AssetFdMediaDataSource(assetFd())));
+
+        // every backward jump used to inflate from the start, now only user seeks behind the cache do
+        assertTrue(rawStream.mInflated + " of " + oldStream.mInflated + " bytes inflated",
+                rawStream.mInflated * 4 < oldStream.mInflated);
+    }
+
+    @Test
+    public void assetFdReadsOnlyTheAssetRange() throws IOException {
+        AssetFdMediaDataSource source = new AssetFdMediaDataSource(assetFd());
+        assertEquals(SIZE, source.getSize());
+        byte[] buffer = new byte[64];
+        assertEquals(10, source.readAt(SIZE - 10, buffer, 0, 64));
+        assertEquals(-1, source.readAt(SIZE, buffer, 0, 64));
+        source.close();
+        assertEquals(-1, source.readAt(0, buffer, 0, 64));
+    }
+
+    // reads the pattern, checks every byte and returns the number of reads
+    private static int replay(IMediaDataSource source) throws IOException {
+        int reads = 0;
+        Random random = new Random(7);
+        byte[] buffer = new byte[CHUNK];
+        long position = 0;
+        for (int i = 0; i < READS; i++) {
+            if (position >= SIZE)
+                position = random.nextInt(SIZE);
+            int n = source.readAt(position, buffer, 0, CHUNK);
+            assertTrue("read at " + position, n > 0);
+            reads++;
+            for (int j = 0; j < n; j++) {
+                if (buffer[j] != sContent[(int) position + j])
+                    throw new AssertionError("mismatch at " + (position + j));
+            }
+            position += n;
+
+            if (i % SEEK_INTERVAL == SEEK_INTERVAL - 1) {
+                // user seek
+                position = random.nextInt(SIZE);
+            } else if (random.nextInt(10) == 0) {
+                // audio and video packets interleaved a little apart
+                position = Math.max(0, position - 2 * CHUNK);
+            }
+        }
+        source.close();
+        return reads;
+    }
+
+    private static AssetFileDescriptor assetFd() throws IOException {
+        AssetFileDescriptor fd = mock(AssetFileDescriptor.class);
+        when(fd.createInputStream()).thenReturn(new FileInputStream(sApk));
+        when(fd.getStartOffset()).thenReturn((long) APK_OFFSET);
+        when(fd.getLength()).thenReturn((long) SIZE);
+        return fd;
+    }
+
+    /**
+     * Compressed asset stream: skip inflates and discards, reset inflates again from the start.
+     */
+    private static class CompressedAssetStream extends InputStream {
+
+        private InflaterInputStream mIn = open();
+        private long mPosition = 0;
+        long mInflated = 0;
+
+        private static InflaterInputStream open() {
+            return new InflaterInputStream(new ByteArrayInputStream(sCompressed));
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = mIn.read(b, off, len);
+            if (n > 0) {
+                mPosition += n;
+                mInflated += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] discard = new byte[(int) Math.min(n, 64 * 1024)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(discard, 0, (int) Math.min(discard.length, n - skipped));
+                if (read < 0)
+                    break;
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) (SIZE - mPosition);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            mIn.close();
+            mIn = open();
+            mPosition = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mIn.close();
+        }
+    }
+
+    /**
+     * RawMediaDataSource before the block cache: every non-contiguous read
+     * rewinds the stream and skips from the start.
+     */
+    private static class StreamDataSource implements IMediaDataSource {
+
+        private final InputStream mIs;
+        private long mPosition = 0;
+
+        StreamDataSource(InputStream is) {
+            mIs = is;
+        }
+
+        @Override
+        public int readAt(long position, byte[] buffer, int offset, int size) {
+            if (size <= 0)
+                return size;
+            int length = -1;
+            try {
+                if (mPosition != position) {
+                    mIs.reset();
+                    mPosition = mIs.skip(position);
+                }
+                length = mIs.read(buffer, offset, size);
+                mPosition += length;
+            } catch (IOException e) {
+                Log.e("DataSource", "failed to read" + e.getMessage());
+            }
+            return length;
+        }
+
+        @Override
+        public long getSize() {
+            return SIZE;
+        }
+
+        @Override
+        public void close() {
+            try {
+                mIs.close();
+            } catch (IOException e) {
+                Log.e("DataSource", "failed to close" + e.getMessage());
+            }
+        }
+    }
+}
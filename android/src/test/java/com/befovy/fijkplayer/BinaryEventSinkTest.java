@@ -0,0 +1,206 @@
+package com.befovy.fijkplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Test;
+import org.mockito.MockedConstruction;
+import org.mockito.MockedStatic;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+
+public class BinaryEventSinkTest {
+
+    private static final int EVENTS = 200000;
+    // keeps the baseline loop from being optimized away
+    private static volatile Looper sLooper;
+
+    @Test
+    public void writesLittleEndianRecords() {
+        RecordingMessenger messenger = new RecordingMessenger();
+        try (MockedConstruction<Handler> ignored = mockConstruction(Handler.class)) {
+            // no main looper is prepared on the JVM, Looper.myLooper() == Looper.getMainLooper() == null,
+            // so the test thread takes the main thread path
+            BinaryEventSink sink = new BinaryEventSink(messenger, "binary_event/1");
+            sink.sendPosition(1234);
+            sink.sendPosition(-1);
+        }
+        assertEquals(2, messenger.records.size());
+        ByteBuffer record = ByteBuffer.wrap(messenger.records.get(0)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(BinaryEventSink.RECORD_SIZE, record.remaining());
+        assertEquals(BinaryEventSink.EVENT_POS, record.getInt());
+        assertEquals(1234, record.getInt());
+        assertEquals(0, record.getInt());
+        assertEquals(0, record.getInt());
+        assertEquals(-1, ByteBuffer.wrap(messenger.records.get(1)).order(ByteOrder.LITTLE_ENDIAN).getInt(4));
+    }
+
+    @Test
+    public void positionsFromOtherThreadsArePostedOnceAndLatestWins() throws Exception {
+        RecordingMessenger messenger = new RecordingMessenger();
+        final List<Runnable> posted = new ArrayList<>();
+        Looper mainLooper = mock(Looper.class);
+        try (MockedStatic<Looper> looper = mockStatic(Looper.class);
+             MockedConstruction<Handler> ignored = mockConstruction(Handler.class, (handler, context) ->
+                     when(handler.post(any(Runnable.class))).thenAnswer(invocation -> {
+                         synchronized (posted) {
+                             posted.add(invocation.getArgument(0));
+                         }
+                         return true;
+                     }))) {
+            looper.when(Looper::getMainLooper).thenReturn(mainLooper);
+            final BinaryEventSink sink = new BinaryEventSink(messenger, "binary_event/1");
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int pos = 0; pos <= 1000; pos++)
+                        sink.sendPosition(pos);
+                }
+            });
+            thread.start();
+            thread.join();
+            assertEquals(1, posted.size());
+            assertEquals(0, messenger.records.size());
+            posted.get(0).run();
+        }
+        assertEquals(1, messenger.records.size());
+        assertEquals(1000, ByteBuffer.wrap(messenger.records.get(0)).order(ByteOrder.LITTLE_ENDIAN).getInt(4));
+    }
+
+    /**
+     * Every pos event reaches the messenger as one record, and the binary path allocates
+     * nothing per event once warmed up; the map path allocates a HashMap, its entries and a
+     * boxed Integer. Timing is measured by BinaryEventSinkBenchmark in the benchmarks module.
+     */
+    @Test
+    public void binaryPathDoesNotAllocatePerEvent() {
+        RecordingMessenger messenger = new RecordingMessenger();
+        messenger.keep = false;
+        BinaryEventSink sink;
+        try (MockedConstruction<Handler> ignored = mockConstruction(Handler.class)) {
+            sink = new BinaryEventSink(messenger, "binary_event/1");
+        }
+        QueuingEventSink queuingSink = new QueuingEventSink();
+        NoopEventSink delegate = new NoopEventSink();
+        queuingSink.setDelegate(delegate);
+
+        // loads the management classes and compiles both paths outside of the measurement
+        allocatedBytes();
+        runBinary(sink, EVENTS);
+        runMap(queuingSink, EVENTS);
+        messenger.sent = 0;
+        delegate.count = 0;
+
+        boolean looperIntercepted = looperIntercepted();
+        long binaryBytes = allocatedBytes();
+        runBinary(sink, EVENTS);
+        binaryBytes = allocatedBytes() - binaryBytes;
+
+        long mapBytes = allocatedBytes();
+        runMap(queuingSink, EVENTS);
+        mapBytes = allocatedBytes() - mapBytes;
+
+        assertEquals(EVENTS * 4L, messenger.sent);
+        assertEquals(EVENTS, delegate.count);
+        if (!looperIntercepted)
+            assertTrue("binary path allocates " + binaryBytes + " bytes", binaryBytes < EVENTS / 100);
+        // at least a HashMap per map event
+        assertTrue("map path allocates " + mapBytes + " bytes", mapBytes > EVENTS * 32L);
+    }
+
+    private static void runBinary(BinaryEventSink sink, int events) {
+        for (int i = 0; i < events; i++)
+            sink.sendPosition(i);
+    }
+
+    private static void runMap(QueuingEventSink sink, int events) {
+        for (int i = 0; i < events; i++) {
+            // as FijkPlayer.handlePositionUpdate without binary-position
+            Map<String, Object> event = new HashMap<>();
+            event.put("event", "pos");
+            event.put("pos", i);
+            sink.success(event);
+        }
+    }
+
+    /**
+     * Whether Looper.myLooper() allocates. Once an earlier test in this JVM has mocked
+     * Looper statically, Mockito's inline dispatch stays in its methods and allocates on
+     * every call of both paths, so only the relative comparison is meaningful.
+     */
+    private static boolean looperIntercepted() {
+        long bytes = allocatedBytes();
+        for (int i = 0; i < 1000; i++)
+            sLooper = Looper.myLooper();
+        return allocatedBytes() - bytes > 1000;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static class RecordingMessenger implements BinaryMessenger {
+        final List<byte[]> records = new ArrayList<>();
+        boolean keep = true;
+        long sent = 0;
+
+        @Override
+        public void send(String channel, ByteBuffer message) {
+            send(channel, message, null);
+        }
+
+        @Override
+        public void send(String channel, ByteBuffer message, BinaryReply callback) {
+            // like the engine, the message length is the buffer position
+            if (keep) {
+                byte[] record = new byte[message.position()];
+                ByteBuffer copy = message.duplicate();
+                copy.flip();
+                copy.get(record);
+                records.add(record);
+            }
+            sent += message.position() / 4;
+        }
+
+        @Override
+        public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+        }
+    }
+
+    private static class NoopEventSink implements EventChannel.EventSink {
+        Object last;
+        int count;
+
+        @Override
+        public void success(Object event) {
+            last = event;
+            count++;
+        }
+
+        @Override
+        public void error(String code, String message, Object details) {
+        }
+
+        @Override
+        public void endOfStream() {
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.befovy.fijkplayer;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedConstruction;
+import org.mockito.MockedStatic;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+import tv.danmaku.ijk.media.player.IjkEventListener;
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * Drives a player in position anchor mode with a native clock that runs a
+ * little fast, a speed change, a buffering stall and a seek, and checks the
+ * position dart extrapolates from the anchors against the native position.
+ */
+public class FijkPlayerAnchorTest {
+
+    private static final int STARTED = 4;
+    private static final long TICK_MS = 200;
+    // dart's ticker, the extrapolated position is compared this often
+    private static final long SAMPLE_MS = 50;
+    // the audio clock runs 3% faster than the wall clock the anchors are extrapolated with
+    private static final double CLOCK_RATE = 1.03;
+    private static final long ANCHOR_DRIFT_THRESHOLD_MS = 80;
+
+    private MockedStatic<SystemClock> mClock;
+    private MockedConstruction<Handler> mHandlers;
+    private MockedConstruction<EventChannel> mEventChannels;
+    private MockedConstruction<IjkMediaPlayer> mPlayers;
+    private FijkPlayer mPlayer;
+    private PlayerMetrics mMetrics;
+
+    private long mNowNanos = 0;
+    private double mNativePos = 0;
+    // the last pos_anchor event, as dart keeps it
+    private Map<?, ?> mAnchor;
+    private int mAnchors = 0;
+
+    @Before
+    public void setUp() {
+        mClock = mockStatic(SystemClock.class);
+        mClock.when(SystemClock::elapsedRealtimeNanos).thenAnswer(invocation -> mNowNanos);
+        mClock.when(SystemClock::uptimeMillis).thenAnswer(invocation -> mNowNanos / 1000000);
+        mHandlers = mockConstruction(Handler.class);
+        mEventChannels = mockConstruction(EventChannel.class, (channel, context) ->
+                doAnswer(invocation -> {
+                    EventChannel.StreamHandler handler = invocation.getArgument(0);
+                    if (handler != null)
+                        handler.onListen(null, new AnchorSink());
+                    return null;
+                }).when(channel).setStreamHandler(any()));
+        mPlayers = mockConstruction(IjkMediaPlayer.class, (player, context) ->
+                when(player.getCurrentPosition()).thenAnswer(invocation -> (long) mNativePos));
+
+        FijkEngine engine = mock(FijkEngine.class);
+        when(engine.messenger()).thenReturn(mock(BinaryMessenger.class));
+        mMetrics = new PlayerMetrics();
+        when(engine.metrics()).thenReturn(mMetrics);
+        mPlayer = new FijkPlayer(engine, false);
+
+        Map<String, Object> host = new HashMap<>();
+        host.put(HostOption.POSITION_ANCHOR, 1);
+        host.put(HostOption.POSITION_ANCHOR_INTERVAL, 5000);
+        Map<Integer, Object> options = new HashMap<>();
+        options.put(0, host);
+        mPlayer.onMethodCall(new MethodCall("applyOptions", options), mock(MethodChannel.Result.class));
+        mPlayer.setup();
+    }
+
+    @After
+    public void tearDown() {
+        mPlayers.close();
+        mEventChannels.close();
+        mHandlers.close();
+        mClock.close();
+    }
+
+    @Test
+    public void extrapolatedPositionStaysCloseToNative() {
+        IjkMediaPlayer native0 = mPlayers.constructed().get(0);
+        event(native0, IjkEventListener.PLAYBACK_STATE_CHANGED, STARTED, 3);
+        float speed = 1.0f;
+        boolean buffering = false;
+        long maxDriftMs = 0;
+        int ticks = 0;
+
+        for (long now = 0; now < 60000; now += SAMPLE_MS) {
+            mNowNanos = now * 1000000;
+            if (!buffering)
+                mNativePos += SAMPLE_MS * speed * CLOCK_RATE;
+
+            if (now == 20000) {
+                speed = 1.5f;
+                Map<String, Object> arguments = new HashMap<>();
+                arguments.put("speed", 1.5);
+                mPlayer.onMethodCall(new MethodCall("setSpeed", arguments), mock(MethodChannel.Result.class));
+            } else if (now == 30000) {
+                buffering = true;
+                event(native0, IjkEventListener.BUFFERING_START, 0, 0);
+            } else if (now == 32000) {
+                buffering = false;
+                event(native0, IjkEventListener.BUFFERING_END, 0, 0);
+            } else if (now == 45000) {
+                mNativePos = 5000;
+                event(native0, IjkEventListener.SEEK_COMPLETE, 5000, 0);
+            }
+            if (now % TICK_MS == 0) {
+                event(native0, IjkEventListener.CURRENT_POSITION_UPDATE, (int) mNativePos, 0);
+                ticks++;
+            }
+            maxDriftMs = Math.max(maxDriftMs, Math.abs(extrapolated() - (long) mNativePos));
+        }
+
+        // a tick can add a few ms beyond the threshold before the next anchor corrects it
+        assertTrue("max drift " + maxDriftMs + "ms", maxDriftMs <= ANCHOR_DRIFT_THRESHOLD_MS + TICK_MS / 10);
+        // corrections, not an anchor per position update
+        assertTrue("anchors " + mAnchors, mAnchors < ticks / 5);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> drift = (Map<String, Object>) mMetrics.toMap().get("positionDrift");
+        assertTrue(((Number) drift.get("count")).intValue() > 0);
+    }
+
+    // the position dart shows: anchor position plus wall clock time since the anchor at its speed
+    private long extrapolated() {
+        long pos = ((Number) mAnchor.get("pos")).longValue();
+        if (!(Boolean) mAnchor.get("playing"))
+            return pos;
+        long elapsedNanos = mNowNanos - ((Number) mAnchor.get("time")).longValue();
+        return pos + (long) (elapsedNanos / 1000000.0 * ((Number) mAnchor.get("speed")).doubleValue());
+    }
+
+    private void event(IjkMediaPlayer player, int what, int arg1, int arg2) {
+        mPlayer.onEvent(player, what, arg1, arg2, null);
+    }
+
+    private class AnchorSink implements EventChannel.EventSink {
+        @Override
+        public void success(Object event) {
+            if (event instanceof Map && "pos_anchor".equals(((Map<?, ?>) event).get("event"))) {
+                mAnchor = (Map<?, ?>) event;
+                mAnchors++;
+            }
+        }
+
+        @Override
+        public void error(String code, String message, Object details) {
+        }
+
+        @Override
+        public void endOfStream() {
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.befovy.fijkplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedConstruction;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+import tv.danmaku.ijk.media.player.IjkEventListener;
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+public class FijkPlayerDemoteTest {
+
+    private MockedConstruction<Handler> mHandlers;
+    private MockedConstruction<EventChannel> mEventChannels;
+    private MockedConstruction<IjkMediaPlayer> mPlayers;
+    // players released so far; a released mock throws like the native player does
+    private final Map<IjkMediaPlayer, AtomicBoolean> mReleased = new HashMap<>();
+    private FijkPlayer mPlayer;
+
+    @Before
+    public void setUp() {
+        mHandlers = mockConstruction(Handler.class);
+        // a no-op subscriber keeps QueuingEventSink from buffering every event
+        mEventChannels = mockConstruction(EventChannel.class, (channel, context) ->
+                doAnswer(invocation -> {
+                    EventChannel.StreamHandler handler = invocation.getArgument(0);
+                    if (handler != null)
+                        handler.onListen(null, new NoopSink());
+                    return null;
+                }).when(channel).setStreamHandler(any()));
+        mPlayers = mockConstruction(IjkMediaPlayer.class, (player, context) -> {
+            final AtomicBoolean released = new AtomicBoolean(false);
+            synchronized (mReleased) {
+                mReleased.put(player, released);
+            }
+            doAnswer(invocation -> {
+                released.set(true);
+                return null;
+            }).when(player).release();
+            when(player.getDuration()).thenAnswer(invocation -> {
+                if (released.get())
+                    throw new IllegalStateException("getDuration: null mp");
+                return 1000L;
+            });
+            doAnswer(invocation -> {
+                if (released.get())
+                    throw new IllegalStateException("setSpeed: null mp");
+                return null;
+            }).when(player).setSpeed(any(Float.class));
+        });
+
+        FijkEngine engine = mock(FijkEngine.class);
+        when(engine.messenger()).thenReturn(mock(BinaryMessenger.class));
+        when(engine.metrics()).thenReturn(new PlayerMetrics());
+        mPlayer = new FijkPlayer(engine, false);
+    }
+
+    @After
+    public void tearDown() {
+        mPlayers.close();
+        mEventChannels.close();
+        mHandlers.close();
+    }
+
+    @Test
+    public void optionsAreReplayedOncePerKeyAndClearedOnReset() {
+        for (int i = 0; i < 100; i++) {
+            call("setOption", "cat", IjkMediaPlayer.OPT_CATEGORY_PLAYER, "key", "framedrop", "long", i);
+        }
+        mPlayer.demote();
+        assertTrue(!mPlayer.isLive());
+        call("setVolume", "volume", 1.0);
+
+        assertEquals(2, mPlayers.constructed().size());
+        IjkMediaPlayer rehydrated = mPlayers.constructed().get(1);
+        verify(rehydrated, times(1)).setOption(eq(IjkMediaPlayer.OPT_CATEGORY_PLAYER), eq("framedrop"), anyLong());
+        verify(rehydrated).setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "framedrop", 99L);
+
+        // reset drops native options, the replay list follows
+        call("reset");
+        mPlayer.demote();
+        call("setVolume", "volume", 1.0);
+        IjkMediaPlayer afterReset = mPlayers.constructed().get(2);
+        verify(afterReset, never()).setOption(anyInt(), eq("framedrop"), anyLong());
+    }
+
+    @Test
+    public void eventsFromDemotedPlayerAreIgnored() {
+        IjkMediaPlayer first = mPlayers.constructed().get(0);
+        mPlayer.demote();
+        // a PREPARED still queued on the event thread when the player was released
+        mPlayer.onEvent(first, IjkEventListener.PREPARED, 0, 0, null);
+        verify(first, never()).getDuration();
+    }
+
+    @Test
+    public void demoteDoesNotReleaseUnderEventThread() throws Exception {
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicLong handled = new AtomicLong();
+        Thread eventThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!stop.get()) {
+                        IjkMediaPlayer current = latestPlayer();
+                        mPlayer.onEvent(current, IjkEventListener.PREPARED, 0, 0, null);
+                        handled.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        }, "ijk-event");
+        eventThread.start();
+        // demote and rehydrate on the main thread while PREPARED events keep arriving
+        for (int i = 0; i < 2000 && failure.get() == null; i++) {
+            mPlayer.demote();
+            call("setVolume", "volume", 1.0);
+        }
+        stop.set(true);
+        eventThread.join();
+        assertNull(String.valueOf(failure.get()), failure.get());
+        assertTrue(handled.get() > 0);
+    }
+
+    private IjkMediaPlayer latestPlayer() {
+        synchronized (mReleased) {
+            IjkMediaPlayer latest = null;
+            for (IjkMediaPlayer player : mReleased.keySet()) {
+                if (!mReleased.get(player).get())
+                    latest = player;
+            }
+            return latest;
+        }
+    }
+
+    private void call(String method, Object... keyValues) {
+        Map<String, Object> arguments = new HashMap<>();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            arguments.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        mPlayer.onMethodCall(new MethodCall(method, arguments), mock(MethodChannel.Result.class));
+    }
+
+    private static class NoopSink implements EventChannel.EventSink {
+        @Override
+        public void success(Object event) {
+        }
+
+        @Override
+        public void error(String code, String message, Object details) {
+        }
+
+        @Override
+        public void endOfStream() {
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.befovy.fijkplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyFloat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedConstruction;
+import org.mockito.MockedStatic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+import tv.danmaku.ijk.media.player.IjkEventListener;
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * Live catch-up on top of a speed set from dart: the controller scales the
+ * user's speed within its bounds and returns to it, instead of replacing it
+ * with a speed around 1x. Speed changes from the main thread race catch-up
+ * and anchors on the event thread without leaving them inconsistent.
+ */
+public class FijkPlayerSpeedTest {
+
+    private static final int STARTED = 4;
+    private static final long TICK_MS = 200;
+    private static final int TARGET_MS = 2000;
+    private static final float USER_SPEED = 1.5f;
+    // FijkPlayer's defaults for latency-min-speed and latency-max-speed
+    private static final float MIN_FACTOR = 0.95f;
+    private static final float MAX_FACTOR = 1.1f;
+
+    private MockedStatic<SystemClock> mClock;
+    private MockedConstruction<Handler> mHandlers;
+    private MockedConstruction<EventChannel> mEventChannels;
+    private MockedConstruction<IjkMediaPlayer> mPlayers;
+    private FijkPlayer mPlayer;
+
+    private long mNowMs = 0;
+    private long mNativePos = 0;
+    // speeds passed to the native player, in order
+    private final List<Float> mNativeSpeeds = Collections.synchronizedList(new ArrayList<>());
+    private volatile Map<?, ?> mLatency;
+    private volatile Map<?, ?> mAnchor;
+
+    @Before
+    public void setUp() {
+        mClock = mockStatic(SystemClock.class);
+        mClock.when(SystemClock::elapsedRealtimeNanos).thenAnswer(invocation -> mNowMs * 1000000);
+        mClock.when(SystemClock::uptimeMillis).thenAnswer(invocation -> mNowMs);
+        mHandlers = mockConstruction(Handler.class);
+        mEventChannels = mockConstruction(EventChannel.class, (channel, context) ->
+                doAnswer(invocation -> {
+                    EventChannel.StreamHandler handler = invocation.getArgument(0);
+                    if (handler != null)
+                        handler.onListen(null, new SpeedSink());
+                    return null;
+                }).when(channel).setStreamHandler(any()));
+        mPlayers = mockConstruction(IjkMediaPlayer.class, (player, context) -> {
+            when(player.getCurrentPosition()).thenAnswer(invocation -> mNativePos);
+            doAnswer(invocation -> {
+                mNativeSpeeds.add(invocation.getArgument(0));
+                return null;
+            }).when(player).setSpeed(anyFloat());
+        });
+
+        FijkEngine engine = mock(FijkEngine.class);
+        when(engine.messenger()).thenReturn(mock(BinaryMessenger.class));
+        when(engine.metrics()).thenReturn(new PlayerMetrics());
+        mPlayer = new FijkPlayer(engine, false);
+
+        Map<String, Object> host = new HashMap<>();
+        host.put(HostOption.LATENCY_TARGET_MS, TARGET_MS);
+        host.put(HostOption.POSITION_ANCHOR, 1);
+        Map<Integer, Object> options = new HashMap<>();
+        options.put(0, host);
+        mPlayer.onMethodCall(new MethodCall("applyOptions", options), mock(MethodChannel.Result.class));
+        mPlayer.setup();
+    }
+
+    @After
+    public void tearDown() {
+        mPlayers.close();
+        mEventChannels.close();
+        mHandlers.close();
+        mClock.close();
+    }
+
+    @Test
+    public void catchUpScalesUserSpeed() {
+        IjkMediaPlayer native0 = mPlayers.constructed().get(0);
+        event(native0, IjkEventListener.PLAYBACK_STATE_CHANGED, STARTED, 3);
+        setSpeed(USER_SPEED);
+        assertEquals(USER_SPEED, mNativeSpeeds.get(0), 0f);
+
+        // 6 s buffered after a rebuffer: catch up above the user's speed
+        play(30000, 6000);
+        float max = 0;
+        for (float speed : mNativeSpeeds)
+            max = Math.max(max, speed);
+        assertTrue("max speed " + max, max > USER_SPEED);
+        assertTrue("max speed " + max, max <= USER_SPEED * MAX_FACTOR + 1e-4f);
+        assertNotNull(mLatency);
+        assertTrue(((Number) mLatency.get("speed")).floatValue() > USER_SPEED);
+
+        // back at the target: the user's speed again, not 1x
+        play(30000, TARGET_MS);
+        assertEquals(USER_SPEED, mNativeSpeeds.get(mNativeSpeeds.size() - 1), 0f);
+        assertEquals(USER_SPEED, ((Number) mLatency.get("speed")).floatValue(), 0f);
+
+        // too little buffered: slow down below the user's speed, never below the bound
+        int from = mNativeSpeeds.size();
+        play(30000, 300);
+        float min = Float.MAX_VALUE;
+        for (float speed : mNativeSpeeds.subList(from, mNativeSpeeds.size()))
+            min = Math.min(min, speed);
+        assertTrue("min speed " + min, min < USER_SPEED);
+        assertTrue("min speed " + min, min >= USER_SPEED * MIN_FACTOR - 1e-4f);
+
+        // a seek resets the controller and restores the user's speed at once
+        event(native0, IjkEventListener.SEEK_COMPLETE, (int) mNativePos, 0);
+        assertEquals(USER_SPEED, mNativeSpeeds.get(mNativeSpeeds.size() - 1), 0f);
+    }
+
+    @Test
+    public void speedChangesRaceCatchUpConsistently() throws Exception {
+        IjkMediaPlayer native0 = mPlayers.constructed().get(0);
+        event(native0, IjkEventListener.PLAYBACK_STATE_CHANGED, STARTED, 3);
+        // ijkplayer's event thread: the latency swings across the target, so the factor keeps changing
+        Thread events = new Thread(() -> {
+            for (int i = 0; i < 20000; i++) {
+                int pos = i * (int) TICK_MS;
+                long latency = (i / 50) % 2 == 0 ? 8000 : 200;
+                event(native0, IjkEventListener.BUFFERING_UPDATE, (int) (pos + latency), 0);
+                event(native0, IjkEventListener.CURRENT_POSITION_UPDATE, pos, 0);
+            }
+        });
+        events.start();
+        for (int i = 0; events.isAlive(); i++)
+            setSpeed(i % 2 == 0 ? 1.0f : 2.0f);
+        events.join();
+
+        // the last anchor dart extrapolates with carries the speed the native player runs at
+        float last = mNativeSpeeds.get(mNativeSpeeds.size() - 1);
+        assertEquals(last, ((Number) mAnchor.get("speed")).floatValue(), 0f);
+    }
+
+    private void setSpeed(float speed) {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("speed", (double) speed);
+        mPlayer.onMethodCall(new MethodCall("setSpeed", arguments), mock(MethodChannel.Result.class));
+    }
+
+    // plays for durationMs with latencyMs buffered ahead of the position
+    private void play(long durationMs, long latencyMs) {
+        IjkMediaPlayer native0 = mPlayers.constructed().get(0);
+        for (long end = mNowMs + durationMs; mNowMs < end; mNowMs += TICK_MS) {
+            mNativePos += TICK_MS;
+            event(native0, IjkEventListener.BUFFERING_UPDATE, (int) (mNativePos + latencyMs), 0);
+            event(native0, IjkEventListener.CURRENT_POSITION_UPDATE, (int) mNativePos, 0);
+        }
+    }
+
+    private void event(IjkMediaPlayer player, int what, int arg1, int arg2) {
+        mPlayer.onEvent(player, what, arg1, arg2, null);
+    }
+
+    private class SpeedSink implements EventChannel.EventSink {
+        @Override
+        public void success(Object event) {
+            if (!(event instanceof Map))
+                return;
+            Object kind = ((Map<?, ?>) event).get("event");
+            if ("latency".equals(kind))
+                mLatency = (Map<?, ?>) event;
+            else if ("pos_anchor".equals(kind))
+                mAnchor = (Map<?, ?>) event;
+        }
+
+        @Override
+        public void error(String code, String message, Object details) {
+        }
+
+        @Override
+        public void endOfStream() {
+        }
+    }
+}
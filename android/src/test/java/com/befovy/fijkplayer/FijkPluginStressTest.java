@@ -0,0 +1,231 @@
+package com.befovy.fijkplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedConstruction;
+import org.mockito.MockedStatic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+import tv.danmaku.ijk.media.player.IjkEventListener;
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * Creates, releases and demotes players on the main thread while every player's
+ * native event thread keeps reporting state changes, then checks that the
+ * plugin's counters and live budget agree with the players.
+ */
+public class FijkPluginStressTest {
+
+    private static final int EVENT_THREADS = 4;
+    private static final int MAX_PLAYERS = 8;
+    private static final int MAX_LIVE = 3;
+    private static final int MAX_PLAYING = 2;
+    private static final int ITERATIONS = 3000;
+    // native states an event thread moves its players through
+    private static final int[] NATIVE_STATES = {3, 4, 4, 5, 6, 4};
+
+    private MockedStatic<Looper> mLooper;
+    private MockedConstruction<Handler> mHandlers;
+    private MockedConstruction<NativeLoader> mLoaders;
+    private MockedConstruction<MethodChannel> mMethodChannels;
+    private MockedConstruction<EventChannel> mEventChannels;
+    private MockedConstruction<BasicMessageChannel> mMessageChannels;
+    private MockedConstruction<IjkMediaPlayer> mIjkPlayers;
+
+    // tasks posted to the main thread, run by the test thread
+    private final ConcurrentLinkedQueue<Runnable> mMainQueue = new ConcurrentLinkedQueue<>();
+    // the native player each FijkPlayer currently listens to
+    private final Map<FijkPlayer, IjkMediaPlayer> mNative = new ConcurrentHashMap<>();
+    private final List<FijkPlayer> mPlayers = new CopyOnWriteArrayList<>();
+    private FijkPlugin mPlugin;
+
+    @Before
+    public void setUp() {
+        final Looper mainLooper = mock(Looper.class);
+        mLooper = mockStatic(Looper.class);
+        mLooper.when(Looper::getMainLooper).thenReturn(mainLooper);
+        mLooper.when(Looper::myLooper).thenReturn(mainLooper);
+        mHandlers = mockConstruction(Handler.class, (handler, context) -> {
+            when(handler.getLooper()).thenReturn(mainLooper);
+            when(handler.post(any(Runnable.class))).thenAnswer(invocation -> {
+                mMainQueue.add(invocation.getArgument(0));
+                return true;
+            });
+        });
+        mLoaders = mockConstruction(NativeLoader.class, (loader, context) -> {
+            when(loader.isReady()).thenReturn(true);
+            doAnswer(invocation -> {
+                invocation.<Runnable>getArgument(0).run();
+                return null;
+            }).when(loader).whenReady(any());
+        });
+        mMethodChannels = mockConstruction(MethodChannel.class);
+        mEventChannels = mockConstruction(EventChannel.class);
+        mMessageChannels = mockConstruction(BasicMessageChannel.class);
+        mIjkPlayers = mockConstruction(IjkMediaPlayer.class, (player, context) ->
+                doAnswer(invocation -> {
+                    FijkPlayer listener = invocation.getArgument(0);
+                    mNative.put(listener, player);
+                    return null;
+                }).when(player).addIjkEventListener(any()));
+        mPlugin = new FijkPlugin();
+    }
+
+    @After
+    public void tearDown() {
+        mIjkPlayers.close();
+        mMessageChannels.close();
+        mEventChannels.close();
+        mMethodChannels.close();
+        mLoaders.close();
+        mHandlers.close();
+        mLooper.close();
+    }
+
+    @Test
+    public void countersAndBudgetSurviveConcurrentStateChanges() throws Exception {
+        call(mPlugin, "setPlayerBudget", "maxLive", MAX_LIVE, "maxPlaying", MAX_PLAYING);
+
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < EVENT_THREADS; t++) {
+            final int index = t;
+            // each player's events come from one thread, like ijkplayer's per-player event thread
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(index);
+                    Map<IjkMediaPlayer, Integer> nativeState = new HashMap<>();
+                    try {
+                        while (!stop.get()) {
+                            for (FijkPlayer player : mPlayers) {
+                                if (player.getPlayerId() % EVENT_THREADS != index)
+                                    continue;
+                                IjkMediaPlayer ijk = mNative.get(player);
+                                if (ijk == null)
+                                    continue;
+                                Integer old = nativeState.get(ijk);
+                                int next = NATIVE_STATES[random.nextInt(NATIVE_STATES.length)];
+                                nativeState.put(ijk, next);
+                                player.onEvent(ijk, IjkEventListener.PLAYBACK_STATE_CHANGED,
+                                        next, old != null ? old : 0, null);
+                            }
+                            Thread.yield();
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }, "ijk-event-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < ITERATIONS && failure.get() == null; i++) {
+            int op = random.nextInt(10);
+            if (op < 3 && mPlayers.size() < MAX_PLAYERS) {
+                createPlayer();
+            } else if (op < 5 && !mPlayers.isEmpty()) {
+                FijkPlayer victim = mPlayers.remove(random.nextInt(mPlayers.size()));
+                call(mPlugin, "releasePlayer", "pid", victim.getPlayerId());
+            } else if (!mPlayers.isEmpty()) {
+                // any call touches the player and brings a demoted one back
+                FijkPlayer player = mPlayers.get(random.nextInt(mPlayers.size()));
+                call(player, "setVolume", "volume", 1.0);
+            }
+            runMain();
+        }
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        runMain();
+        assertNull(String.valueOf(failure.get()), failure.get());
+
+        int playing = 0;
+        int live = 0;
+        int pinned = 0;
+        for (FijkPlayer player : mPlayers) {
+            if (player.isPlaying())
+                playing++;
+            if (player.isLive())
+                live++;
+            if (player.isLive() && !player.isDemotable())
+                pinned++;
+        }
+        assertEquals(playing, mPlugin.playingCount());
+        // only preparing or playing players may keep the plugin over its live budget
+        assertTrue("live " + live + ", pinned " + pinned, live <= Math.max(MAX_LIVE, pinned));
+
+        for (FijkPlayer player : mPlayers) {
+            call(mPlugin, "releasePlayer", "pid", player.getPlayerId());
+        }
+        runMain();
+        assertEquals(0, mPlugin.playingCount());
+        assertEquals(0, mPlugin.playableCount());
+    }
+
+    private void createPlayer() {
+        int before = mIjkPlayers.constructed().size();
+        MethodChannel.Result result = mock(MethodChannel.Result.class);
+        call(mPlugin, "createPlayer", result);
+        if (mIjkPlayers.constructed().size() == before)
+            return;
+        IjkMediaPlayer ijk = mIjkPlayers.constructed().get(before);
+        for (Map.Entry<FijkPlayer, IjkMediaPlayer> entry : mNative.entrySet()) {
+            // a player refused for the budget is released right away
+            if (entry.getValue() == ijk && entry.getKey().isLive())
+                mPlayers.add(entry.getKey());
+        }
+    }
+
+    private void runMain() {
+        Runnable task;
+        while ((task = mMainQueue.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static void call(MethodChannel.MethodCallHandler handler, String method, Object... keyValues) {
+        call(handler, method, mock(MethodChannel.Result.class), keyValues);
+    }
+
+    private static void call(MethodChannel.MethodCallHandler handler, String method,
+                             MethodChannel.Result result, Object... keyValues) {
+        Map<String, Object> arguments = new HashMap<>();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            arguments.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        handler.onMethodCall(new MethodCall(method, arguments), result);
+    }
+}
@@ -0,0 +1,86 @@
+package com.befovy.fijkplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class FileMediaDataSourceTest {
+
+    private static final int FILE_SIZE = 8 * 1024 * 1024;
+    private static final int CHUNK = 4096;
+
+    private static File sFile;
+    private static byte[] sContent;
+
+    @BeforeClass
+    public static void createFile() throws IOException {
+        sContent = new byte[FILE_SIZE];
+        new Random(42).nextBytes(sContent);
+        sFile = File.createTempFile("fijk-mmap", ".bin");
+        try (FileOutputStream out = new FileOutputStream(sFile)) {
+            out.write(sContent);
+        }
+    }
+
+    @AfterClass
+    public static void deleteFile() {
+        if (sFile != null)
+            sFile.delete();
+    }
+
+    @Test
+    public void readAtHonoursOffset() {
+        for (boolean mapped : new boolean[]{false, true}) {
+            FileMediaDataSource source = new FileMediaDataSource(sFile, mapped);
+            byte[] buffer = new byte[64];
+            assertEquals(32, source.readAt(100, buffer, 16, 32));
+            assertArrayEquals(Arrays.copyOfRange(sContent, 100, 132), Arrays.copyOfRange(buffer, 16, 48));
+            // bytes outside [offset, offset + size) are untouched
+            assertEquals(0, buffer[0]);
+            assertEquals(0, buffer[63]);
+            source.close();
+        }
+    }
+
+    @Test
+    public void mappedReadsMatchFileAcrossWindows() {
+        // 1 MiB windows force remapping on an 8 MiB file, like a 64 MiB window on a multi-GB file
+        FileMediaDataSource source = new FileMediaDataSource(sFile, true, 1024 * 1024);
+        assertEquals(FILE_SIZE, source.getSize());
+        byte[] buffer = new byte[CHUNK * 3];
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            long position = random.nextInt(FILE_SIZE);
+            int read = source.readAt(position, buffer, 0, buffer.length);
+            // reads never cross a window, a short read stops at the window end
+            int expected = (int) Math.min(buffer.length, 1024 * 1024 - position % (1024 * 1024));
+            assertEquals(expected, read);
+            assertArrayEquals(Arrays.copyOfRange(sContent, (int) position, (int) position + read),
+                    Arrays.copyOf(buffer, read));
+        }
+        assertEquals(-1, source.readAt(FILE_SIZE, buffer, 0, 16));
+        source.close();
+    }
+
+    @Test
+    public void mappedSequentialReadReachesEndOfFile() {
+        FileMediaDataSource source = new FileMediaDataSource(sFile, true, 3 * 1000 * 1000);
+        byte[] copy = new byte[FILE_SIZE];
+        long position = 0;
+        int read;
+        while ((read = source.readAt(position, copy, (int) position, Math.min(CHUNK * 5, FILE_SIZE - (int) position))) > 0)
+            position += read;
+        assertEquals(FILE_SIZE, position);
+        assertArrayEquals(sContent, copy);
+        source.close();
+    }
+}
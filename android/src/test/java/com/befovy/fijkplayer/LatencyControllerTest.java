@@ -0,0 +1,139 @@
+package com.befovy.fijkplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Drives the controller with a simulated live buffer: the encoder produces one
+ * ms of media per wall clock ms, delivered in whole segments; an outage stops
+ * delivery and the backlog arrives at BURST_RATE afterwards. Playback drains
+ * the buffer at the controller's speed, stalls when it runs dry and resumes
+ * once RESUME_MS is buffered again, like ijkplayer's rebuffering. The
+ * controller sees the same samples FijkPlayer feeds it from position events.
+ */
+public class LatencyControllerTest {
+
+    // FijkPlayer's defaults for latency-min-speed and latency-max-speed
+    private static final float MIN_SPEED = 0.95f;
+    private static final float MAX_SPEED = 1.1f;
+    private static final long TARGET_MS = 2000;
+    // position events
+    private static final long TICK_MS = 100;
+    private static final long SEGMENT_MS = 500;
+    private static final long RESUME_MS = 1000;
+    private static final long BURST_RATE = 4;
+    // latency is averaged over the end of a run, single samples follow the segment sawtooth
+    private static final long TAIL_MS = 10000;
+
+    @Test
+    public void catchesUpAfterRebuffer() {
+        Run fixed = simulate(null, TARGET_MS, 10000, 4000, 120000);
+        Run controlled = simulate(new LatencyController(TARGET_MS, MIN_SPEED, MAX_SPEED),
+                TARGET_MS, 10000, 4000, 120000);
+
+        assertEquals(1, fixed.stalls);
+        assertEquals(1, controlled.stalls);
+        // playing at 1x keeps the latency the stall added
+        assertTrue(fixed.finalLatencyMs > TARGET_MS + 2000);
+        assertTrue(controlled.finalLatencyMs < TARGET_MS + SEGMENT_MS / 2 + TARGET_MS / 10);
+        assertTrue(controlled.maxSpeed <= MAX_SPEED);
+        assertEquals(1.0f, controlled.finalSpeed, 0f);
+        // a ramp to max speed and back, not a wobble on every segment
+        assertTrue("speed changes " + controlled.speedChanges, controlled.speedChanges < 40);
+    }
+
+    @Test
+    public void slowsDownWhenBelowTarget() {
+        // joined with only 300 ms buffered
+        Run fixed = simulate(null, 300, 0, 0, 120000);
+        Run controlled = simulate(new LatencyController(TARGET_MS, MIN_SPEED, MAX_SPEED), 300, 0, 0, 120000);
+
+        assertTrue(controlled.minSpeed >= MIN_SPEED);
+        // 1x never builds the buffer back, slowing down settles at the edge of the dead band
+        assertTrue(fixed.finalLatencyMs < TARGET_MS - 1000);
+        assertTrue(controlled.finalLatencyMs > TARGET_MS - SEGMENT_MS / 2 - TARGET_MS / 10);
+        assertTrue(controlled.stalls <= fixed.stalls);
+    }
+
+    @Test
+    public void holdsSpeedOnSegmentSawtooth() {
+        // at the target, segment delivery moves the latency by SEGMENT_MS without any rebuffer
+        Run controlled = simulate(new LatencyController(TARGET_MS, MIN_SPEED, MAX_SPEED),
+                TARGET_MS, 0, 0, 60000);
+        assertEquals(0, controlled.stalls);
+        assertEquals(0, controlled.speedChanges);
+    }
+
+    /**
+     * @param controller null plays at 1x throughout
+     * @param initialMs  buffered duration when playback starts
+     * @param outageAtMs wall clock time delivery stops
+     * @param outageMs   how long delivery stays stopped, 0 for none
+     */
+    private static Run simulate(LatencyController controller, long initialMs,
+                                long outageAtMs, long outageMs, long durationMs) {
+        Run run = new Run();
+        run.minSpeed = 1.0f;
+        run.maxSpeed = 1.0f;
+        float speed = 1.0f;
+        // media time produced by the encoder, downloaded, and usable by the player
+        long liveMs = initialMs;
+        long receivedMs = initialMs;
+        long deliveredMs = initialMs;
+        double posMs = 0;
+        boolean stalled = false;
+        long latencySum = 0;
+        int samples = 0;
+        for (long now = 0; now < durationMs; now += TICK_MS) {
+            liveMs += TICK_MS;
+            boolean outage = now >= outageAtMs && now < outageAtMs + outageMs;
+            if (!outage) {
+                boolean backlog = outageMs > 0 && now >= outageAtMs + outageMs;
+                receivedMs = Math.min(liveMs, receivedMs + (backlog ? TICK_MS * BURST_RATE : TICK_MS));
+                // only whole segments reach the player
+                deliveredMs = Math.max(deliveredMs, receivedMs / SEGMENT_MS * SEGMENT_MS);
+            }
+
+            if (stalled) {
+                if (deliveredMs - posMs >= RESUME_MS)
+                    stalled = false;
+            } else {
+                posMs += TICK_MS * speed;
+                if (posMs >= deliveredMs) {
+                    posMs = deliveredMs;
+                    stalled = true;
+                    run.stalls++;
+                }
+            }
+
+            long latency = deliveredMs - (long) posMs;
+            if (controller != null && !stalled) {
+                if (controller.update(latency)) {
+                    speed = controller.speed();
+                    run.speedChanges++;
+                }
+            }
+            run.minSpeed = Math.min(run.minSpeed, speed);
+            run.maxSpeed = Math.max(run.maxSpeed, speed);
+            if (now >= durationMs - TAIL_MS) {
+                latencySum += latency;
+                samples++;
+            }
+        }
+        run.finalLatencyMs = latencySum / samples;
+        run.finalSpeed = speed;
+        return run;
+    }
+
+    private static final class Run {
+        // mean over the last TAIL_MS
+        long finalLatencyMs;
+        float finalSpeed;
+        float minSpeed;
+        float maxSpeed;
+        int speedChanges;
+        int stalls;
+    }
+}
@@ -0,0 +1,121 @@
+package com.befovy.fijkplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Values below 32us are exact, larger ones land in log-linear buckets with at
+ * most 1/64 relative error and report the bucket midpoint, capped by the exact
+ * max. Out of range values clamp to the edges. All players' timelines feed
+ * the same histograms of the plugin's PlayerMetrics.
+ */
+public class LatencyHistogramTest {
+
+    private static final long MAX_MICROS = (1L << 40) - 1;
+
+    @Test
+    public void bucketEdges() {
+        assertEquals(31, single(31));
+        assertEquals(63, single(63));
+        assertEquals(65, single(64));
+        assertEquals(65, single(65));
+        assertEquals(67, single(66));
+        for (int exponent = 7; exponent < 40; exponent++) {
+            long lower = 1L << exponent;
+            long width = lower >>> 5;
+            assertEquals(lower + width / 2, single(lower));
+            assertEquals(lower + width / 2, single(lower + width - 1));
+            assertEquals(lower - width / 4, single(lower - 1));
+        }
+    }
+
+    @Test
+    public void percentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100000; value++)
+            histogram.recordMicros(value);
+        for (double p : new double[]{1, 50, 90, 99, 99.9}) {
+            long expected = (long) Math.ceil(p / 100 * 100000);
+            long actual = histogram.percentileMicros(p);
+            assertTrue("p" + p + " = " + actual, Math.abs(actual - expected) <= expected / 64 + 1);
+        }
+        Map<String, Object> map = histogram.toMap();
+        assertEquals(50.0005, ((Number) map.get("mean")).doubleValue(), 1e-9);
+        assertEquals(100.0, ((Number) map.get("max")).doubleValue(), 0);
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(-5);
+        assertEquals(0, histogram.percentileMicros(100));
+        histogram.recordMicros(Long.MAX_VALUE);
+        assertEquals(2, histogram.getCount());
+        // midpoint of the last bucket
+        assertEquals((1L << 40) - (1L << 33), histogram.percentileMicros(100));
+        assertEquals(MAX_MICROS / 1000.0, ((Number) histogram.toMap().get("max")).doubleValue(), 0);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.percentileMicros(100));
+    }
+
+    @Test
+    public void timelinesOfAllPlayersAggregate() throws Exception {
+        final PlayerMetrics metrics = new PlayerMetrics();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> players = new ArrayList<>();
+        for (int p = 0; p < 3; p++) {
+            final PlayerMetrics.Timeline timeline = metrics.newTimeline();
+            players.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    timeline.onSeek();
+                    timeline.onSeekComplete();
+                    // a completion without a pending seek is not counted
+                    timeline.onSeekComplete();
+                }
+            }));
+        }
+        for (Thread player : players)
+            player.start();
+        start.countDown();
+        for (Thread player : players)
+            player.join();
+        // drift behind and ahead counts by magnitude
+        metrics.recordPositionDriftMs(-40);
+        metrics.recordPositionDriftMs(10);
+
+        Map<String, Object> map = metrics.toMap();
+        assertEquals(3000L, count(map, "seek"));
+        assertEquals(0L, count(map, "ttfa"));
+        assertEquals(2L, count(map, "positionDrift"));
+        assertEquals(40.0, ((Number) ((Map<?, ?>) map.get("positionDrift")).get("max")).doubleValue(), 0);
+        assertEquals(25.0, ((Number) ((Map<?, ?>) map.get("positionDrift")).get("mean")).doubleValue(), 0);
+
+        metrics.reset();
+        assertEquals(0L, count(metrics.toMap(), "seek"));
+    }
+
+    // a larger sample lifts the max so the midpoint is not capped
+    private static long single(long micros) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(micros);
+        histogram.recordMicros(MAX_MICROS);
+        return histogram.percentileMicros(50);
+    }
+
+    private static long count(Map<String, Object> metrics, String name) {
+        return ((Number) ((Map<?, ?>) metrics.get(name)).get("count")).longValue();
+    }
+}
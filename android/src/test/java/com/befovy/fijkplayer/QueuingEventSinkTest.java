@@ -0,0 +1,159 @@
+package com.befovy.fijkplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedConstruction;
+import org.mockito.MockedStatic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.EventChannel;
+
+public class QueuingEventSinkTest {
+
+    private MockedStatic<SystemClock> mClock;
+    private MockedConstruction<Handler> mHandlers;
+    private long mNow = 1000;
+    // runnable and uptime of every postAtTime on the flush handler
+    private final List<Runnable> mPosted = new ArrayList<>();
+    private final List<Long> mPostedAt = new ArrayList<>();
+    private final RecordingSink mDelegate = new RecordingSink();
+
+    @Before
+    public void setUp() {
+        mClock = mockStatic(SystemClock.class);
+        mClock.when(SystemClock::uptimeMillis).thenAnswer(invocation -> mNow);
+        mHandlers = mockConstruction(Handler.class, (handler, context) ->
+                when(handler.postAtTime(any(Runnable.class), anyLong())).thenAnswer(invocation -> {
+                    mPosted.add(invocation.getArgument(0));
+                    mPostedAt.add(invocation.getArgument(1));
+                    return true;
+                }));
+    }
+
+    @After
+    public void tearDown() {
+        mHandlers.close();
+        mClock.close();
+    }
+
+    @Test
+    public void queuesUntilDelegateIsSetAndKeepsOrder() {
+        QueuingEventSink sink = new QueuingEventSink();
+        sink.success(event("pos", 1));
+        sink.success(event("state_change", 4));
+        sink.success(event("pos", 2));
+        sink.error("1", "failed", 0);
+        sink.endOfStream();
+        sink.success(event("pos", 3));
+        assertEquals(0, mDelegate.events.size());
+
+        sink.setDelegate(mDelegate);
+        assertEquals(Arrays.asList("pos=1", "state_change=4", "pos=2", "error=1", "end"), mDelegate.events);
+    }
+
+    @Test
+    public void coalescingKeepsNewestOfEachLatestWinsKind() {
+        QueuingEventSink sink = new QueuingEventSink();
+        sink.setCoalescing(true);
+        sink.success(event("pos", 1));
+        sink.success(event("buffering", 10));
+        sink.success(event("state_change", 4));
+        sink.success(event("volume", 50));
+        sink.success(event("pos", 2));
+        sink.success(event("volume", 60));
+        sink.success(event("buffering", 20));
+
+        sink.setDelegate(mDelegate);
+        assertEquals(Arrays.asList("state_change=4", "volume=50", "pos=2", "volume=60", "buffering=20"),
+                mDelegate.events);
+    }
+
+    @Test
+    public void rateLimitHoldsNewestAndFlushesOnce() {
+        QueuingEventSink sink = new QueuingEventSink();
+        sink.setCoalescing(true);
+        sink.setMaxRate(10);
+        sink.setDelegate(mDelegate);
+
+        sink.success(event("pos", 1));
+        mNow = 1050;
+        sink.success(event("pos", 2));
+        mNow = 1060;
+        sink.success(event("pos", 3));
+        assertEquals(Arrays.asList("pos=1"), mDelegate.events);
+        assertEquals(Arrays.asList(1100L), mPostedAt);
+
+        mNow = 1100;
+        mPosted.get(0).run();
+        assertEquals(Arrays.asList("pos=1", "pos=3"), mDelegate.events);
+        assertEquals(1, mPosted.size());
+    }
+
+    @Test
+    public void heldEventIsDeliveredBeforeLaterState() {
+        QueuingEventSink sink = new QueuingEventSink();
+        sink.setCoalescing(true);
+        sink.setMaxRate(10);
+        sink.setDelegate(mDelegate);
+
+        sink.success(event("pos", 1));
+        mNow = 1050;
+        sink.success(event("pos", 2));
+        mNow = 1060;
+        sink.success(event("state_change", 5));
+        assertEquals(Arrays.asList("pos=1", "pos=2", "state_change=5"), mDelegate.events);
+
+        // the flush scheduled for pos=2 finds nothing left
+        mNow = 1100;
+        mPosted.get(0).run();
+        assertEquals(3, mDelegate.events.size());
+        // pos=2 counts as delivered at 1060
+        mNow = 1120;
+        sink.success(event("pos", 3));
+        assertEquals(3, mDelegate.events.size());
+        assertEquals(Arrays.asList(1100L, 1160L), mPostedAt);
+    }
+
+    private static Map<String, Object> event(String name, int value) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("event", name);
+        event.put("value", value);
+        return event;
+    }
+
+    private static class RecordingSink implements EventChannel.EventSink {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void success(Object event) {
+            Map map = (Map) event;
+            events.add(map.get("event") + "=" + map.get("value"));
+        }
+
+        @Override
+        public void error(String errorCode, String errorMessage, Object errorDetails) {
+            events.add("error=" + errorCode);
+        }
+
+        @Override
+        public void endOfStream() {
+            events.add("end");
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.befovy.fijkplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedConstruction;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryMessenger;
+
+public class SnapshotEncoderTest {
+
+    private MockedConstruction<Handler> mHandlers;
+    private MockedConstruction<BasicMessageChannel> mChannels;
+    // every buffer the encoder sent, with a copy of its bytes taken at send time
+    private final BlockingQueue<ByteBuffer> mSent = new LinkedBlockingQueue<>();
+    private final List<byte[]> mSentBytes = new ArrayList<>();
+    private SnapshotEncoder mEncoder;
+
+    @Before
+    public void setUp() {
+        // posts to the main thread run right away on the encoder thread
+        mHandlers = mockConstruction(Handler.class, (handler, context) ->
+                when(handler.post(any(Runnable.class))).thenAnswer(invocation -> {
+                    ((Runnable) invocation.getArgument(0)).run();
+                    return true;
+                }));
+        mChannels = mockConstruction(BasicMessageChannel.class, (channel, context) ->
+                doAnswer(invocation -> {
+                    ByteBuffer message = invocation.getArgument(0);
+                    byte[] bytes = new byte[message.position()];
+                    for (int i = 0; i < bytes.length; i++)
+                        bytes[i] = message.get(i);
+                    synchronized (mSentBytes) {
+                        mSentBytes.add(bytes);
+                    }
+                    mSent.add(message);
+                    return null;
+                }).when(channel).send(any()));
+        mEncoder = new SnapshotEncoder(mock(BinaryMessenger.class), "befovy.com/fijkplayer/snapshot/0");
+    }
+
+    @After
+    public void tearDown() {
+        mChannels.close();
+        mHandlers.close();
+    }
+
+    @Test
+    public void rgbaHeaderRoundTrips() throws InterruptedException {
+        mEncoder.setRequest(SnapshotEncoder.FORMAT_RGBA, 100, 0);
+        Bitmap bitmap = rgbaBitmap(3, 2);
+        mEncoder.encode(bitmap, null);
+        ByteBuffer sent = next();
+
+        byte[] bytes = lastBytes();
+        assertEquals(16 + 3 * 2 * 4, bytes.length);
+        ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(SnapshotEncoder.FORMAT_RGBA, header.getInt(0));
+        assertEquals(3, header.getInt(4));
+        assertEquals(2, header.getInt(8));
+        assertEquals(3 * 2 * 4, header.getInt(12));
+        // little endian: the low byte of the width comes first
+        assertArrayEquals(new byte[]{3, 0, 0, 0}, Arrays.copyOfRange(bytes, 4, 8));
+        for (int i = 0; i < 3 * 2 * 4; i++)
+            assertEquals((byte) i, bytes[16 + i]);
+        assertEquals(ByteOrder.LITTLE_ENDIAN, sent.order());
+        verify(bitmap).recycle();
+    }
+
+    @Test
+    public void compressedHeaderRoundTrips() throws InterruptedException {
+        mEncoder.setRequest(SnapshotEncoder.FORMAT_WEBP, 80, 0);
+        mEncoder.encode(compressedBitmap(640, 360, 1000), null);
+        next();
+
+        byte[] bytes = lastBytes();
+        assertEquals(16 + 1000, bytes.length);
+        ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(SnapshotEncoder.FORMAT_WEBP, header.getInt(0));
+        assertEquals(640, header.getInt(4));
+        assertEquals(360, header.getInt(8));
+        assertEquals(1000, header.getInt(12));
+        // 1000 = 0x03e8
+        assertArrayEquals(new byte[]{(byte) 0xe8, 0x03, 0, 0}, Arrays.copyOfRange(bytes, 12, 16));
+        assertEquals((byte) 999, bytes[16 + 999]);
+    }
+
+    @Test
+    public void outputBufferIsReusedAndGrowsOnlyWhenNeeded() throws InterruptedException {
+        mEncoder.setRequest(SnapshotEncoder.FORMAT_JPEG, 90, 0);
+        mEncoder.encode(compressedBitmap(320, 180, 5000), null);
+        ByteBuffer first = next();
+        mEncoder.encode(compressedBitmap(320, 180, 4000), null);
+        ByteBuffer second = next();
+        assertSame(first, second);
+        assertEquals(16 + 4000, lastBytes().length);
+
+        mEncoder.encode(compressedBitmap(320, 180, 6000), null);
+        ByteBuffer grown = next();
+        assertNotSame(first, grown);
+        mEncoder.encode(compressedBitmap(320, 180, 6000), null);
+        assertSame(grown, next());
+        assertEquals(16 + 6000, lastBytes().length);
+    }
+
+    private ByteBuffer next() throws InterruptedException {
+        ByteBuffer sent = mSent.poll(10, TimeUnit.SECONDS);
+        if (sent == null)
+            throw new AssertionError("no snapshot sent");
+        return sent;
+    }
+
+    private byte[] lastBytes() {
+        synchronized (mSentBytes) {
+            return mSentBytes.get(mSentBytes.size() - 1);
+        }
+    }
+
+    private static Bitmap rgbaBitmap(int width, int height) {
+        Bitmap bitmap = mock(Bitmap.class);
+        when(bitmap.getWidth()).thenReturn(width);
+        when(bitmap.getHeight()).thenReturn(height);
+        when(bitmap.getConfig()).thenReturn(Bitmap.Config.ARGB_8888);
+        when(bitmap.getByteCount()).thenReturn(width * height * 4);
+        doAnswer(invocation -> {
+            ByteBuffer buffer = invocation.getArgument(0);
+            for (int i = 0; i < width * height * 4; i++)
+                buffer.put((byte) i);
+            return null;
+        }).when(bitmap).copyPixelsToBuffer(any());
+        return bitmap;
+    }
+
+    private static Bitmap compressedBitmap(int width, int height, int length) {
+        Bitmap bitmap = mock(Bitmap.class);
+        when(bitmap.getWidth()).thenReturn(width);
+        when(bitmap.getHeight()).thenReturn(height);
+        when(bitmap.compress(any(), anyInt(), any())).thenAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(2);
+            for (int i = 0; i < length; i++)
+                out.write(i);
+            return true;
+        });
+        return bitmap;
+    }
+}
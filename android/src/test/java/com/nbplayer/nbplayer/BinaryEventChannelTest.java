@@ -0,0 +1,176 @@
+package com.nbplayer.nbplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedConstruction;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * 二进制事件通道与 Map 事件通道的对比
+ *
+ * <p>JVM 上没有准备主 Looper，Looper.myLooper() 与 Looper.getMainLooper() 都返回 null，
+ * 测试线程因此走主线程路径。这里不使用静态模拟，以免 Mockito 的拦截本身产生分配；
+ * 其他测试留下拦截时由 {@link #looperIntercepted} 检出，只比较相对分配。
+ */
+public class BinaryEventChannelTest {
+    private static final int EVENTS = 200000;
+    // 防止基线循环被优化掉
+    private static volatile Looper looper;
+
+    private MockedConstruction<Handler> handlers;
+    private MockedConstruction<EventChannel> eventChannels;
+    private final AtomicReference<EventChannel.StreamHandler> streamHandler = new AtomicReference<>();
+    private final CountingMessenger messenger = new CountingMessenger();
+
+    @Before
+    public void setUp() {
+        handlers = mockConstruction(Handler.class);
+        eventChannels = mockConstruction(EventChannel.class, (channel, context) -> doAnswer(invocation -> {
+            streamHandler.set(invocation.getArgument(0));
+            return null;
+        }).when(channel).setStreamHandler(any()));
+    }
+
+    @After
+    public void tearDown() {
+        eventChannels.close();
+        handlers.close();
+    }
+
+    @Test
+    public void recordLayout() {
+        BinaryEventChannel channel = new BinaryEventChannel(messenger, "binary_events_p");
+        channel.send(BinaryEventChannel.EVENT_TRACK_CHANGE, 3, -1, 7);
+
+        ByteBuffer record = ByteBuffer.wrap(messenger.last).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(BinaryEventChannel.RECORD_SIZE, messenger.last.length);
+        assertEquals(BinaryEventChannel.EVENT_TRACK_CHANGE, record.getInt());
+        assertEquals(3, record.getInt());
+        assertEquals(-1, record.getInt());
+        assertEquals(7, record.getInt());
+    }
+
+    /**
+     * 经 ChannelTransport 发出的每条事件都到达通道，二进制路径预热后不分配内存；
+     * Map 路径每条事件至少分配一个 HashMap。耗时由 benchmarks 模块中的 ChannelTransportBenchmark 测量
+     */
+    @Test
+    public void binaryTransportDoesNotAllocatePerEvent() {
+        ChannelTransport binary = new ChannelTransport(messenger, "b", true, 0);
+        binary.start(mock(MethodChannel.MethodCallHandler.class), () -> {
+        });
+        ChannelTransport map = new ChannelTransport(messenger, "m", false, 32);
+        map.start(mock(MethodChannel.MethodCallHandler.class), () -> {
+        });
+        NoopEventSink sink = new NoopEventSink();
+        streamHandler.get().onListen(null, sink);
+
+        // 在测量之外加载管理类并编译两条路径
+        allocatedBytes();
+        run(binary, EVENTS);
+        run(map, EVENTS);
+        messenger.count = 0;
+        sink.count = 0;
+
+        boolean looperIntercepted = looperIntercepted();
+        long binaryBytes = allocatedBytes();
+        run(binary, EVENTS);
+        binaryBytes = allocatedBytes() - binaryBytes;
+
+        long mapBytes = allocatedBytes();
+        run(map, EVENTS);
+        mapBytes = allocatedBytes() - mapBytes;
+
+        assertEquals(EVENTS, messenger.count);
+        assertEquals(EVENTS, sink.count);
+        if (!looperIntercepted) {
+            assertTrue("binary path allocates " + binaryBytes + " bytes", binaryBytes < EVENTS / 100);
+        }
+        assertTrue("map path allocates " + mapBytes + " bytes", mapBytes > EVENTS * 32L);
+    }
+
+    private static void run(ChannelTransport transport, int events) {
+        for (int i = 0; i < events; i++) {
+            transport.emit(BinaryEventChannel.EVENT_STATE_CHANGE, i & 7, (i + 1) & 7, 0);
+        }
+    }
+
+    /**
+     * Looper.myLooper() 是否分配内存。同一 JVM 中先前的测试静态模拟过 Looper 后，Mockito 的内联拦截
+     * 会留在其方法中，两条路径的每次调用都会分配，此时只比较两者的相对大小
+     */
+    private static boolean looperIntercepted() {
+        long bytes = allocatedBytes();
+        for (int i = 0; i < 1000; i++) {
+            looper = Looper.myLooper();
+        }
+        return allocatedBytes() - bytes > 1000;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static class CountingMessenger implements BinaryMessenger {
+        long count = 0;
+        byte[] last;
+
+        @Override
+        public void send(String channel, ByteBuffer message) {
+            send(channel, message, null);
+        }
+
+        @Override
+        public void send(String channel, ByteBuffer message, BinaryReply callback) {
+            // 与引擎一致，消息长度为 position
+            if (last == null || last.length != message.position()) {
+                last = new byte[message.position()];
+            }
+            for (int i = 0; i < last.length; i++) {
+                last[i] = message.get(i);
+            }
+            count++;
+        }
+
+        @Override
+        public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+        }
+    }
+
+    private static class NoopEventSink implements EventChannel.EventSink {
+        long count = 0;
+
+        @Override
+        public void success(Object event) {
+            count++;
+        }
+
+        @Override
+        public void error(String errorCode, String errorMessage, Object errorDetails) {
+        }
+
+        @Override
+        public void endOfStream() {
+        }
+    }
+}
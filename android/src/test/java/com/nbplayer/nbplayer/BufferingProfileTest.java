@@ -0,0 +1,205 @@
+package com.nbplayer.nbplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * 缓冲策略的起播字节数与排队内存
+ *
+ * <p>JVM 上没有 native 播放器，这里按 ijkplayer read_thread 的规则消费本地服务器的真实字节流：
+ * 先读满探测量 min(probesize, analyzeduration 对应的字节数)，packet-buffering 打开时再攒到
+ * 首个水位 (100ms) 或 min-frames 帧，此时记为出声；之后按码率消费，队列超过 max-buffer-size
+ * 或多于 min-frames 帧时暂停读取 (infbuf 时不限)，记录队列峰值。各参数取自 {@link BufferingProfile#apply}
+ * 实际设置的选项，未设置的项使用 ijkplayer 默认值。
+ *
+ * <p>时间不取墙上时钟，而是按链路速率由读到的字节数推算，结果与机器负载无关；
+ * 限速链路上的实际起播耗时见 benchmarks 中的 BufferingProfileBenchmark。
+ */
+public class BufferingProfileTest {
+    // 128 kbps AAC，每帧 1024 个采样 (44.1 kHz 下约 23 ms)
+    private static final int BYTE_RATE = 16000;
+    private static final int FRAME_BYTES = 372;
+    // 链路为码率的 20 倍
+    private static final int LINK_BYTES_PER_SECOND = 20 * BYTE_RATE;
+    private static final int PLAY_MS = 500;
+    private static final int READ_BYTES = 4096;
+    // ijkplayer 与 FFmpeg 的默认值
+    private static final long DEFAULT_PROBE_SIZE = 5000000;
+    private static final long DEFAULT_ANALYZE_DURATION_US = 5000000;
+    private static final long DEFAULT_MAX_BUFFER_SIZE = 15 * 1024 * 1024;
+    private static final long DEFAULT_MIN_FRAMES = 50000;
+    private static final long FIRST_HIGH_WATER_MARK_MS = 100;
+
+    private TestHttpServer server;
+    private HttpConnector connector;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new TestHttpServer(1024 * 1024);
+        connector = new HttpConnector();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void standardSetsNoOptions() {
+        assertTrue(optionsOf(BufferingProfile.STANDARD).isEmpty());
+        assertEquals(BufferingProfile.STANDARD, BufferingProfile.fromName(null));
+        assertEquals(BufferingProfile.STANDARD, BufferingProfile.fromName("unknown"));
+        assertEquals(BufferingProfile.LOW_MEMORY, BufferingProfile.fromName("lowMemory"));
+        assertEquals("nobuffer", optionsOf(BufferingProfile.LOW_LATENCY_LIVE).get("fflags"));
+    }
+
+    @Test
+    public void profilesTradeStartupBytesForQueueSize() throws Exception {
+        Map<BufferingProfile, Run> runs = new EnumMap<>(BufferingProfile.class);
+        for (BufferingProfile profile : BufferingProfile.values()) {
+            Run run = simulate(profile);
+            runs.put(profile, run);
+            // 出声前读到的正好是探测量加首个水位
+            assertEquals(profile.dartName, run.startupBytes, run.startupRead);
+        }
+        assertEquals(BufferingProfile.values().length, server.requests.get());
+
+        Run live = runs.get(BufferingProfile.LOW_LATENCY_LIVE);
+        Run fast = runs.get(BufferingProfile.FAST_START);
+        Run standard = runs.get(BufferingProfile.STANDARD);
+        assertTrue(live.startupBytes < fast.startupBytes);
+        assertTrue(fast.startupBytes < standard.startupBytes);
+        assertTrue("ttfa live " + live.ttfaMs + "ms, standard " + standard.ttfaMs + "ms",
+            live.ttfaMs < standard.ttfaMs);
+        for (Run run : runs.values()) {
+            // 探测读入的数据也在队列中，消费到上限以下之前不再读取
+            if (run.capBytes >= 0) {
+                assertTrue(run.peakQueueBytes <= Math.max(run.startupBytes, run.capBytes) + READ_BYTES);
+            }
+        }
+        assertTrue(runs.get(BufferingProfile.LOW_MEMORY).peakQueueBytes < standard.peakQueueBytes);
+        assertTrue(runs.get(BufferingProfile.SMOOTH_VOD).peakQueueBytes < standard.peakQueueBytes);
+    }
+
+    private Run simulate(BufferingProfile profile) throws IOException {
+        Map<String, Object> options = optionsOf(profile);
+        long probeSize = option(options, "probesize", DEFAULT_PROBE_SIZE);
+        long analyzeDurationUs = option(options, "analyzeduration", DEFAULT_ANALYZE_DURATION_US);
+        long maxBufferSize = option(options, "max-buffer-size", DEFAULT_MAX_BUFFER_SIZE);
+        long minFrames = option(options, "min-frames", DEFAULT_MIN_FRAMES);
+        boolean packetBuffering = option(options, "packet-buffering", 1) != 0;
+        boolean infiniteBuffer = option(options, "infbuf", 0) != 0;
+
+        Run run = new Run();
+        long probeBytes = Math.min(probeSize, analyzeDurationUs * BYTE_RATE / 1000000);
+        // 队列中多于 min-frames 帧即认为足够
+        long enoughBytes = (minFrames + 1) * FRAME_BYTES;
+        long bufferBytes = packetBuffering ? Math.min(enoughBytes, FIRST_HIGH_WATER_MARK_MS * BYTE_RATE / 1000) : 0;
+        run.startupBytes = probeBytes + bufferBytes;
+        run.capBytes = infiniteBuffer ? -1 : Math.min(maxBufferSize, enoughBytes);
+
+        HttpURLConnection connection = connector.open(server.url(profile.dartName), null, 0, -1);
+        byte[] buffer = new byte[READ_BYTES];
+        long read = 0;
+        // 按链路速率推算的时间
+        long nowUs = 0;
+        try (InputStream in = connection.getInputStream()) {
+            while (read < run.startupBytes) {
+                int n = fill(in, buffer, (int) Math.min(buffer.length, run.startupBytes - read));
+                if (n <= 0) {
+                    break;
+                }
+                read += n;
+                nowUs += n * 1000000L / LINK_BYTES_PER_SECOND;
+            }
+            run.startupRead = read;
+            run.ttfaMs = nowUs / 1000;
+
+            long startUs = nowUs;
+            long elapsedMs;
+            while ((elapsedMs = (nowUs - startUs) / 1000) < PLAY_MS) {
+                long queued = Math.max(0, read - elapsedMs * BYTE_RATE / 1000);
+                run.peakQueueBytes = Math.max(run.peakQueueBytes, queued);
+                if (!infiniteBuffer && (queued > maxBufferSize || queued > enoughBytes)) {
+                    // 与 read_thread 一样等 10ms 再检查
+                    nowUs += 10000;
+                    continue;
+                }
+                int n = fill(in, buffer, buffer.length);
+                if (n <= 0) {
+                    break;
+                }
+                read += n;
+                nowUs += n * 1000000L / LINK_BYTES_PER_SECOND;
+            }
+        } finally {
+            connection.disconnect();
+        }
+        return run;
+    }
+
+    /**
+     * 读满 length 字节，到结尾时返回实际读到的字节数；socket 上单次 read 的长度不固定
+     */
+    private static int fill(InputStream in, byte[] buffer, int length) throws IOException {
+        int filled = 0;
+        while (filled < length) {
+            int n = in.read(buffer, filled, length - filled);
+            if (n < 0) {
+                break;
+            }
+            filled += n;
+        }
+        return filled;
+    }
+
+    private static long option(Map<String, Object> options, String name, long defaultValue) {
+        Object value = options.get(name);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+
+    /**
+     * 策略实际设置的选项
+     */
+    private static Map<String, Object> optionsOf(BufferingProfile profile) {
+        Map<String, Object> options = new HashMap<>();
+        IjkMediaPlayer player = mock(IjkMediaPlayer.class);
+        doAnswer(invocation -> {
+            options.put(invocation.getArgument(1), invocation.getArgument(2));
+            return null;
+        }).when(player).setOption(anyInt(), anyString(), anyLong());
+        doAnswer(invocation -> {
+            options.put(invocation.getArgument(1), invocation.getArgument(2));
+            return null;
+        }).when(player).setOption(anyInt(), anyString(), anyString());
+        profile.apply(player);
+        return options;
+    }
+
+    private static final class Run {
+        long startupBytes;
+        long startupRead;
+        long ttfaMs;
+        long peakQueueBytes;
+        // 队列上限，-1 为不限
+        long capBytes;
+    }
+}
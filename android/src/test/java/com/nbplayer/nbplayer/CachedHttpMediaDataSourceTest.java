@@ -0,0 +1,206 @@
+package com.nbplayer.nbplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class CachedHttpMediaDataSourceTest {
+    private static final int SIZE = 10 * BlockCache.BLOCK_SIZE + 1234;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestHttpServer server;
+    private HttpConnector connector;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new TestHttpServer(SIZE);
+        connector = new HttpConnector();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void replayIsServedFromCache() throws Exception {
+        BlockCache cache = new BlockCache(folder.newFolder(), 64L * 1024 * 1024);
+        String url = server.url("a.mp3");
+
+        assertArrayEquals(server.content, readAll(new CachedHttpMediaDataSource(url, null, cache, connector)));
+        int requests = server.requests.get();
+        assertEquals(11, requests);
+
+        long served = server.bytesServed.get();
+        assertArrayEquals(server.content, readAll(new CachedHttpMediaDataSource(url, null, cache, connector)));
+        // 只有一次条件请求，服务器回 304
+        assertEquals(requests + 1, server.requests.get());
+        assertEquals(served, server.bytesServed.get());
+        assertTrue(cache.getHits() >= 11);
+    }
+
+    @Test
+    public void changedResourceIsNotServedStale() throws Exception {
+        BlockCache cache = new BlockCache(folder.newFolder(), 64L * 1024 * 1024);
+        String url = server.url("e.mp3");
+        assertArrayEquals(server.content, readAll(new CachedHttpMediaDataSource(url, null, cache, connector)));
+        assertEquals(TestHttpServer.ETAG, cache.getValidator(BlockCache.keyFor(url)));
+
+        // 同一 URL 上发布了新版本
+        new Random(7).nextBytes(server.content);
+        server.etag = "\"v2\"";
+        int requests = server.requests.get();
+        assertArrayEquals(server.content, readAll(new CachedHttpMediaDataSource(url, null, cache, connector)));
+        // 条件请求发现变化后每块重新下载
+        assertEquals(requests + 1 + 11, server.requests.get());
+        assertEquals("\"v2\"", cache.getValidator(BlockCache.keyFor(url)));
+
+        // 新版本的块再次命中缓存
+        requests = server.requests.get();
+        assertArrayEquals(server.content, readAll(new CachedHttpMediaDataSource(url, null, cache, connector)));
+        assertEquals(requests + 1, server.requests.get());
+    }
+
+    @Test
+    public void cachedBlocksAreServedWhenRevalidationFails() throws Exception {
+        BlockCache cache = new BlockCache(folder.newFolder(), 64L * 1024 * 1024);
+        String url = server.url("f.mp3");
+        byte[] content = server.content.clone();
+        assertArrayEquals(content, readAll(new CachedHttpMediaDataSource(url, null, cache, connector)));
+
+        // 离线重播
+        server.close();
+        assertArrayEquals(content, readAll(new CachedHttpMediaDataSource(url, null, cache, connector)));
+    }
+
+    @Test
+    public void contentLengthAbove2GB() {
+        HttpURLConnection connection = mock(HttpURLConnection.class);
+        when(connection.getHeaderField("Content-Length")).thenReturn("3000000000");
+        when(connection.getContentLengthLong()).thenReturn(3000000000L);
+        assertEquals(3000000000L, HttpConnector.contentLength(connection));
+    }
+
+    @Test
+    public void serverIgnoringRangeIsReadOnce() throws Exception {
+        server.ignoreRange = true;
+        BlockCache cache = new BlockCache(folder.newFolder(), 64L * 1024 * 1024);
+        CachedHttpMediaDataSource source = new CachedHttpMediaDataSource(server.url("b.mp3"), null, cache, connector);
+
+        assertEquals(SIZE, source.getSize());
+        assertArrayEquals(server.content, readAll(source));
+        // 一个 200 响应顺序读完，而不是每块都从头下载
+        assertEquals(1, server.requests.get());
+        assertEquals(SIZE, server.bytesServed.get());
+    }
+
+    @Test
+    public void forwardSeekWithoutRangeCachesSkippedBlocks() throws Exception {
+        server.ignoreRange = true;
+        BlockCache cache = new BlockCache(folder.newFolder(), 64L * 1024 * 1024);
+        String url = server.url("c.mp3");
+        CachedHttpMediaDataSource source = new CachedHttpMediaDataSource(url, null, cache, connector);
+
+        byte[] buffer = new byte[100];
+        long position = 7L * BlockCache.BLOCK_SIZE + 10;
+        assertEquals(100, source.readAt(position, buffer, 0, 100));
+        assertArrayEquals(Arrays.copyOfRange(server.content, (int) position, (int) position + 100), buffer);
+        source.close();
+        for (int i = 0; i <= 7; i++) {
+            assertTrue("block " + i, cache.hasBlock(BlockCache.keyFor(url), i));
+        }
+        assertEquals(1, server.requests.get());
+    }
+
+    @Test
+    public void readPastEndReturnsEof() throws Exception {
+        CachedHttpMediaDataSource source = new CachedHttpMediaDataSource(server.url("d.mp3"), null, null, connector);
+        byte[] buffer = new byte[16];
+        assertEquals(-1, source.readAt(20L * BlockCache.BLOCK_SIZE, buffer, 0, 16));
+        assertEquals(SIZE, source.getSize());
+        assertEquals(-1, source.readAt(SIZE, buffer, 0, 16));
+        source.close();
+    }
+
+    @Test
+    public void concurrentWritersOfSameBlock() throws Exception {
+        File dir = folder.newFolder();
+        final BlockCache cache = new BlockCache(dir, 64L * 1024 * 1024);
+        final byte[] block = Arrays.copyOf(server.content, BlockCache.BLOCK_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < 8; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < 20; j++) {
+                    cache.putBlock("k", 0, block, block.length);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertArrayEquals(block, cache.getBlock("k", 0));
+        assertEquals(block.length, cache.getTotalBytes());
+        // 没有残留的临时文件
+        Set<String> names = new HashSet<>(Arrays.asList(dir.list()));
+        assertEquals(new HashSet<>(Arrays.asList("k_0.blk")), names);
+    }
+
+    @Test
+    public void indexIsRebuiltAndTrimmedOnReopen() throws Exception {
+        File dir = folder.newFolder();
+        BlockCache cache = new BlockCache(dir, 64L * 1024 * 1024);
+        byte[] block = new byte[1000];
+        for (int i = 0; i < 10; i++) {
+            cache.putBlock("k", i, block, block.length);
+        }
+        assertTrue(new File(dir, "stale.blk.tmp").createNewFile());
+
+        BlockCache reopened = new BlockCache(dir, 5000);
+        assertEquals(5000, reopened.getTotalBytes());
+        assertTrue(!new File(dir, "stale.blk.tmp").exists());
+    }
+
+    private static byte[] readAll(CachedHttpMediaDataSource source) {
+        long size = source.getSize();
+        byte[] out = new byte[(int) size];
+        long position = 0;
+        int read;
+        // ijkplayer 每次读取的大小不固定
+        int[] sizes = {4096, 32768, 1000, 65536};
+        int i = 0;
+        while (position < size
+            && (read = source.readAt(position, out, (int) position, (int) Math.min(sizes[i++ % sizes.length], size - position))) > 0) {
+            position += read;
+        }
+        source.close();
+        return out;
+    }
+}
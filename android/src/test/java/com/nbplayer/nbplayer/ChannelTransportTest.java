@@ -0,0 +1,116 @@
+package com.nbplayer.nbplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedConstruction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodChannel;
+
+public class ChannelTransportTest {
+    private FakeMainLooper main;
+    private MockedConstruction<MethodChannel> methodChannels;
+    private MockedConstruction<EventChannel> eventChannels;
+    private final AtomicReference<EventChannel.StreamHandler> streamHandler = new AtomicReference<>();
+    private final List<Map<String, Object>> delivered = new ArrayList<>();
+    private EventChannel.EventSink sink;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        main = new FakeMainLooper();
+        methodChannels = mockConstruction(MethodChannel.class);
+        eventChannels = mockConstruction(EventChannel.class, (channel, context) -> doAnswer(invocation -> {
+            streamHandler.set(invocation.getArgument(0));
+            return null;
+        }).when(channel).setStreamHandler(any()));
+        sink = mock(EventChannel.EventSink.class);
+        doAnswer(invocation -> {
+            delivered.add((Map<String, Object>) invocation.getArgument(0));
+            return null;
+        }).when(sink).success(any());
+    }
+
+    @After
+    public void tearDown() {
+        eventChannels.close();
+        methodChannels.close();
+        main.close();
+    }
+
+    @Test
+    public void mainThreadEventDoesNotOvertakeQueuedWorkerEvent() throws Exception {
+        final ChannelTransport transport = new ChannelTransport(mock(BinaryMessenger.class), "p", false, 8);
+        transport.start(mock(MethodChannel.MethodCallHandler.class), () -> {
+        });
+        streamHandler.get().onListen(null, sink);
+
+        // 工作线程 handleStop: STARTED -> STOPPED，主线程任务尚未执行
+        Thread worker = new Thread(() -> transport.emit(BinaryEventChannel.EVENT_STATE_CHANGE,
+            PlayerStateMachine.STOPPED, PlayerStateMachine.STARTED, 0));
+        worker.start();
+        worker.join();
+        // 主线程 onError: STOPPED -> ERROR
+        transport.emit(BinaryEventChannel.EVENT_STATE_CHANGE,
+            PlayerStateMachine.ERROR, PlayerStateMachine.STOPPED, 0);
+        main.runPending();
+
+        assertEquals(2, delivered.size());
+        assertEquals(PlayerStateMachine.STOPPED, delivered.get(0).get("state"));
+        assertEquals(PlayerStateMachine.ERROR, delivered.get(1).get("state"));
+    }
+
+    @Test
+    public void workerEventsArePostedOncePerBatch() throws Exception {
+        final ChannelTransport transport = new ChannelTransport(mock(BinaryMessenger.class), "p", false, 8);
+        transport.start(mock(MethodChannel.MethodCallHandler.class), () -> {
+        });
+        streamHandler.get().onListen(null, sink);
+        long postedBefore = main.postedCount();
+
+        Thread worker = new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                transport.emit(BinaryEventChannel.EVENT_TRACK_CHANGE, i, -1, 0);
+            }
+        });
+        worker.start();
+        worker.join();
+        assertEquals(1, main.postedCount() - postedBefore);
+        main.runPending();
+
+        assertEquals(100, delivered.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, delivered.get(i).get("index"));
+        }
+    }
+
+    @Test
+    public void eventsBeforeSubscriptionAreReplayedBeforeSnapshot() throws Exception {
+        final ChannelTransport[] transport = new ChannelTransport[1];
+        transport[0] = new ChannelTransport(mock(BinaryMessenger.class), "p", false, 8);
+        transport[0].start(mock(MethodChannel.MethodCallHandler.class), () -> transport[0].emit(
+            BinaryEventChannel.EVENT_SNAPSHOT, PlayerStateMachine.PREPARED, 0, 0));
+        transport[0].emit(BinaryEventChannel.EVENT_STATE_CHANGE,
+            PlayerStateMachine.INITIALIZED, PlayerStateMachine.IDLE, 0);
+
+        streamHandler.get().onListen(null, sink);
+        main.runPending();
+
+        assertEquals(2, delivered.size());
+        assertEquals("state_change", delivered.get(0).get("event"));
+        assertEquals("snapshot", delivered.get(1).get("event"));
+    }
+}
@@ -0,0 +1,286 @@
+package com.nbplayer.nbplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对本地 HTTP 服务器驱动 {@link DownloadManager}：分段下载、断线与暂停后的续传、校验、并发上限与删除
+ */
+public class DownloadManagerTest {
+    private static final int SIZE = 3 * DownloadManager.CHUNK_SIZE + 12345;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestHttpServer server;
+    private HttpConnector connector;
+    private File dir;
+    private String sha256;
+    // url -> 依次收到的状态
+    private final Map<String, BlockingQueue<Integer>> states = new ConcurrentHashMap<>();
+    // 非 null 时第一次进度回调在 blocked 上通知并等待 release，使下载线程停在一段中间
+    private volatile CountDownLatch blocked;
+    private volatile CountDownLatch release;
+    private final DownloadManager.Listener listener = new DownloadManager.Listener() {
+        @Override
+        public void onProgress(String url, long bytes, long total) {
+            CountDownLatch gate = blocked;
+            if (gate != null && gate.getCount() > 0) {
+                gate.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void onStateChange(String url, int state, String error) {
+            statesOf(url).add(state);
+        }
+    };
+    private DownloadManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new TestHttpServer(SIZE);
+        connector = new HttpConnector();
+        dir = folder.newFolder();
+        sha256 = hex(MessageDigest.getInstance("SHA-256").digest(server.content));
+        manager = newManager();
+    }
+
+    @After
+    public void tearDown() {
+        if (release != null) {
+            release.countDown();
+        }
+        manager.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void downloadsInChunksAndVerifiesChecksum() throws Exception {
+        String url = server.url("a.mp3");
+        assertTrue(manager.download(url, null, sha256));
+        assertFalse(manager.download(url, null, sha256));
+        assertEquals(DownloadManager.STATE_COMPLETED, awaitFinal(url));
+
+        assertContent(manager.completedFile(url));
+        // 播放前不创建下载管理器也能找到
+        assertEquals(manager.completedFile(url), DownloadManager.completedFile(dir, url));
+        assertEquals(4, server.requests.get());
+        assertEquals(SIZE, server.bytesServed.get());
+    }
+
+    @Test
+    public void droppedConnectionResumesAtBreak() throws Exception {
+        server.dropAt = DownloadManager.CHUNK_SIZE + DownloadManager.CHUNK_SIZE / 2;
+        String url = server.url("b.mp3");
+        manager.download(url, null, sha256);
+        assertEquals(DownloadManager.STATE_COMPLETED, awaitFinal(url));
+
+        assertContent(manager.completedFile(url));
+        // 重试从已写入的位置再取一整段，不重新下载断开前收到的数据
+        assertEquals(SIZE, server.bytesServed.get());
+        assertEquals(4, server.requests.get());
+    }
+
+    @Test
+    public void pausedTransferResumesAfterRestart() throws Exception {
+        manager.configure(2, DownloadManager.CHUNK_SIZE);
+        String url = server.url("c.mp3");
+        manager.download(url, null, sha256);
+        File part = new File(dir, BlockCache.keyFor(url) + ".part");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (part.length() < DownloadManager.CHUNK_SIZE / 2) {
+            assertTrue("Download did not start", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertTrue(manager.pause(url));
+        assertEquals(DownloadManager.STATE_PAUSED, awaitFinal(url));
+        long downloaded = part.length();
+        assertTrue(downloaded > 0 && downloaded < SIZE);
+        assertNull(manager.completedFile(url));
+
+        // 模拟进程重启: 新的管理器从 .part 和 .meta 续传，校验值取自元数据
+        manager.shutdown();
+        manager = newManager();
+        long servedBefore = server.bytesServed.get();
+        manager.download(url, null, null);
+        assertEquals(DownloadManager.STATE_COMPLETED, awaitFinal(url));
+
+        assertContent(manager.completedFile(url));
+        assertEquals(1L, manager.getStats().get("resumed"));
+        assertEquals(SIZE - downloaded, server.bytesServed.get() - servedBefore);
+    }
+
+    @Test
+    public void serverIgnoringRangeRestartsFromZero() throws Exception {
+        manager.configure(2, DownloadManager.CHUNK_SIZE);
+        String url = server.url("d.mp3");
+        manager.download(url, null, sha256);
+        File part = new File(dir, BlockCache.keyFor(url) + ".part");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (part.length() == 0) {
+            assertTrue("Download did not start", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        manager.pause(url);
+        assertEquals(DownloadManager.STATE_PAUSED, awaitFinal(url));
+
+        server.ignoreRange = true;
+        manager.configure(2, 0);
+        manager.download(url, null, null);
+        assertEquals(DownloadManager.STATE_COMPLETED, awaitFinal(url));
+        assertContent(manager.completedFile(url));
+        assertEquals(1L, manager.getStats().get("restarts"));
+    }
+
+    @Test
+    public void checksumMismatchFailsAndDeletesData() throws Exception {
+        String url = server.url("e.mp3");
+        manager.download(url, null, "00");
+        assertEquals(DownloadManager.STATE_FAILED, awaitFinal(url));
+        assertNull(manager.completedFile(url));
+        assertFalse(new File(dir, BlockCache.keyFor(url) + ".part").exists());
+        assertEquals(1L, manager.getStats().get("checksumFailures"));
+    }
+
+    @Test
+    public void concurrentDownloadsAreLimited() throws Exception {
+        server.bytesPerSecond = 8 * DownloadManager.CHUNK_SIZE;
+        manager.configure(2, 0);
+        for (int i = 0; i < 4; i++) {
+            manager.download(server.url("f" + i + ".mp3"), null, null);
+        }
+        // 服务器端的连接计数在响应发完后才减少，与下一段请求重叠，这里按管理器的统计采样
+        int maxRunning = 0;
+        int completed = 0;
+        long deadline = System.currentTimeMillis() + 30000;
+        while (completed < 4) {
+            assertTrue("Downloads did not finish", System.currentTimeMillis() < deadline);
+            Map<String, Object> stats = manager.getStats();
+            maxRunning = Math.max(maxRunning, (Integer) stats.get("running"));
+            completed = 0;
+            for (int i = 0; i < 4; i++) {
+                if (manager.completedFile(server.url("f" + i + ".mp3")) != null) {
+                    completed++;
+                }
+            }
+            Thread.sleep(5);
+        }
+        assertEquals(2, maxRunning);
+    }
+
+    @Test
+    public void removeDeletesCompletedDownload() throws Exception {
+        String url = server.url("g.mp3");
+        manager.download(url, null, null);
+        assertEquals(DownloadManager.STATE_COMPLETED, awaitFinal(url));
+        assertNotNull(manager.completedFile(url));
+
+        manager.remove(url);
+        assertEquals(DownloadManager.STATE_REMOVED, awaitFinal(url));
+        assertNull(manager.completedFile(url));
+        assertNull(DownloadManager.completedFile(dir, url));
+    }
+
+    @Test
+    public void removedTransferHoldsUrlUntilWorkerExits() throws Exception {
+        String url = server.url("h.mp3");
+        blockMidChunk(url);
+
+        manager.remove(url);
+        // 下载线程还在写文件，不能接受新的下载
+        assertFalse(manager.download(url, null, sha256));
+        release.countDown();
+        assertEquals(DownloadManager.STATE_REMOVED, awaitFinal(url));
+        assertFalse(new File(dir, BlockCache.keyFor(url) + ".part").exists());
+        assertFalse(new File(dir, BlockCache.keyFor(url) + ".meta").exists());
+
+        assertTrue(manager.download(url, null, sha256));
+        assertEquals(DownloadManager.STATE_COMPLETED, awaitFinal(url));
+        assertContent(manager.completedFile(url));
+    }
+
+    @Test
+    public void pausedTransferHoldsUrlUntilWorkerExits() throws Exception {
+        String url = server.url("i.mp3");
+        blockMidChunk(url);
+
+        assertTrue(manager.pause(url));
+        assertFalse(manager.download(url, null, sha256));
+        release.countDown();
+        assertEquals(DownloadManager.STATE_PAUSED, awaitFinal(url));
+
+        assertTrue(manager.download(url, null, sha256));
+        assertEquals(DownloadManager.STATE_COMPLETED, awaitFinal(url));
+        assertContent(manager.completedFile(url));
+        assertEquals(1L, manager.getStats().get("resumed"));
+    }
+
+    // 开始下载并等到下载线程停在第一段中间
+    private void blockMidChunk(String url) throws InterruptedException {
+        blocked = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        assertTrue(manager.download(url, null, sha256));
+        assertTrue("Download did not start", blocked.await(10, TimeUnit.SECONDS));
+    }
+
+    private DownloadManager newManager() {
+        return new DownloadManager(dir, connector, 2, 250, listener);
+    }
+
+    private BlockingQueue<Integer> statesOf(String url) {
+        return states.computeIfAbsent(url, key -> new LinkedBlockingQueue<>());
+    }
+
+    // 跳过 queued、running，返回结束状态
+    private int awaitFinal(String url) throws InterruptedException {
+        BlockingQueue<Integer> queue = statesOf(url);
+        while (true) {
+            Integer state = queue.poll(30, TimeUnit.SECONDS);
+            if (state == null) {
+                throw new AssertionError("Download did not finish: " + url);
+            }
+            if (state >= DownloadManager.STATE_PAUSED) {
+                return state;
+            }
+        }
+    }
+
+    private void assertContent(File file) throws Exception {
+        assertNotNull(file);
+        assertArrayEquals(server.content, Files.readAllBytes(file.toPath()));
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+}
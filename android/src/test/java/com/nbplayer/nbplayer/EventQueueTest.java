@@ -0,0 +1,102 @@
+package com.nbplayer.nbplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class EventQueueTest {
+
+    @Test
+    public void drainsInInsertionOrderAndGrows() {
+        EventQueue queue = new EventQueue(2);
+        assertTrue(queue.add(1, 0, 0, 0));
+        for (int i = 1; i < 100; i++) {
+            assertFalse(queue.add(1, i, i * 2, i * 3));
+        }
+        final List<Integer> seen = new ArrayList<>();
+        assertEquals(100, queue.drain((type, arg1, arg2, arg3) -> {
+            assertEquals(arg1 * 2, arg2);
+            assertEquals(arg1 * 3, arg3);
+            seen.add(arg1);
+        }));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) seen.get(i));
+        }
+        // 取空后下一次写入重新报告为首条
+        assertTrue(queue.add(2, 0, 0, 0));
+        assertEquals(1, queue.drain((type, arg1, arg2, arg3) -> assertEquals(2, type)));
+        assertEquals(0, queue.drain((type, arg1, arg2, arg3) -> {
+        }));
+    }
+
+    @Test
+    public void reentrantDrainKeepsOrder() {
+        final EventQueue queue = new EventQueue(2);
+        for (int i = 0; i < 3; i++) {
+            queue.add(1, i, 0, 0);
+        }
+        final List<Integer> seen = new ArrayList<>();
+        final List<Integer> nested = new ArrayList<>();
+        // 主线程上的 emit: 写入后立即 drain，写入可能扩容并覆盖外层正在读的数组
+        assertEquals(5, queue.drain(new EventRing.Consumer() {
+            @Override
+            public void accept(int type, int arg1, int arg2, int arg3) {
+                seen.add(arg1);
+                if (arg1 == 0) {
+                    for (int i = 10; i < 12; i++) {
+                        queue.add(2, i, 0, 0);
+                        nested.add(queue.drain(this));
+                    }
+                }
+            }
+        }));
+        assertEquals(java.util.Arrays.asList(0, 1, 2, 10, 11), seen);
+        assertEquals(java.util.Arrays.asList(0, 0), nested);
+        assertEquals(0, queue.drain((type, arg1, arg2, arg3) -> {
+        }));
+    }
+
+    @Test
+    public void concurrentProducersKeepPerThreadOrderAndLoseNothing() throws Exception {
+        final EventQueue queue = new EventQueue(4);
+        final int producers = 4;
+        final int perProducer = 50000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int id = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    queue.add(1, id, i, 0);
+                }
+            });
+        }
+        final int[] last = new int[producers];
+        java.util.Arrays.fill(last, -1);
+        final int[] total = {0};
+        EventRing.Consumer consumer = (type, id, sequence, unused) -> {
+            assertEquals(last[id] + 1, sequence);
+            last[id] = sequence;
+            total[0]++;
+        };
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        final AtomicBoolean running = new AtomicBoolean(true);
+        while (running.get()) {
+            queue.drain(consumer);
+            boolean alive = false;
+            for (Thread thread : threads) {
+                alive |= thread.isAlive();
+            }
+            running.set(alive);
+        }
+        queue.drain(consumer);
+        assertEquals(producers * perProducer, total[0]);
+    }
+}
@@ -0,0 +1,70 @@
+package com.nbplayer.nbplayer;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class EventRingTest {
+
+    @Test
+    public void replaysInOrderBeforeWrapping() {
+        EventRing ring = new EventRing(4);
+        for (int i = 0; i < 3; i++) {
+            ring.add(1, i, i * 2, i * 3);
+        }
+        assertEquals(3, ring.size());
+        final List<Integer> seen = new ArrayList<>();
+        assertEquals(3, ring.drain((type, arg1, arg2, arg3) -> {
+            assertEquals(1, type);
+            assertEquals(arg1 * 2, arg2);
+            assertEquals(arg1 * 3, arg3);
+            seen.add(arg1);
+        }));
+        assertEquals(Arrays.asList(0, 1, 2), seen);
+        assertEquals(0, ring.size());
+        assertEquals(0, ring.getDropped());
+    }
+
+    @Test
+    public void wrapKeepsNewestInOrderAndCountsDropped() {
+        EventRing ring = new EventRing(4);
+        for (int i = 0; i < 10; i++) {
+            ring.add(1, i, 0, 0);
+        }
+        assertEquals(4, ring.size());
+        assertEquals(6, ring.getDropped());
+        assertEquals(Arrays.asList(6, 7, 8, 9), drain(ring));
+
+        // 取空后从回绕后的位置继续写入，顺序不受影响
+        for (int i = 10; i < 16; i++) {
+            ring.add(1, i, 0, 0);
+        }
+        assertEquals(Arrays.asList(12, 13, 14, 15), drain(ring));
+        // dropped 是累计值，重放后不清零
+        assertEquals(8, ring.getDropped());
+        assertEquals(Collections.emptyList(), drain(ring));
+    }
+
+    @Test
+    public void zeroCapacityDropsEverything() {
+        EventRing ring = new EventRing(0);
+        for (int i = 0; i < 5; i++) {
+            ring.add(1, i, 0, 0);
+        }
+        assertEquals(0, ring.size());
+        assertEquals(5, ring.getDropped());
+        assertEquals(Collections.emptyList(), drain(ring));
+    }
+
+    private static List<Integer> drain(EventRing ring) {
+        final List<Integer> seen = new ArrayList<>();
+        int count = ring.drain((type, arg1, arg2, arg3) -> seen.add(arg1));
+        assertEquals(seen.size(), count);
+        return seen;
+    }
+}
@@ -0,0 +1,127 @@
+package com.nbplayer.nbplayer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import tv.danmaku.ijk.media.player.IMediaPlayer;
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * 不加载 native 库的 IjkMediaPlayer 替身
+ *
+ * <p>{@link #player()} 是 Mockito 模拟的实例，所有方法都是空操作，
+ * 设置的监听器被记录下来，由测试通过 fire 系列方法在任意线程触发回调，
+ * 以此模拟 native 层的事件时序。
+ * 设置完成监听器说明播放器核心把该实例作为当前曲目，此时通知 onBound。
+ */
+final class FakeIjkPlayer {
+    // 不记录调用历史，长时间的模拟中内存与耗时都不随调用次数增长
+    private final IjkMediaPlayer player = mock(IjkMediaPlayer.class, withSettings().stubOnly());
+    private volatile IMediaPlayer.OnPreparedListener preparedListener;
+    private volatile IMediaPlayer.OnCompletionListener completionListener;
+    private volatile IMediaPlayer.OnErrorListener errorListener;
+    private volatile IMediaPlayer.OnInfoListener infoListener;
+    private volatile IMediaPlayer.OnSeekCompleteListener seekCompleteListener;
+    private final AtomicInteger prepareCalls = new AtomicInteger();
+    private final AtomicInteger startCalls = new AtomicInteger();
+
+    FakeIjkPlayer(Consumer<FakeIjkPlayer> onBound) {
+        doAnswer(invocation -> {
+            prepareCalls.incrementAndGet();
+            return null;
+        }).when(player).prepareAsync();
+        doAnswer(invocation -> {
+            startCalls.incrementAndGet();
+            return null;
+        }).when(player).start();
+        doAnswer(invocation -> {
+            preparedListener = invocation.getArgument(0);
+            return null;
+        }).when(player).setOnPreparedListener(any());
+        doAnswer(invocation -> {
+            completionListener = invocation.getArgument(0);
+            onBound.accept(this);
+            return null;
+        }).when(player).setOnCompletionListener(any());
+        doAnswer(invocation -> {
+            errorListener = invocation.getArgument(0);
+            return null;
+        }).when(player).setOnErrorListener(any());
+        doAnswer(invocation -> {
+            infoListener = invocation.getArgument(0);
+            return null;
+        }).when(player).setOnInfoListener(any());
+        doAnswer(invocation -> {
+            seekCompleteListener = invocation.getArgument(0);
+            return null;
+        }).when(player).setOnSeekCompleteListener(any());
+    }
+
+    IjkMediaPlayer player() {
+        return player;
+    }
+
+    int prepareCalls() {
+        return prepareCalls.get();
+    }
+
+    int startCalls() {
+        return startCalls.get();
+    }
+
+    /**
+     * 读出当前的 prepared 监听器，返回的回调稍后调用，模拟事件线程先取出监听器、之后才执行它
+     */
+    Runnable preparedCallback() {
+        IMediaPlayer.OnPreparedListener listener = preparedListener;
+        return () -> {
+            if (listener != null) {
+                listener.onPrepared(player);
+            }
+        };
+    }
+
+    void firePrepared() {
+        IMediaPlayer.OnPreparedListener listener = preparedListener;
+        if (listener != null) {
+            listener.onPrepared(player);
+        }
+    }
+
+    void fireRenderingStart() {
+        fireInfo(IMediaPlayer.MEDIA_INFO_AUDIO_RENDERING_START);
+    }
+
+    void fireInfo(int what) {
+        IMediaPlayer.OnInfoListener listener = infoListener;
+        if (listener != null) {
+            listener.onInfo(player, what, 0);
+        }
+    }
+
+    void fireCompletion() {
+        IMediaPlayer.OnCompletionListener listener = completionListener;
+        if (listener != null) {
+            listener.onCompletion(player);
+        }
+    }
+
+    void fireError() {
+        IMediaPlayer.OnErrorListener listener = errorListener;
+        if (listener != null) {
+            listener.onError(player, IMediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
+        }
+    }
+
+    void fireSeekComplete() {
+        IMediaPlayer.OnSeekCompleteListener listener = seekCompleteListener;
+        if (listener != null) {
+            listener.onSeekComplete(player);
+        }
+    }
+}
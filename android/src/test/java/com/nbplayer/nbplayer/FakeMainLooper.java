@@ -0,0 +1,142 @@
+package com.nbplayer.nbplayer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.mockito.MockedConstruction;
+import org.mockito.MockedStatic;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 在 JVM 单元测试中模拟主线程
+ *
+ * <p>创建本对象的测试线程充当主线程：{@link Looper#myLooper()} 在该线程返回主 Looper，
+ * 之后在该线程构造的 {@link Handler} 把任务放入本对象的队列，由 {@link #runPending()}
+ * 或 {@link #advance(long)} 在测试线程上按投递顺序执行。Handler 可以在任意线程投递任务。
+ * 静态与构造的模拟只在测试线程生效，其他线程上的 {@code Looper.myLooper()} 返回 null。
+ */
+final class FakeMainLooper implements AutoCloseable {
+    private final Looper looper = mock(Looper.class);
+    private final MockedStatic<Looper> looperStatic;
+    private final MockedConstruction<Handler> handlers;
+    // 按投递顺序排列
+    private final List<Task> tasks = new ArrayList<>();
+    private long nowMs = 0;
+    private long posted = 0;
+
+    FakeMainLooper() {
+        looperStatic = mockStatic(Looper.class);
+        looperStatic.when(Looper::getMainLooper).thenReturn(looper);
+        looperStatic.when(Looper::myLooper).thenReturn(looper);
+        handlers = mockConstruction(Handler.class, (handler, context) -> {
+            when(handler.getLooper()).thenReturn(looper);
+            when(handler.post(any(Runnable.class))).thenAnswer(invocation -> {
+                enqueue(invocation.getArgument(0), 0);
+                return true;
+            });
+            when(handler.postDelayed(any(Runnable.class), anyLong())).thenAnswer(invocation -> {
+                enqueue(invocation.getArgument(0), invocation.<Long>getArgument(1));
+                return true;
+            });
+            doAnswer(invocation -> {
+                remove(invocation.getArgument(0));
+                return null;
+            }).when(handler).removeCallbacks(any(Runnable.class));
+        });
+    }
+
+    Looper looper() {
+        return looper;
+    }
+
+    /**
+     * 执行所有已到期的任务，包括执行过程中新投递的
+     *
+     * @return 执行的任务数
+     */
+    int runPending() {
+        int count = 0;
+        Runnable next;
+        while ((next = pollDue()) != null) {
+            next.run();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 虚拟时钟前进 ms 毫秒并执行到期的任务
+     */
+    int advance(long ms) {
+        synchronized (this) {
+            nowMs += ms;
+        }
+        return runPending();
+    }
+
+    synchronized int pendingCount() {
+        return tasks.size();
+    }
+
+    /**
+     * 累计投递的任务数
+     */
+    synchronized long postedCount() {
+        return posted;
+    }
+
+    @Override
+    public void close() {
+        handlers.close();
+        looperStatic.close();
+    }
+
+    private synchronized void enqueue(Runnable runnable, long delayMs) {
+        tasks.add(new Task(runnable, nowMs + Math.max(0, delayMs)));
+        posted++;
+    }
+
+    private synchronized void remove(Runnable runnable) {
+        Iterator<Task> it = tasks.iterator();
+        while (it.hasNext()) {
+            if (it.next().runnable == runnable) {
+                it.remove();
+            }
+        }
+    }
+
+    private synchronized Runnable pollDue() {
+        Task due = null;
+        for (Task task : tasks) {
+            if (task.dueMs <= nowMs && (due == null || task.dueMs < due.dueMs)) {
+                due = task;
+            }
+        }
+        if (due == null) {
+            return null;
+        }
+        tasks.remove(due);
+        return due.runnable;
+    }
+
+    private static final class Task {
+        final Runnable runnable;
+        final long dueMs;
+
+        Task(Runnable runnable, long dueMs) {
+            this.runnable = runnable;
+            this.dueMs = dueMs;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.nbplayer.nbplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 同一主机上连续两个曲目经共享的连接入口复用一个 TLS 连接，请求头随每个请求到达服务器
+ */
+public class HttpConnectorTest {
+    private static final int SIZE = 3 * BlockCache.BLOCK_SIZE + 1234;
+    private static final Map<String, String> HEADERS = Collections.singletonMap("Authorization", "Bearer token");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestHttpServer server;
+    private HttpConnector connector;
+
+    @Before
+    public void setUp() throws Exception {
+        server = TestHttpServer.https(SIZE, folder.getRoot());
+        connector = new HttpConnector(server.sslContext.getSocketFactory());
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void tracksOnSameHostShareOneConnection() {
+        // 只复用连接，不写磁盘缓存
+        assertArrayEquals(server.content, readAll(new CachedHttpMediaDataSource(
+            server.url("track1.mp3"), HEADERS, null, connector)));
+        assertArrayEquals(server.content, readAll(new CachedHttpMediaDataSource(
+            server.url("track2.mp3"), HEADERS, null, connector)));
+
+        // 每个曲目 4 个块请求
+        assertEquals(8, server.requests.get());
+        assertEquals(8, connector.getRequests());
+        assertEquals(Collections.nCopies(8, "Bearer token"), server.authorizations);
+        assertEquals(1, server.clients.size());
+        assertEquals(1, connector.getTlsHandshakes());
+        assertEquals(7, connector.getHandshakesAvoided());
+    }
+
+    private static byte[] readAll(CachedHttpMediaDataSource source) {
+        byte[] out = new byte[(int) source.getSize()];
+        int position = 0;
+        int read;
+        while (position < out.length
+            && (read = source.readAt(position, out, position, Math.min(32768, out.length - position))) > 0) {
+            position += read;
+        }
+        source.close();
+        return out;
+    }
+}
@@ -0,0 +1,195 @@
+package com.nbplayer.nbplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 直方图的分桶与分位数: 32 微秒以下精确，之上相对误差不超过 1/64，
+ * 超出范围的值钳到边界，多个播放器的时间线并发汇总到同一组直方图
+ */
+public class LatencyHistogramTest {
+
+    private static final long MAX_MICROS = (1L << 40) - 1;
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.percentileMicros(50));
+        Map<String, Object> map = histogram.toMap();
+        assertEquals(0L, ((Number) map.get("count")).longValue());
+        assertEquals(0.0, ((Number) map.get("mean")).doubleValue(), 0);
+        assertEquals(0.0, ((Number) map.get("p99")).doubleValue(), 0);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 0; value < 32; value++) {
+            histogram.recordMicros(value);
+        }
+        for (int i = 1; i <= 32; i++) {
+            // 第 i 个样本的值为 i - 1
+            assertEquals(i - 1, histogram.percentileMicros(i * 100.0 / 32));
+        }
+    }
+
+    @Test
+    public void bucketEdges() {
+        // 32..63 每桶宽 1，64..127 每桶宽 2，之后每个 2 的幂翻倍
+        assertEquals(32, single(32));
+        assertEquals(63, single(63));
+        assertEquals(65, single(64));
+        assertEquals(65, single(65));
+        assertEquals(67, single(66));
+        assertEquals(127, single(127));
+        assertEquals(130, single(128));
+        for (int exponent = 7; exponent < 40; exponent++) {
+            long lower = 1L << exponent;
+            long width = lower >>> 5;
+            assertEquals(lower + width / 2, single(lower));
+            assertEquals(lower + width / 2, single(lower + width - 1));
+            assertEquals(lower + width + width / 2, single(lower + width));
+            // 上一桶的最后一个值
+            assertEquals(lower - width / 4, single(lower - 1));
+        }
+    }
+
+    @Test
+    public void percentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100000; value++) {
+            histogram.recordMicros(value);
+        }
+        assertEquals(100000, histogram.getCount());
+        for (double p : new double[]{1, 10, 50, 90, 99, 99.9}) {
+            long expected = (long) Math.ceil(p / 100 * 100000);
+            long actual = histogram.percentileMicros(p);
+            assertTrue("p" + p + " = " + actual, Math.abs(actual - expected) <= expected / 64 + 1);
+        }
+        // 最高分位同样取桶中点，精确的最大值另外记录
+        assertEquals(99328, histogram.percentileMicros(100));
+
+        Map<String, Object> map = histogram.toMap();
+        assertEquals(100000L, ((Number) map.get("count")).longValue());
+        assertEquals(50.0005, ((Number) map.get("mean")).doubleValue(), 1e-9);
+        assertEquals(100.0, ((Number) map.get("max")).doubleValue(), 0);
+        assertEquals(50.0, ((Number) map.get("p50")).doubleValue(), 50.0 / 64);
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(-5);
+        assertEquals(0, histogram.percentileMicros(100));
+
+        histogram.recordMicros(Long.MAX_VALUE);
+        histogram.recordMicros(MAX_MICROS + 1);
+        assertEquals(3, histogram.getCount());
+        // 最后一个桶的中点
+        assertEquals((1L << 40) - (1L << 33), histogram.percentileMicros(100));
+        assertEquals(MAX_MICROS / 1000.0, ((Number) histogram.toMap().get("max")).doubleValue(), 0);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.percentileMicros(100));
+    }
+
+    @Test
+    public void nanosAreTruncatedToMicros() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(999);
+        histogram.recordNanos(25999);
+        assertEquals(0, histogram.percentileMicros(50));
+        assertEquals(25, histogram.percentileMicros(100));
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+            threads.add(new Thread(() -> {
+                await(start);
+                for (int i = 0; i < 10000; i++) {
+                    histogram.recordMicros(i * 4 + offset);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, histogram.getCount());
+        assertEquals(39999, histogram.percentileMicros(100));
+        assertEquals(19999.5, ((Number) histogram.toMap().get("mean")).doubleValue() * 1000, 1e-6);
+    }
+
+    @Test
+    public void timelinesOfAllPlayersAggregate() throws Exception {
+        final PlayerMetrics metrics = new PlayerMetrics();
+        List<Thread> players = new ArrayList<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < 3; p++) {
+            final PlayerMetrics.Timeline timeline = metrics.newTimeline();
+            players.add(new Thread(() -> {
+                await(start);
+                for (int i = 0; i < 1000; i++) {
+                    timeline.onSeek();
+                    timeline.onSeekComplete();
+                    // 没有 onSeek 的完成不计入
+                    timeline.onSeekComplete();
+                }
+            }));
+        }
+        for (Thread player : players) {
+            player.start();
+        }
+        start.countDown();
+        for (Thread player : players) {
+            player.join();
+        }
+        metrics.recordTrackGapNanos(2000000);
+
+        Map<String, Object> map = metrics.toMap();
+        assertEquals(3000L, count(map, "seek"));
+        assertEquals(0L, count(map, "ttfa"));
+        assertEquals(1L, count(map, "trackGap"));
+        assertEquals(2.0, ((Number) ((Map<?, ?>) map.get("trackGap")).get("max")).doubleValue(), 0);
+
+        metrics.reset();
+        assertEquals(0L, count(metrics.toMap(), "seek"));
+    }
+
+    private static long single(long micros) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(micros);
+        // 分位数不超过最大值，因此先记一个更大的值把上限抬高
+        histogram.recordMicros(MAX_MICROS);
+        return histogram.percentileMicros(50);
+    }
+
+    private static long count(Map<String, Object> metrics, String name) {
+        return ((Number) ((Map<?, ?>) metrics.get(name)).get("count")).longValue();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
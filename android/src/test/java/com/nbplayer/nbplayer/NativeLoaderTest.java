@@ -0,0 +1,106 @@
+package com.nbplayer.nbplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 原生库后台加载
+ *
+ * <p>JVM 上没有 native 库，加载由测试挡住再放行；
+ * 主线程上的耗时见 benchmarks 中的 NativeLoaderBenchmark，设备上的实际数字见 getMetrics() 的 startup。
+ */
+public class NativeLoaderTest {
+    private final ConcurrentLinkedQueue<Runnable> mainQueue = new ConcurrentLinkedQueue<>();
+
+    @Test
+    public void callersAreDeferredUntilLoaded() throws Exception {
+        // 代替 loadLibrariesOnce + native_profileBegin，放行前一直未加载完
+        CountDownLatch loaded = new CountDownLatch(1);
+        AtomicReference<Thread> loadThread = new AtomicReference<>();
+        NativeLoader loader = new NativeLoader(mainHandler(), () -> {
+            loadThread.set(Thread.currentThread());
+            await(loaded);
+        });
+        // 加载未完成时 start 同样立即返回
+        loader.start();
+
+        AtomicInteger ran = new AtomicInteger();
+        loader.whenReady(ran::incrementAndGet);
+        assertEquals(0, ran.get());
+        assertFalse(loader.isReady());
+
+        loaded.countDown();
+        runMainWhenPosted();
+        assertEquals(1, ran.get());
+        assertTrue(loader.isReady());
+        assertNotNull(loadThread.get());
+        assertNotSame(Thread.currentThread(), loadThread.get());
+        // 加载完成后立即执行
+        loader.whenReady(ran::incrementAndGet);
+        assertEquals(2, ran.get());
+    }
+
+    @Test
+    public void loadFailureIsReportedToDeferredCallers() throws Exception {
+        // 调用方登记后才让加载失败，否则回调可能在 whenReady 中直接执行
+        CountDownLatch failed = new CountDownLatch(1);
+        NativeLoader loader = new NativeLoader(mainHandler(), () -> {
+            await(failed);
+            throw new UnsatisfiedLinkError("no ijkffmpeg");
+        });
+        loader.start();
+        AtomicInteger ran = new AtomicInteger();
+        loader.whenReady(ran::incrementAndGet);
+        assertEquals(0, ran.get());
+
+        failed.countDown();
+        runMainWhenPosted();
+        assertEquals(1, ran.get());
+        assertFalse(loader.isReady());
+        assertNotNull(loader.getError());
+    }
+
+    private Handler mainHandler() {
+        Handler handler = mock(Handler.class);
+        when(handler.post(any(Runnable.class))).thenAnswer(invocation -> {
+            mainQueue.add(invocation.getArgument(0));
+            return true;
+        });
+        return handler;
+    }
+
+    private void runMainWhenPosted() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mainQueue.isEmpty()) {
+            assertTrue("Loader did not finish", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        Runnable task;
+        while ((task = mainQueue.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.nbplayer.nbplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.befovy.fijkplayer.FijkPlayer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 方法调用在工作线程中执行、结果经 {@link MainThreadResult} 回到主线程
+ */
+public class NbAudioPlayerTest {
+    private FakeMainLooper main;
+    private PlayerHarness harness;
+    private PlayerHarness.Session session;
+    private Thread mainThread;
+
+    @Before
+    public void setUp() {
+        main = new FakeMainLooper();
+        harness = new PlayerHarness(main);
+        session = harness.newSession("p1");
+        mainThread = Thread.currentThread();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        session.call("release");
+        session.sync();
+        main.close();
+    }
+
+    @Test
+    public void callsRunOnWorkerAndRepliesOnMain() throws Exception {
+        final String[] openThread = new String[1];
+        harness.setOpener((player, url, options) -> openThread[0] = Thread.currentThread().getName());
+
+        PlayerHarness.Reply setDataSource = session.call("setDataSource", "url", "http://example.com/a.mp3");
+        PlayerHarness.Reply prepare = session.call("prepareAsync");
+        // 工作线程的结果排在主线程队列中，主线程执行前不会送达
+        waitForPosts(2);
+        assertFalse(setDataSource.done());
+        assertFalse(prepare.done());
+
+        main.runPending();
+        assertTrue(setDataSource.succeeded());
+        assertTrue(prepare.succeeded());
+        assertSame(mainThread, setDataSource.thread);
+        assertSame(mainThread, prepare.thread);
+        assertEquals("nbplayer-p1", openThread[0]);
+        assertEquals(Arrays.asList(PlayerStateMachine.INITIALIZED, PlayerStateMachine.ASYNC_PREPARING),
+            session.transport.states());
+    }
+
+    @Test
+    public void slowDataSourceDoesNotBlockCaller() throws Exception {
+        CountDownLatch opening = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        AtomicBoolean released = new AtomicBoolean();
+        // 工作线程被挡住，直到测试线程从 onMethodCall 返回后放行；调用若阻塞，只能等到超时
+        harness.setOpener((player, url, options) -> {
+            opening.countDown();
+            released.set(proceed.await(5, TimeUnit.SECONDS));
+        });
+
+        PlayerHarness.Reply setDataSource = session.call("setDataSource", "url", "http://example.com/a.mp3");
+        PlayerHarness.Reply prepare = session.call("prepareAsync");
+        assertTrue(opening.await(5, TimeUnit.SECONDS));
+
+        // 后续调用排在打开数据源之后串行执行
+        main.runPending();
+        assertFalse(setDataSource.done());
+        assertFalse(prepare.done());
+
+        proceed.countDown();
+        session.sync();
+        assertTrue("onMethodCall blocked until the opener timed out", released.get());
+        assertTrue(setDataSource.succeeded());
+        assertTrue(prepare.succeeded());
+    }
+
+    @Test
+    public void invalidStateErrorIsDeliveredOnMain() throws Exception {
+        PlayerHarness.Reply start = session.call("start");
+        assertFalse(start.done());
+        session.sync();
+        assertEquals("INVALID_STATE", start.errorCode);
+        assertSame(mainThread, start.thread);
+        assertEquals(1, start.count);
+        assertTrue(session.transport.states().isEmpty());
+    }
+
+    @Test
+    public void dataSourceFailureMovesToError() throws Exception {
+        harness.setOpener((player, url, options) -> {
+            throw new java.io.IOException("unreachable");
+        });
+        PlayerHarness.Reply setDataSource = session.call("setDataSource", "url", "http://example.com/a.mp3");
+        session.sync();
+        assertEquals("SET_DATA_SOURCE_ERROR", setDataSource.errorCode);
+        assertEquals(Collections.singletonList(PlayerStateMachine.ERROR), session.transport.states());
+    }
+
+    @Test
+    public void nativeCallbacksDriveStateMachine() throws Exception {
+        session.call("setDataSource", "url", "http://example.com/a.mp3");
+        session.call("prepareAsync");
+        session.sync();
+        FakeIjkPlayer fake = session.current();
+        assertNotNull(fake);
+
+        fake.firePrepared();
+        fake.fireRenderingStart();
+        // 完成回调把收尾工作提交到工作线程
+        fake.fireCompletion();
+        session.sync();
+
+        assertEquals(Arrays.asList(
+            PlayerStateMachine.INITIALIZED,
+            PlayerStateMachine.ASYNC_PREPARING,
+            PlayerStateMachine.PREPARED,
+            PlayerStateMachine.STARTED,
+            PlayerStateMachine.COMPLETED), session.transport.states());
+        assertEquals(1, fake.prepareCalls());
+    }
+
+    @Test
+    public void playlistAdvancesToPreparedNextTrack() throws Exception {
+        FakeIjkPlayer first = startPlaylist();
+        FakeIjkPlayer next = session.players().get(1);
+        next.firePrepared();
+        assertEquals(0, next.startCalls());
+
+        first.fireCompletion();
+        session.sync();
+        assertSame(next, session.current());
+        assertEquals(1, next.startCalls());
+        assertTrue(harness.releasedPlayers().contains(first.player()));
+        next.fireRenderingStart();
+
+        assertEquals(Arrays.asList(
+            PlayerStateMachine.INITIALIZED,
+            PlayerStateMachine.ASYNC_PREPARING,
+            PlayerStateMachine.PREPARED,
+            PlayerStateMachine.STARTED,
+            PlayerStateMachine.ASYNC_PREPARING,
+            PlayerStateMachine.PREPARED,
+            PlayerStateMachine.STARTED), session.transport.states());
+        assertTrackGapRecorded();
+    }
+
+    @Test
+    public void nextTrackPreparedDuringSwapStillStarts() throws Exception {
+        FakeIjkPlayer first = startPlaylist();
+        FakeIjkPlayer next = session.players().get(1);
+        // 事件线程在切换前取出了下一曲的 prepared 监听器，切换完成后才调用它
+        Runnable prepared = next.preparedCallback();
+
+        first.fireCompletion();
+        session.sync();
+        assertSame(next, session.current());
+        assertEquals(0, next.startCalls());
+        assertEquals(PlayerStateMachine.ASYNC_PREPARING, session.transport.lastState());
+
+        prepared.run();
+        session.sync();
+        assertEquals(1, next.startCalls());
+        assertEquals(PlayerStateMachine.PREPARED, session.transport.lastState());
+        // 之后的回调不会再次开始播放
+        next.firePrepared();
+        assertEquals(1, next.startCalls());
+        next.fireRenderingStart();
+        assertEquals(PlayerStateMachine.STARTED, session.transport.lastState());
+        assertTrackGapRecorded();
+    }
+
+    // 两首曲目的播放列表，第一首已出声且第二首已开始预备
+    private FakeIjkPlayer startPlaylist() throws Exception {
+        PlayerHarness.Reply setPlaylist = session.call("setPlaylist",
+            "urls", Arrays.asList("http://example.com/a.mp3", "http://example.com/b.mp3"));
+        session.sync();
+        assertTrue(setPlaylist.succeeded());
+        FakeIjkPlayer first = session.current();
+        first.firePrepared();
+        first.fireRenderingStart();
+        session.sync();
+        assertEquals(2, session.players().size());
+        assertEquals(1, session.players().get(1).prepareCalls());
+        return first;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void assertTrackGapRecorded() {
+        Map<String, Object> metrics = harness.metrics().toMap();
+        assertEquals(1L, ((Number) ((Map<String, Object>) metrics.get("trackGap")).get("count")).longValue());
+        // 切换到预备好的下一曲不计入起播耗时
+        assertEquals(1L, ((Number) ((Map<String, Object>) metrics.get("ttfa")).get("count")).longValue());
+        List<int[]> changes = session.transport.events(BinaryEventChannel.EVENT_TRACK_CHANGE);
+        int[] last = changes.get(changes.size() - 1);
+        assertEquals(1, last[1]);
+        assertTrue(last[2] >= 0);
+    }
+
+    @Test
+    public void callbacksFromReleasedPlayerAreIgnored() throws Exception {
+        session.call("setDataSource", "url", "http://example.com/a.mp3");
+        session.sync();
+        FakeIjkPlayer first = session.current();
+        session.call("reset");
+        session.call("release");
+        session.sync();
+        List<Integer> before = session.transport.states();
+
+        first.firePrepared();
+        first.fireError();
+        session.sync();
+
+        assertEquals(before, session.transport.states());
+        assertEquals(PlayerStateMachine.END, session.transport.lastState());
+        assertTrue(harness.releasedPlayers().contains(first.player()));
+        assertEquals(0, session.transport.emittedAfterClose());
+    }
+
+    @Test
+    public void releaseClosesTransportAndRejectsLaterCalls() throws Exception {
+        session.call("setDataSource", "url", "http://example.com/a.mp3");
+        PlayerHarness.Reply release = session.call("release");
+        session.sync();
+        assertTrue(release.succeeded());
+        assertTrue(session.transport.isClosed());
+        assertEquals(Collections.singletonList("p1"), harness.released());
+
+        // 工作线程已关闭，调用在主线程直接返回错误
+        PlayerHarness.Reply late = session.call("start");
+        assertTrue(late.done());
+        assertEquals("INVALID_STATE", late.errorCode);
+    }
+
+    @Test
+    public void snapshotMatchesLastTransition() throws Exception {
+        session.call("setDataSource", "url", "http://example.com/a.mp3");
+        session.call("prepareAsync");
+        session.sync();
+        session.transport.subscribe();
+        List<int[]> snapshots = session.transport.events(BinaryEventChannel.EVENT_SNAPSHOT);
+        assertEquals(1, snapshots.size());
+        assertEquals(PlayerStateMachine.ASYNC_PREPARING, snapshots.get(0)[1]);
+    }
+
+    @Test
+    public void stateValuesMatchReference() throws Exception {
+        // FijkPlayer 的状态常量是私有的，Dart 端两边都按同样的取值解码
+        String[] names = {"idle", "initialized", "asyncPreparing", "prepared", "started",
+                "paused", "completed", "stopped", "error", "end"};
+        int[] states = {PlayerStateMachine.IDLE, PlayerStateMachine.INITIALIZED,
+                PlayerStateMachine.ASYNC_PREPARING, PlayerStateMachine.PREPARED,
+                PlayerStateMachine.STARTED, PlayerStateMachine.PAUSED, PlayerStateMachine.COMPLETED,
+                PlayerStateMachine.STOPPED, PlayerStateMachine.ERROR, PlayerStateMachine.END};
+        for (int i = 0; i < names.length; i++) {
+            Field field = FijkPlayer.class.getDeclaredField(names[i]);
+            field.setAccessible(true);
+            assertEquals(names[i], field.getInt(null), states[i]);
+        }
+    }
+
+    private void waitForPosts(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (main.postedCount() < count) {
+            assertTrue("Worker did not reply in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.nbplayer.nbplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 并行分段数据源的正确性、不完整分段的重试与丢弃下载的名额，以及按连接限速的服务器上每段只拉一次、确实并行；
+ * 与单连接读取的吞吐对比见 benchmarks 中的 ParallelRangeDataSourceBenchmark
+ */
+public class ParallelRangeDataSourceTest {
+    private static final int SIZE = 16 * ParallelRangeDataSource.CHUNK_SIZE + 1234;
+    // 与插件的预读窗口相同
+    private static final int WINDOW_CHUNKS = 8;
+    // 每个连接 1 MB/s，模拟单条 TCP 连接受限的 CDN
+    private static final int BYTES_PER_SECOND = 1024 * 1024;
+    private static final int READ_BYTES = 2 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    private TestHttpServer server;
+    private HttpConnector connector;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new TestHttpServer(SIZE);
+        connector = new HttpConnector();
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        server.close();
+    }
+
+    @Test
+    public void readsWholeResourceAndSeeks() {
+        ParallelRangeDataSource source = newSource(4);
+        assertEquals(SIZE, source.getSize());
+        byte[] content = new byte[SIZE];
+        int position = 0;
+        while (position < SIZE) {
+            int n = source.readAt(position, content, position, Math.min(BUFFER_SIZE, SIZE - position));
+            assertTrue(n > 0);
+            position += n;
+        }
+        assertArrayEquals(server.content, content);
+        assertEquals(-1, source.readAt(SIZE, new byte[1], 0, 1));
+
+        // 回到开头
+        byte[] buffer = new byte[100];
+        assertEquals(100, source.readAt(10, buffer, 0, 100));
+        assertArrayEquals(Arrays.copyOfRange(server.content, 10, 110), buffer);
+        source.close();
+        assertEquals(-1, source.readAt(0, buffer, 0, 100));
+    }
+
+    @Test
+    public void serverIgnoringRangeStillReadsCorrectly() {
+        server.ignoreRange = true;
+        ParallelRangeDataSource source = newSource(4);
+        int offset = 3 * ParallelRangeDataSource.CHUNK_SIZE + 17;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        assertEquals(BUFFER_SIZE, source.readAt(offset, buffer, 0, BUFFER_SIZE));
+        assertArrayEquals(Arrays.copyOfRange(server.content, offset, offset + BUFFER_SIZE), buffer);
+        source.close();
+    }
+
+    @Test
+    public void truncatedChunkIsRefetched() {
+        // 第 3 段传到一半时服务器正常结束响应，只有长度对不上
+        server.dropAt = 3L * ParallelRangeDataSource.CHUNK_SIZE + 1000;
+        ParallelRangeDataSource source = newSource(4);
+        byte[] content = new byte[SIZE];
+        int position = 0;
+        while (position < SIZE) {
+            int n = source.readAt(position, content, position, Math.min(BUFFER_SIZE, SIZE - position));
+            assertTrue("read failed at " + position, n > 0);
+            position += n;
+        }
+        assertArrayEquals(server.content, content);
+        assertEquals(-1, server.dropAt);
+        source.close();
+    }
+
+    /**
+     * 移出窗口的下载在退出前仍占用名额: 第 1、2 段挡在建立连接处时 seek 到远处，
+     * 只有新位置的当前段越过上限开始下载，放行后旧下载退出，后续分段才开始
+     */
+    @Test
+    public void discardedDownloadsHoldSlotsUntilTheyExit() throws Exception {
+        CountDownLatch stalled = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> opened = new CopyOnWriteArrayList<>();
+        HttpConnector stalling = new HttpConnector() {
+            @Override
+            HttpURLConnection open(String url, Map<String, String> headers, long start, long end) throws IOException {
+                long index = start / ParallelRangeDataSource.CHUNK_SIZE;
+                opened.add(index);
+                if (index == 1 || index == 2) {
+                    stalled.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return super.open(url, headers, start, end);
+            }
+        };
+        ParallelRangeDataSource source = new ParallelRangeDataSource(server.url("parallel.mp3"), null, stalling,
+            executor, 2, WINDOW_CHUNKS);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        assertEquals(BUFFER_SIZE, source.readAt(0, buffer, 0, BUFFER_SIZE));
+        assertTrue(stalled.await(5, TimeUnit.SECONDS));
+
+        long far = 10L * ParallelRangeDataSource.CHUNK_SIZE;
+        assertEquals(BUFFER_SIZE, source.readAt(far, buffer, 0, BUFFER_SIZE));
+        assertEquals(new HashSet<>(Arrays.asList(0L, 1L, 2L, 10L)), new HashSet<>(opened));
+
+        release.countDown();
+        long next = 11L * ParallelRangeDataSource.CHUNK_SIZE;
+        assertEquals(BUFFER_SIZE, source.readAt(next, buffer, 0, BUFFER_SIZE));
+        assertArrayEquals(Arrays.copyOfRange(server.content, (int) next, (int) next + BUFFER_SIZE), buffer);
+        assertTrue(opened.contains(11L));
+        source.close();
+    }
+
+    /**
+     * 从开头和 seek 到中部后各缓冲 2 MB: 请求都是整段的 Range，每段只拉一次，预读不超过窗口，
+     * 限速下每段要读 1/4 秒，首段之后的分段同时在下载
+     */
+    @Test
+    public void fetchesEachChunkOnceInParallel() throws Exception {
+        server.bytesPerSecond = BYTES_PER_SECOND;
+        for (long offset : new long[]{0, SIZE / 2}) {
+            server.ranges.clear();
+            server.maxActive.set(0);
+            assertEquals(READ_BYTES, read(4, offset));
+            // 关闭前已开始的下载仍会发出请求，等它们结束后再统计，也不混入下一轮
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            executor = Executors.newFixedThreadPool(8);
+
+            long first = offset / ParallelRangeDataSource.CHUNK_SIZE;
+            long last = (offset + READ_BYTES - 1) / ParallelRangeDataSource.CHUNK_SIZE;
+            Set<Long> fetched = new HashSet<>();
+            for (String range : server.ranges) {
+                long start = Long.parseLong(range.substring("bytes=".length(), range.indexOf('-')));
+                assertEquals(0, start % ParallelRangeDataSource.CHUNK_SIZE);
+                assertEquals("bytes=" + start + "-" + (start + ParallelRangeDataSource.CHUNK_SIZE - 1), range);
+                assertTrue("fetched twice: " + range, fetched.add(start / ParallelRangeDataSource.CHUNK_SIZE));
+            }
+            for (long index = first; index <= last; index++) {
+                assertTrue("missing chunk " + index, fetched.contains(index));
+            }
+            assertTrue(fetched.size() <= last - first + 1 + WINDOW_CHUNKS);
+            assertTrue("max active " + server.maxActive.get(), server.maxActive.get() > 1);
+        }
+    }
+
+    private int read(int connections, long offset) {
+        ParallelRangeDataSource source = newSource(connections);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read = 0;
+        try {
+            while (read < READ_BYTES) {
+                int n = source.readAt(offset + read, buffer, 0, Math.min(buffer.length, READ_BYTES - read));
+                assertTrue(n > 0);
+                assertArrayEquals(Arrays.copyOfRange(server.content, (int) offset + read, (int) offset + read + n),
+                    Arrays.copyOf(buffer, n));
+                read += n;
+            }
+            return read;
+        } finally {
+            source.close();
+        }
+    }
+
+    private ParallelRangeDataSource newSource(int connections) {
+        return new ParallelRangeDataSource(server.url("parallel.mp3"), null, connector, executor,
+            connections, WINDOW_CHUNKS);
+    }
+}
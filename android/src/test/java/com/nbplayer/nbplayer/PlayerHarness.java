@@ -0,0 +1,325 @@
+package com.nbplayer.nbplayer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
+import io.flutter.plugin.common.MethodChannel.Result;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * 在 JVM 上驱动 {@link NbAudioPlayer} 的测试夹具
+ *
+ * <p>宿主新建的原生播放器是 {@link FakeIjkPlayer}，续播存储为空操作的模拟对象，指标使用真实实现；
+ * 传输层记录 emit 的全部事件。主线程由调用方传入的 {@link FakeMainLooper} 模拟，
+ * 播放器必须在其测试线程上创建，方法调用的结果经主线程队列送达。
+ */
+final class PlayerHarness implements PlayerHost {
+    private final FakeMainLooper main;
+    private final PositionStore positionStore = mock(PositionStore.class);
+    private final PlayerMetrics metrics = new PlayerMetrics();
+    private final List<FakeIjkPlayer> created = Collections.synchronizedList(new ArrayList<>());
+    private final Map<IjkMediaPlayer, FakeIjkPlayer> fakes = new ConcurrentHashMap<>();
+    // 工作线程名 -> 该播放器当前曲目使用的实例
+    private final Map<String, FakeIjkPlayer> current = new ConcurrentHashMap<>();
+    // 工作线程名 -> 该播放器新建过的全部实例
+    private final Map<String, List<FakeIjkPlayer>> owned = new ConcurrentHashMap<>();
+    // 已 release 的原生播放器，可能重复
+    private final List<IjkMediaPlayer> releasedPlayers = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> released = Collections.synchronizedList(new ArrayList<>());
+    private volatile DataSourceOpener opener = (player, url, options) -> {
+    };
+
+    interface DataSourceOpener {
+        void open(IjkMediaPlayer player, String url, SourceOptions options) throws Exception;
+    }
+
+    PlayerHarness(FakeMainLooper main) {
+        this.main = main;
+        when(positionStore.get(any())).thenReturn(-1L);
+    }
+
+    /**
+     * 替换 openDataSource 的行为，默认为空操作
+     */
+    void setOpener(DataSourceOpener opener) {
+        this.opener = opener;
+    }
+
+    Session newSession(String playerId) {
+        RecordingTransport transport = new RecordingTransport();
+        NbAudioPlayer player = new NbAudioPlayer(playerId, this, transport);
+        return new Session(playerId, player, transport);
+    }
+
+    FakeIjkPlayer fakeOf(IjkMediaPlayer player) {
+        return fakes.get(player);
+    }
+
+    List<FakeIjkPlayer> created() {
+        synchronized (created) {
+            return new ArrayList<>(created);
+        }
+    }
+
+    List<IjkMediaPlayer> releasedPlayers() {
+        synchronized (releasedPlayers) {
+            return new ArrayList<>(releasedPlayers);
+        }
+    }
+
+    List<String> released() {
+        synchronized (released) {
+            return new ArrayList<>(released);
+        }
+    }
+
+    @Override
+    public IjkMediaPlayer newPlayer() {
+        FakeIjkPlayer fake = new FakeIjkPlayer(
+            bound -> current.put(Thread.currentThread().getName(), bound));
+        doAnswer(invocation -> {
+            releasedPlayers.add(fake.player());
+            return null;
+        }).when(fake.player()).release();
+        fakes.put(fake.player(), fake);
+        created.add(fake);
+        owned.computeIfAbsent(Thread.currentThread().getName(),
+            name -> Collections.synchronizedList(new ArrayList<>())).add(fake);
+        return fake.player();
+    }
+
+    @Override
+    public PlayerMetrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public PositionStore positionStore() {
+        return positionStore;
+    }
+
+    @Override
+    public void openDataSource(IjkMediaPlayer player, String url, SourceOptions options) throws Exception {
+        opener.open(player, url, options);
+    }
+
+    @Override
+    public void onPlayerReleased(String playerId) {
+        released.add(playerId);
+    }
+
+    /**
+     * 一个播放器及其传输层
+     */
+    final class Session {
+        final NbAudioPlayer player;
+        final RecordingTransport transport;
+
+        private final String threadName;
+
+        Session(String playerId, NbAudioPlayer player, RecordingTransport transport) {
+            this.threadName = "nbplayer-" + playerId;
+            this.player = player;
+            this.transport = transport;
+        }
+
+        /**
+         * 在当前线程 (应为主线程) 发起方法调用，结果在主线程队列执行后写入返回值
+         */
+        Reply call(String method, Object... keyValues) {
+            Map<String, Object> arguments = new HashMap<>();
+            for (int i = 0; i + 1 < keyValues.length; i += 2) {
+                arguments.put((String) keyValues[i], keyValues[i + 1]);
+            }
+            Reply reply = new Reply(method);
+            player.onMethodCall(new MethodCall(method, arguments), reply);
+            return reply;
+        }
+
+        /**
+         * 等待此前提交到工作线程的任务全部执行完，并执行它们投递到主线程的结果
+         *
+         * <p>工作线程串行执行，探测调用的结果送达即说明排在它之前的任务都已完成。
+         */
+        void sync() throws InterruptedException {
+            Reply probe = call("__probe");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!probe.done()) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new AssertionError("Worker did not drain in time");
+                }
+                if (main.runPending() == 0) {
+                    Thread.sleep(1);
+                }
+            }
+            main.runPending();
+        }
+
+        /**
+         * 当前曲目使用的 native 播放器替身，尚未打开过数据源时返回 null；释放后仍返回最后一个
+         */
+        FakeIjkPlayer current() {
+            return current.get(threadName);
+        }
+
+        /**
+         * 该播放器新建过的全部实例，包括预备中的下一曲和已释放的
+         */
+        List<FakeIjkPlayer> players() {
+            List<FakeIjkPlayer> list = owned.get(threadName);
+            if (list == null) {
+                return Collections.emptyList();
+            }
+            synchronized (list) {
+                return new ArrayList<>(list);
+            }
+        }
+    }
+
+    /**
+     * 记录一次方法调用的结果及送达的线程
+     */
+    static final class Reply implements Result {
+        final String method;
+        private volatile boolean done;
+        volatile int count;
+        volatile Object value;
+        volatile String errorCode;
+        volatile boolean notImplemented;
+        volatile Thread thread;
+
+        Reply(String method) {
+            this.method = method;
+        }
+
+        boolean done() {
+            return done;
+        }
+
+        boolean succeeded() {
+            return done && errorCode == null && !notImplemented;
+        }
+
+        @Override
+        public void success(Object result) {
+            value = result;
+            finish();
+        }
+
+        @Override
+        public void error(String errorCode, String errorMessage, Object errorDetails) {
+            this.errorCode = errorCode;
+            finish();
+        }
+
+        @Override
+        public void notImplemented() {
+            notImplemented = true;
+            finish();
+        }
+
+        private void finish() {
+            thread = Thread.currentThread();
+            count++;
+            done = true;
+        }
+    }
+
+    /**
+     * 按 emit 顺序记录事件的传输层
+     */
+    static final class RecordingTransport implements PlayerTransport {
+        private final List<int[]> events = new ArrayList<>();
+        private MethodCallHandler handler;
+        private Runnable onSubscribe;
+        private boolean closed;
+        private int emittedAfterClose;
+
+        @Override
+        public synchronized void start(MethodCallHandler handler, Runnable onSubscribe) {
+            this.handler = handler;
+            this.onSubscribe = onSubscribe;
+        }
+
+        @Override
+        public synchronized void emit(int type, int arg1, int arg2, int arg3) {
+            if (closed) {
+                emittedAfterClose++;
+            }
+            events.add(new int[]{type, arg1, arg2, arg3});
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            handler = null;
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        synchronized int emittedAfterClose() {
+            return emittedAfterClose;
+        }
+
+        /**
+         * 模拟订阅者接入，在主线程调用
+         */
+        void subscribe() {
+            Runnable runnable;
+            synchronized (this) {
+                runnable = onSubscribe;
+            }
+            runnable.run();
+        }
+
+        synchronized List<int[]> events(int type) {
+            List<int[]> result = new ArrayList<>();
+            for (int[] event : events) {
+                if (event[0] == type) {
+                    result.add(event);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 状态变化事件的新状态序列
+         */
+        synchronized List<Integer> states() {
+            List<Integer> result = new ArrayList<>();
+            for (int[] event : events) {
+                if (event[0] == BinaryEventChannel.EVENT_STATE_CHANGE) {
+                    result.add(event[1]);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 最后一次状态变化的新状态，没有状态变化时为 IDLE
+         */
+        synchronized int lastState() {
+            for (int i = events.size() - 1; i >= 0; i--) {
+                int[] event = events.get(i);
+                if (event[0] == BinaryEventChannel.EVENT_STATE_CHANGE) {
+                    return event[1];
+                }
+            }
+            return PlayerStateMachine.IDLE;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.nbplayer.nbplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import tv.danmaku.ijk.media.player.IMediaPlayer;
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * 多个播放器在随机调度下的状态机模拟
+ *
+ * <p>每个播放器的调度 (方法调用与 native 回调的序列及间隔) 由种子确定，可用
+ * {@code -DsimSeed=} 重放。方法调用在测试线程 (主线程) 发起，回调由多个注入线程
+ * 直接在 {@link FakeIjkPlayer} 上触发，与工作线程并发。每个调度跑完后检查:
+ * <ul>
+ * <li>状态变化事件首尾相接 (旧状态等于上一条的新状态) 且每一步都是状态机允许的转换</li>
+ * <li>订阅时的快照与最后一条状态变化一致</li>
+ * <li>每个方法调用恰好得到一次结果，且在主线程送达</li>
+ * <li>释放后传输层不再发出事件，新建的 native 实例全部释放且只释放一次</li>
+ * </ul>
+ * {@code -DsimDelay=0} 去掉步间隔，在满负载下检查。状态转换吞吐量、方法调用往返延迟与回调处理耗时
+ * 见 benchmarks 中的 NbAudioPlayerBenchmark。
+ */
+public class PlayerSimulationTest {
+    private static final int PLAYERS = 8;
+    private static final int INJECTORS = 4;
+    private static final int STEPS = 400;
+    // 相邻两步之间的最大间隔
+    private static final int MAX_DELAY_MICROS = Integer.getInteger("simDelay", 200);
+    private static final List<String> PLAYLIST = Arrays.asList(
+        "http://example.com/1.mp3", "http://example.com/2.mp3", "http://example.com/3.mp3");
+
+    private enum Kind {
+        SET_DATA_SOURCE(6), PREPARE(5), START_FROM_INITIALIZED(3), START(4), PAUSE(3), SEEK(3),
+        STOP(2), RESET(2), SET_PLAYLIST(2), NEXT(2), ENQUEUE(1),
+        PREPARED(8), RENDERING_START(6), BUFFERING(3), SEEK_COMPLETE(2), COMPLETION(4), ERROR(1),
+        // 在新建过的任意实例上触发，覆盖预备中的下一曲与已释放的实例
+        STRAY_PREPARED(2), STRAY_COMPLETION(1);
+
+        final int weight;
+
+        Kind(int weight) {
+            this.weight = weight;
+        }
+
+        boolean isCall() {
+            return ordinal() <= ENQUEUE.ordinal();
+        }
+    }
+
+    private static final class Step {
+        final Kind kind;
+        final int delayMicros;
+        final int pick;
+
+        Step(Kind kind, int delayMicros, int pick) {
+            this.kind = kind;
+            this.delayMicros = delayMicros;
+            this.pick = pick;
+        }
+    }
+
+    private FakeMainLooper main;
+    private PlayerHarness harness;
+    private final ConcurrentLinkedQueue<Runnable> mainQueue = new ConcurrentLinkedQueue<>();
+    private final List<PlayerHarness.Reply> replies = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        main = new FakeMainLooper();
+        harness = new PlayerHarness(main);
+    }
+
+    @After
+    public void tearDown() {
+        main.close();
+    }
+
+    @Test
+    public void randomizedSchedulesKeepInvariants() throws Exception {
+        long seed = Long.getLong("simSeed", 20240601L);
+        Random random = new Random(seed);
+        List<PlayerHarness.Session> sessions = new ArrayList<>();
+        List<List<Step>> schedules = new ArrayList<>();
+        for (int i = 0; i < PLAYERS; i++) {
+            sessions.add(harness.newSession("sim" + i));
+            schedules.add(schedule(random));
+        }
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch finished = new CountDownLatch(INJECTORS);
+        List<Thread> injectors = new ArrayList<>();
+        for (int t = 0; t < INJECTORS; t++) {
+            final int first = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    // 每个注入线程负责一部分播放器，轮流推进它们的调度
+                    for (int step = 0; step < STEPS; step++) {
+                        for (int i = first; i < PLAYERS; i += INJECTORS) {
+                            run(sessions.get(i), schedules.get(i).get(step));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    finished.countDown();
+                }
+            }, "injector-" + t);
+            injectors.add(thread);
+        }
+
+        for (Thread thread : injectors) {
+            thread.start();
+        }
+        // 测试线程充当主线程: 执行注入线程转交的方法调用和工作线程投递的结果
+        long deadline = System.currentTimeMillis() + 60000;
+        while (finished.getCount() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Simulation did not finish, seed=" + seed);
+            }
+            if (runMain() == 0) {
+                LockSupport.parkNanos(20000);
+            }
+        }
+        for (PlayerHarness.Session session : sessions) {
+            session.sync();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Injector failed, seed=" + seed, failure.get());
+        }
+
+        for (PlayerHarness.Session session : sessions) {
+            checkTransitions(session, seed);
+            session.transport.subscribe();
+            List<int[]> snapshots = session.transport.events(BinaryEventChannel.EVENT_SNAPSHOT);
+            assertEquals("snapshot vs last transition, seed=" + seed,
+                session.transport.lastState(), snapshots.get(snapshots.size() - 1)[1]);
+        }
+
+        for (PlayerHarness.Reply reply : replies) {
+            assertEquals(reply.method + " replies, seed=" + seed, 1, reply.count);
+        }
+
+        for (PlayerHarness.Session session : sessions) {
+            session.call("release");
+            session.sync();
+            assertEquals(PlayerStateMachine.END, session.transport.lastState());
+            assertTrue(session.transport.isClosed());
+        }
+        // 释放后的回调不得再发出事件
+        for (PlayerHarness.Session session : sessions) {
+            for (FakeIjkPlayer fake : session.players()) {
+                fake.firePrepared();
+                fake.fireRenderingStart();
+                fake.fireError();
+                fake.fireCompletion();
+            }
+        }
+        for (PlayerHarness.Session session : sessions) {
+            session.sync();
+            assertEquals("events after close, seed=" + seed, 0, session.transport.emittedAfterClose());
+            checkTransitions(session, seed);
+        }
+        checkPlayersReleased(seed);
+    }
+
+    private List<Step> schedule(Random random) {
+        int total = 0;
+        for (Kind kind : Kind.values()) {
+            total += kind.weight;
+        }
+        List<Step> steps = new ArrayList<>(STEPS);
+        for (int i = 0; i < STEPS; i++) {
+            int roll = random.nextInt(total);
+            Kind chosen = null;
+            for (Kind kind : Kind.values()) {
+                roll -= kind.weight;
+                if (roll < 0) {
+                    chosen = kind;
+                    break;
+                }
+            }
+            steps.add(new Step(chosen, random.nextInt(MAX_DELAY_MICROS + 1), random.nextInt(Integer.MAX_VALUE)));
+        }
+        return steps;
+    }
+
+    // 在注入线程执行一步
+    private void run(PlayerHarness.Session session, Step step) throws InterruptedException {
+        if (step.delayMicros > 0) {
+            LockSupport.parkNanos(step.delayMicros * 1000L);
+        }
+        if (step.kind.isCall()) {
+            // 方法调用转交主线程，等它发出后再走下一步，保持调度内的先后顺序
+            CountDownLatch issued = new CountDownLatch(1);
+            mainQueue.add(() -> {
+                replies.add(call(session, step));
+                issued.countDown();
+            });
+            issued.await();
+            return;
+        }
+        FakeIjkPlayer fake;
+        if (step.kind == Kind.STRAY_PREPARED || step.kind == Kind.STRAY_COMPLETION) {
+            List<FakeIjkPlayer> players = session.players();
+            fake = players.isEmpty() ? null : players.get(step.pick % players.size());
+        } else {
+            fake = session.current();
+        }
+        if (fake == null) {
+            return;
+        }
+        switch (step.kind) {
+            case PREPARED:
+            case STRAY_PREPARED:
+                fake.firePrepared();
+                break;
+            case RENDERING_START:
+                fake.fireRenderingStart();
+                break;
+            case BUFFERING:
+                fake.fireInfo(IMediaPlayer.MEDIA_INFO_BUFFERING_START);
+                fake.fireInfo(IMediaPlayer.MEDIA_INFO_BUFFERING_END);
+                break;
+            case SEEK_COMPLETE:
+                fake.fireSeekComplete();
+                break;
+            case COMPLETION:
+            case STRAY_COMPLETION:
+                fake.fireCompletion();
+                break;
+            case ERROR:
+                fake.fireError();
+                break;
+            default:
+                throw new IllegalStateException(step.kind.name());
+        }
+    }
+
+    // 在主线程执行
+    private PlayerHarness.Reply call(PlayerHarness.Session session, Step step) {
+        switch (step.kind) {
+            case SET_DATA_SOURCE:
+                return session.call("setDataSource", "url", PLAYLIST.get(step.pick % PLAYLIST.size()),
+                    "mediaId", step.pick % 2 == 0 ? "media" + step.pick % 5 : null, "autoResume", true);
+            case PREPARE:
+                return session.call("prepareAsync");
+            case START_FROM_INITIALIZED:
+                return session.call("startFromInitialized");
+            case START:
+                return session.call("start");
+            case PAUSE:
+                return session.call("pause");
+            case SEEK:
+                return session.call("seekTo", "msec", step.pick % 100000);
+            case STOP:
+                return session.call("stop");
+            case RESET:
+                return session.call("reset");
+            case SET_PLAYLIST:
+                return session.call("setPlaylist", "urls", new ArrayList<>(PLAYLIST),
+                    "index", step.pick % PLAYLIST.size());
+            case NEXT:
+                return session.call(step.pick % 2 == 0 ? "next" : "previous");
+            case ENQUEUE:
+                return session.call("enqueue", "url", PLAYLIST.get(step.pick % PLAYLIST.size()));
+            default:
+                throw new IllegalStateException(step.kind.name());
+        }
+    }
+
+    private int runMain() {
+        int count = 0;
+        Runnable task;
+        while ((task = mainQueue.poll()) != null) {
+            task.run();
+            count++;
+        }
+        // 虚拟时钟随之前进，续播位置的定时采样也参与调度
+        return count + main.advance(10);
+    }
+
+    private static void checkTransitions(PlayerHarness.Session session, long seed) {
+        int previous = PlayerStateMachine.IDLE;
+        List<int[]> changes = session.transport.events(BinaryEventChannel.EVENT_STATE_CHANGE);
+        for (int i = 0; i < changes.size(); i++) {
+            int newState = changes.get(i)[1];
+            int oldState = changes.get(i)[2];
+            if (oldState != previous) {
+                fail("Broken chain at " + i + ": expected old state " + previous + " but was " + oldState
+                    + ", seed=" + seed);
+            }
+            if (!PlayerStateMachine.isAllowed(oldState, newState)) {
+                fail("Illegal transition at " + i + ": " + oldState + " -> " + newState + ", seed=" + seed);
+            }
+            previous = newState;
+        }
+    }
+
+    private void checkPlayersReleased(long seed) {
+        Map<IjkMediaPlayer, Integer> released = new HashMap<>();
+        for (IjkMediaPlayer player : harness.releasedPlayers()) {
+            released.merge(player, 1, Integer::sum);
+        }
+        for (FakeIjkPlayer fake : harness.created()) {
+            assertEquals("release count of a created player, seed=" + seed,
+                Integer.valueOf(1), released.getOrDefault(fake.player(), 0));
+        }
+        assertEquals(harness.created().size(), harness.releasedPlayers().size());
+    }
+}
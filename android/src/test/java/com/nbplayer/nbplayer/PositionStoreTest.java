@@ -0,0 +1,129 @@
+package com.nbplayer.nbplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 续播位置日志的关闭、尾部截断与 10 万条目的增量刷盘和重新加载；耗时见 benchmarks 中的 PositionStoreBenchmark
+ */
+public class PositionStoreTest {
+    private static final int ENTRIES = 100000;
+    // 刷盘只由测试触发
+    private static final long FLUSH_INTERVAL_MS = 60000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shutdownDoesNotWaitForBusyStoreThread() throws Exception {
+        File file = new File(folder.getRoot(), "positions.log");
+        PositionStore store = new PositionStore(file, FLUSH_INTERVAL_MS);
+        store.put("a", 1000);
+        // 占住存储线程，代替大日志的加载或慢速存储上的刷盘；只有 shutdown 返回后才放行
+        CountDownLatch busy = new CountDownLatch(1);
+        AtomicBoolean released = new AtomicBoolean();
+        store.execute(() -> {
+            try {
+                released.set(busy.await(PositionStore.SHUTDOWN_TIMEOUT_MS + 5000, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertFalse(store.shutdown());
+        assertEquals(0, file.length());
+
+        // 存储线程空闲后完成最后一次刷盘
+        busy.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (file.length() == 0) {
+            assertTrue("Final flush did not run", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        assertTrue("shutdown waited for the busy store thread", released.get());
+        // 关闭后的更新直接写入
+        store.put("b", 2000);
+
+        PositionStore reopened = new PositionStore(file, FLUSH_INTERVAL_MS);
+        assertEquals(1000, reopened.get("a"));
+        assertEquals(2000, reopened.get("b"));
+        assertTrue(reopened.shutdown());
+    }
+
+    @Test
+    public void truncatedTailIsDropped() throws Exception {
+        File file = new File(folder.getRoot(), "positions.log");
+        PositionStore store = new PositionStore(file, FLUSH_INTERVAL_MS);
+        store.put("a", 1000);
+        store.put("b", 2000);
+        assertTrue(store.shutdown());
+        // 模拟写到一半崩溃
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        store = new PositionStore(file, FLUSH_INTERVAL_MS);
+        assertEquals(1000, store.get("a"));
+        assertEquals(-1, store.get("b"));
+        store.put("c", 3000);
+        assertTrue(store.shutdown());
+
+        store = new PositionStore(file, FLUSH_INTERVAL_MS);
+        assertEquals(1000, store.get("a"));
+        assertEquals(3000, store.get("c"));
+        assertTrue(store.shutdown());
+    }
+
+    @Test
+    public void flushAppendsOnlyChangedRecords() throws Exception {
+        File file = new File(folder.getRoot(), "positions.log");
+        PositionStore store = new PositionStore(file, FLUSH_INTERVAL_MS);
+        long recordBytes = 0;
+        for (int i = 0; i < ENTRIES; i++) {
+            store.put(mediaId(i), i * 1000L);
+            // writeUTF 的 2 字节长度 + ASCII 媒体 ID + 8 字节位置
+            recordBytes += 2 + mediaId(i).length() + 8;
+        }
+        store.flush();
+        assertEquals(ENTRIES, store.getRecordsWritten());
+        assertEquals(recordBytes, store.getBytesWritten());
+        assertEquals(recordBytes, file.length());
+
+        // 一半条目再更新一次，刷盘时只追加变化的记录；未变的位置不再写入
+        long updateBytes = 0;
+        for (int i = 0; i < ENTRIES; i += 2) {
+            store.put(mediaId(i), i * 1000L + 1);
+            store.put(mediaId(i + 1), (i + 1) * 1000L);
+            updateBytes += 2 + mediaId(i).length() + 8;
+        }
+        store.flush();
+        assertEquals(ENTRIES + ENTRIES / 2, store.getRecordsWritten());
+        assertEquals(2L * ENTRIES, store.getUpdates());
+        assertEquals(recordBytes + updateBytes, file.length());
+        assertEquals(0, store.getCompactions());
+        assertTrue(store.shutdown());
+
+        store = new PositionStore(file, FLUSH_INTERVAL_MS);
+        assertEquals(ENTRIES, store.size());
+        assertEquals(1000L * (ENTRIES - 1), store.get(mediaId(ENTRIES - 1)));
+        assertEquals(1, store.get(mediaId(0)));
+        // 加载不改写完整的日志
+        assertEquals(recordBytes + updateBytes, file.length());
+        assertTrue(store.shutdown());
+    }
+
+    private static String mediaId(int i) {
+        return "https://cdn.example.com/podcast/episode-" + i + ".mp3";
+    }
+}
@@ -0,0 +1,107 @@
+package com.nbplayer.nbplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class PreloaderTest {
+    private static final int SIZE = 4 * BlockCache.BLOCK_SIZE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestHttpServer server;
+    private BlockCache cache;
+    private Preloader preloader;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new TestHttpServer(SIZE);
+        cache = new BlockCache(folder.newFolder(), 64L * 1024 * 1024);
+        // 单线程，被取消的任务让出线程后下一个预加载才能开始
+        preloader = new Preloader(cache, new HttpConnector(), 1);
+    }
+
+    @After
+    public void tearDown() {
+        preloader.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void headersReachServer() throws Exception {
+        String url = server.url("auth.mp3");
+        Outcome outcome = new Outcome();
+        assertTrue(preloader.preload(url, Collections.singletonMap("Authorization", "Bearer t"),
+            BlockCache.BLOCK_SIZE, outcome));
+        assertEquals("complete", outcome.get());
+        assertTrue(preloader.isPreloaded(url));
+        assertTrue(server.authorizations.size() > 0);
+        for (String authorization : server.authorizations) {
+            assertEquals("Bearer t", authorization);
+        }
+    }
+
+    @Test
+    public void cancelStopsInsideBlock() throws Exception {
+        // 一个块在该速率下要 4 秒
+        server.bytesPerSecond = BlockCache.BLOCK_SIZE / 4;
+        String slow = server.url("slow.mp3");
+        Outcome cancelled = new Outcome();
+        assertTrue(preloader.preload(slow, null, BlockCache.BLOCK_SIZE, cancelled));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.bytesServed.get() == 0) {
+            assertTrue("Preload did not start", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        assertTrue(preloader.cancel(slow));
+        assertEquals("cancelled", cancelled.get());
+
+        assertTrue(!preloader.isPreloaded(slow));
+
+        // 唯一的预加载线程从块内退出后，另一台不限速服务器上的预加载才能开始；
+        // 只在块之间检查取消时，线程要先把整块读完，限速服务器届时已发出整块
+        try (TestHttpServer fast = new TestHttpServer(SIZE)) {
+            Outcome next = new Outcome();
+            assertTrue(preloader.preload(fast.url("next.mp3"), null, BlockCache.BLOCK_SIZE, next));
+            assertEquals("complete", next.get());
+            long served = server.bytesServed.get();
+            assertTrue("Slow block was read to the end: " + served, served < BlockCache.BLOCK_SIZE);
+        }
+    }
+
+    private static final class Outcome extends CompletableFuture<String> implements Preloader.Callback {
+        @Override
+        public void onComplete(long bytes) {
+            complete("complete");
+        }
+
+        @Override
+        public void onError(String message) {
+            complete("error: " + message);
+        }
+
+        @Override
+        public void onCancelled() {
+            complete("cancelled");
+        }
+
+        @Override
+        public String get() throws java.util.concurrent.ExecutionException, InterruptedException {
+            try {
+                return super.get(10, TimeUnit.SECONDS);
+            } catch (java.util.concurrent.TimeoutException e) {
+                throw new AssertionError("No callback in time");
+            }
+        }
+    }
+}
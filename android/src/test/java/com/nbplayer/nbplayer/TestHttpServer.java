@@ -0,0 +1,222 @@
+package com.nbplayer.nbplayer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * 进程内 HTTP 服务器，以任意路径提供同一份随机内容
+ *
+ * <p>支持 Range/If-Range/If-None-Match，可模拟忽略 Range、按连接限速、传输中途断开，并统计请求与发送的字节。
+ * {@link #https} 创建的服务器使用 keytool 生成的 127.0.0.1 自签名证书，客户端经 {@link #sslContext} 信任它。
+ */
+class TestHttpServer implements AutoCloseable {
+    static final String ETAG = "\"v1\"";
+
+    final byte[] content;
+    final AtomicInteger requests = new AtomicInteger();
+    final AtomicLong bytesServed = new AtomicLong();
+    final AtomicInteger maxActive = new AtomicInteger();
+    // 收到的请求头，供断言使用
+    final List<String> authorizations = new CopyOnWriteArrayList<>();
+    final List<String> ranges = new CopyOnWriteArrayList<>();
+    // 客户端连接的远端地址，一个地址即一个 socket
+    final Set<InetSocketAddress> clients = ConcurrentHashMap.newKeySet();
+    // 仅 HTTPS 服务器非 null
+    final SSLContext sslContext;
+
+    volatile boolean ignoreRange = false;
+    // 每个连接的发送速率，0 为不限速
+    volatile long bytesPerSecond = 0;
+    // 绝对偏移到达该值时断开一次连接，-1 为不断开
+    volatile long dropAt = -1;
+    volatile String etag = ETAG;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    TestHttpServer(int size) throws IOException {
+        this(size, null);
+    }
+
+    private TestHttpServer(int size, SSLContext sslContext) throws IOException {
+        content = new byte[size];
+        new Random(size).nextBytes(content);
+        this.sslContext = sslContext;
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", 0);
+        if (sslContext != null) {
+            HttpsServer https = HttpsServer.create(address, 0);
+            https.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+            server = https;
+        } else {
+            server = HttpServer.create(address, 0);
+        }
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    static TestHttpServer https(int size, File directory) throws IOException {
+        return new TestHttpServer(size, selfSignedContext(directory));
+    }
+
+    String url(String path) {
+        return (sslContext != null ? "https" : "http") + "://127.0.0.1:" + server.getAddress().getPort() + "/" + path;
+    }
+
+    // 同一个密钥库既作服务端证书也作客户端的信任库
+    private static SSLContext selfSignedContext(File directory) throws IOException {
+        File keystore = new File(directory, "server.p12");
+        char[] password = "changeit".toCharArray();
+        Process keytool = new ProcessBuilder(
+            new File(System.getProperty("java.home"), "bin/keytool").getPath(),
+            "-genkeypair", "-keyalg", "RSA", "-keysize", "2048", "-validity", "1",
+            "-alias", "server", "-dname", "CN=127.0.0.1", "-ext", "san=ip:127.0.0.1",
+            "-storetype", "PKCS12", "-keystore", keystore.getPath(),
+            "-storepass", "changeit", "-keypass", "changeit")
+            .redirectErrorStream(true)
+            .start();
+        try {
+            if (keytool.waitFor() != 0) {
+                throw new IOException("keytool failed");
+            }
+            KeyStore store = KeyStore.getInstance("PKCS12");
+            try (InputStream is = new FileInputStream(keystore)) {
+                store.load(is, password);
+            }
+            KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keys.init(store, password);
+            TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trust.init(store);
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keys.getKeyManagers(), trust.getTrustManagers(), null);
+            return context;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        clients.add(exchange.getRemoteAddress());
+        int now = active.incrementAndGet();
+        maxActive.accumulateAndGet(now, Math::max);
+        try {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization != null) {
+                authorizations.add(authorization);
+            }
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (ifNoneMatch != null && ifNoneMatch.equals(etag)) {
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null) {
+                ranges.add(range);
+            }
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            long start = 0;
+            long end = content.length - 1;
+            boolean partial = false;
+            if (range != null && !ignoreRange && (ifRange == null || ifRange.equals(etag))) {
+                String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                start = Long.parseLong(bounds[0]);
+                if (!bounds[1].isEmpty()) {
+                    end = Math.min(end, Long.parseLong(bounds[1]));
+                }
+                if (start >= content.length) {
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                partial = true;
+            }
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (partial) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+            }
+            boolean drop = dropAt >= start && dropAt <= end;
+            // 断开时用分块传输，客户端才能看到不完整的响应
+            exchange.sendResponseHeaders(partial ? 206 : 200, drop ? 0 : end - start + 1);
+            OutputStream os = exchange.getResponseBody();
+            long begin = System.nanoTime();
+            long sent = 0;
+            for (long position = start; position <= end; ) {
+                int n = (int) Math.min(8192, end + 1 - position);
+                if (drop && position + n > dropAt) {
+                    dropAt = -1;
+                    os.write(content, (int) position, (int) (n / 2));
+                    bytesServed.addAndGet(n / 2);
+                    os.close();
+                    return;
+                }
+                os.write(content, (int) position, n);
+                bytesServed.addAndGet(n);
+                position += n;
+                sent += n;
+                throttle(begin, sent);
+            }
+            os.close();
+        } catch (IOException e) {
+            // 客户端取消或断开
+        } finally {
+            active.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void throttle(long begin, long sent) throws IOException {
+        long rate = bytesPerSecond;
+        if (rate <= 0) {
+            return;
+        }
+        long dueNanos = sent * 1000000000L / rate - (System.nanoTime() - begin);
+        if (dueNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(dueNanos);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
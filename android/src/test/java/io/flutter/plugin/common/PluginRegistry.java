@@ -0,0 +1,28 @@
+package io.flutter.plugin.common;
+
+import android.app.Activity;
+import android.content.Context;
+
+import io.flutter.view.TextureRegistry;
+
+/**
+ * Compile-only stand-in for the v1 embedding's registrar, which newer Flutter
+ * releases no longer ship. FijkPlugin keeps its public registerWith(Registrar)
+ * path; the unit tests only register through FlutterPlugin and never call it.
+ */
+public interface PluginRegistry {
+
+    interface Registrar {
+        Activity activity();
+
+        Context activeContext();
+
+        BinaryMessenger messenger();
+
+        TextureRegistry textures();
+
+        String lookupKeyForAsset(String asset);
+
+        String lookupKeyForAsset(String asset, String packageName);
+    }
+}
@@ -0,0 +1,218 @@
+package com.befovy.fijkplayer;
+
+import android.content.res.AssetFileDescriptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/**
+ * One 32 KiB read of a demuxer-like pattern over an 8 MiB asset: mostly
+ * sequential, short jumps back between interleaved tracks and a user seek
+ * every 64 reads. A compressed asset is read by the old reset + skip stream
+ * source and by the block-cached RawMediaDataSource, an uncompressed one by
+ * AssetFdMediaDataSource on a range of a file standing in for the apk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AssetDataSourceBenchmark {
+
+    private static final int SIZE = 8 * 1024 * 1024;
+    private static final int CHUNK = 32 * 1024;
+    private static final int READS = 4096;
+    private static final int SEEK_INTERVAL = 64;
+    private static final int APK_OFFSET = 123457;
+
+    @Param({"resetSkip", "raw", "fd"})
+    public String source;
+
+    private byte[] mCompressed;
+    private File mApk;
+    private IMediaDataSource mSource;
+    private final long[] mPositions = new long[READS];
+    private final byte[] mBuffer = new byte[CHUNK];
+    private int mNext;
+
+    @Setup
+    public void setUp() throws IOException {
+        // compressible like media headers and silence, not like random bytes
+        byte[] content = new byte[SIZE];
+        Random random = new Random(42);
+        for (int i = 0; i < SIZE; i++)
+            content[i] = (byte) random.nextInt(16);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DeflaterOutputStream deflater = new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED));
+        deflater.write(content);
+        deflater.close();
+        mCompressed = bytes.toByteArray();
+
+        mApk = File.createTempFile("fijk-apk", ".bin");
+        FileOutputStream out = new FileOutputStream(mApk);
+        try {
+            out.write(new byte[APK_OFFSET]);
+            out.write(content);
+        } finally {
+            out.close();
+        }
+
+        long position = 0;
+        for (int i = 0; i < READS; i++) {
+            if (position >= SIZE - CHUNK)
+                position = random.nextInt(SIZE - CHUNK);
+            mPositions[i] = position;
+            position += CHUNK;
+            if (i % SEEK_INTERVAL == SEEK_INTERVAL - 1) {
+                // user seek
+                position = random.nextInt(SIZE - CHUNK);
+            } else if (random.nextInt(10) == 0) {
+                // audio and video packets interleaved a little apart
+                position = Math.max(0, position - 2 * CHUNK);
+            }
+        }
+
+        if ("fd".equals(source)) {
+            mSource = new AssetFdMediaDataSource(new AssetFileDescriptor() {
+                @Override
+                public FileInputStream createInputStream() throws IOException {
+                    return new FileInputStream(mApk);
+                }
+
+                @Override
+                public long getStartOffset() {
+                    return APK_OFFSET;
+                }
+
+                @Override
+                public long getLength() {
+                    return SIZE;
+                }
+            });
+        } else if ("raw".equals(source)) {
+            mSource = new RawMediaDataSource(new CompressedAssetStream(mCompressed), SIZE);
+        } else {
+            mSource = new ResetSkipDataSource(new CompressedAssetStream(mCompressed));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mSource.close();
+        mApk.delete();
+    }
+
+    @Benchmark
+    public int read() throws IOException {
+        return mSource.readAt(mPositions[mNext++ & (READS - 1)], mBuffer, 0, CHUNK);
+    }
+
+    /**
+     * Compressed asset stream: skip inflates and discards, reset inflates again from the start,
+     * like AssetManager's streams for compressed assets.
+     */
+    private static class CompressedAssetStream extends InputStream {
+
+        final private byte[] mCompressed;
+        private InflaterInputStream mIn;
+
+        CompressedAssetStream(byte[] compressed) {
+            mCompressed = compressed;
+            mIn = new InflaterInputStream(new ByteArrayInputStream(compressed));
+        }
+
+        @Override
+        public int read() throws IOException {
+            return mIn.read();
+        }
+
+        // fills the request like AssetManager's streams, so sequential reads stay contiguous
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = 0;
+            while (read < len) {
+                int n = mIn.read(b, off + read, len - read);
+                if (n < 0)
+                    return read > 0 ? read : -1;
+                read += n;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return mIn.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            mIn.close();
+            mIn = new InflaterInputStream(new ByteArrayInputStream(mCompressed));
+        }
+
+        @Override
+        public void close() throws IOException {
+            mIn.close();
+        }
+    }
+
+    /**
+     * RawMediaDataSource before the block cache: every non-contiguous read
+     * rewinds the stream and skips from the start.
+     */
+    private static class ResetSkipDataSource implements IMediaDataSource {
+
+        final private InputStream mIs;
+        private long mPosition = 0;
+
+        ResetSkipDataSource(InputStream is) {
+            mIs = is;
+        }
+
+        @Override
+        public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+            if (mPosition != position) {
+                mIs.reset();
+                mPosition = mIs.skip(position);
+            }
+            int length = mIs.read(buffer, offset, size);
+            mPosition += length;
+            return length;
+        }
+
+        @Override
+        public long getSize() {
+            return SIZE;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mIs.close();
+        }
+    }
+}
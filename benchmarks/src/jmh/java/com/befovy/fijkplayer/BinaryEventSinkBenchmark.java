@@ -0,0 +1,82 @@
+package com.befovy.fijkplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * A pos event on the main thread, as a binary record through BinaryEventSink
+ * and as the map FijkPlayer sends through QueuingEventSink without
+ * binary-position. Run with -prof gc for the bytes allocated per event; the
+ * map path's numbers leave out StandardMessageCodec's encoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BinaryEventSinkBenchmark {
+
+    private BinaryEventSink mBinarySink;
+    private QueuingEventSink mMapSink;
+    private int mPos;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        mBinarySink = new BinaryEventSink(new BinaryMessenger() {
+            @Override
+            public void send(String channel, ByteBuffer message) {
+                blackhole.consume(message);
+            }
+
+            @Override
+            public void send(String channel, ByteBuffer message, BinaryReply callback) {
+                blackhole.consume(message);
+            }
+
+            @Override
+            public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+            }
+        }, "befovy.com/fijkplayer/binary_event/0");
+        mMapSink = new QueuingEventSink();
+        mMapSink.setDelegate(new EventChannel.EventSink() {
+            @Override
+            public void success(Object event) {
+                blackhole.consume(event);
+            }
+
+            @Override
+            public void error(String errorCode, String errorMessage, Object errorDetails) {
+            }
+
+            @Override
+            public void endOfStream() {
+            }
+        });
+    }
+
+    @Benchmark
+    public void binary() {
+        mBinarySink.sendPosition(mPos += 200);
+    }
+
+    @Benchmark
+    public void map() {
+        // as FijkPlayer.handlePositionUpdate without binary-position
+        Map<String, Object> event = new HashMap<>();
+        event.put("event", "pos");
+        event.put("pos", mPos += 200);
+        mMapSink.success(event);
+    }
+}
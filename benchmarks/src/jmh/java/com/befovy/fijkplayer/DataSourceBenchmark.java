@@ -0,0 +1,96 @@
+package com.befovy.fijkplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * readAt of the file and stream data sources, called by ijkplayer's read
+ * thread with 4 KiB and 32 KiB requests: sequential playback, and random
+ * positions like seeks, interleaved tracks and scrubbing through an audiobook.
+ * The mapped file source should not be slower than seek + read syscalls.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DataSourceBenchmark {
+
+    private static final int SIZE = 64 * 1024 * 1024;
+    private static final int POSITIONS = 4096;
+
+    @Param({"false", "true"})
+    public boolean mapped;
+
+    @Param({"4096", "32768"})
+    public int chunk;
+
+    private File mFile;
+    private byte[] mContent;
+    private FileMediaDataSource mFileSource;
+    private RawMediaDataSource mRawSource;
+    private byte[] mBuffer;
+    private final long[] mPositions = new long[POSITIONS];
+    private long mSequential;
+    private int mNext;
+
+    @Setup
+    public void setUp() throws IOException {
+        mContent = new byte[SIZE];
+        Random random = new Random(42);
+        random.nextBytes(mContent);
+        mFile = File.createTempFile("fijk-bench", ".bin");
+        try (FileOutputStream out = new FileOutputStream(mFile)) {
+            out.write(mContent);
+        }
+        for (int i = 0; i < POSITIONS; i++)
+            mPositions[i] = random.nextInt(SIZE - chunk);
+        mBuffer = new byte[chunk];
+        mFileSource = new FileMediaDataSource(mFile, mapped);
+        // an in-memory stream with mark/reset, so only the source's own work is measured
+        mRawSource = new RawMediaDataSource(new ByteArrayInputStream(mContent), SIZE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFileSource.close();
+        mRawSource.close();
+        mFile.delete();
+    }
+
+    @Benchmark
+    public int fileSequential() {
+        int n = mFileSource.readAt(mSequential, mBuffer, 0, chunk);
+        mSequential = (mSequential + chunk) % SIZE;
+        return n;
+    }
+
+    @Benchmark
+    public int fileRandom() {
+        return mFileSource.readAt(mPositions[mNext++ & (POSITIONS - 1)], mBuffer, 0, chunk);
+    }
+
+    @Benchmark
+    public int rawSequential() {
+        int n = mRawSource.readAt(mSequential, mBuffer, 0, chunk);
+        mSequential = (mSequential + chunk) % SIZE;
+        return n;
+    }
+
+    @Benchmark
+    public int rawRandom() {
+        return mRawSource.readAt(mPositions[mNext++ & (POSITIONS - 1)], mBuffer, 0, chunk);
+    }
+}
@@ -0,0 +1,186 @@
+package com.befovy.fijkplayer;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+import io.flutter.view.TextureRegistry;
+import tv.danmaku.ijk.media.player.IjkEventListener;
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * FijkPlayer on the paths dart and ijkplayer hit most: the applyOptions call
+ * fijkplayer.dart makes before every setDataSource, and the event maps built
+ * by handleEvent for state changes and buffering updates. Events arrive the
+ * way ijkplayer delivers them, through onEvent with the player's own native
+ * player, and go to a listening event channel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FijkPlayerBenchmark {
+
+    // native states FijkPlayer reports, see fijkplayer.dart's FijkState
+    private static final int STARTED = 4;
+    private static final int PAUSED = 5;
+
+    private FijkPlayer mPlayer;
+    private IjkMediaPlayer mNative;
+    private MethodCall mApplyOptions;
+    private final MethodChannel.Result mResult = new MethodChannel.Result() {
+        @Override
+        public void success(Object result) {
+        }
+
+        @Override
+        public void error(String errorCode, String errorMessage, Object errorDetails) {
+        }
+
+        @Override
+        public void notImplemented() {
+        }
+    };
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mPlayer = new FijkPlayer(new BenchmarkEngine(), false);
+        mNative = IjkMediaPlayer.lastCreated();
+        mApplyOptions = new MethodCall("applyOptions", options());
+        mPlayer.onMethodCall(mApplyOptions, mResult);
+        mPlayer.setup();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPlayer.release();
+    }
+
+    @Benchmark
+    public void applyOptions() {
+        mPlayer.onMethodCall(mApplyOptions, mResult);
+    }
+
+    @Benchmark
+    public void stateChange() {
+        // alternate so that every event is a real transition and moves the playing counters
+        int next = (mNext++ & 1) == 0 ? PAUSED : STARTED;
+        mNative.postEvent(IjkEventListener.PLAYBACK_STATE_CHANGED, next, next == STARTED ? PAUSED : STARTED);
+    }
+
+    @Benchmark
+    public void bufferingUpdate() {
+        mNative.postEvent(IjkEventListener.BUFFERING_UPDATE, mNext++ & 0xffff, 50);
+    }
+
+    // what FijkOption sends for a typical live stream: format, codec, player and host options
+    private static Map<Integer, Map<String, Object>> options() {
+        Map<String, Object> format = new HashMap<>();
+        format.put("fflags", "fastseek");
+        format.put("reconnect", 1);
+        format.put("analyzeduration", 100000);
+        format.put("probesize", 65536);
+        format.put("user_agent", "fijkplayer");
+        Map<String, Object> codec = new HashMap<>();
+        codec.put("skip_loop_filter", 48);
+        codec.put("skip_frame", 0);
+        Map<String, Object> player = new HashMap<>();
+        player.put("mediacodec", 1);
+        player.put("mediacodec-auto-rotate", 1);
+        player.put("framedrop", 5);
+        player.put("packet-buffering", 0);
+        player.put("max-buffer-size", 1024 * 1024);
+        Map<String, Object> host = new HashMap<>();
+        host.put(HostOption.REQUEST_AUDIOFOCUS, 1);
+        host.put(HostOption.RELEASE_AUDIOFOCUS, 1);
+        host.put(HostOption.EVENT_COALESCE, 0);
+        Map<Integer, Map<String, Object>> options = new HashMap<>();
+        options.put(0, host);
+        options.put(IjkMediaPlayer.OPT_CATEGORY_FORMAT, format);
+        options.put(IjkMediaPlayer.OPT_CATEGORY_CODEC, codec);
+        options.put(IjkMediaPlayer.OPT_CATEGORY_PLAYER, player);
+        return options;
+    }
+
+    /**
+     * Engine without a flutter engine behind it: no textures or context,
+     * messages are dropped and the player budget is unlimited.
+     */
+    private static class BenchmarkEngine implements FijkEngine {
+
+        final private PlayerMetrics mMetrics = new PlayerMetrics();
+        final private BinaryMessenger mMessenger = new BinaryMessenger() {
+            @Override
+            public void send(String channel, ByteBuffer message) {
+            }
+
+            @Override
+            public void send(String channel, ByteBuffer message, BinaryReply callback) {
+            }
+
+            @Override
+            public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+            }
+        };
+
+        @Override
+        public TextureRegistry.SurfaceTextureEntry createSurfaceEntry() {
+            return null;
+        }
+
+        @Override
+        public BinaryMessenger messenger() {
+            return mMessenger;
+        }
+
+        @Override
+        public Context context() {
+            return null;
+        }
+
+        @Override
+        public String lookupKeyForAsset(String asset, String packageName) {
+            return null;
+        }
+
+        @Override
+        public void onPlayingChange(int delta) {
+        }
+
+        @Override
+        public void onPlayableChange(int delta) {
+        }
+
+        @Override
+        public void setScreenOn(boolean on) {
+        }
+
+        @Override
+        public void audioFocus(boolean request) {
+        }
+
+        @Override
+        public PlayerMetrics metrics() {
+            return mMetrics;
+        }
+
+        @Override
+        public void enforceBudget(FijkPlayer active) {
+        }
+    }
+}
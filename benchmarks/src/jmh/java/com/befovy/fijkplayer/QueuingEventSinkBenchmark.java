@@ -0,0 +1,103 @@
+package com.befovy.fijkplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * QueuingEventSink: direct delivery while a listener is attached, and the
+ * flush of events queued before the listener arrives. Events are the maps
+ * FijkPlayer sends, mostly pos with a state change every few.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QueuingEventSinkBenchmark {
+
+    private static final int QUEUED = 256;
+
+    @Param({"false", "true"})
+    public boolean coalescing;
+
+    private Map<String, Object>[] mEvents;
+    private EventChannel.EventSink mDelegate;
+    private QueuingEventSink mLiveSink;
+    private int mNext;
+
+    /**
+     * A sink holding QUEUED events and no listener, rebuilt for every flush.
+     */
+    @State(Scope.Thread)
+    public static class Queued {
+        QueuingEventSink mSink;
+
+        @Setup(Level.Invocation)
+        public void fill(QueuingEventSinkBenchmark benchmark) {
+            mSink = new QueuingEventSink();
+            mSink.setCoalescing(benchmark.coalescing);
+            for (Map<String, Object> event : benchmark.mEvents)
+                mSink.success(event);
+        }
+    }
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp(final Blackhole blackhole) {
+        mEvents = new Map[QUEUED];
+        for (int i = 0; i < QUEUED; i++) {
+            Map<String, Object> event = new HashMap<>();
+            if (i % 8 == 7) {
+                event.put("event", "state_change");
+                event.put("new", 4);
+                event.put("old", 5);
+            } else {
+                event.put("event", "pos");
+                event.put("pos", i * 200L);
+            }
+            mEvents[i] = event;
+        }
+        mDelegate = new EventChannel.EventSink() {
+            @Override
+            public void success(Object event) {
+                blackhole.consume(event);
+            }
+
+            @Override
+            public void error(String errorCode, String errorMessage, Object errorDetails) {
+                blackhole.consume(errorCode);
+            }
+
+            @Override
+            public void endOfStream() {
+            }
+        };
+        mLiveSink = new QueuingEventSink();
+        mLiveSink.setCoalescing(coalescing);
+        mLiveSink.setDelegate(mDelegate);
+    }
+
+    @Benchmark
+    public void deliver() {
+        mLiveSink.success(mEvents[mNext++ & (QUEUED - 1)]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUEUED)
+    public void flushQueued(Queued queued) {
+        queued.mSink.setDelegate(mDelegate);
+    }
+}
@@ -0,0 +1,106 @@
+package com.nbplayer.nbplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * 各缓冲策略的起播耗时：经 HttpConnector 从本地限速服务器读到出声所需的字节数
+ * (探测量加首个水位，规则同 BufferingProfileTest)，链路为 128 kbps 码率的 20 倍。
+ * 排队内存与速率无关，由单元测试断言
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BufferingProfileBenchmark {
+    private static final int BYTE_RATE = 16000;
+    private static final int FRAME_BYTES = 372;
+    private static final int LINK_BYTES_PER_SECOND = 20 * BYTE_RATE;
+    private static final int READ_BYTES = 4096;
+    private static final long DEFAULT_PROBE_SIZE = 5000000;
+    private static final long DEFAULT_ANALYZE_DURATION_US = 5000000;
+    private static final long DEFAULT_MIN_FRAMES = 50000;
+    private static final long FIRST_HIGH_WATER_MARK_MS = 100;
+
+    @Param({"standard", "lowLatencyLive", "fastStart", "smoothVod", "lowMemory"})
+    public String profile;
+
+    private final byte[] buffer = new byte[READ_BYTES];
+    private ThrottledServer server;
+    private HttpConnector connector;
+    private String url;
+    private long startupBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new ThrottledServer(256 * 1024, LINK_BYTES_PER_SECOND);
+        connector = new HttpConnector();
+        url = server.url(profile);
+        startupBytes = startupBytes(BufferingProfile.fromName(profile));
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public long startup() throws IOException {
+        HttpURLConnection connection = connector.open(url, null, 0, -1);
+        long read = 0;
+        try (InputStream in = connection.getInputStream()) {
+            while (read < startupBytes) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, startupBytes - read));
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+        } finally {
+            connection.disconnect();
+        }
+        return read;
+    }
+
+    private static long startupBytes(BufferingProfile profile) {
+        Map<String, Object> options = new HashMap<>();
+        profile.apply(new IjkMediaPlayer() {
+            @Override
+            public void setOption(int category, String name, long value) {
+                options.put(name, value);
+            }
+
+            @Override
+            public void setOption(int category, String name, String value) {
+                options.put(name, value);
+            }
+        });
+        long probeSize = option(options, "probesize", DEFAULT_PROBE_SIZE);
+        long analyzeDurationUs = option(options, "analyzeduration", DEFAULT_ANALYZE_DURATION_US);
+        long minFrames = option(options, "min-frames", DEFAULT_MIN_FRAMES);
+        boolean packetBuffering = option(options, "packet-buffering", 1) != 0;
+        long probeBytes = Math.min(probeSize, analyzeDurationUs * BYTE_RATE / 1000000);
+        long enoughBytes = (minFrames + 1) * FRAME_BYTES;
+        return probeBytes + (packetBuffering ? Math.min(enoughBytes, FIRST_HIGH_WATER_MARK_MS * BYTE_RATE / 1000) : 0);
+    }
+
+    private static long option(Map<String, Object> options, String name, long defaultValue) {
+        Object value = options.get(name);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+}
@@ -0,0 +1,67 @@
+package com.nbplayer.nbplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * 主线程上经 ChannelTransport 发出一条状态事件: 二进制通道的 16 字节记录与 EventChannel 的 Map。
+ * 加 -prof gc 可得每事件分配字节数，Map 路径不含 StandardMessageCodec 的编码开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChannelTransportBenchmark {
+
+    @Param({"true", "false"})
+    public boolean binaryEvents;
+
+    private ChannelTransport transport;
+    private int next;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        BinaryMessenger messenger = new BinaryMessenger() {
+            @Override
+            public void send(String channel, ByteBuffer message) {
+                blackhole.consume(message);
+            }
+
+            @Override
+            public void send(String channel, ByteBuffer message, BinaryReply callback) {
+                blackhole.consume(message);
+            }
+
+            @Override
+            public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+            }
+        };
+        transport = new ChannelTransport(messenger, "0", binaryEvents, 32);
+        // EventChannel 桩在 start 时即订阅
+        transport.start((call, result) -> result.notImplemented(), () -> {
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        transport.close();
+    }
+
+    @Benchmark
+    public void emitStateChange() {
+        int i = next++;
+        transport.emit(BinaryEventChannel.EVENT_STATE_CHANGE, i & 7, (i + 1) & 7, 0);
+    }
+}
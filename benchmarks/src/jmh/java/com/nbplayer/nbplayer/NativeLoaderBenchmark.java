@@ -0,0 +1,34 @@
+package com.nbplayer.nbplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 插件注册在主线程上的开销：NativeLoader.start 只启动加载线程。
+ * 原生库的加载耗时只能在设备上由 getMetrics() 的 startup 得到
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NativeLoaderBenchmark {
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable noop = () -> {
+    };
+
+    @Benchmark
+    public NativeLoader start() {
+        NativeLoader loader = new NativeLoader(mainHandler, noop);
+        loader.start();
+        return loader;
+    }
+}
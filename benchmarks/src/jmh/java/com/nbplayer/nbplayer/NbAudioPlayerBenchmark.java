@@ -0,0 +1,194 @@
+package com.nbplayer.nbplayer;
+
+import android.os.Handler;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
+import io.flutter.plugin.common.MethodChannel.Result;
+import tv.danmaku.ijk.media.player.IMediaPlayer;
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * 播放器核心的线程模型开销: 基准线程同时充当主线程与 ijkplayer 的事件线程，
+ * 方法调用经工作线程执行，结果由 Handler 桩在工作线程上直接送达。
+ * <ul>
+ * <li>stateCycle: 从播放中 stop、reset 再重新 setDataSource、prepare、开始，每次 6 个状态转换，
+ * transitions 为每秒的状态转换数</li>
+ * <li>seekRoundTrip: 播放中一次 seekTo 的往返，含工作线程的排队</li>
+ * <li>bufferingCallback: 事件线程上一对缓冲开始/结束回调的处理</li>
+ * </ul>
+ * ijkplayer 由不加载 native 库的桩代替，只用于比较不同的线程模型
+ */
+@State(Scope.Thread)
+public class NbAudioPlayerBenchmark {
+    private static final String URL = "http://example.com/1.mp3";
+
+    private final AtomicLong stateChanges = new AtomicLong();
+    private NbAudioPlayer player;
+    private MethodCallHandler handler;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Transitions {
+        public long transitions;
+
+        @Setup(Level.Iteration)
+        public void clean() {
+            transitions = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        Handler.setMainExecutor(Runnable::run);
+        PlayerMetrics metrics = new PlayerMetrics();
+        PlayerHost host = new PlayerHost() {
+            @Override
+            public IjkMediaPlayer newPlayer() {
+                return new IjkMediaPlayer();
+            }
+
+            @Override
+            public PlayerMetrics metrics() {
+                return metrics;
+            }
+
+            @Override
+            public PositionStore positionStore() {
+                // 基准不设置 mediaId，不会保存续播位置
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void openDataSource(IjkMediaPlayer player, String url, SourceOptions options) throws Exception {
+                player.setDataSource(url);
+            }
+
+            @Override
+            public void onPlayerReleased(String playerId) {
+            }
+        };
+        PlayerTransport transport = new PlayerTransport() {
+            @Override
+            public void start(MethodCallHandler h, Runnable onSubscribe) {
+                handler = h;
+            }
+
+            @Override
+            public void emit(int type, int arg1, int arg2, int arg3) {
+                if (type == BinaryEventChannel.EVENT_STATE_CHANGE) {
+                    stateChanges.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        player = new NbAudioPlayer("0", host, transport);
+        play();
+    }
+
+    @TearDown
+    public void tearDown() {
+        call("release", null);
+        Handler.setMainExecutor(null);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void stateCycle(Transitions counters) {
+        long before = stateChanges.get();
+        call("stop", null);
+        call("reset", null);
+        play();
+        counters.transitions += stateChanges.get() - before;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void seekRoundTrip() {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("msec", 1000);
+        call("seekTo", arguments);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void bufferingCallback() {
+        IjkMediaPlayer current = IjkMediaPlayer.lastCreated();
+        current.fireInfo(IMediaPlayer.MEDIA_INFO_BUFFERING_START, 0);
+        current.fireInfo(IMediaPlayer.MEDIA_INFO_BUFFERING_END, 0);
+    }
+
+    // idle -> initialized -> asyncPreparing -> prepared -> started
+    private void play() {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("url", URL);
+        call("setDataSource", arguments);
+        call("prepareAsync", null);
+        IjkMediaPlayer current = IjkMediaPlayer.lastCreated();
+        current.firePrepared();
+        call("start", null);
+        current.fireInfo(IMediaPlayer.MEDIA_INFO_AUDIO_RENDERING_START, 0);
+    }
+
+    // 发起调用并等待工作线程送回结果，出错时抛出
+    private void call(String method, Object arguments) {
+        Reply reply = new Reply();
+        handler.onMethodCall(new MethodCall(method, arguments), reply);
+        try {
+            if (!reply.done.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException(method + " did not reply");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        if (reply.error != null) {
+            throw new IllegalStateException(method + " failed: " + reply.error);
+        }
+    }
+
+    private static final class Reply implements Result {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String error;
+
+        @Override
+        public void success(Object result) {
+            done.countDown();
+        }
+
+        @Override
+        public void error(String errorCode, String errorMessage, Object errorDetails) {
+            error = errorCode + " " + errorMessage;
+            done.countDown();
+        }
+
+        @Override
+        public void notImplemented() {
+            error = "not implemented";
+            done.countDown();
+        }
+    }
+}
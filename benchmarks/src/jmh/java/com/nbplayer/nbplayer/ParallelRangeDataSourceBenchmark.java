@@ -0,0 +1,101 @@
+package com.nbplayer.nbplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个连接 1 MB/s 的服务器上，从开头或 seek 到中部后缓冲 2 MB 的耗时。
+ * connections 为 0 时是单连接顺序读取，否则为 ParallelRangeDataSource 的分段连接数。
+ * 长度未知时只拉首段，拿到 Content-Range 后才并行，因此四个连接的耗时约为一段加总量的四分之一
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelRangeDataSourceBenchmark {
+    private static final int SIZE = 16 * ParallelRangeDataSource.CHUNK_SIZE + 1234;
+    // 与插件的预读窗口相同
+    private static final int WINDOW_CHUNKS = 8;
+    private static final int BYTES_PER_SECOND = 1024 * 1024;
+    private static final int READ_BYTES = 2 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    @Param({"0", "1", "4"})
+    public int connections;
+
+    @Param({"false", "true"})
+    public boolean seek;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private ThrottledServer server;
+    private HttpConnector connector;
+    private ExecutorService executor;
+    private long offset;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new ThrottledServer(SIZE, BYTES_PER_SECOND);
+        connector = new HttpConnector();
+        executor = Executors.newFixedThreadPool(8);
+        offset = seek ? SIZE / 2 : 0;
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        server.close();
+    }
+
+    @Benchmark
+    public int buffer() throws IOException {
+        return connections == 0 ? stream() : ranges();
+    }
+
+    private int stream() throws IOException {
+        HttpURLConnection connection = connector.open(server.url("stream.mp3"), null, offset, -1);
+        int read = 0;
+        try (InputStream in = connection.getInputStream()) {
+            while (read < READ_BYTES) {
+                int n = in.read(buffer, 0, Math.min(buffer.length, READ_BYTES - read));
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+        } finally {
+            connection.disconnect();
+        }
+        return read;
+    }
+
+    private int ranges() {
+        ParallelRangeDataSource source = new ParallelRangeDataSource(server.url("parallel.mp3"), null, connector,
+            executor, connections, WINDOW_CHUNKS);
+        int read = 0;
+        try {
+            while (read < READ_BYTES) {
+                int n = source.readAt(offset + read, buffer, 0, Math.min(buffer.length, READ_BYTES - read));
+                if (n <= 0) {
+                    break;
+                }
+                read += n;
+            }
+        } finally {
+            source.close();
+        }
+        return read;
+    }
+}
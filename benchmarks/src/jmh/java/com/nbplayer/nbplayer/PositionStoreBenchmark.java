@@ -0,0 +1,99 @@
+package com.nbplayer.nbplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 10 万条目的续播位置日志：一次刷盘写入全部条目，以及重新打开时加载 15 万条记录
+ * (全部条目加一半条目的更新) 重建索引
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PositionStoreBenchmark {
+    private static final int ENTRIES = 100000;
+    // 刷盘只由基准触发
+    private static final long FLUSH_INTERVAL_MS = 60000;
+
+    /**
+     * 每次调用前新建空日志并放入全部条目
+     */
+    @State(Scope.Thread)
+    public static class Pending {
+        File file;
+        PositionStore store;
+
+        @Setup(Level.Invocation)
+        public void setUp() throws IOException {
+            file = File.createTempFile("positions", ".log");
+            file.delete();
+            store = new PositionStore(file, FLUSH_INTERVAL_MS);
+            for (int i = 0; i < ENTRIES; i++) {
+                store.put(mediaId(i), i * 1000L);
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            store.shutdown();
+            file.delete();
+        }
+    }
+
+    /**
+     * 写好的日志，加载时只读
+     */
+    @State(Scope.Thread)
+    public static class Written {
+        File file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = File.createTempFile("positions", ".log");
+            file.delete();
+            PositionStore store = new PositionStore(file, FLUSH_INTERVAL_MS);
+            for (int i = 0; i < ENTRIES; i++) {
+                store.put(mediaId(i), i * 1000L);
+            }
+            store.flush();
+            for (int i = 0; i < ENTRIES; i += 2) {
+                store.put(mediaId(i), i * 1000L + 1);
+            }
+            store.shutdown();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public long flush(Pending pending) {
+        pending.store.flush();
+        return pending.store.getBytesWritten();
+    }
+
+    @Benchmark
+    public int load(Written written) {
+        PositionStore store = new PositionStore(written.file, FLUSH_INTERVAL_MS);
+        // 等待存储线程加载完成
+        int size = store.size();
+        store.shutdown();
+        return size;
+    }
+
+    private static String mediaId(int i) {
+        return "https://cdn.example.com/podcast/episode-" + i + ".mp3";
+    }
+}
@@ -0,0 +1,83 @@
+package com.nbplayer.nbplayer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基准用的进程内 HTTP 服务器，以任意路径提供同一份随机内容，支持 Range，每个连接按固定速率发送，
+ * 模拟单条 TCP 连接受限的链路
+ */
+final class ThrottledServer implements AutoCloseable {
+    final byte[] content;
+
+    private final long bytesPerSecond;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final HttpServer server;
+
+    ThrottledServer(int size, long bytesPerSecond) throws IOException {
+        content = new byte[size];
+        new Random(size).nextBytes(content);
+        this.bytesPerSecond = bytesPerSecond;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/" + path;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            long start = 0;
+            long end = content.length - 1;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null) {
+                String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                start = Long.parseLong(bounds[0]);
+                if (!bounds[1].isEmpty()) {
+                    end = Math.min(end, Long.parseLong(bounds[1]));
+                }
+                if (start >= content.length) {
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+            }
+            exchange.sendResponseHeaders(range != null ? 206 : 200, end - start + 1);
+            OutputStream os = exchange.getResponseBody();
+            long begin = System.nanoTime();
+            long sent = 0;
+            for (long position = start; position <= end; ) {
+                int n = (int) Math.min(8192, end + 1 - position);
+                os.write(content, (int) position, n);
+                position += n;
+                sent += n;
+                long dueNanos = sent * 1000000000L / bytesPerSecond - (System.nanoTime() - begin);
+                if (dueNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(dueNanos);
+                }
+            }
+            os.close();
+        } catch (IOException | InterruptedException e) {
+            // 客户端读够后断开
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package android.content;
+
+import android.content.res.AssetManager;
+
+/**
+ * 基准测试用的 Context 桩，基准中的引擎不提供 Context
+ */
+public abstract class Context {
+    public abstract AssetManager getAssets();
+}
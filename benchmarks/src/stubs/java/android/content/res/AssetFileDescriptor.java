@@ -0,0 +1,26 @@
+package android.content.res;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * 基准测试用的 AssetFileDescriptor 桩
+ */
+public class AssetFileDescriptor {
+    public static final long UNKNOWN_LENGTH = -1;
+
+    public FileInputStream createInputStream() throws IOException {
+        throw new IOException("no assets in benchmarks");
+    }
+
+    public long getStartOffset() {
+        return 0;
+    }
+
+    public long getLength() {
+        return UNKNOWN_LENGTH;
+    }
+
+    public void close() throws IOException {
+    }
+}
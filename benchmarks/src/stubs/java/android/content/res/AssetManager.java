@@ -0,0 +1,22 @@
+package android.content.res;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 基准测试用的 AssetManager 桩
+ */
+public final class AssetManager {
+    public static final int ACCESS_RANDOM = 1;
+
+    private AssetManager() {
+    }
+
+    public InputStream open(String fileName, int accessMode) throws IOException {
+        throw new IOException("no assets in benchmarks");
+    }
+
+    public AssetFileDescriptor openFd(String fileName) throws IOException {
+        throw new IOException("no assets in benchmarks");
+    }
+}
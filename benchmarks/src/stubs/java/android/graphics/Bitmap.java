@@ -0,0 +1,55 @@
+package android.graphics;
+
+import java.io.OutputStream;
+import java.nio.Buffer;
+
+/**
+ * 基准测试用的 Bitmap 桩，基准不会产生截图
+ */
+public final class Bitmap {
+    public enum Config {
+        ARGB_8888
+    }
+
+    public enum CompressFormat {
+        JPEG,
+        WEBP
+    }
+
+    private Bitmap() {
+    }
+
+    public static Bitmap createScaledBitmap(Bitmap src, int dstWidth, int dstHeight, boolean filter) {
+        return src;
+    }
+
+    public int getWidth() {
+        return 0;
+    }
+
+    public int getHeight() {
+        return 0;
+    }
+
+    public Config getConfig() {
+        return Config.ARGB_8888;
+    }
+
+    public int getByteCount() {
+        return 0;
+    }
+
+    public Bitmap copy(Config config, boolean isMutable) {
+        return this;
+    }
+
+    public void copyPixelsToBuffer(Buffer dst) {
+    }
+
+    public boolean compress(CompressFormat format, int quality, OutputStream stream) {
+        return false;
+    }
+
+    public void recycle() {
+    }
+}
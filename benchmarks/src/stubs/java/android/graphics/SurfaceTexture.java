@@ -0,0 +1,9 @@
+package android.graphics;
+
+/**
+ * 基准测试用的 SurfaceTexture 桩
+ */
+public class SurfaceTexture {
+    public void release() {
+    }
+}
@@ -0,0 +1,30 @@
+package android.net;
+
+import java.net.URI;
+
+/**
+ * 基准测试用的 Uri 桩，以 java.net.URI 解析
+ */
+public final class Uri {
+    private final URI uri;
+
+    private Uri(URI uri) {
+        this.uri = uri;
+    }
+
+    public static Uri parse(String uriString) {
+        return new Uri(URI.create(uriString));
+    }
+
+    public String getScheme() {
+        return uri.getScheme();
+    }
+
+    public String getHost() {
+        return uri.getHost();
+    }
+
+    public String getPath() {
+        return uri.getPath();
+    }
+}
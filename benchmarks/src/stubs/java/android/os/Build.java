@@ -0,0 +1,24 @@
+package android.os;
+
+/**
+ * 基准测试用的 Build 桩，版本取 Android 7.0 以上的分支
+ */
+public final class Build {
+    private Build() {
+    }
+
+    public static final class VERSION {
+        public static final int SDK_INT = 33;
+        public static final String RELEASE = "13";
+
+        private VERSION() {
+        }
+    }
+
+    public static final class VERSION_CODES {
+        public static final int N = 24;
+
+        private VERSION_CODES() {
+        }
+    }
+}
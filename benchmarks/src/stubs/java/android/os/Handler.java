@@ -0,0 +1,43 @@
+package android.os;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 基准测试用的 Handler 桩，默认不执行投递的任务；被测代码的同步路径不依赖它
+ *
+ * <p>{@link #setMainExecutor} 设置后，{@link #post} 的任务交给该执行器，播放器基准借此收到
+ * 工作线程转回主线程的方法调用结果。延时与定时任务始终丢弃。
+ */
+public class Handler {
+    private static volatile Executor sMainExecutor;
+
+    public Handler(Looper looper) {
+    }
+
+    /**
+     * @param executor 代替主线程执行 post 的任务，null 恢复为丢弃
+     */
+    public static void setMainExecutor(Executor executor) {
+        sMainExecutor = executor;
+    }
+
+    public boolean post(Runnable r) {
+        Executor executor = sMainExecutor;
+        if (executor == null) {
+            return false;
+        }
+        executor.execute(r);
+        return true;
+    }
+
+    public boolean postAtTime(Runnable r, long uptimeMillis) {
+        return false;
+    }
+
+    public boolean postDelayed(Runnable r, long delayMillis) {
+        return false;
+    }
+
+    public void removeCallbacks(Runnable r) {
+    }
+}
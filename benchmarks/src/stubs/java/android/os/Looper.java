@@ -0,0 +1,19 @@
+package android.os;
+
+/**
+ * 基准测试用的 Looper 桩：基准线程视为主线程，被测代码走主线程上的同步发送路径
+ */
+public final class Looper {
+    private static final Looper MAIN = new Looper();
+
+    private Looper() {
+    }
+
+    public static Looper getMainLooper() {
+        return MAIN;
+    }
+
+    public static Looper myLooper() {
+        return MAIN;
+    }
+}
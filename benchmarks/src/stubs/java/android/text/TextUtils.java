@@ -0,0 +1,13 @@
+package android.text;
+
+/**
+ * 基准测试用的 TextUtils 桩
+ */
+public final class TextUtils {
+    private TextUtils() {
+    }
+
+    public static boolean isEmpty(CharSequence str) {
+        return str == null || str.length() == 0;
+    }
+}
@@ -0,0 +1,14 @@
+package android.view;
+
+import android.graphics.SurfaceTexture;
+
+/**
+ * 基准测试用的 Surface 桩
+ */
+public class Surface {
+    public Surface(SurfaceTexture surfaceTexture) {
+    }
+
+    public void release() {
+    }
+}
@@ -0,0 +1,20 @@
+package io.flutter.plugin.common;
+
+/**
+ * 基准测试用的 BasicMessageChannel 桩，编码后交给 BinaryMessenger，与引擎的发送路径一致
+ */
+public final class BasicMessageChannel<T> {
+    private final BinaryMessenger messenger;
+    private final String name;
+    private final MessageCodec<T> codec;
+
+    public BasicMessageChannel(BinaryMessenger messenger, String name, MessageCodec<T> codec) {
+        this.messenger = messenger;
+        this.name = name;
+        this.codec = codec;
+    }
+
+    public void send(T message) {
+        messenger.send(name, codec.encodeMessage(message), null);
+    }
+}
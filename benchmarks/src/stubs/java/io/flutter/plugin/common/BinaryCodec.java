@@ -0,0 +1,23 @@
+package io.flutter.plugin.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 基准测试用的 BinaryCodec 桩，与引擎一致不复制消息
+ */
+public final class BinaryCodec implements MessageCodec<ByteBuffer> {
+    public static final BinaryCodec INSTANCE = new BinaryCodec();
+
+    private BinaryCodec() {
+    }
+
+    @Override
+    public ByteBuffer encodeMessage(ByteBuffer message) {
+        return message;
+    }
+
+    @Override
+    public ByteBuffer decodeMessage(ByteBuffer message) {
+        return message;
+    }
+}
@@ -0,0 +1,22 @@
+package io.flutter.plugin.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 基准测试用的 BinaryMessenger 桩，只保留接口
+ */
+public interface BinaryMessenger {
+    interface BinaryReply {
+        void reply(ByteBuffer reply);
+    }
+
+    interface BinaryMessageHandler {
+        void onMessage(ByteBuffer message, BinaryReply reply);
+    }
+
+    void send(String channel, ByteBuffer message);
+
+    void send(String channel, ByteBuffer message, BinaryReply callback);
+
+    void setMessageHandler(String channel, BinaryMessageHandler handler);
+}
@@ -0,0 +1,49 @@
+package io.flutter.plugin.common;
+
+/**
+ * 基准测试用的 EventChannel 桩：设置 StreamHandler 时立即订阅，相当于 dart 端一直在监听，
+ * 订阅者只保留最后一条事件
+ */
+public final class EventChannel {
+    public EventChannel(BinaryMessenger messenger, String name) {
+    }
+
+    public interface StreamHandler {
+        void onListen(Object arguments, EventSink events);
+
+        void onCancel(Object arguments);
+    }
+
+    public interface EventSink {
+        void success(Object event);
+
+        void error(String errorCode, String errorMessage, Object errorDetails);
+
+        void endOfStream();
+    }
+
+    public void setStreamHandler(StreamHandler handler) {
+        if (handler != null) {
+            handler.onListen(null, new LastEventSink());
+        }
+    }
+
+    private static final class LastEventSink implements EventSink {
+        // 写入堆中的字段，事件对象的分配不会被逃逸分析消除
+        private Object last;
+
+        @Override
+        public void success(Object event) {
+            last = event;
+        }
+
+        @Override
+        public void error(String errorCode, String errorMessage, Object errorDetails) {
+            last = errorCode;
+        }
+
+        @Override
+        public void endOfStream() {
+        }
+    }
+}
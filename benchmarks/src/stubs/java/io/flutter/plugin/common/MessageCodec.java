@@ -0,0 +1,12 @@
+package io.flutter.plugin.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 基准测试用的 MessageCodec 桩
+ */
+public interface MessageCodec<T> {
+    ByteBuffer encodeMessage(T message);
+
+    T decodeMessage(ByteBuffer message);
+}
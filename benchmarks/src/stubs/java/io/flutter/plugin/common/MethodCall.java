@@ -0,0 +1,28 @@
+package io.flutter.plugin.common;
+
+import java.util.Map;
+
+/**
+ * 基准测试用的 MethodCall 桩，参数为 Map 或 null
+ */
+public final class MethodCall {
+    public final String method;
+    public final Object arguments;
+
+    public MethodCall(String method, Object arguments) {
+        this.method = method;
+        this.arguments = arguments;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T argument(String key) {
+        if (arguments == null) {
+            return null;
+        }
+        return (T) ((Map<?, ?>) arguments).get(key);
+    }
+
+    public boolean hasArgument(String key) {
+        return arguments instanceof Map && ((Map<?, ?>) arguments).containsKey(key);
+    }
+}
@@ -0,0 +1,27 @@
+package io.flutter.plugin.common;
+
+/**
+ * 基准测试用的 MethodChannel 桩，不与 dart 通信，基准直接调用 MethodCallHandler
+ */
+public class MethodChannel {
+    public interface Result {
+        void success(Object result);
+
+        void error(String errorCode, String errorMessage, Object errorDetails);
+
+        void notImplemented();
+    }
+
+    public interface MethodCallHandler {
+        void onMethodCall(MethodCall call, Result result);
+    }
+
+    public MethodChannel(BinaryMessenger messenger, String name) {
+    }
+
+    public void setMethodCallHandler(MethodCallHandler handler) {
+    }
+
+    public void invokeMethod(String method, Object arguments) {
+    }
+}
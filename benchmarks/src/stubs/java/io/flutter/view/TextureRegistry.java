@@ -0,0 +1,18 @@
+package io.flutter.view;
+
+import android.graphics.SurfaceTexture;
+
+/**
+ * 基准测试用的 TextureRegistry 桩
+ */
+public interface TextureRegistry {
+    SurfaceTextureEntry createSurfaceTexture();
+
+    interface SurfaceTextureEntry {
+        SurfaceTexture surfaceTexture();
+
+        long id();
+
+        void release();
+    }
+}
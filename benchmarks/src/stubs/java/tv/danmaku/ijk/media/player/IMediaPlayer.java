@@ -0,0 +1,41 @@
+package tv.danmaku.ijk.media.player;
+
+import android.graphics.Bitmap;
+
+/**
+ * 基准测试用的 IMediaPlayer 桩，只保留插件用到的回调与常量
+ */
+public interface IMediaPlayer {
+    int MEDIA_INFO_VIDEO_RENDERING_START = 3;
+    int MEDIA_INFO_BUFFERING_START = 701;
+    int MEDIA_INFO_BUFFERING_END = 702;
+    int MEDIA_INFO_AUDIO_RENDERING_START = 10002;
+
+    interface OnSnapShotListener {
+        void onSnapShot(IMediaPlayer mp, Bitmap bitmap, int w, int h);
+    }
+
+    interface OnPreparedListener {
+        void onPrepared(IMediaPlayer mp);
+    }
+
+    interface OnCompletionListener {
+        void onCompletion(IMediaPlayer mp);
+    }
+
+    interface OnErrorListener {
+        boolean onError(IMediaPlayer mp, int what, int extra);
+    }
+
+    interface OnInfoListener {
+        boolean onInfo(IMediaPlayer mp, int what, int extra);
+    }
+
+    interface OnSeekCompleteListener {
+        void onSeekComplete(IMediaPlayer mp);
+    }
+
+    void start();
+
+    void pause();
+}
@@ -0,0 +1,21 @@
+package tv.danmaku.ijk.media.player;
+
+/**
+ * 基准测试用的 IjkEventListener 桩，事件值与 ijkplayer 的 ff_ffmsg.h 一致
+ */
+public interface IjkEventListener {
+    int ERROR = 100;
+    int PREPARED = 200;
+    int VIDEO_SIZE_CHANGED = 400;
+    int VIDEO_RENDERING_START = 402;
+    int AUDIO_RENDERING_START = 403;
+    int VIDEO_ROTATION_CHANGED = 404;
+    int BUFFERING_START = 500;
+    int BUFFERING_END = 501;
+    int BUFFERING_UPDATE = 502;
+    int CURRENT_POSITION_UPDATE = 510;
+    int SEEK_COMPLETE = 600;
+    int PLAYBACK_STATE_CHANGED = 700;
+
+    void onEvent(IjkMediaPlayer ijkMediaPlayer, int what, int arg1, int arg2, Object extra);
+}
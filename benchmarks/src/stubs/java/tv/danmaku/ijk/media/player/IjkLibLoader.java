@@ -0,0 +1,8 @@
+package tv.danmaku.ijk.media.player;
+
+/**
+ * 基准测试用的 IjkLibLoader 桩
+ */
+public interface IjkLibLoader {
+    void loadLibrary(String libName);
+}
@@ -0,0 +1,190 @@
+package tv.danmaku.ijk.media.player;
+
+import android.content.Context;
+import android.net.Uri;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/**
+ * 基准测试用的 IjkMediaPlayer 桩，不加载 native 库
+ *
+ * <p>ijkplayer 在事件线程上以自身为参数回调 {@link IjkEventListener}，
+ * {@link #postEvent} 以同样的方式回调；IMediaPlayer 的监听器由 fire 系列方法在调用线程回调。
+ * 插件内部创建的实例由 {@link #lastCreated} 取得，基准借此驱动插件的事件处理
+ */
+public class IjkMediaPlayer implements IMediaPlayer {
+    public static final int OPT_CATEGORY_FORMAT = 1;
+    public static final int OPT_CATEGORY_CODEC = 2;
+    public static final int OPT_CATEGORY_SWS = 3;
+    public static final int OPT_CATEGORY_PLAYER = 4;
+
+    private static volatile IjkMediaPlayer sLastCreated;
+
+    private final List<IjkEventListener> listeners = new ArrayList<>();
+    private volatile OnPreparedListener preparedListener;
+    private volatile OnCompletionListener completionListener;
+    private volatile OnErrorListener errorListener;
+    private volatile OnInfoListener infoListener;
+    private volatile OnSeekCompleteListener seekCompleteListener;
+    private volatile long currentPosition = 0;
+
+    public IjkMediaPlayer() {
+        sLastCreated = this;
+    }
+
+    public static IjkMediaPlayer lastCreated() {
+        return sLastCreated;
+    }
+
+    public static void loadLibrariesOnce(IjkLibLoader libLoader) {
+    }
+
+    public static void native_profileBegin(String libName) {
+    }
+
+    public void addIjkEventListener(IjkEventListener listener) {
+        listeners.add(listener);
+    }
+
+    public void postEvent(int what, int arg1, int arg2) {
+        for (IjkEventListener listener : listeners) {
+            listener.onEvent(this, what, arg1, arg2, null);
+        }
+    }
+
+    public void setOnSnapShotListener(OnSnapShotListener listener) {
+    }
+
+    public void setOnPreparedListener(OnPreparedListener listener) {
+        preparedListener = listener;
+    }
+
+    public void setOnCompletionListener(OnCompletionListener listener) {
+        completionListener = listener;
+    }
+
+    public void setOnErrorListener(OnErrorListener listener) {
+        errorListener = listener;
+    }
+
+    public void setOnInfoListener(OnInfoListener listener) {
+        infoListener = listener;
+    }
+
+    public void setOnSeekCompleteListener(OnSeekCompleteListener listener) {
+        seekCompleteListener = listener;
+    }
+
+    public void firePrepared() {
+        OnPreparedListener listener = preparedListener;
+        if (listener != null) {
+            listener.onPrepared(this);
+        }
+    }
+
+    public void fireCompletion() {
+        OnCompletionListener listener = completionListener;
+        if (listener != null) {
+            listener.onCompletion(this);
+        }
+    }
+
+    public void fireError(int what, int extra) {
+        OnErrorListener listener = errorListener;
+        if (listener != null) {
+            listener.onError(this, what, extra);
+        }
+    }
+
+    public void fireInfo(int what, int extra) {
+        OnInfoListener listener = infoListener;
+        if (listener != null) {
+            listener.onInfo(this, what, extra);
+        }
+    }
+
+    public void fireSeekComplete() {
+        OnSeekCompleteListener listener = seekCompleteListener;
+        if (listener != null) {
+            listener.onSeekComplete(this);
+        }
+    }
+
+    public void setOption(int category, String name, long value) {
+    }
+
+    public void setOption(int category, String name, String value) {
+    }
+
+    public void setDataSource(String path) throws IOException {
+    }
+
+    public void setDataSource(Context context, Uri uri) throws IOException {
+    }
+
+    public void setDataSource(IMediaDataSource mediaDataSource) {
+    }
+
+    public void setSurface(Surface surface) {
+    }
+
+    public void setAmcGlesRender() {
+    }
+
+    public void prepareAsync() {
+    }
+
+    public void start() {
+    }
+
+    public void pause() {
+    }
+
+    public void stop() {
+    }
+
+    public void reset() {
+    }
+
+    public void resetListeners() {
+        listeners.clear();
+    }
+
+    public void release() {
+        listeners.clear();
+        preparedListener = null;
+        completionListener = null;
+        errorListener = null;
+        infoListener = null;
+        seekCompleteListener = null;
+    }
+
+    public void seekTo(long msec) {
+        currentPosition = msec;
+    }
+
+    public long getCurrentPosition() {
+        return currentPosition;
+    }
+
+    public long getDuration() {
+        return 0;
+    }
+
+    public void setVolume(float leftVolume, float rightVolume) {
+    }
+
+    public void setSpeed(float speed) {
+    }
+
+    public void setLoopCount(int loopCount) {
+    }
+
+    public void snapShot() {
+    }
+}
@@ -0,0 +1,14 @@
+package tv.danmaku.ijk.media.player.misc;
+
+import java.io.IOException;
+
+/**
+ * 基准测试用的 IMediaDataSource 桩，与 ijkplayer AAR 中的接口签名相同
+ */
+public interface IMediaDataSource {
+    int readAt(long position, byte[] buffer, int offset, int size) throws IOException;
+
+    long getSize() throws IOException;
+
+    void close() throws IOException;
+}
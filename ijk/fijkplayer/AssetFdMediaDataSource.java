@@ -0,0 +1,91 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+package com.befovy.fijkplayer;
+
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/**
+ * Media data source for assets stored uncompressed in the apk.
+ * <p>
+ * Reads are positional reads on the apk's FileChannel at the asset's start
+ * offset, so a seek costs nothing more than the bytes actually read.
+ */
+class AssetFdMediaDataSource implements IMediaDataSource {
+
+    private AssetFileDescriptor mFd;
+    private FileInputStream mInput;
+    private FileChannel mChannel;
+    final private long mStart;
+    final private long mSize;
+
+    AssetFdMediaDataSource(AssetFileDescriptor fd) throws IOException {
+        mFd = fd;
+        mInput = fd.createInputStream();
+        mChannel = mInput.getChannel();
+        mStart = fd.getStartOffset();
+        long length = fd.getLength();
+        mSize = length != AssetFileDescriptor.UNKNOWN_LENGTH ? length : mChannel.size() - mStart;
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) {
+        if (size <= 0)
+            return size;
+        if (mChannel == null || position >= mSize)
+            return -1;
+        int length = (int) Math.min(size, mSize - position);
+        try {
+            return mChannel.read(ByteBuffer.wrap(buffer, offset, length), mStart + position);
+        } catch (IOException e) {
+            Log.e("DataSource", "failed to read" + e.getMessage());
+            return -1;
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return mSize;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (mInput != null)
+                mInput.close();
+            if (mFd != null)
+                mFd.close();
+        } catch (IOException e) {
+            Log.e("DataSource", "failed to close" + e.getMessage());
+        }
+        mChannel = null;
+        mInput = null;
+        mFd = null;
+    }
+}
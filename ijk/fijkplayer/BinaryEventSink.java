@@ -0,0 +1,98 @@
+//MIT License
+//
+//Copyright (c) [2019] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryCodec;
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * Sends position events as fixed 16 byte little-endian records (int32 type, int32 arg1,
+ * int32 arg2, int32 arg3) over a BasicMessageChannel, instead of a map encoded by
+ * StandardMessageCodec. Decoded by _onBinaryEvent in lib/core/fijkplayer.dart.
+ *
+ * <p>Records are written into one reused direct ByteBuffer on the main thread. Positions from
+ * other threads are latest-wins: the newest value is kept in a field and one preallocated
+ * Runnable is posted until it runs, so no event allocates, whatever thread it comes from.
+ *
+ * <p>Records are not ordered with events of the map based event channel.
+ */
+final class BinaryEventSink {
+
+    final static int RECORD_SIZE = 16;
+
+    // record types, keep in sync with dart
+    final static int EVENT_POS = 1;
+
+    final private BasicMessageChannel<ByteBuffer> mChannel;
+    final private ByteBuffer mBuffer = ByteBuffer.allocateDirect(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    final private Looper mMainLooper = Looper.getMainLooper();
+    final private Handler mHandler = new Handler(mMainLooper);
+
+    final private AtomicBoolean mPosted = new AtomicBoolean(false);
+    private volatile int mPendingPos;
+    final private Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            mPosted.set(false);
+            write(EVENT_POS, mPendingPos, 0, 0);
+        }
+    };
+
+    BinaryEventSink(BinaryMessenger messenger, String name) {
+        mChannel = new BasicMessageChannel<>(messenger, name, BinaryCodec.INSTANCE);
+    }
+
+    /**
+     * @param pos playback position in milliseconds, may be called from any thread
+     */
+    void sendPosition(int pos) {
+        if (Looper.myLooper() == mMainLooper) {
+            write(EVENT_POS, pos, 0, 0);
+            return;
+        }
+        mPendingPos = pos;
+        if (mPosted.compareAndSet(false, true)) {
+            mHandler.post(mFlush);
+        }
+    }
+
+    private void write(int type, int arg1, int arg2, int arg3) {
+        mBuffer.clear();
+        mBuffer.putInt(type);
+        mBuffer.putInt(arg1);
+        mBuffer.putInt(arg2);
+        mBuffer.putInt(arg3);
+        // the engine takes position as the message length and copies synchronously,
+        // so the buffer is not flipped and can be reused right after send
+        mChannel.send(mBuffer);
+    }
+}
@@ -52,4 +52,14 @@ interface FijkEngine {
     void setScreenOn(boolean on);
 
     void audioFocus(boolean request);
+
+    @NonNull
+    PlayerMetrics metrics();
+
+    /**
+     * Demote other players if live or playing players exceed the budget.
+     *
+     * @param active the player being used now, never demoted
+     */
+    void enforceBudget(@Nullable FijkPlayer active);
 }
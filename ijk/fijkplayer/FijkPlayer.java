@@ -27,17 +27,18 @@ import android.content.res.AssetManager;
 import android.graphics.Bitmap;
 import android.graphics.SurfaceTexture;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.Surface;
 
 import androidx.annotation.NonNull;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -70,18 +71,64 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
     final private static int end = 9;
 
     final private int mPlayerId;
-    final private IjkMediaPlayer mIjkMediaPlayer;
+    // null while demoted by the plugin's player budget, recreated on the next call.
+    // Replaced on the main thread; ijkplayer's event thread reads it under mNativeLock.
+    private volatile IjkMediaPlayer mIjkMediaPlayer;
+    // held while the event thread checks an event's player or calls into the native player
+    // and while the main thread releases it, so a demotion never frees the player under the
+    // event thread and no state change of an already released player is applied
+    final private Object mNativeLock = new Object();
     final private FijkEngine mEngine;
     // non-local field prevent GC
     final private EventChannel mEventChannel;
 
     // non-local field prevent GC
     final private MethodChannel mMethodChannel;
+    final private SnapshotEncoder mSnapshotEncoder;
 
     final private QueuingEventSink mEventSink = new QueuingEventSink();
+    // pos events when the binary-position host option is set
+    final private BinaryEventSink mBinarySink;
+    private boolean mBinaryPosition = false;
     final private HostOption mHostOptions = new HostOption();
-
-    private int mState;
+    final private PlayerMetrics.Timeline mTimeline;
+    // player category options, replayed when a demoted player is recreated.
+    // One entry per (category, key), cleared on reset like the native options.
+    final private ArrayList<Object[]> mPlayerOptions = new ArrayList<>();
+
+    private String mDataSource;
+    // data source and position at demotion, playback resumes there after rehydration
+    private String mDemotedUrl;
+    private long mDemotedPos = 0;
+    private long mLastActive = SystemClock.uptimeMillis();
+
+    // position anchor mode, see HostOption.POSITION_ANCHOR
+    // an anchor is sent early when the extrapolated position is off by more than this
+    final private static long ANCHOR_DRIFT_THRESHOLD_MS = 80;
+    private boolean mPositionAnchor = false;
+    private long mAnchorIntervalMs = 5000;
+    // the anchor, speed and catch-up state below is written on the main thread (setSpeed)
+    // and on ijkplayer's event thread (anchors, catch-up), guarded by mSpeedLock;
+    // mNativeLock may be taken while holding it, never the other way round
+    final private Object mSpeedLock = new Object();
+    private long mAnchorPos = -1;
+    private long mAnchorNanos;
+    private float mAnchorSpeed = 1.0f;
+    private boolean mAnchorPlaying = false;
+    private boolean mBuffering = false;
+    // speed applied to the native player: the speed set from dart times the catch-up factor
+    private float mSpeed = 1.0f;
+    private float mUserSpeed = 1.0f;
+
+    // live catch-up, null unless the latency-target-ms host option is set
+    final private static long LATENCY_REPORT_INTERVAL_MS = 1000;
+    private LatencyController mLatencyController;
+    private long mBufferHeadMs = -1;
+    private long mLastLatencyReport = 0;
+
+    // written under mNativeLock on ijkplayer's event thread and the main thread,
+    // read by the plugin on the main thread
+    private volatile int mState;
     private int mRotate = -1;
     private int mWidth = 0;
     private int mHeight = 0;
@@ -95,20 +142,21 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
         mPlayerId = atomicId.incrementAndGet();
         mState = 0;
         mJustSurface = justSurface;
+        mTimeline = engine.metrics().newTimeline();
         if (justSurface) {
             mIjkMediaPlayer = null;
             mEventChannel = null;
             mMethodChannel = null;
+            mSnapshotEncoder = null;
+            mBinarySink = null;
         } else {
-            mIjkMediaPlayer = new IjkMediaPlayer();
-            mIjkMediaPlayer.addIjkEventListener(this);
-            mIjkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-position-notify", 1);
-            mIjkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 0);
+            mIjkMediaPlayer = createIjkPlayer();
 
             // IjkMediaPlayer.native_setLogLevel(IjkMediaPlayer.IJK_LOG_INFO);
             mMethodChannel = new MethodChannel(mEngine.messenger(), "befovy.com/fijkplayer/" + mPlayerId);
             mMethodChannel.setMethodCallHandler(this);
-            mIjkMediaPlayer.setOnSnapShotListener(this);
+            mSnapshotEncoder = new SnapshotEncoder(mEngine.messenger(), "befovy.com/fijkplayer/snapshot/" + mPlayerId);
+            mBinarySink = new BinaryEventSink(mEngine.messenger(), "befovy.com/fijkplayer/binary_event/" + mPlayerId);
 
             mEventChannel = new EventChannel(mEngine.messenger(), "befovy.com/fijkplayer/event/" + mPlayerId);
             mEventChannel.setStreamHandler(new EventChannel.StreamHandler() {
@@ -125,13 +173,143 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
         }
     }
 
+    private IjkMediaPlayer createIjkPlayer() {
+        IjkMediaPlayer player = new IjkMediaPlayer();
+        player.addIjkEventListener(this);
+        player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-position-notify", 1);
+        player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 0);
+        player.setOnSnapShotListener(this);
+        return player;
+    }
+
     int getPlayerId() {
         return mPlayerId;
     }
 
+    long lastActive() {
+        return mLastActive;
+    }
+
+    /**
+     * @return true if the player holds a native player
+     */
+    boolean isLive() {
+        return !mJustSurface && mIjkMediaPlayer != null;
+    }
+
+    boolean isPlaying() {
+        return isLive() && mState == started;
+    }
+
+    /**
+     * A live player which is not preparing or playing can be demoted without
+     * interrupting the user.
+     */
+    boolean isDemotable() {
+        return isLive() && mState != asyncPreparing && mState != started && mState != end;
+    }
+
+    /**
+     * Release the native player to free decoder memory. The player goes back to
+     * idle; the next call from dart recreates the native player, and a later
+     * prepare of the same data source resumes from the current position.
+     */
+    void demote() {
+        if (!isLive())
+            return;
+        mDemotedUrl = mDataSource;
+        mDemotedPos = isPlayable(mState) ? mIjkMediaPlayer.getCurrentPosition() : 0;
+        releaseNative();
+        mTimeline.reset();
+        handleEvent(PLAYBACK_STATE_CHANGED, idle, mState, null);
+        sendDemotedEvent("released", mDemotedPos);
+    }
+
+    /**
+     * Pause a playing player because too many players are playing.
+     */
+    void demotePlaying() {
+        if (!isPlaying())
+            return;
+        mIjkMediaPlayer.pause();
+        sendDemotedEvent("paused", mIjkMediaPlayer.getCurrentPosition());
+    }
+
+    private void sendDemotedEvent(String reason, long pos) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("event", "demoted");
+        event.put("reason", reason);
+        event.put("pos", pos);
+        mEventSink.success(event);
+    }
+
+    private void rehydrate() {
+        mIjkMediaPlayer = createIjkPlayer();
+        for (Object[] option : mPlayerOptions) {
+            int cat = (Integer) option[0];
+            if (option[2] instanceof String) {
+                mIjkMediaPlayer.setOption(cat, (String) option[1], (String) option[2]);
+            } else {
+                mIjkMediaPlayer.setOption(cat, (String) option[1], (Long) option[2]);
+            }
+        }
+        if (mSurface != null) {
+            mIjkMediaPlayer.setSurface(mSurface);
+        }
+        mEngine.enforceBudget(this);
+    }
+
+    private void releaseNative() {
+        synchronized (mNativeLock) {
+            if (mIjkMediaPlayer != null) {
+                mIjkMediaPlayer.release();
+                mIjkMediaPlayer = null;
+            }
+        }
+    }
+
+    private void setPlayerOption(int cat, String key, long value) {
+        rememberPlayerOption(cat, key, value);
+        mIjkMediaPlayer.setOption(cat, key, value);
+    }
+
+    private void setPlayerOption(int cat, String key, String value) {
+        rememberPlayerOption(cat, key, value);
+        mIjkMediaPlayer.setOption(cat, key, value);
+    }
+
+    // a later value for the same option replaces the earlier one
+    private void rememberPlayerOption(int cat, String key, Object value) {
+        for (int i = 0; i < mPlayerOptions.size(); i++) {
+            Object[] option = mPlayerOptions.get(i);
+            if ((Integer) option[0] == cat && option[1].equals(key)) {
+                mPlayerOptions.remove(i);
+                break;
+            }
+        }
+        mPlayerOptions.add(new Object[]{cat, key, value});
+    }
+
     void setup() {
         if (mJustSurface)
             return;
+        mEventSink.setCoalescing(mHostOptions.getIntOption(HostOption.EVENT_COALESCE, 0) > 0);
+        mEventSink.setMaxRate(mHostOptions.getIntOption(HostOption.EVENT_MAX_RATE, 0));
+        mBinaryPosition = mHostOptions.getIntOption(HostOption.BINARY_POSITION, 0) > 0;
+        int latencyTarget = mHostOptions.getIntOption(HostOption.LATENCY_TARGET_MS, 0);
+        mBufferHeadMs = -1;
+        mPositionAnchor = mHostOptions.getIntOption(HostOption.POSITION_ANCHOR, 0) > 0;
+        mAnchorIntervalMs = mHostOptions.getIntOption(HostOption.POSITION_ANCHOR_INTERVAL, 5000);
+        synchronized (mSpeedLock) {
+            if (latencyTarget > 0) {
+                float minSpeed = mHostOptions.getIntOption(HostOption.LATENCY_MIN_SPEED, 950) / 1000.0f;
+                float maxSpeed = mHostOptions.getIntOption(HostOption.LATENCY_MAX_SPEED, 1100) / 1000.0f;
+                mLatencyController = new LatencyController(latencyTarget, minSpeed, maxSpeed);
+            } else {
+                mLatencyController = null;
+            }
+            mAnchorPos = -1;
+        }
         if (mHostOptions.getIntOption(HostOption.ENABLE_SNAPSHOT, 0) > 0) {
             mIjkMediaPlayer.setAmcGlesRender();
             mIjkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "overlay-format", "fcc-_es2");
@@ -161,8 +339,9 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
 
     void release() {
         if (!mJustSurface) {
+            // release first so that no late native event follows the end state
+            releaseNative();
             handleEvent(PLAYBACK_STATE_CHANGED, end, mState, null);
-            mIjkMediaPlayer.release();
         }
         if (mSurfaceTextureEntry != null) {
             mSurfaceTextureEntry.release();
@@ -189,6 +368,7 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
     private void onStateChanged(int newState, int oldState) {
         if (newState == started && oldState != started) {
             mEngine.onPlayingChange(1);
+            mEngine.enforceBudget(this);
 
             if (mHostOptions.getIntOption(HostOption.REQUEST_AUDIOFOCUS, 0) == 1) {
                 mEngine.audioFocus(true);
@@ -217,48 +397,85 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
     }
 
     private void handleEvent(int what, int arg1, int arg2, Object extra) {
+        handleEvent(null, what, arg1, arg2, extra);
+    }
+
+    /**
+     * @param source the native player a native event came from, null for transitions made here
+     */
+    private void handleEvent(IjkMediaPlayer source, int what, int arg1, int arg2, Object extra) {
+        if (what == CURRENT_POSITION_UPDATE) {
+            // the most frequent event, handled without allocating an event map
+            handlePositionUpdate(arg1);
+            return;
+        }
         Map<String, Object> event = new HashMap<>();
 
         switch (what) {
             case PREPARED:
+                mTimeline.onPrepared();
                 event.put("event", "prepared");
-                long duration = mIjkMediaPlayer.getDuration();
+                long duration = 0;
+                synchronized (mNativeLock) {
+                    IjkMediaPlayer player = mIjkMediaPlayer;
+                    if (player != null)
+                        duration = player.getDuration();
+                }
                 event.put("duration", duration);
                 mEventSink.success(event);
                 break;
             case PLAYBACK_STATE_CHANGED:
-                mState = arg1;
+                // the counters follow the state actually replaced, the reported old state
+                // is -1 for transitions made here and may be stale for native ones
+                int oldState;
+                synchronized (mNativeLock) {
+                    // released or demoted since onEvent checked the player, the end or idle
+                    // state is already applied and counted
+                    if (source != null && source != mIjkMediaPlayer)
+                        return;
+                    oldState = mState;
+                    mState = arg1;
+                }
                 event.put("event", "state_change");
                 event.put("new", arg1);
                 event.put("old", arg2);
-                onStateChanged(arg1, arg2);
+                onStateChanged(arg1, oldState);
                 mEventSink.success(event);
+                if (mPositionAnchor)
+                    sendAnchor(currentPosition());
                 break;
             case VIDEO_RENDERING_START:
             case AUDIO_RENDERING_START:
+                mTimeline.onRenderingStart();
                 event.put("event", "rendering_start");
                 event.put("type", what == VIDEO_RENDERING_START ? "video" : "audio");
                 mEventSink.success(event);
                 break;
             case BUFFERING_START:
             case BUFFERING_END:
+                if (what == BUFFERING_START) {
+                    mTimeline.onBufferingStart();
+                } else {
+                    mTimeline.onBufferingEnd();
+                }
+                synchronized (mSpeedLock) {
+                    mBuffering = what == BUFFERING_START;
+                }
                 event.put("event", "freeze");
                 event.put("value", what == BUFFERING_START);
                 mEventSink.success(event);
+                if (mPositionAnchor)
+                    sendAnchor(currentPosition());
                 break;
 
             // buffer / cache position
             case BUFFERING_UPDATE:
+                mBufferHeadMs = arg1;
                 event.put("event", "buffering");
                 event.put("head", arg1);
                 event.put("percent", arg2);
                 mEventSink.success(event);
                 break;
-            case CURRENT_POSITION_UPDATE:
-                event.put("event", "pos");
-                event.put("pos", arg1);
-                mEventSink.success(event);
-                break;
             case VIDEO_ROTATION_CHANGED:
                 event.put("event", "rotate");
                 event.put("degree", arg1);
@@ -285,6 +502,16 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
                 mHeight = arg2;
                 break;
             case SEEK_COMPLETE:
+                mTimeline.onSeekComplete();
+                synchronized (mSpeedLock) {
+                    if (mLatencyController != null) {
+                        mLatencyController.reset();
+                        if (mSpeed != mUserSpeed)
+                            applySpeed();
+                    }
+                }
+                if (mPositionAnchor)
+                    sendAnchor(arg1);
                 event.put("event", "seek_complete");
                 event.put("pos", arg1);
                 event.put("err", arg2);
@@ -299,16 +526,119 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
         }
     }
 
+    private void handlePositionUpdate(int pos) {
+        if (mPositionAnchor) {
+            checkAnchor(pos);
+        } else if (mBinaryPosition) {
+            mBinarySink.sendPosition(pos);
+        } else {
+            Map<String, Object> event = new HashMap<>();
+            event.put("event", "pos");
+            event.put("pos", pos);
+            mEventSink.success(event);
+        }
+        if (mBufferHeadMs >= 0) {
+            updateLatency(mBufferHeadMs - pos);
+        }
+    }
+
+    // the speed set from dart scaled by the catch-up factor, which stays within
+    // [latency-min-speed, latency-max-speed] around 1x
+    private void applySpeed() {
+        synchronized (mSpeedLock) {
+            float speed = mUserSpeed;
+            if (mLatencyController != null)
+                speed *= mLatencyController.speed();
+            synchronized (mNativeLock) {
+                IjkMediaPlayer player = mIjkMediaPlayer;
+                if (player == null)
+                    return;
+                player.setSpeed(speed);
+            }
+            mSpeed = speed;
+            if (mPositionAnchor)
+                sendAnchor(currentPosition());
+        }
+    }
+
+    private long currentPosition() {
+        synchronized (mNativeLock) {
+            IjkMediaPlayer player = mIjkMediaPlayer;
+            return player != null ? player.getCurrentPosition() : 0;
+        }
+    }
+
+    // position extrapolated from the last anchor, the same way dart does it;
+    // called with mSpeedLock held
+    private long predictedPosition(long nowNanos) {
+        if (!mAnchorPlaying)
+            return mAnchorPos;
+        return mAnchorPos + (long) ((nowNanos - mAnchorNanos) / 1000000 * mAnchorSpeed);
+    }
+
+    private void checkAnchor(long pos) {
+        synchronized (mSpeedLock) {
+            long now = SystemClock.elapsedRealtimeNanos();
+            if (mAnchorPos < 0) {
+                sendAnchor(pos);
+                return;
+            }
+            long drift = predictedPosition(now) - pos;
+            boolean due = mAnchorPlaying && (now - mAnchorNanos) / 1000000 >= mAnchorIntervalMs;
+            if (due || Math.abs(drift) > ANCHOR_DRIFT_THRESHOLD_MS) {
+                mEngine.metrics().recordPositionDriftMs(drift);
+                sendAnchor(pos);
+            }
+        }
+    }
+
+    // sent under the lock so that anchors reach dart in the order their speeds were applied
+    private void sendAnchor(long pos) {
+        synchronized (mSpeedLock) {
+            mAnchorPos = pos;
+            mAnchorNanos = SystemClock.elapsedRealtimeNanos();
+            mAnchorSpeed = mSpeed;
+            mAnchorPlaying = mState == started && !mBuffering;
+            Map<String, Object> event = new HashMap<>();
+            event.put("event", "pos_anchor");
+            event.put("pos", pos);
+            event.put("time", mAnchorNanos);
+            event.put("speed", (double) mAnchorSpeed);
+            event.put("playing", mAnchorPlaying);
+            mEventSink.success(event);
+        }
+    }
+
+    private void updateLatency(long latencyMs) {
+        synchronized (mSpeedLock) {
+            LatencyController controller = mLatencyController;
+            if (controller == null)
+                return;
+            if (controller.update(latencyMs)) {
+                applySpeed();
+            }
+            long now = SystemClock.uptimeMillis();
+            if (now - mLastLatencyReport >= LATENCY_REPORT_INTERVAL_MS) {
+                mLastLatencyReport = now;
+                Map<String, Object> event = new HashMap<>();
+                event.put("event", "latency");
+                event.put("latency", controller.latencyMs());
+                event.put("target", controller.targetMs());
+                event.put("speed", (double) mSpeed);
+                mEventSink.success(event);
+            }
+        }
+    }
+
     @Override
     public void onSnapShot(IMediaPlayer iMediaPlayer, Bitmap bitmap, int w, int h) {
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, stream);
-        bitmap.recycle();
-        Map<String, Object> args = new HashMap<>();
-        args.put("data", stream.toByteArray());
-        args.put("w", w);
-        args.put("h", h);
-        mMethodChannel.invokeMethod("_onSnapshot", args);
+        // encoded on a background thread, result arrives on the snapshot channel
+        mSnapshotEncoder.encode(bitmap, new SnapshotEncoder.Callback() {
+            @Override
+            public void onError(String message) {
+                mMethodChannel.invokeMethod("_onSnapshot", message);
+            }
+        });
     }
 
     @Override
@@ -326,7 +656,15 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
             case CURRENT_POSITION_UPDATE:
             case VIDEO_ROTATION_CHANGED:
             case SEEK_COMPLETE:
-                handleEvent(what, arg1, arg2, extra);
+                synchronized (mNativeLock) {
+                    if (ijkMediaPlayer != mIjkMediaPlayer) {
+                        // late event from a player released by demote() or release()
+                        return;
+                    }
+                }
+                // dispatched outside the lock so a release on the main thread never waits
+                // for the sink; native calls made while handling take the lock themselves
+                handleEvent(ijkMediaPlayer, what, arg1, arg2, extra);
                 break;
             default:
                 break;
@@ -347,9 +685,9 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
                         if (key instanceof String && cat != 0) {
                             String name = (String) key;
                             if (value instanceof Integer) {
-                                mIjkMediaPlayer.setOption(cat, name, (Integer) value);
+                                setPlayerOption(cat, name, (Integer) value);
                             } else if (value instanceof String) {
-                                mIjkMediaPlayer.setOption(cat, name, (String) value);
+                                setPlayerOption(cat, name, (String) value);
                             }
                         } else if (key instanceof String) {
                             // cat == 0, hostCategory
@@ -368,6 +706,24 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
 
     @Override
     public void onMethodCall(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+        mLastActive = SystemClock.uptimeMillis();
+        if (mIjkMediaPlayer == null) {
+            // demoted, calls that need no native player don't bring it back
+            if (call.method.equals("getCurrentPosition")) {
+                result.success(mDemotedPos);
+                return;
+            } else if (call.method.equals("pause") || call.method.equals("stop")) {
+                result.success(null);
+                return;
+            } else if (call.method.equals("reset")) {
+                mDemotedUrl = null;
+                mDemotedPos = 0;
+                mPlayerOptions.clear();
+                result.success(null);
+                return;
+            }
+            rehydrate();
+        }
         //noinspection IfCanBeSwitch
         if (call.method.equals("setupSurface")) {
             long viewId = setupSurface();
@@ -378,7 +734,7 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
             if (call.hasArgument("long")) {
                 final Integer value = call.argument("long");
                 if (category != null && category != 0) {
-                    mIjkMediaPlayer.setOption(category, key, value != null ? value.longValue() : 0);
+                    setPlayerOption(category, key, value != null ? value.longValue() : 0);
                 } else if (category != null) {
                     // cat == 0, hostCategory
                     mHostOptions.addIntOption(key, value);
@@ -386,7 +742,7 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
             } else if (call.hasArgument("str")) {
                 final String value = call.argument("str");
                 if (category != null && category != 0) {
-                    mIjkMediaPlayer.setOption(category, key, value);
+                    setPlayerOption(category, key, value);
                 } else if (category != null) {
                     // cat == 0, hostCategory
                     mHostOptions.addStrOption(key, value);
@@ -400,6 +756,7 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
             result.success(null);
         } else if (call.method.equals("setDataSource")) {
             String url = call.argument("url");
+            mDataSource = url;
             Uri uri = Uri.parse(url);
             boolean openAsset = false;
             if ("asset".equals(uri.getScheme())) {
@@ -412,15 +769,26 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
                 }
             }
             try {
+                mTimeline.onSetDataSource();
                 Context context = mEngine.context();
                 if (openAsset && context != null) {
                     AssetManager assetManager = context.getAssets();
-                    InputStream is = assetManager.open(uri.getPath() != null ? uri.getPath() : "", AssetManager.ACCESS_RANDOM);
-                    mIjkMediaPlayer.setDataSource(new RawMediaDataSource(is));
+                    String assetPath = uri.getPath() != null ? uri.getPath() : "";
+                    IMediaDataSource dataSource;
+                    try {
+                        // uncompressed assets can be read at any offset of the apk file
+                        dataSource = new AssetFdMediaDataSource(assetManager.openFd(assetPath));
+                    } catch (FileNotFoundException e) {
+                        // openFd throws for compressed assets
+                        InputStream is = assetManager.open(assetPath, AssetManager.ACCESS_RANDOM);
+                        dataSource = new RawMediaDataSource(is);
+                    }
+                    mIjkMediaPlayer.setDataSource(dataSource);
                 } else if (context != null){
                     if (TextUtils.isEmpty(uri.getScheme()) || "file".equals(uri.getScheme())) {
                         String path = uri.getPath() != null ? uri.getPath() : "";
-                        IMediaDataSource dataSource = new FileMediaDataSource(new File(path));
+                        boolean mapped = mHostOptions.getIntOption(HostOption.MMAP_FILE_SOURCE, 0) > 0;
+                        IMediaDataSource dataSource = new FileMediaDataSource(new File(path), mapped);
                         mIjkMediaPlayer.setDataSource(dataSource);
                     } else {
                         mIjkMediaPlayer.setDataSource(mEngine.context(), uri);
@@ -440,6 +808,12 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
             }
         } else if (call.method.equals("prepareAsync")) {
             setup();
+            if (mDemotedUrl != null && mDemotedUrl.equals(mDataSource) && mDemotedPos > 0) {
+                mIjkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "seek-at-start", mDemotedPos);
+            }
+            mDemotedUrl = null;
+            mDemotedPos = 0;
+            mTimeline.onPrepareAsync();
             mIjkMediaPlayer.prepareAsync();
             handleEvent(PLAYBACK_STATE_CHANGED, asyncPreparing, -1, null);
             result.success(null);
@@ -455,6 +829,8 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
             result.success(null);
         } else if (call.method.equals("reset")) {
             mIjkMediaPlayer.reset();
+            mPlayerOptions.clear();
+            mTimeline.reset();
             handleEvent(PLAYBACK_STATE_CHANGED, idle, -1, null);
             result.success(null);
         } else if (call.method.equals("getCurrentPosition")) {
@@ -469,6 +845,7 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
             final Integer msec = call.argument("msec");
             if (mState == completed)
                 handleEvent(PLAYBACK_STATE_CHANGED, paused, -1, null);
+            mTimeline.onSeek();
             mIjkMediaPlayer.seekTo(msec != null ? msec.longValue() : 0);
             result.success(null);
         } else if (call.method.equals("setLoop")) {
@@ -477,10 +854,17 @@ public class FijkPlayer implements MethodChannel.MethodCallHandler, IjkEventList
             result.success(null);
         } else if (call.method.equals("setSpeed")) {
             final Double speed = call.argument("speed");
-            mIjkMediaPlayer.setSpeed(speed != null ? speed.floatValue() : 1.0f);
+            synchronized (mSpeedLock) {
+                mUserSpeed = speed != null ? speed.floatValue() : 1.0f;
+                applySpeed();
+            }
             result.success(null);
         } else if (call.method.equals("snapshot")) {
             if (mHostOptions.getIntOption(HostOption.ENABLE_SNAPSHOT, 0) > 0) {
+                final Integer quality = call.argument("quality");
+                final Integer maxDimension = call.argument("maxDimension");
+                mSnapshotEncoder.setRequest(SnapshotEncoder.parseFormat(call.<String>argument("format")),
+                        quality != null ? quality : 100, maxDimension != null ? maxDimension : 0);
                 mIjkMediaPlayer.snapShot();
             } else {
                 mMethodChannel.invokeMethod("_onSnapshot", "not support");
@@ -31,10 +31,13 @@ import android.media.AudioAttributes;
 import android.media.AudioFocusRequest;
 import android.media.AudioManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.text.TextUtils;
 import android.util.Log;
-import android.util.SparseArray;
 import android.view.KeyEvent;
 import android.view.WindowManager;
 
@@ -44,6 +47,8 @@ import androidx.annotation.Nullable;
 import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
@@ -75,9 +80,14 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
     // always show system volume changed UI
     private static final int ALWAYS_SHOW_UI = 3;
 
-    final private SparseArray<FijkPlayer> fijkPlayers = new SparseArray<>();
+    // state changes arrive on ijkplayer's event thread, method calls on the main thread
+    final private ConcurrentHashMap<Integer, FijkPlayer> fijkPlayers = new ConcurrentHashMap<>();
+    final private Looper mMainLooper = Looper.getMainLooper();
+    final private Handler mMainHandler = new Handler(mMainLooper);
+    final private NativeLoader mNativeLoader = new NativeLoader(mMainHandler);
 
     private final QueuingEventSink mEventSink = new QueuingEventSink();
+    private final PlayerMetrics mMetrics = new PlayerMetrics();
 
     private WeakReference<Activity> mActivity;
     private WeakReference<Context> mContext;
@@ -85,9 +95,12 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
     private FlutterPluginBinding mBinding;
 
     // Count of playable players
-    private int playableCnt = 0;
+    final private AtomicInteger playableCnt = new AtomicInteger(0);
     // Count of playing players
-    private int playingCnt = 0;
+    final private AtomicInteger playingCnt = new AtomicInteger(0);
+    // Budget of players holding a native player / playing at once, 0 is unlimited
+    private int maxLivePlayers = 0;
+    private int maxPlayingPlayers = 0;
     private int volumeUIMode = ALWAYS_SHOW_UI;
     private float volStep = 1.0f / 16.0f;
     private boolean eventListening = false;
@@ -106,10 +119,7 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
         FijkPlugin plugin = new FijkPlugin();
         plugin.initWithRegistrar(registrar);
         channel.setMethodCallHandler(plugin);
-
-        final FijkPlayer player = new FijkPlayer(plugin, true);
-        player.setupSurface();
-        player.release();
+        plugin.startWarmUp();
     }
 
     @Override
@@ -117,10 +127,7 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
         final MethodChannel channel = new MethodChannel(binding.getBinaryMessenger(), "befovy.com/fijk");
         initWithBinding(binding);
         channel.setMethodCallHandler(this);
-
-        final FijkPlayer player = new FijkPlayer(this, true);
-        player.setupSurface();
-        player.release();
+        startWarmUp();
 
         AudioManager audioManager = audioManager();
         if (audioManager != null) {
@@ -226,6 +233,26 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
     }
 
 
+    /**
+     * Load native libraries in background and defer the surface warm-up,
+     * which needs the main thread, until the main looper is idle.
+     * Both used to run synchronously during plugin registration.
+     */
+    private void startWarmUp() {
+        mNativeLoader.start();
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                long begin = SystemClock.uptimeMillis();
+                final FijkPlayer player = new FijkPlayer(FijkPlugin.this, true);
+                player.setupSurface();
+                player.release();
+                mNativeLoader.recordMainThreadWarmUp(SystemClock.uptimeMillis() - begin);
+                return false;
+            }
+        });
+    }
+
     private void initWithRegistrar(@NonNull Registrar registrar) {
         mRegistrar = registrar;
         mContext = new WeakReference<>(registrar.activeContext());
@@ -269,6 +296,12 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
     }
 
 
+    @NonNull
+    @Override
+    public PlayerMetrics metrics() {
+        return mMetrics;
+    }
+
     @Override
     public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
         Activity activity;
@@ -281,10 +314,22 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
                 result.success(null);
                 break;
             case "createPlayer": {
-                FijkPlayer fijkPlayer = new FijkPlayer(this, false);
-                int playerId = fijkPlayer.getPlayerId();
-                fijkPlayers.append(playerId, fijkPlayer);
-                result.success(playerId);
+                // reply once native libraries are loaded, IjkMediaPlayer needs them
+                mNativeLoader.whenReady(new Runnable() {
+                    @Override
+                    public void run() {
+                        createPlayer(result);
+                    }
+                });
+                break;
+            }
+            case "setPlayerBudget": {
+                final Integer maxLive = call.argument("maxLive");
+                final Integer maxPlaying = call.argument("maxPlaying");
+                maxLivePlayers = maxLive != null ? Math.max(0, maxLive) : 0;
+                maxPlayingPlayers = maxPlaying != null ? Math.max(0, maxPlaying) : 0;
+                enforceBudget(null);
+                result.success(null);
                 break;
             }
             case "releasePlayer": {
@@ -292,14 +337,23 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
                 final Integer arg = call.argument("pid");
                 if (arg != null)
                     pid = arg;
-                FijkPlayer fijkPlayer = fijkPlayers.get(pid);
+                FijkPlayer fijkPlayer = fijkPlayers.remove(pid);
                 if (fijkPlayer != null) {
                     fijkPlayer.release();
-                    fijkPlayers.delete(pid);
                 }
                 result.success(null);
                 break;
             }
+            case "getMetrics": {
+                Map<String, Object> metrics = mMetrics.toMap();
+                metrics.put("startup", mNativeLoader.toMap());
+                final Boolean reset = call.argument("reset");
+                if (reset != null && reset) {
+                    mMetrics.reset();
+                }
+                result.success(metrics);
+                break;
+            }
             case "logLevel": {
                 int level = 500;
                 final Integer l = call.argument("level");
@@ -308,9 +362,18 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
                 level = level / 100;
                 level = Math.max(level, 0);
                 level = Math.min(level, 8);
-                IjkMediaPlayer.loadLibrariesOnce(null);
-                IjkMediaPlayer.setLogLevel(level);
-                result.success(null);
+                final int logLevel = level;
+                mNativeLoader.whenReady(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mNativeLoader.isReady()) {
+                            result.error("-1", "ijkplayer libraries not loaded: " + mNativeLoader.getError(), null);
+                            return;
+                        }
+                        IjkMediaPlayer.setLogLevel(logLevel);
+                        result.success(null);
+                    }
+                });
                 break;
             }
             case "setOrientationPortrait":
@@ -444,12 +507,102 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
 
     @Override
     public void onPlayingChange(int delta) {
-        playingCnt += delta;
+        playingCnt.addAndGet(delta);
     }
 
     @Override
     public void onPlayableChange(int delta) {
-        playableCnt += delta;
+        playableCnt.addAndGet(delta);
+    }
+
+    int playingCount() {
+        return playingCnt.get();
+    }
+
+    int playableCount() {
+        return playableCnt.get();
+    }
+
+    @Override
+    public void enforceBudget(@Nullable final FijkPlayer active) {
+        if (Looper.myLooper() != mMainLooper) {
+            // players are only demoted on the main thread, where their methods are called
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    enforceBudget(active);
+                }
+            });
+            return;
+        }
+        if (maxLivePlayers > 0) {
+            int live = liveCount();
+            while (live > maxLivePlayers) {
+                FijkPlayer victim = leastRecentlyActive(active, false);
+                if (victim == null)
+                    break;
+                Log.i("FIJKPLAYER", "demote player " + victim.getPlayerId() + ", live players " + live);
+                victim.demote();
+                live--;
+            }
+        }
+        if (maxPlayingPlayers > 0) {
+            int playing = 0;
+            for (FijkPlayer player : fijkPlayers.values()) {
+                if (player.isPlaying())
+                    playing++;
+            }
+            while (playing > maxPlayingPlayers) {
+                FijkPlayer victim = leastRecentlyActive(active, true);
+                if (victim == null)
+                    break;
+                Log.i("FIJKPLAYER", "pause player " + victim.getPlayerId() + ", playing players " + playing);
+                victim.demotePlaying();
+                playing--;
+            }
+        }
+    }
+
+    private void createPlayer(@NonNull Result result) {
+        if (!mNativeLoader.isReady()) {
+            result.error("-1", "ijkplayer libraries not loaded: " + mNativeLoader.getError(), null);
+            return;
+        }
+        FijkPlayer fijkPlayer = new FijkPlayer(this, false);
+        int playerId = fijkPlayer.getPlayerId();
+        fijkPlayers.put(playerId, fijkPlayer);
+        enforceBudget(fijkPlayer);
+        if (maxLivePlayers > 0 && liveCount() > maxLivePlayers) {
+            // every other player is preparing or playing, refuse the new one
+            fijkPlayer.release();
+            fijkPlayers.remove(playerId);
+            result.error("-1", "player budget exceeded, max live players " + maxLivePlayers, null);
+            return;
+        }
+        result.success(playerId);
+    }
+
+    private int liveCount() {
+        int live = 0;
+        for (FijkPlayer player : fijkPlayers.values()) {
+            if (player.isLive())
+                live++;
+        }
+        return live;
+    }
+
+    @Nullable
+    private FijkPlayer leastRecentlyActive(@Nullable FijkPlayer exclude, boolean playing) {
+        FijkPlayer lru = null;
+        for (FijkPlayer player : fijkPlayers.values()) {
+            if (player == exclude)
+                continue;
+            if (playing ? !player.isPlaying() : !player.isDemotable())
+                continue;
+            if (lru == null || player.lastActive() < lru.lastActive())
+                lru = player;
+        }
+        return lru;
     }
 
     @Override
@@ -644,9 +797,9 @@ public class FijkPlugin implements MethodCallHandler, FlutterPlugin, ActivityAwa
         int flag = 0;
         if (volumeUIMode == ALWAYS_SHOW_UI) {
             flag = AudioManager.FLAG_SHOW_UI;
-        } else if (volumeUIMode == NO_UI_IF_PLAYING && playingCnt == 0) {
+        } else if (volumeUIMode == NO_UI_IF_PLAYING && playingCnt.get() == 0) {
             flag = AudioManager.FLAG_SHOW_UI;
-        } else if (volumeUIMode == NO_UI_IF_PLAYABLE && playableCnt == 0) {
+        } else if (volumeUIMode == NO_UI_IF_PLAYABLE && playableCnt.get() == 0) {
             flag = AudioManager.FLAG_SHOW_UI;
         }
         return flag;
@@ -28,17 +28,48 @@ import android.util.Log;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
 
 class FileMediaDataSource implements IMediaDataSource {
+
+    // size of one mapped region, files larger than this are remapped window by window
+    final private static long MAP_WINDOW_SIZE = 64L * 1024 * 1024;
+
     private RandomAccessFile mFile;
     private long mFileSize;
 
+    final private boolean mMapped;
+    final private long mMapWindowSize;
+    private FileChannel mChannel;
+    private MappedByteBuffer mWindow;
+    private long mWindowStart;
+
     public FileMediaDataSource(File file) {
+        this(file, false);
+    }
+
+    /**
+     * @param file   local media file
+     * @param mapped true to serve reads from a memory mapped window of the file
+     *               instead of seek and read syscalls on RandomAccessFile
+     */
+    FileMediaDataSource(File file, boolean mapped) {
+        this(file, mapped, MAP_WINDOW_SIZE);
+    }
+
+    // window size is only changed by tests, to cover remapping without multi-GB files
+    FileMediaDataSource(File file, boolean mapped, long mapWindowSize) {
+        mMapped = mapped;
+        mMapWindowSize = mapWindowSize;
         try {
             mFile = new RandomAccessFile(file, "r");
             mFileSize = mFile.length();
+            if (mapped) {
+                mChannel = mFile.getChannel();
+            }
         } catch (IOException e) {
             mFile = null;
             mFileSize = -1;
@@ -53,9 +84,13 @@ class FileMediaDataSource implements IMediaDataSource {
         int length = -1;
         if (mFile != null) {
             try {
-                if (mFile.getFilePointer() != position)
-                    mFile.seek(position);
-                length = mFile.read(buffer, 0, size);
+                if (mMapped) {
+                    length = readMapped(position, buffer, offset, size);
+                } else {
+                    if (mFile.getFilePointer() != position)
+                        mFile.seek(position);
+                    length = mFile.read(buffer, offset, size);
+                }
             } catch (IOException e) {
                 Log.e("DataSource", "failed to read" + e.getMessage());
             }
@@ -63,6 +98,23 @@ class FileMediaDataSource implements IMediaDataSource {
         return length;
     }
 
+    private int readMapped(long position, byte[] buffer, int offset, int size) throws IOException {
+        if (position >= mFileSize)
+            return -1;
+        if (mWindow == null || position < mWindowStart || position >= mWindowStart + mWindow.limit()) {
+            // align windows so that sequential reads remap once per window size bytes
+            mWindowStart = position - position % mMapWindowSize;
+            long windowSize = Math.min(mMapWindowSize, mFileSize - mWindowStart);
+            mWindow = mChannel.map(FileChannel.MapMode.READ_ONLY, mWindowStart, windowSize);
+        }
+        int windowOffset = (int) (position - mWindowStart);
+        // short read at window end, ijkplayer asks again for the remaining bytes
+        int length = Math.min(size, mWindow.limit() - windowOffset);
+        mWindow.position(windowOffset);
+        mWindow.get(buffer, offset, length);
+        return length;
+    }
+
     @Override
     public long getSize() {
         return mFileSize;
@@ -72,6 +124,8 @@ class FileMediaDataSource implements IMediaDataSource {
     public void close() {
         if (mFile != null) {
             try {
+                mWindow = null;
+                mChannel = null;
                 mFile.close();
                 mFileSize = 0;
                 mFile = null;
@@ -34,6 +34,25 @@ final class HostOption {
 
     final static String ENABLE_SNAPSHOT = "enable-snapshot";
 
+    final static String MMAP_FILE_SOURCE = "mmap-file-source";
+
+    final static String EVENT_COALESCE = "event-coalesce";
+    final static String EVENT_MAX_RATE = "event-max-rate";
+
+    // send pos events as binary records on the binary event channel, see BinaryEventSink
+    final static String BINARY_POSITION = "binary-position";
+
+    // send position anchors instead of every position tick, dart extrapolates
+    final static String POSITION_ANCHOR = "position-anchor";
+    // max interval between anchors while playing, default 5000 ms
+    final static String POSITION_ANCHOR_INTERVAL = "position-anchor-interval";
+
+    // live catch-up, enabled when the target latency is greater than 0
+    final static String LATENCY_TARGET_MS = "latency-target-ms";
+    // bounds of the factor applied to the user's speed, in 1/1000, e.g. 950 for 0.95x
+    final static String LATENCY_MIN_SPEED = "latency-min-speed";
+    final static String LATENCY_MAX_SPEED = "latency-max-speed";
+
     final private Map<String, Integer> mIntOption;
 
     final private Map<String, String> mStrOption;
@@ -0,0 +1,120 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+package com.befovy.fijkplayer;
+
+/**
+ * Catch-up controller for live streams.
+ * <p>
+ * The latency is the buffered duration ahead of the playback position. After a
+ * rebuffer it grows, and playing at 1x never gives it back. The controller
+ * smooths the latency samples and sets a speed factor proportionally to the
+ * error from the target, clamped to [minSpeed, maxSpeed], with a dead band
+ * around the target so that speed does not wobble on noise. FijkPlayer
+ * multiplies the speed set from dart by this factor, so catch-up works at
+ * any user speed.
+ * <p>
+ * Pure Java with caller supplied clock, so it can be driven by a simulated
+ * buffer model. Not thread safe, feed it from one thread.
+ */
+final class LatencyController {
+
+    // weight of a new sample in the moving average
+    final private static float SMOOTHING = 0.2f;
+    // speed change per ms of latency error
+    final private static float GAIN = 0.0001f;
+    // speed changes smaller than this are not applied
+    final private static float MIN_STEP = 0.01f;
+
+    final private long mTargetMs;
+    final private float mMinSpeed;
+    final private float mMaxSpeed;
+    final private long mDeadBandMs;
+
+    private float mSmoothedMs = -1;
+    private float mSpeed = 1.0f;
+
+    /**
+     * @param targetMs latency to hold, in milliseconds
+     * @param minSpeed lowest factor, used when latency is below the target
+     * @param maxSpeed highest factor, used to catch up
+     */
+    LatencyController(long targetMs, float minSpeed, float maxSpeed) {
+        mTargetMs = targetMs;
+        mMinSpeed = Math.min(minSpeed, 1.0f);
+        mMaxSpeed = Math.max(maxSpeed, 1.0f);
+        mDeadBandMs = Math.max(100, targetMs / 10);
+    }
+
+    /**
+     * Feed one latency sample.
+     *
+     * @param latencyMs buffered duration ahead of the playback position
+     * @return true if the factor changed and should be applied
+     */
+    boolean update(long latencyMs) {
+        if (latencyMs < 0)
+            return false;
+        if (mSmoothedMs < 0)
+            mSmoothedMs = latencyMs;
+        else
+            mSmoothedMs += SMOOTHING * (latencyMs - mSmoothedMs);
+
+        float error = mSmoothedMs - mTargetMs;
+        float desired;
+        if (Math.abs(error) <= mDeadBandMs) {
+            desired = 1.0f;
+        } else {
+            // measure the error from the edge of the dead band so speed is continuous
+            float outside = error - Math.signum(error) * mDeadBandMs;
+            desired = Math.max(mMinSpeed, Math.min(mMaxSpeed, 1.0f + outside * GAIN));
+        }
+        boolean backToNormal = desired == 1.0f && mSpeed != 1.0f;
+        if (Math.abs(desired - mSpeed) >= MIN_STEP || backToNormal) {
+            mSpeed = desired;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Forget the history, e.g. after a seek or a new data source.
+     */
+    void reset() {
+        mSmoothedMs = -1;
+        mSpeed = 1.0f;
+    }
+
+    float speed() {
+        return mSpeed;
+    }
+
+    /**
+     * @return smoothed latency in milliseconds, -1 before the first sample
+     */
+    long latencyMs() {
+        return (long) mSmoothedMs;
+    }
+
+    long targetMs() {
+        return mTargetMs;
+    }
+}
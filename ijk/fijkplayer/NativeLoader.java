@@ -0,0 +1,160 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+
+
+package com.befovy.fijkplayer;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+
+/**
+ * Loads the ijkplayer native libraries on a background thread so plugin
+ * registration does not block the main thread during cold start.
+ * Main thread callers that need the libraries are deferred with
+ * {@link #whenReady(Runnable)}; the time they waited is reported by
+ * {@link #toMap()} next to the load time that moved off the main thread.
+ * The nbplayer plugin carries its own loader with the same contract; the
+ * two trees share no code, and this one only differs in leaving the surface
+ * warm-up to the main thread, see {@link #recordMainThreadWarmUp(long)}.
+ */
+final class NativeLoader {
+
+    private final Handler mMainHandler;
+    private final CountDownLatch mReady = new CountDownLatch(1);
+    // guarded by this, drained once loading finishes
+    private final List<Runnable> mPending = new ArrayList<>();
+    private volatile Throwable mError;
+
+    private volatile long mLibraryLoadMs = -1;
+    private volatile long mFirstUseMs = -1;
+    private volatile long mMainThreadWarmUpMs = -1;
+    private final AtomicLong mWaitNanos = new AtomicLong();
+    private long mStartUptime;
+
+    NativeLoader(@NonNull Handler mainHandler) {
+        mMainHandler = mainHandler;
+    }
+
+    void start() {
+        mStartUptime = SystemClock.uptimeMillis();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        }, "fijk-native-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void load() {
+        long begin = SystemClock.uptimeMillis();
+        try {
+            IjkMediaPlayer.loadLibrariesOnce(null);
+            mLibraryLoadMs = SystemClock.uptimeMillis() - begin;
+            Log.i("FIJKPLAYER", "ijkplayer libraries loaded in " + mLibraryLoadMs + "ms");
+        } catch (Throwable t) {
+            Log.e("FIJKPLAYER", "failed to load ijkplayer libraries", t);
+            mError = t;
+        }
+        List<Runnable> callbacks;
+        synchronized (this) {
+            mReady.countDown();
+            callbacks = new ArrayList<>(mPending);
+            mPending.clear();
+        }
+        for (Runnable callback : callbacks) {
+            mMainHandler.post(callback);
+        }
+    }
+
+    /**
+     * Run callback on the main thread once loading finished, immediately if it
+     * already has. Must be called on the main thread.
+     */
+    void whenReady(@NonNull final Runnable callback) {
+        if (mFirstUseMs < 0) {
+            mFirstUseMs = SystemClock.uptimeMillis() - mStartUptime;
+        }
+        synchronized (this) {
+            if (mReady.getCount() > 0) {
+                final long begin = System.nanoTime();
+                mPending.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        mWaitNanos.addAndGet(System.nanoTime() - begin);
+                        callback.run();
+                    }
+                });
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    boolean isReady() {
+        return mReady.getCount() == 0 && mError == null;
+    }
+
+    String getError() {
+        Throwable t = mError;
+        return t != null ? t.toString() : null;
+    }
+
+    /**
+     * Record warm-up work that has to stay on the main thread but was deferred
+     * until the main looper went idle.
+     */
+    void recordMainThreadWarmUp(long ms) {
+        mMainThreadWarmUpMs = ms;
+    }
+
+    /**
+     * Startup timings in ms. libraryLoadMs used to run inside onAttachedToEngine,
+     * so it is the time saved on the registration path; mainThreadWarmUpMs still
+     * runs on the main thread, only later, and is not counted; firstUseMs is registration to the first caller that
+     * needed the libraries and waitMs the total time such callers were deferred.
+     */
+    @NonNull
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("ready", isReady());
+        map.put("libraryLoadMs", mLibraryLoadMs);
+        map.put("mainThreadWarmUpMs", mMainThreadWarmUpMs);
+        map.put("mainThreadSavedMs", Math.max(0, mLibraryLoadMs));
+        map.put("firstUseMs", mFirstUseMs);
+        map.put("waitMs", mWaitNanos.get() / 1000000);
+        return map;
+    }
+}
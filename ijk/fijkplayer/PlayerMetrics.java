@@ -0,0 +1,146 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+package com.befovy.fijkplayer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Playback latency metrics aggregated across all players of the plugin.
+ * <p>
+ * Each {@link FijkPlayer} owns a {@link Timeline} that stamps monotonic times at
+ * its callbacks and feeds the derived latencies into the shared histograms:
+ * ttfa (setDataSource to first rendering), prepare (prepareAsync to prepared),
+ * stall (buffering after playback began), and seek (seekTo to seek complete).
+ * In position anchor mode, positionDrift records how far the extrapolated
+ * position was off at each correcting anchor.
+ */
+final class PlayerMetrics {
+    private final LatencyHistogram ttfa = new LatencyHistogram();
+    private final LatencyHistogram prepare = new LatencyHistogram();
+    private final LatencyHistogram stall = new LatencyHistogram();
+    private final LatencyHistogram seek = new LatencyHistogram();
+    private final LatencyHistogram positionDrift = new LatencyHistogram();
+    private final AtomicLong stallCount = new AtomicLong();
+
+    Timeline newTimeline() {
+        return new Timeline();
+    }
+
+    void recordPositionDriftMs(long driftMs) {
+        positionDrift.recordMicros(Math.abs(driftMs) * 1000);
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("ttfa", ttfa.toMap());
+        map.put("prepare", prepare.toMap());
+        map.put("stall", stall.toMap());
+        map.put("seek", seek.toMap());
+        map.put("positionDrift", positionDrift.toMap());
+        map.put("stallCount", stallCount.get());
+        return map;
+    }
+
+    void reset() {
+        ttfa.reset();
+        prepare.reset();
+        stall.reset();
+        seek.reset();
+        positionDrift.reset();
+        stallCount.set(0);
+    }
+
+    /**
+     * Per-player timestamps from {@link System#nanoTime()}; 0 means no open interval.
+     */
+    final class Timeline {
+        private volatile long setDataSourceNanos;
+        private volatile long prepareAsyncNanos;
+        private volatile long bufferingStartNanos;
+        private volatile long seekNanos;
+        // buffering before the first rendering is startup, not a stall
+        private volatile boolean rendering;
+
+        void onSetDataSource() {
+            reset();
+            setDataSourceNanos = System.nanoTime();
+        }
+
+        void onPrepareAsync() {
+            prepareAsyncNanos = System.nanoTime();
+        }
+
+        void onPrepared() {
+            long begin = prepareAsyncNanos;
+            if (begin != 0) {
+                prepareAsyncNanos = 0;
+                prepare.recordNanos(System.nanoTime() - begin);
+            }
+        }
+
+        void onRenderingStart() {
+            rendering = true;
+            long begin = setDataSourceNanos;
+            if (begin != 0) {
+                setDataSourceNanos = 0;
+                ttfa.recordNanos(System.nanoTime() - begin);
+            }
+        }
+
+        void onBufferingStart() {
+            if (rendering) {
+                bufferingStartNanos = System.nanoTime();
+            }
+        }
+
+        void onBufferingEnd() {
+            long begin = bufferingStartNanos;
+            if (begin != 0) {
+                bufferingStartNanos = 0;
+                stallCount.incrementAndGet();
+                stall.recordNanos(System.nanoTime() - begin);
+            }
+        }
+
+        void onSeek() {
+            seekNanos = System.nanoTime();
+        }
+
+        void onSeekComplete() {
+            long begin = seekNanos;
+            if (begin != 0) {
+                seekNanos = 0;
+                seek.recordNanos(System.nanoTime() - begin);
+            }
+        }
+
+        void reset() {
+            setDataSourceNanos = 0;
+            prepareAsyncNanos = 0;
+            bufferingStartNanos = 0;
+            seekNanos = 0;
+            rendering = false;
+        }
+    }
+}
@@ -22,7 +22,14 @@
 
 package com.befovy.fijkplayer;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 import io.flutter.plugin.common.EventChannel;
 
@@ -32,8 +39,14 @@ import io.flutter.plugin.common.EventChannel;
  * <p>It delivers messages immediately when downstream is available, but it queues messages before
  * the delegate event sink is set with setDelegate.
  *
- * <p>This class is not thread-safe. All calls must be done on the same thread or synchronized
- * externally.
+ * <p>In coalescing mode, queued events of a latest-wins kind (pos, buffering) are replaced
+ * by newer events of the same kind, and delivery of each such kind can be limited to a maximum rate.
+ * Other events, like state changes, are always kept and delivered in order; a rate limited event
+ * queued before one of them is delivered first, so dart never sees a position older than a state.
+ *
+ * <p>This class is thread-safe: a player sends events from ijkplayer's event thread and from the
+ * main thread, calls are serialized on the sink and delegate calls keep their order.
+ * Rate limited events are flushed from the main looper.
  */
 final class QueuingEventSink implements EventChannel.EventSink {
 
@@ -41,26 +54,57 @@ final class QueuingEventSink implements EventChannel.EventSink {
     private final ArrayList<Object> eventQueue = new ArrayList<>();
     private boolean done = false;
 
-    public void setDelegate(EventChannel.EventSink delegate) {
+    private boolean coalescing = false;
+    private long minIntervalMs = 0;
+    private final Map<String, Long> lastDelivery = new HashMap<>();
+    private Handler handler;
+    private boolean flushScheduled = false;
+
+    private final Runnable scheduledFlush = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (QueuingEventSink.this) {
+                flushScheduled = false;
+                maybeFlush();
+            }
+        }
+    };
+
+    public synchronized void setDelegate(EventChannel.EventSink delegate) {
         this.delegate = delegate;
         maybeFlush();
     }
 
+    /**
+     * @param coalescing true to keep only the newest queued event of each latest-wins kind
+     */
+    synchronized void setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+    }
+
+    /**
+     * @param maxRate max deliveries per second of each latest-wins kind, 0 for unlimited.
+     *                Only takes effect in coalescing mode.
+     */
+    synchronized void setMaxRate(int maxRate) {
+        this.minIntervalMs = maxRate > 0 ? 1000 / maxRate : 0;
+    }
+
     @Override
-    public void endOfStream() {
+    public synchronized void endOfStream() {
         enqueue(new EndOfStreamEvent());
         maybeFlush();
         done = true;
     }
 
     @Override
-    public void error(String code, String message, Object details) {
+    public synchronized void error(String code, String message, Object details) {
         enqueue(new ErrorEvent(code, message, details));
         maybeFlush();
     }
 
     @Override
-    public void success(Object event) {
+    public synchronized void success(Object event) {
         enqueue(event);
         maybeFlush();
     }
@@ -69,6 +113,18 @@ final class QueuingEventSink implements EventChannel.EventSink {
         if (done) {
             return;
         }
+        if (coalescing) {
+            String kind = latestWinsKind(event);
+            if (kind != null) {
+                Iterator<Object> it = eventQueue.iterator();
+                while (it.hasNext()) {
+                    if (kind.equals(latestWinsKind(it.next()))) {
+                        it.remove();
+                        break;
+                    }
+                }
+            }
+        }
         eventQueue.add(event);
     }
 
@@ -76,7 +132,37 @@ final class QueuingEventSink implements EventChannel.EventSink {
         if (delegate == null) {
             return;
         }
-        for (Object event : eventQueue) {
+        long now = SystemClock.uptimeMillis();
+        long nextFlush = Long.MAX_VALUE;
+        boolean limited = coalescing && minIntervalMs > 0;
+        // events up to the last one that is never held are delivered regardless of the rate limit
+        int barrier = -1;
+        if (limited) {
+            for (int i = eventQueue.size() - 1; i >= 0; i--) {
+                if (latestWinsKind(eventQueue.get(i)) == null) {
+                    barrier = i;
+                    break;
+                }
+            }
+        }
+        int index = -1;
+        Iterator<Object> it = eventQueue.iterator();
+        while (it.hasNext()) {
+            Object event = it.next();
+            index++;
+            if (limited) {
+                String kind = latestWinsKind(event);
+                if (kind != null) {
+                    Long last = lastDelivery.get(kind);
+                    if (index > barrier && last != null && now - last < minIntervalMs) {
+                        // keep it queued, a newer event of the same kind may replace it
+                        nextFlush = Math.min(nextFlush, last + minIntervalMs);
+                        continue;
+                    }
+                    lastDelivery.put(kind, now);
+                }
+            }
+            it.remove();
             if (event instanceof EndOfStreamEvent) {
                 delegate.endOfStream();
             } else if (event instanceof ErrorEvent) {
@@ -86,7 +172,23 @@ final class QueuingEventSink implements EventChannel.EventSink {
                 delegate.success(event);
             }
         }
-        eventQueue.clear();
+        if (nextFlush != Long.MAX_VALUE && !flushScheduled) {
+            if (handler == null) {
+                handler = new Handler(Looper.getMainLooper());
+            }
+            flushScheduled = true;
+            handler.postAtTime(scheduledFlush, nextFlush);
+        }
+    }
+
+    private static String latestWinsKind(Object event) {
+        if (event instanceof Map) {
+            Object kind = ((Map) event).get("event");
+            if ("pos".equals(kind) || "buffering".equals(kind)) {
+                return (String) kind;
+            }
+        }
+        return null;
     }
 
     private static class EndOfStreamEvent {
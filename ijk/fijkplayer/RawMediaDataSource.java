@@ -1,6 +1,6 @@
 //MIT License
 //
-//Copyright (c) [2019] [Befovy]
+//Copyright (c) [2019-2020] [Befovy]
 //
 //Permission is hereby granted, free of charge, to any person obtaining a copy
 //of this software and associated documentation files (the "Software"), to deal
@@ -19,55 +19,138 @@
 //LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
 //OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
 //SOFTWARE.
-
 package com.befovy.fijkplayer;
 
 import android.util.Log;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
 
+/**
+ * Media data source over an InputStream, used for compressed assets that
+ * cannot be opened as a file descriptor.
+ * <p>
+ * The stream is consumed in fixed size blocks which are kept in a bounded LRU
+ * cache. Reads inside cached blocks cost no stream access, forward seeks skip
+ * from the current stream position, and only backward seeks past the cache
+ * fall back to reset() and skip from the start.
+ */
 class RawMediaDataSource implements IMediaDataSource {
+
+    final private static int BLOCK_SIZE = 64 * 1024;
+    // 64 blocks, 4 MiB of recently read data
+    final private static int MAX_BLOCKS = 64;
+
     private InputStream mIs;
-    private long mPosition = 0;
+    private final long mSize;
+    // position of the underlying stream
+    private long mStreamPos = 0;
+    // array of the last evicted block, reused by the next load
+    private byte[] mFreeBlock;
+
+    private final LinkedHashMap<Long, Block> mBlocks = new LinkedHashMap<Long, Block>(MAX_BLOCKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Block> eldest) {
+            if (size() > MAX_BLOCKS) {
+                mFreeBlock = eldest.getValue().data;
+                return true;
+            }
+            return false;
+        }
+    };
 
     public RawMediaDataSource(InputStream is) {
+        this(is, -1);
+    }
+
+    /**
+     * @param is   stream positioned at the start of the media, should support mark/reset
+     * @param size total size in bytes, or -1 to take the stream's available() before any read
+     */
+    RawMediaDataSource(InputStream is, long size) {
         mIs = is;
+        if (size < 0) {
+            try {
+                size = is.available();
+            } catch (IOException e) {
+                Log.e("DataSource", "failed to get size" + e.getMessage());
+            }
+        }
+        mSize = size;
     }
 
     @Override
     public int readAt(long position, byte[] buffer, int offset, int size) {
         if (size <= 0)
             return size;
-        int length = -1;
+        if (mIs == null || (mSize >= 0 && position >= mSize))
+            return -1;
         try {
-            if (mPosition != position) {
-                mIs.reset();
-                mPosition = mIs.skip(position);
+            long index = position / BLOCK_SIZE;
+            Block block = mBlocks.get(index);
+            if (block == null) {
+                block = loadBlock(index);
+                if (block == null)
+                    return -1;
             }
-            length = mIs.read(buffer, offset, size);
-            mPosition += length;
+            int blockOffset = (int) (position - index * BLOCK_SIZE);
+            if (blockOffset >= block.length)
+                return -1;
+            int length = Math.min(size, block.length - blockOffset);
+            System.arraycopy(block.data, blockOffset, buffer, offset, length);
+            return length;
         } catch (IOException e) {
             Log.e("DataSource", "failed to read" + e.getMessage());
+            return -1;
+        }
+    }
+
+    private Block loadBlock(long index) throws IOException {
+        long start = index * BLOCK_SIZE;
+        if (start < mStreamPos) {
+            // evicted block behind the stream, rewind to the mark at the start
+            mIs.reset();
+            mStreamPos = 0;
         }
-        return length;
+        while (mStreamPos < start) {
+            long skipped = mIs.skip(start - mStreamPos);
+            if (skipped <= 0)
+                return null;
+            mStreamPos += skipped;
+        }
+
+        byte[] data = mFreeBlock != null ? mFreeBlock : new byte[BLOCK_SIZE];
+        mFreeBlock = null;
+        int length = 0;
+        while (length < BLOCK_SIZE) {
+            int n = mIs.read(data, length, BLOCK_SIZE - length);
+            if (n < 0)
+                break;
+            length += n;
+        }
+        mStreamPos += length;
+        if (length == 0) {
+            mFreeBlock = data;
+            return null;
+        }
+        Block block = new Block(data, length);
+        mBlocks.put(index, block);
+        return block;
     }
 
     @Override
     public long getSize() {
-        long size = -1;
-        try {
-            size = mIs.available();
-        } catch (IOException e) {
-            Log.e("DataSource", "failed to get size" + e.getMessage());
-        }
-        return size;
+        return mSize;
     }
 
     @Override
     public void close() {
+        mBlocks.clear();
+        mFreeBlock = null;
         if (mIs != null) {
             try {
                 mIs.close();
@@ -78,5 +161,13 @@ class RawMediaDataSource implements IMediaDataSource {
         }
     }
 
-}
+    private static class Block {
+        final byte[] data;
+        final int length;
 
+        Block(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+//MIT License
+//
+//Copyright (c) [2019-2020] [Befovy]
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//copies of the Software, and to permit persons to whom the Software is
+//furnished to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//SOFTWARE.
+package com.befovy.fijkplayer;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryCodec;
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * Encodes snapshot bitmaps off the main thread and sends them to dart as one
+ * binary message: a 16 bytes little endian header (format, width, height,
+ * data length) followed by the encoded bytes or raw RGBA pixels.
+ * <p>
+ * Encoding runs on an executor shared by all players. The encode stream and
+ * the direct output buffer belong to one player and are reused between
+ * snapshots; dart allows one pending snapshot per player, and the engine
+ * copies the message synchronously on send.
+ */
+class SnapshotEncoder {
+
+    final static int FORMAT_JPEG = 0;
+    final static int FORMAT_WEBP = 1;
+    final static int FORMAT_RGBA = 2;
+
+    final private static int HEADER_SIZE = 16;
+
+    final private static ExecutorService sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "fijk-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    interface Callback {
+        void onError(String message);
+    }
+
+    final private BasicMessageChannel<ByteBuffer> mChannel;
+    final private Handler mMainHandler = new Handler(Looper.getMainLooper());
+    final private ReusableOutputStream mStream = new ReusableOutputStream();
+    private ByteBuffer mBuffer;
+
+    private volatile int mFormat = FORMAT_JPEG;
+    private volatile int mQuality = 100;
+    private volatile int mMaxDimension = 0;
+
+    SnapshotEncoder(BinaryMessenger messenger, String name) {
+        mChannel = new BasicMessageChannel<>(messenger, name, BinaryCodec.INSTANCE);
+    }
+
+    /**
+     * @param format       one of FORMAT_JPEG, FORMAT_WEBP and FORMAT_RGBA
+     * @param quality      compress quality 0 - 100, ignored for FORMAT_RGBA
+     * @param maxDimension scale down so that the longer side fits, 0 keeps the original size
+     */
+    void setRequest(int format, int quality, int maxDimension) {
+        mFormat = format;
+        mQuality = Math.max(0, Math.min(100, quality));
+        mMaxDimension = Math.max(0, maxDimension);
+    }
+
+    /**
+     * Takes ownership of the bitmap and recycles it after encoding.
+     */
+    void encode(final Bitmap bitmap, final Callback callback) {
+        final int format = mFormat;
+        final int quality = mQuality;
+        final int maxDimension = mMaxDimension;
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ByteBuffer result;
+                try {
+                    result = encodeBitmap(bitmap, format, quality, maxDimension);
+                } catch (RuntimeException e) {
+                    Log.e("FIJKPLAYER", "failed to encode snapshot " + e.getMessage());
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onError("encode failed");
+                        }
+                    });
+                    return;
+                }
+                // the engine reads up to position() and copies on the platform thread
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mChannel.send(result);
+                    }
+                });
+            }
+        });
+    }
+
+    private ByteBuffer encodeBitmap(Bitmap source, int format, int quality, int maxDimension) {
+        Bitmap bitmap = scale(source, maxDimension);
+        try {
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            int length;
+            if (format == FORMAT_RGBA) {
+                if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+                    Bitmap converted = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+                    bitmap.recycle();
+                    bitmap = converted;
+                }
+                length = bitmap.getByteCount();
+                ByteBuffer buffer = obtainBuffer(HEADER_SIZE + length);
+                buffer.position(HEADER_SIZE);
+                // ARGB_8888 is stored as R, G, B, A bytes in memory
+                bitmap.copyPixelsToBuffer(buffer);
+            } else {
+                mStream.reset();
+                bitmap.compress(compressFormat(format), quality, mStream);
+                length = mStream.size();
+                ByteBuffer buffer = obtainBuffer(HEADER_SIZE + length);
+                buffer.position(HEADER_SIZE);
+                buffer.put(mStream.buffer(), 0, length);
+            }
+            mBuffer.putInt(0, format);
+            mBuffer.putInt(4, width);
+            mBuffer.putInt(8, height);
+            mBuffer.putInt(12, length);
+            return mBuffer;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private static Bitmap scale(Bitmap bitmap, int maxDimension) {
+        int longer = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (maxDimension <= 0 || longer <= maxDimension) {
+            return bitmap;
+        }
+        float ratio = (float) maxDimension / longer;
+        int width = Math.max(1, Math.round(bitmap.getWidth() * ratio));
+        int height = Math.max(1, Math.round(bitmap.getHeight() * ratio));
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat compressFormat(int format) {
+        if (format == FORMAT_WEBP) {
+            return Bitmap.CompressFormat.WEBP;
+        }
+        return Bitmap.CompressFormat.JPEG;
+    }
+
+    // grows only, so repeated thumbnails of the same size allocate nothing
+    private ByteBuffer obtainBuffer(int capacity) {
+        if (mBuffer == null || mBuffer.capacity() < capacity) {
+            mBuffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        mBuffer.clear();
+        return mBuffer;
+    }
+
+    static int parseFormat(String format) {
+        if ("webp".equals(format))
+            return FORMAT_WEBP;
+        if ("rgba".equals(format))
+            return FORMAT_RGBA;
+        return FORMAT_JPEG;
+    }
+
+    private static class ReusableOutputStream extends ByteArrayOutputStream {
+        ReusableOutputStream() {
+            super(64 * 1024);
+        }
+
+        // backing array, valid up to size()
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -90,7 +90,13 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
   Duration _currentPos = Duration();
 
   /// return the current playing position
-  Duration get currentPos => _currentPos;
+  Duration get currentPos => _anchorPlaying ? _extrapolatedPos() : _currentPos;
+
+  // position anchor mode, see `position-anchor` host option
+  final Stopwatch _anchorClock = Stopwatch();
+  double _anchorSpeed = 1.0;
+  bool _anchorPlaying = false;
+  Timer? _anchorTicker;
 
   final StreamController<Duration> _currentPosController =
       StreamController.broadcast();
@@ -111,8 +117,31 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
 
   String? get dataSource => _dataSource;
 
+  final StreamController<FijkLatency> _latencyController =
+      StreamController.broadcast();
+
+  /// Latency and playback speed of the live catch-up controller, about once
+  /// a second while `latency-target-ms` host option is set
+  Stream<FijkLatency> get onLatencyUpdate => _latencyController.stream;
+
+  final StreamController<String> _demotedController =
+      StreamController.broadcast();
+
+  /// Emits the reason when the native side demotes this player to keep within
+  /// [FijkPlugin.setPlayerBudget]: `released` when the native player was
+  /// released and the state went back to idle, `paused` when it was paused.
+  Stream<String> get onDemoted => _demotedController.stream;
+
+  bool _demoted = false;
+
+  /// True after the native player was released by the player budget,
+  /// until playback is started again
+  bool get isDemoted => _demoted;
+
   final Completer<int> _nativeSetup;
-  Completer<Uint8List>? _snapShot;
+  Completer<FijkSnapshot>? _snapShot;
+  BasicMessageChannel<ByteData?>? _snapshotChannel;
+  BasicMessageChannel<ByteData?>? _binaryEventChannel;
 
   FijkPlayer()
       : _nativeSetup = Completer(),
@@ -143,16 +172,59 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
     }
   }
 
+  // header: int32 format, width, height, length (little endian), then data
+  Future<ByteData?> _onSnapshotData(ByteData? message) async {
+    var snapShot = _snapShot;
+    _snapShot = null;
+    if (snapShot == null || snapShot.isCompleted) return null;
+    if (message == null || message.lengthInBytes < 16) {
+      snapShot.completeError(StateError("snapshot empty"));
+      return null;
+    }
+    final format = message.getInt32(0, Endian.little);
+    final width = message.getInt32(4, Endian.little);
+    final height = message.getInt32(8, Endian.little);
+    final length = message.getInt32(12, Endian.little);
+    // the message buffer is only valid during this call, copy the payload out
+    final data = Uint8List.fromList(
+        message.buffer.asUint8List(message.offsetInBytes + 16, length));
+    snapShot.complete(FijkSnapshot._(
+        FijkSnapshotFormat.values[format], width, height, data));
+    return null;
+  }
+
+  // record size and types, keep in sync with android BinaryEventSink
+  static const int _binaryRecordSize = 16;
+  static const int _binaryEventPos = 1;
+
+  // fixed 16 byte records: int32 type, arg1, arg2, arg3 (little endian)
+  Future<ByteData?> _onBinaryEvent(ByteData? message) async {
+    if (message == null) return null;
+    for (int offset = 0;
+        offset + _binaryRecordSize <= message.lengthInBytes;
+        offset += _binaryRecordSize) {
+      final type = message.getInt32(offset, Endian.little);
+      if (type == _binaryEventPos) {
+        _currentPos =
+            Duration(milliseconds: message.getInt32(offset + 4, Endian.little));
+        if (!_seeking) {
+          _currentPosController.add(_currentPos);
+        }
+      }
+    }
+    return null;
+  }
+
   Future<dynamic> _handler(MethodCall call) {
     switch (call.method) {
       case "_onSnapshot":
         var img = call.arguments;
         var snapShot = _snapShot;
         if (snapShot != null) {
-          if (img is Map) {
-            snapShot.complete(img['data']);
-          } else {
+          if (img == "not support") {
             snapShot.completeError(UnsupportedError("snapshot"));
+          } else {
+            snapShot.completeError(StateError("snapshot $img"));
           }
         }
         _snapShot = null;
@@ -182,6 +254,14 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
     _nativeSetup.complete(_playerId);
 
     _channel.setMethodCallHandler(_handler);
+    _snapshotChannel = BasicMessageChannel<ByteData?>(
+        'befovy.com/fijkplayer/snapshot/' + _playerId.toString(),
+        BinaryCodec());
+    _snapshotChannel!.setMessageHandler(_onSnapshotData);
+    _binaryEventChannel = BasicMessageChannel<ByteData?>(
+        'befovy.com/fijkplayer/binary_event/' + _playerId.toString(),
+        BinaryCodec());
+    _binaryEventChannel!.setMessageHandler(_onBinaryEvent);
     if (_startAfterSetup) {
       FijkLog.i("player id:$_playerId, start after setup");
       await _startFromAnyState();
@@ -202,6 +282,31 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
 
   /// set option
   /// [value] must be int or String
+  ///
+  /// Android host options for event delivery, applied on [prepareAsync]:
+  /// * `event-coalesce`: 1 to keep only the newest queued pos / buffering event
+  /// * `event-max-rate`: max pos / buffering events per second when coalescing
+  ///
+  /// * `binary-position`: 1 to receive pos events as fixed 16 byte records on
+  ///   a binary channel instead of maps, no allocation per event on the
+  ///   native side; newer positions replace pending ones
+  ///
+  /// Android host options for live catch-up, applied on [prepareAsync]:
+  /// * `latency-target-ms`: latency to hold, buffered duration ahead of the
+  ///   playback position; greater than 0 enables adaptive playback speed
+  /// * `latency-min-speed` / `latency-max-speed`: speed bounds in 1/1000,
+  ///   default 950 and 1100 (0.95x - 1.1x); they scale the speed set by
+  ///   [setSpeed], e.g. 1.425x - 1.65x at 1.5x
+  ///
+  /// Achieved latency and speed are reported by [onLatencyUpdate].
+  ///
+  /// Android host options for position updates, applied on [prepareAsync]:
+  /// * `position-anchor`: 1 to receive position anchors on state, seek and
+  ///   speed changes instead of every position tick; [currentPos] and
+  ///   [onCurrentPosUpdate] are extrapolated locally from the last anchor
+  /// * `position-anchor-interval`: max ms between correcting anchors while
+  ///   playing, default 5000; an anchor also comes early when extrapolation
+  ///   is more than 80 ms off. See `positionDrift` in [FijkPlugin.getMetrics].
   Future<void> setOption(int category, String key, dynamic value) async {
     await _nativeSetup.future;
     if (value is String) {
@@ -244,15 +349,40 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
   /// Widget image = Image(image: provider)
   /// ```
   Future<Uint8List> takeSnapShot() async {
+    var snapshot = await takeSnapshotImage();
+    return snapshot.data;
+  }
+
+  /// Take snapshot with the given output [format], compress [quality]
+  /// (0 - 100, ignored for [FijkSnapshotFormat.rgba]) and [maxDimension].
+  ///
+  /// The image is scaled down so that its longer side is at most
+  /// [maxDimension] pixels, 0 keeps the video size.
+  /// Encoding runs on a native background thread.
+  /// Same as [takeSnapShot], host option `enable-snapshot` must be set.
+  ///
+  /// Example, small thumbnails for a scrubbing bar:
+  /// ```
+  /// var thumb = await player.takeSnapshotImage(
+  ///     format: FijkSnapshotFormat.webp, quality: 70, maxDimension: 160);
+  /// ```
+  Future<FijkSnapshot> takeSnapshotImage(
+      {FijkSnapshotFormat format = FijkSnapshotFormat.jpeg,
+      int quality = 100,
+      int maxDimension = 0}) async {
     await _nativeSetup.future;
-    FijkLog.i("$this takeSnapShot");
+    FijkLog.i("$this takeSnapshotImage");
     var snapShot = _snapShot;
     if (snapShot != null && !snapShot.isCompleted) {
       return Future.error(StateError("last snapShot is not finished"));
     }
-    snapShot = Completer<Uint8List>();
+    snapShot = Completer<FijkSnapshot>();
     _snapShot = snapShot;
-    _channel.invokeMethod("snapshot");
+    _channel.invokeMethod("snapshot", <String, dynamic>{
+      'format': format.toString().split('.').last,
+      'quality': quality,
+      'maxDimension': maxDimension,
+    });
     return snapShot.future;
   }
 
@@ -268,6 +398,10 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
   /// pass "asset:///assets/butterfly.mp4" to [path]
   /// scheme is `asset`, `://` is scheme's separator， `/` is path's separator.
   ///
+  /// Local files are read through seek and read calls by default.
+  /// On Android, call `player.setOption(FijkOption.hostCategory, "mmap-file-source", 1);`
+  /// before [setDataSource] to read them from a memory mapped window instead.
+  ///
   /// If set [autoPlay] true, player will stat to play.
   /// The behavior of [setDataSource(url, autoPlay: true)] is like
   ///    await setDataSource(url);
@@ -369,7 +503,12 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
   /// [fijkstate en](https://fijkplayer.befovy.com/docs/en/fijkstate.html) for details
   Future<void> start() async {
     await _nativeSetup.future;
-    if (state == FijkState.initialized) {
+    if (_demoted && state == FijkState.idle && _dataSource != null) {
+      // rehydrate, native side resumes from the demoted position
+      FijkLog.i("$this start demoted player");
+      _demoted = false;
+      await _startFromAnyState();
+    } else if (state == FijkState.initialized) {
       _callId += 1;
       int cid = _callId;
       FijkLog.i("$this invoke prepareAsync and start #$cid");
@@ -421,6 +560,7 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
     } else {
       _callId += 1;
       int cid = _callId;
+      _demoted = false;
       FijkLog.i("$this invoke reset #$cid");
       await _channel.invokeMethod("reset").then((_) {
         FijkLog.i("$this invoke reset #$cid -> done");
@@ -456,6 +596,12 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
     _setValue(value.copyWith(state: FijkState.end));
     await _nativeEventSubscription?.cancel();
     _nativeEventSubscription = null;
+    _anchorPlaying = false;
+    _updateAnchorTicker();
+    _snapshotChannel?.setMessageHandler(null);
+    _snapshotChannel = null;
+    _binaryEventChannel?.setMessageHandler(null);
+    _binaryEventChannel = null;
     _allInstance.remove(_playerId);
     await FijkPlugin._releasePlayer(_playerId).then((_) {
       FijkLog.i("$this invoke release #$cid -> done");
@@ -497,6 +643,25 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
     }
   }
 
+  Duration _extrapolatedPos() {
+    var elapsed = _anchorClock.elapsedMicroseconds * _anchorSpeed;
+    return _currentPos + Duration(microseconds: elapsed.round());
+  }
+
+  // emits extrapolated positions while playing, no platform messages involved
+  void _updateAnchorTicker() {
+    if (_anchorPlaying && _anchorTicker == null) {
+      _anchorTicker = Timer.periodic(Duration(milliseconds: 200), (_) {
+        if (!_seeking) {
+          _currentPosController.add(_extrapolatedPos());
+        }
+      });
+    } else if (!_anchorPlaying) {
+      _anchorTicker?.cancel();
+      _anchorTicker = null;
+    }
+  }
+
   void _eventListener(dynamic event) {
     final Map<dynamic, dynamic> map = event;
     switch (map['event']) {
@@ -535,6 +700,19 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
           }
         }
         break;
+      case 'latency':
+        int latency = map['latency'] ?? 0;
+        int target = map['target'] ?? 0;
+        double speed = map['speed'] ?? 1.0;
+        _latencyController.add(FijkLatency._(Duration(milliseconds: latency),
+            Duration(milliseconds: target), speed));
+        break;
+      case 'demoted':
+        String reason = map['reason'] ?? "released";
+        if (reason == "released") _demoted = true;
+        FijkLog.i("$this demoted $reason");
+        _demotedController.add(reason);
+        break;
       case 'rendering_start':
         String type = map['type'] ?? "none";
         if (type == "video") {
@@ -566,6 +744,19 @@ class FijkPlayer extends ChangeNotifier implements ValueListenable<FijkValue> {
           _currentPosController.add(_currentPos);
         }
         break;
+      case 'pos_anchor':
+        int pos = map['pos'] ?? 0;
+        _currentPos = Duration(milliseconds: pos);
+        _anchorSpeed = map['speed'] ?? 1.0;
+        _anchorPlaying = map['playing'] ?? false;
+        _anchorClock
+          ..reset()
+          ..start();
+        if (!_seeking) {
+          _currentPosController.add(_currentPos);
+        }
+        _updateAnchorTicker();
+        break;
       case 'size_changed':
         double width = map['width'].toDouble();
         double height = map['height'].toDouble();
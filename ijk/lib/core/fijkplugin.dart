@@ -29,7 +29,12 @@ class FijkPlugin {
   static const MethodChannel _channel = const MethodChannel('befovy.com/fijk');
 
   static Future<int> _createPlayer() async {
-    int? pid = await _channel.invokeMethod("createPlayer");
+    int? pid;
+    try {
+      pid = await _channel.invokeMethod("createPlayer");
+    } on PlatformException catch (e) {
+      FijkLog.e("failed to create native player: ${e.message}");
+    }
     if (pid != null) {
       return Future.value(pid);
     }
@@ -37,6 +42,24 @@ class FijkPlugin {
     return Future.value(-1);
   }
 
+  /// Only works on Android
+  /// Limit the players holding native resources to [maxLive] and the players
+  /// playing at the same time to [maxPlaying], 0 means unlimited.
+  ///
+  /// Over [maxLive], the least recently used player that is not preparing or
+  /// playing releases its native player and goes back to idle; [FijkPlayer.start]
+  /// on it later opens the same data source again and resumes from the old position.
+  /// Over [maxPlaying], the least recently used playing player is paused.
+  /// Both are reported by [FijkPlayer.onDemoted].
+  /// Creating a player fails if no other player can be demoted.
+  static Future<void> setPlayerBudget({int maxLive = 0, int maxPlaying = 0}) {
+    if (Platform.isAndroid) {
+      return _channel.invokeMethod("setPlayerBudget",
+          <String, dynamic>{'maxLive': maxLive, 'maxPlaying': maxPlaying});
+    }
+    return Future.value();
+  }
+
   static Future<void> _releasePlayer(int pid) {
     return _channel
         .invokeMethod("releasePlayer", <String, dynamic>{'pid': pid});
@@ -141,6 +164,28 @@ class FijkPlugin {
     return Future.value();
   }
 
+  /// Only works on Android
+  /// Latency metrics aggregated across all players.
+  /// Returns histograms `ttfa` (setDataSource to first rendering), `prepare`,
+  /// `stall` and `seek`, each with count, mean, p50, p90, p99 and max in
+  /// milliseconds, plus the total `stallCount`. `positionDrift` holds the
+  /// error of the extrapolated position at each correcting anchor when the
+  /// `position-anchor` host option is enabled.
+  /// `startup` reports cold start timings in ms: `libraryLoadMs` (native
+  /// libraries, loaded in background), `mainThreadWarmUpMs` (surface warm-up,
+  /// deferred until the main looper is idle), `mainThreadSavedMs` taken off
+  /// plugin registration, `firstUseMs` and the total `waitMs` callers such as
+  /// the first `createPlayer` spent waiting for the libraries.
+  /// Metrics are cleared after reading if [reset] is true.
+  static Future<Map<String, dynamic>> getMetrics({bool reset = false}) async {
+    if (Platform.isAndroid) {
+      var metrics = await _channel.invokeMapMethod<String, dynamic>(
+          "getMetrics", <String, dynamic>{'reset': reset});
+      if (metrics != null) return metrics;
+    }
+    return <String, dynamic>{};
+  }
+
   static Future<void> _setLogLevel(int level) {
     return _channel.invokeMethod("logLevel", <String, dynamic>{'level': level});
   }
@@ -247,6 +247,53 @@ class FijkValue {
   }
 }
 
+/// Live catch-up status reported by [FijkPlayer.onLatencyUpdate]
+@immutable
+class FijkLatency {
+  /// Smoothed buffered duration ahead of the playback position
+  final Duration latency;
+
+  /// Latency the controller tries to hold
+  final Duration target;
+
+  /// Playback speed currently applied
+  final double speed;
+
+  const FijkLatency._(this.latency, this.target, this.speed);
+
+  @override
+  String toString() {
+    return 'FijkLatency{latency:$latency, target:$target, speed:$speed}';
+  }
+}
+
+/// Output format of [FijkPlayer.takeSnapshotImage]
+enum FijkSnapshotFormat {
+  jpeg,
+  webp,
+
+  /// Uncompressed pixels, 4 bytes per pixel in R, G, B, A order
+  rgba,
+}
+
+/// Snapshot image returned by [FijkPlayer.takeSnapshotImage]
+@immutable
+class FijkSnapshot {
+  final FijkSnapshotFormat format;
+  final int width;
+  final int height;
+
+  /// Encoded image, or raw RGBA pixels of [width] * [height]
+  final Uint8List data;
+
+  const FijkSnapshot._(this.format, this.width, this.height, this.data);
+
+  @override
+  String toString() {
+    return 'FijkSnapshot{format:$format, $width x $height, ${data.length} bytes}';
+  }
+}
+
 @immutable
 class FijkException implements Exception {
   static const int ok = 0;
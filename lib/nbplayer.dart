@@ -25,21 +25,70 @@ enum NbPlayerState {
   end             // 9 - 结束/释放
 }
 
+/// 缓冲策略，见 [Nbplayer.setDataSource]
+enum NbBufferingProfile {
+  /// 不做额外调整
+  standard,
+
+  /// 直播低延迟: 极小探测量，不缓冲
+  lowLatencyLive,
+
+  /// 点播快速起播: 减小探测量，少量帧即开始播放
+  fastStart,
+
+  /// 点播流畅优先: 充分探测并攒足缓冲
+  smoothVod,
+
+  /// 低内存: 限制缓冲区大小
+  lowMemory,
+}
+
+/// 离线下载状态，见 [Nbplayer.download]
+enum NbDownloadState {
+  queued,    // 0 - 排队等待下载名额
+  running,   // 1 - 下载中
+  paused,    // 2 - 已暂停，保留已下载部分
+  completed, // 3 - 已完成，setDataSource 同一 URL 时播放本地文件
+  failed,    // 4 - 失败，见 [NbDownloadEvent.error]
+  removed    // 5 - 已删除
+}
+
+/// 下载事件: 状态变化时 [state] 非空；进度事件只带 [bytes]、[total]
+class NbDownloadEvent {
+  final String url;
+  final NbDownloadState? state;
+  final int bytes;
+  final int total;
+  final String? error;
+
+  const NbDownloadEvent({required this.url, this.state, this.bytes = 0, this.total = -1, this.error});
+
+  /// 进度事件，总长度未知时 [total] 为 -1
+  bool get isProgress => state == null;
+}
+
 /// 基于 ijkplayer 的音频播放器，API 设计参考 FijkPlayer
 /// 支持 setDataSource, prepareAsync, start, pause, stop, reset, release 方法
 class Nbplayer extends ChangeNotifier {
   static int _nextPlayerId = 1;
   static final MethodChannel _globalChannel = MethodChannel('com.newsbang.nbplayer/global');
+  static final EventChannel _downloadChannel = EventChannel('com.newsbang.nbplayer/downloads');
+  static Stream<NbDownloadEvent>? _downloadEvents;
 
   final int _playerId = _nextPlayerId++;
   late MethodChannel _methodChannel;
   late EventChannel _eventChannel;
   StreamSubscription<dynamic>? _eventSubscription;
+  BasicMessageChannel<ByteData?>? _binaryEventChannel;
+  final bool _binaryEvents;
+  final int _eventBufferSize;
 
   NbPlayerState _state = NbPlayerState.idle;
   String? _dataSource;
   bool _disposed = false;
   bool _initialized = false;
+  int _playlistIndex = -1;
+  int? _lastGapMs;
 
   /// 获取当前播放器状态
   NbPlayerState get state => _state;
@@ -53,7 +102,19 @@ class Nbplayer extends ChangeNotifier {
   /// 是否已释放
   bool get disposed => _disposed;
 
-  Nbplayer() {
+  /// 当前播放列表序号，未使用播放列表时为 -1
+  int get playlistIndex => _playlistIndex;
+
+  /// 最近一次自动切换曲目时测得的曲间间隙 (毫秒)
+  int? get lastGapMs => _lastGapMs;
+
+  /// 参数 [binaryEvents] 为 true 时原生端以固定布局的二进制记录发送事件，
+  /// 不再为每个事件构造 Map，适合高频事件场景
+  /// 参数 [eventBufferSize] 为原生端在事件流订阅之前暂存的事件数，订阅后按顺序重放，
+  /// 并补发一条当前状态快照；超出时丢弃最旧的事件，0 表示只发快照
+  Nbplayer({bool binaryEvents = false, int eventBufferSize = 32})
+      : _binaryEvents = binaryEvents,
+        _eventBufferSize = eventBufferSize {
     _methodChannel = MethodChannel('com.newsbang.nbplayer/methods_$_playerId');
     _eventChannel = EventChannel('com.newsbang.nbplayer/events_$_playerId');
     _initialize();
@@ -62,7 +123,11 @@ class Nbplayer extends ChangeNotifier {
   Future<void> _initialize() async {
     try {
       // 通知 Android 端创建播放器实例
-      await _globalChannel.invokeMethod('createPlayer', {'playerId': _playerId.toString()});
+      await _globalChannel.invokeMethod('createPlayer', {
+        'playerId': _playerId.toString(),
+        'binaryEvents': _binaryEvents,
+        'eventBufferSize': _eventBufferSize,
+      });
       _setupEventListener();
       _initialized = true;
       debugPrint('NbPlayer $_playerId initialized');
@@ -73,12 +138,47 @@ class Nbplayer extends ChangeNotifier {
   }
 
   void _setupEventListener() {
+    if (_binaryEvents) {
+      final channel = BasicMessageChannel<ByteData?>(
+          'com.newsbang.nbplayer/binary_events_$_playerId', const BinaryCodec());
+      channel.setMessageHandler((ByteData? message) async {
+        if (message != null) {
+          _onBinaryEvent(message);
+        }
+        return null;
+      });
+      _binaryEventChannel = channel;
+      return;
+    }
     _eventSubscription = _eventChannel.receiveBroadcastStream().listen(
       _onEvent,
       onError: _onError,
     );
   }
 
+  // 二进制事件记录大小与类型，与 Android 端 BinaryEventChannel 保持一致
+  static const int _binaryRecordSize = 16;
+  static const int _binaryEventStateChange = 1;
+  static const int _binaryEventTrackChange = 2;
+
+  /// 解码固定 16 字节小端记录: int32 type, int32 arg1, int32 arg2, int32 arg3
+  void _onBinaryEvent(ByteData message) {
+    for (int offset = 0;
+        offset + _binaryRecordSize <= message.lengthInBytes;
+        offset += _binaryRecordSize) {
+      final int type = message.getInt32(offset, Endian.little);
+      final int arg1 = message.getInt32(offset + 4, Endian.little);
+      final int arg2 = message.getInt32(offset + 8, Endian.little);
+      if (type == _binaryEventStateChange &&
+          arg1 >= 0 &&
+          arg1 < NbPlayerState.values.length) {
+        _updateState(NbPlayerState.values[arg1]);
+      } else if (type == _binaryEventTrackChange) {
+        _onTrackChange(arg1, arg2);
+      }
+    }
+  }
+
   void _onEvent(dynamic event) {
     if (event is Map) {
       final String? eventType = event['event'];
@@ -86,10 +186,25 @@ class Nbplayer extends ChangeNotifier {
 
       if (eventType == 'state_change' && newState != null) {
         _updateState(NbPlayerState.values[newState]);
+      } else if (eventType == 'track_change') {
+        _onTrackChange(event['index'] as int, event['gapMs'] as int);
+      } else if (eventType == 'snapshot' && newState != null) {
+        // 订阅时原生端补发的当前状态
+        _playlistIndex = event['index'] as int;
+        _updateState(NbPlayerState.values[newState]);
       }
     }
   }
 
+  /// [gapMs] 为 -1 表示手动切换，未测量间隙
+  void _onTrackChange(int index, int gapMs) {
+    _playlistIndex = index;
+    if (gapMs >= 0) {
+      _lastGapMs = gapMs;
+    }
+    notifyListeners();
+  }
+
   void _onError(dynamic error) {
     debugPrint('NbPlayer $_playerId event error: $error');
     _updateState(NbPlayerState.error);
@@ -105,7 +220,22 @@ class Nbplayer extends ChangeNotifier {
   /// 设置数据源，支持 HTTP/HTTPS URL
   /// 参数 [url] 音频文件的 URL
   /// 参数 [headers] 可选的 HTTP 请求头
-  Future<void> setDataSource(String url, {Map<String, String>? headers}) async {
+  /// 参数 [cache] 为 true 时 HTTP/HTTPS 数据经磁盘块缓存读取，重播和回退 seek 不再重复下载
+  /// 参数 [reuseConnection] 为 true 时 HTTP/HTTPS 数据经共享连接池拉取，同一主机的连续曲目省去 TLS 握手
+  /// 参数 [parallelConnections] 大于 0 时 HTTP/HTTPS 数据按 256 KB 分段经多个 Range 请求并行拉取并预读，
+  /// 远距离 seek 后不再受单条连接速度限制；最多 8，需要服务器支持 Range，与 [cache] 同时设置时 [cache] 优先
+  /// 参数 [profile] 缓冲策略，对应 ijkplayer 的 probesize、analyzeduration、max-buffer-size 等选项
+  /// 参数 [mediaId] 非空时播放位置按该 ID 保存，暂停、停止、释放时立即写盘，播放中最多每 5 秒写一次，
+  /// 播放完成后清除
+  /// 参数 [autoResume] 为 true 时从 [mediaId] 保存的位置开始播放
+  Future<void> setDataSource(String url,
+      {Map<String, String>? headers,
+      bool cache = false,
+      bool reuseConnection = false,
+      int parallelConnections = 0,
+      NbBufferingProfile profile = NbBufferingProfile.standard,
+      String? mediaId,
+      bool autoResume = false}) async {
     await _ensureInitialized();
     _throwIfDisposed();
 
@@ -117,6 +247,12 @@ class Nbplayer extends ChangeNotifier {
       await _methodChannel.invokeMethod('setDataSource', {
         'url': url,
         'headers': headers,
+        'cache': cache,
+        'reuseConnection': reuseConnection,
+        'parallelConnections': parallelConnections,
+        'profile': profile.name,
+        'mediaId': mediaId,
+        'autoResume': autoResume,
       });
       _dataSource = url;
       _updateState(NbPlayerState.initialized);
@@ -190,6 +326,22 @@ class Nbplayer extends ChangeNotifier {
     }
   }
 
+  /// 跳转到 [msec] 毫秒处，只能在可播放状态下调用
+  Future<void> seekTo(int msec) async {
+    await _ensureInitialized();
+    _throwIfDisposed();
+
+    if (!_isPlayableState()) {
+      throw StateError('seekTo called in invalid state: $_state');
+    }
+
+    try {
+      await _methodChannel.invokeMethod('seekTo', {'msec': msec});
+    } on PlatformException catch (e) {
+      throw Exception('Failed to seek: ${e.message}');
+    }
+  }
+
   /// 停止播放
   Future<void> stop() async {
     await _ensureInitialized();
@@ -229,6 +381,70 @@ class Nbplayer extends ChangeNotifier {
     }
   }
 
+  /// 设置播放列表并从第 [index] 首开始播放
+  /// 当前曲目播放时会用另一个原生播放器预先准备下一曲，结束后直接切换以减少曲间间隙
+  /// [headers]、[cache]、[reuseConnection]、[parallelConnections]、[profile] 对列表中所有曲目生效，含义同 [setDataSource]
+  Future<void> setPlaylist(List<String> urls,
+      {int index = 0,
+      Map<String, String>? headers,
+      bool cache = false,
+      bool reuseConnection = false,
+      int parallelConnections = 0,
+      NbBufferingProfile profile = NbBufferingProfile.standard}) async {
+    await _ensureInitialized();
+    _throwIfDisposed();
+
+    try {
+      await _methodChannel.invokeMethod('setPlaylist', {
+        'urls': urls,
+        'index': index,
+        'headers': headers,
+        'cache': cache,
+        'reuseConnection': reuseConnection,
+        'parallelConnections': parallelConnections,
+        'profile': profile.name,
+      });
+      _dataSource = urls[index];
+      _playlistIndex = index;
+    } on PlatformException catch (e) {
+      _updateState(NbPlayerState.error);
+      throw Exception('Failed to set playlist: ${e.message}');
+    }
+  }
+
+  /// 在播放列表末尾追加一首，返回列表长度
+  Future<int> enqueue(String url) async {
+    await _ensureInitialized();
+    _throwIfDisposed();
+
+    try {
+      final int? size = await _methodChannel.invokeMethod<int>('enqueue', {'url': url});
+      return size ?? 0;
+    } on PlatformException catch (e) {
+      throw Exception('Failed to enqueue: ${e.message}');
+    }
+  }
+
+  /// 切换到播放列表的下一首
+  Future<void> next() => _skip('next');
+
+  /// 切换到播放列表的上一首
+  Future<void> previous() => _skip('previous');
+
+  Future<void> _skip(String method) async {
+    await _ensureInitialized();
+    _throwIfDisposed();
+
+    try {
+      final int? index = await _methodChannel.invokeMethod<int>(method);
+      if (index != null) {
+        _playlistIndex = index;
+      }
+    } on PlatformException catch (e) {
+      throw Exception('Failed to $method: ${e.message}');
+    }
+  }
+
   /// 释放播放器资源
   Future<void> release() async {
     if (_disposed) return;
@@ -237,6 +453,8 @@ class Nbplayer extends ChangeNotifier {
       // 先取消事件订阅，避免在 Android 端释放后出现 MissingPluginException
       await _eventSubscription?.cancel();
       _eventSubscription = null;
+      _binaryEventChannel?.setMessageHandler(null);
+      _binaryEventChannel = null;
 
       if (_initialized) {
         // 然后释放 Android 端资源
@@ -278,6 +496,137 @@ class Nbplayer extends ChangeNotifier {
     }
   }
 
+  /// 设置磁盘缓存的字节预算，超出后按 LRU 淘汰
+  static Future<void> configureCache({required int maxBytes}) async {
+    await _globalChannel.invokeMethod('configureCache', {'maxBytes': maxBytes});
+  }
+
+  /// 获取磁盘缓存统计: hits, misses, bytes, maxBytes
+  static Future<Map<String, int>> getCacheStats() async {
+    final stats = await _globalChannel.invokeMapMethod<String, int>('getCacheStats');
+    return stats ?? <String, int>{};
+  }
+
+  /// 获取共享连接池统计: requests、tlsHandshakes、handshakesAvoided (复用连接省去的 TLS 握手数)
+  static Future<Map<String, int>> getHttpStats() async {
+    final stats = await _globalChannel.invokeMapMethod<String, int>('getHttpStats');
+    return stats ?? <String, int>{};
+  }
+
+  /// 获取所有播放器汇总的延迟指标
+  /// 返回 ttfa (setDataSource 到首次出声)、prepare、stall (卡顿时长)、seek、trackGap 五个直方图，
+  /// 每项包含 count、mean、p50、p90、p99、max (毫秒)，另有卡顿总次数 stallCount，
+  /// 以及按缓冲策略名分组的 ttfaByProfile；
+  /// startup 为冷启动统计 (毫秒): 后台加载原生库的 libraryLoadMs 即从插件注册的主线程中移走的耗时
+  /// (mainThreadSavedMs 与之相同)，firstUseMs 为注册到首次需要原生库的间隔，waitMs 为 createPlayer 等调用累计等待加载的时长
+  /// 参数 [reset] 为 true 时读取后清零
+  static Future<Map<String, dynamic>> getMetrics({bool reset = false}) async {
+    final metrics = await _globalChannel.invokeMapMethod<String, dynamic>('getMetrics', {'reset': reset});
+    return metrics ?? <String, dynamic>{};
+  }
+
+  /// 预加载即将播放的 [url]，把开头的数据拉入共享磁盘缓存并解析资源长度，
+  /// 之后对该 URL 的 setDataSource + prepareAsync 更快出声
+  /// 参数 [bytes] 预加载字节数；只给出 [durationMs] 时按 128 kbps 估算
+  /// [headers] 为请求头 (如鉴权)，应与之后 setDataSource 使用的一致
+  /// 返回实际缓存的字节数，被 [cancelPreload] 取消时抛出 PlatformException
+  static Future<int> preload(String url, {Map<String, String>? headers, int? bytes, int? durationMs}) async {
+    final int? cached = await _globalChannel.invokeMethod<int>('preload', {
+      'url': url,
+      'headers': headers,
+      'bytes': bytes,
+      'durationMs': durationMs,
+    });
+    return cached ?? 0;
+  }
+
+  /// 获取 [mediaId] 保存的续播位置 (毫秒)，没有记录时返回 -1
+  static Future<int> getResumePosition(String mediaId) async {
+    final int? position = await _globalChannel.invokeMethod<int>('getResumePosition', {'mediaId': mediaId});
+    return position ?? -1;
+  }
+
+  /// 清除 [mediaId] 保存的续播位置
+  static Future<void> clearResumePosition(String mediaId) async {
+    await _globalChannel.invokeMethod('clearResumePosition', {'mediaId': mediaId});
+  }
+
+  /// 获取续播位置存储统计: entries、updates (位置更新次数)、recordsWritten (追加的日志记录数)、
+  /// bytesWritten (含压缩重写)、compactions、loadUs (启动时加载日志耗时)
+  static Future<Map<String, int>> getPositionStats() async {
+    final stats = await _globalChannel.invokeMapMethod<String, int>('getPositionStats');
+    return stats ?? <String, int>{};
+  }
+
+  /// 取消 [url] 的预加载，返回是否有正在进行的预加载
+  static Future<bool> cancelPreload(String url) async {
+    final bool? cancelled = await _globalChannel.invokeMethod<bool>('cancelPreload', {'url': url});
+    return cancelled ?? false;
+  }
+
+  /// 下载 [url] 供离线播放，已有部分下载时从断点续传
+  /// 数据按 1 MiB 分段以 Range 请求拉取，失败的分段自动重试；给出 [sha256] (十六进制) 时完成后校验，
+  /// 不一致则删除并以 failed 结束。下载完成后 setDataSource 同一 URL 直接读本地文件
+  /// 立即返回是否加入了队列 (已在下载中时为 false)，进度与结果见 [downloadEvents]
+  static Future<bool> download(String url, {Map<String, String>? headers, String? sha256}) async {
+    final bool? queued = await _globalChannel.invokeMethod<bool>('download', {
+      'url': url,
+      'headers': headers,
+      'sha256': sha256,
+    });
+    return queued ?? false;
+  }
+
+  /// 暂停 [url] 的下载并保留已下载部分，返回是否有进行中的下载
+  static Future<bool> pauseDownload(String url) async {
+    final bool? paused = await _globalChannel.invokeMethod<bool>('pauseDownload', {'url': url});
+    return paused ?? false;
+  }
+
+  /// 停止 [url] 的下载并删除其所有文件，包括已完成的
+  static Future<void> removeDownload(String url) async {
+    await _globalChannel.invokeMethod('removeDownload', {'url': url});
+  }
+
+  /// 获取所有下载: url、state ([NbDownloadState] 的序号)、bytes、total，已完成的另有 path
+  static Future<List<Map<String, dynamic>>> getDownloads() async {
+    final List<dynamic>? downloads = await _globalChannel.invokeListMethod<dynamic>('getDownloads');
+    return (downloads ?? <dynamic>[]).map((d) => Map<String, dynamic>.from(d as Map)).toList();
+  }
+
+  /// 配置离线下载
+  /// 参数 [maxConcurrent] 同时进行的下载数，其余排队
+  /// 参数 [maxBytesPerSecond] 所有下载合计的带宽上限，0 表示不限速
+  static Future<void> configureDownloads({int maxConcurrent = 2, int maxBytesPerSecond = 0}) async {
+    await _globalChannel.invokeMethod('configureDownloads', {
+      'maxConcurrent': maxConcurrent,
+      'maxBytesPerSecond': maxBytesPerSecond,
+    });
+  }
+
+  /// 获取下载统计: running、queued、bytesDownloaded、resumed (续传次数)、restarts (资源变化后从头下载的次数)、
+  /// checksumFailures，以及 progressEvents / progressSuppressed (原生端发出与节流掉的进度回调数)
+  static Future<Map<String, int>> getDownloadStats() async {
+    final stats = await _globalChannel.invokeMapMethod<String, int>('getDownloadStats');
+    return stats ?? <String, int>{};
+  }
+
+  /// 所有下载的进度与状态事件，进度在原生端按每个下载 250ms 一次节流
+  /// 订阅之前的事件不会重放，可用 [getDownloads] 查询当前状态
+  static Stream<NbDownloadEvent> get downloadEvents {
+    return _downloadEvents ??= _downloadChannel.receiveBroadcastStream().map((dynamic event) {
+      final Map<dynamic, dynamic> map = event as Map<dynamic, dynamic>;
+      final int? state = map['event'] == 'state' ? map['state'] as int? : null;
+      return NbDownloadEvent(
+        url: map['url'] as String,
+        state: state != null ? NbDownloadState.values[state] : null,
+        bytes: (map['bytes'] as int?) ?? 0,
+        total: (map['total'] as int?) ?? -1,
+        error: map['error'] as String?,
+      );
+    });
+  }
+
   /// 兼容原有 API - 获取平台版本
   Future<String?> getPlatformVersion() async {
     await _ensureInitialized();